@@ -65,7 +65,8 @@ CREATE TABLE alarm_definition (
 
 CREATE TABLE alarm_metric (
     metric_definition_dimensions_id bytea NOT NULL,
-    alarm_id character varying(36) NOT NULL
+    alarm_id character varying(36) NOT NULL,
+    created_at timestamp without time zone DEFAULT now() NOT NULL
 );
 
 CREATE TABLE metric_definition (
@@ -98,6 +99,14 @@ CREATE TABLE notification_method (
     period integer NOT NULL
 );
 
+CREATE TABLE event_outbox (
+    id bigserial PRIMARY KEY,
+    topic character varying(255) NOT NULL,
+    message_key character varying(36),
+    message text NOT NULL,
+    created_at timestamp without time zone NOT NULL
+);
+
 CREATE TABLE sub_alarm (
     id character varying(36) NOT NULL,
     created_at timestamp without time zone NOT NULL,
@@ -166,6 +175,7 @@ ALTER TABLE ONLY sub_alarm
 ---
 
 CREATE INDEX alarm_id ON alarm_metric USING btree (alarm_id);
+CREATE INDEX alarm_metric_created_at ON alarm_metric USING btree (created_at);
 CREATE INDEX deleted_at ON alarm_definition USING btree (deleted_at);
 CREATE INDEX dimension_set_id ON metric_dimension USING btree (dimension_set_id);
 CREATE INDEX metric_definition_dimensions_id ON alarm_metric USING btree (metric_definition_dimensions_id);
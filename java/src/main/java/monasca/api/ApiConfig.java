@@ -16,8 +16,18 @@ package monasca.api;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import monasca.common.hibernate.configuration.HibernateDbConfiguration;
 import monasca.common.messaging.kafka.KafkaConfiguration;
+import monasca.api.infrastructure.AlarmExpressionCacheConfiguration;
+import monasca.api.infrastructure.CollectionVersionsConfiguration;
+import monasca.api.infrastructure.EventOutboxRelayConfiguration;
 import monasca.api.infrastructure.middleware.MiddlewareConfiguration;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCacheConfiguration;
+import monasca.api.infrastructure.persistence.ConnectionPoolConfiguration;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCacheConfiguration;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCacheConfiguration;
+import monasca.api.infrastructure.persistence.mysql.AlarmCountSummaryConfiguration;
+import monasca.api.infrastructure.persistence.mysql.DimensionSetIndexConfiguration;
 import monasca.api.infrastructure.persistence.vertica.VerticaDataSourceFactory;
+import monasca.api.infrastructure.streaming.StreamingConfiguration;
 import monasca.common.configuration.DatabaseConfiguration;
 
 import monasca.common.configuration.InfluxDbConfiguration;
@@ -66,4 +76,39 @@ public class ApiConfig extends Configuration {
   public DatabaseConfiguration databaseConfiguration;
   @Valid
   public HibernateDbConfiguration hibernate;
+  @Valid
+  @NotNull
+  public ConnectionPoolConfiguration connectionPool = new ConnectionPoolConfiguration();
+  @Valid
+  @NotNull
+  public DimensionSetIndexConfiguration dimensionSetIndex = new DimensionSetIndexConfiguration();
+  @Valid
+  @NotNull
+  public AlarmCountSummaryConfiguration alarmCountSummary = new AlarmCountSummaryConfiguration();
+  @Valid
+  @NotNull
+  public NotificationMethodIdCacheConfiguration notificationMethodIdCache =
+      new NotificationMethodIdCacheConfiguration();
+  @Valid
+  @NotNull
+  public EventOutboxRelayConfiguration eventOutboxRelay = new EventOutboxRelayConfiguration();
+  @Valid
+  @NotNull
+  public AlarmExpressionCacheConfiguration alarmExpressionCache =
+      new AlarmExpressionCacheConfiguration();
+  @Valid
+  @NotNull
+  public AlarmDefinitionCacheConfiguration alarmDefinitionCache =
+      new AlarmDefinitionCacheConfiguration();
+  @Valid
+  @NotNull
+  public NotificationMethodTypesCacheConfiguration notificationMethodTypesCache =
+      new NotificationMethodTypesCacheConfiguration();
+  @Valid
+  @NotNull
+  public CollectionVersionsConfiguration collectionVersions =
+      new CollectionVersionsConfiguration();
+  @Valid
+  @NotNull
+  public StreamingConfiguration streaming = new StreamingConfiguration();
 }
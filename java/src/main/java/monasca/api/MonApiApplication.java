@@ -32,6 +32,7 @@ import io.dropwizard.Application;
 import io.dropwizard.jdbi.bundles.DBIExceptionsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import monasca.api.infrastructure.AlarmExpressionCache;
 import monasca.api.infrastructure.servlet.MockAuthenticationFilter;
 import monasca.api.infrastructure.servlet.PostAuthenticationFilter;
 import monasca.api.infrastructure.servlet.PreAuthenticationFilter;
@@ -102,6 +103,10 @@ public class MonApiApplication extends Application<ApiConfig> {
   @Override
   @SuppressWarnings("unchecked")
   public void run(ApiConfig config, Environment environment) throws Exception {
+    /** Share parsed alarm expressions across the layers */
+    AlarmExpressionCache.install(
+        new AlarmExpressionCache(config.alarmExpressionCache.maxSize, environment.metrics()));
+
     /** Wire services */
     Injector.registerModules(new MonApiModule(environment, config));
 
@@ -16,6 +16,7 @@ package monasca.api;
 import ch.qos.logback.classic.Level;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.jdbi.DBIFactory;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
 
 import java.util.Arrays;
@@ -38,11 +39,18 @@ import com.google.common.base.Joiner;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.ProvisionException;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.Matchers;
 import com.google.inject.name.Names;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
+import com.zaxxer.hikari.HikariConfig;
 
 import monasca.api.app.ApplicationModule;
 import monasca.api.domain.DomainModule;
 import monasca.api.infrastructure.InfrastructureModule;
+import monasca.api.infrastructure.persistence.ManagedHikariDataSource;
 import monasca.common.hibernate.db.AlarmActionDb;
 import monasca.common.hibernate.db.AlarmActionId;
 import monasca.common.hibernate.db.AlarmDb;
@@ -71,6 +79,20 @@ public class MonApiModule
    * <b>MySQL</b> {@link javax.sql.DataSource} class name
    */
   private static final String MYSQL_DS_CLASS = "com.mysql.jdbc.jdbc2.optional.MysqlDataSource";
+  /**
+   * Hibernate connection provider backed by <b>HikariCP</b>
+   */
+  private static final String HIKARI_PROVIDER_CLASS =
+      "com.zaxxer.hikari.hibernate.HikariConnectionProvider";
+  private static final String HIKARI_PROPERTY_PREFIX = "hibernate.hikari.";
+  /**
+   * Number of inserts or updates Hibernate sends to the database in one JDBC batch
+   */
+  private static final int JDBC_BATCH_SIZE = 50;
+  /**
+   * Number of rows fetched per round trip by drivers that honour a fetch size, like PostgreSQL
+   */
+  private static final int JDBC_FETCH_SIZE = 100;
   private final ApiConfig config;
   private final Environment environment;
 
@@ -91,6 +113,21 @@ public class MonApiModule
     install(new ApplicationModule());
     install(new DomainModule());
     install(new InfrastructureModule(this.config));
+
+    // Background services are started with the server and stopped before the pools are closed
+    bindListener(Matchers.any(), new TypeListener() {
+      @Override
+      public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+        if (Managed.class.isAssignableFrom(type.getRawType())) {
+          encounter.register(new InjectionListener<I>() {
+            @Override
+            public void afterInjection(I injectee) {
+              environment.lifecycle().manage((Managed) injectee);
+            }
+          });
+        }
+      }
+    });
   }
 
   @Provides
@@ -120,7 +157,11 @@ public class MonApiModule
       configuration.addAnnotatedClass(NotificationMethodDb.class);
       configuration.addAnnotatedClass(NotificationMethodTypesDb.class);
 
-      configuration.setProperties(this.getORMProperties(this.config.hibernate.getDataSourceClassName()));
+      final Properties properties = this.getORMProperties(this.config.hibernate.getDataSourceClassName());
+      if (HIKARI_PROVIDER_CLASS.equals(this.config.hibernate.getProviderClass())) {
+        this.handleManagedPoolORMProperties(properties);
+      }
+      configuration.setProperties(properties);
       ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
 
       // builds a session factory from the service registry
@@ -135,8 +176,8 @@ public class MonApiModule
   @Named("mysql")
   public DBI getMySqlDBI() {
     try {
-      return new DBIFactory().build(environment, config.mysql, "mysql");
-    } catch (ClassNotFoundException e) {
+      return this.buildDBI(config.mysql, "mysql");
+    } catch (RuntimeException e) {
       throw new ProvisionException("Failed to provision MySQL DBI", e);
     }
   }
@@ -146,8 +187,8 @@ public class MonApiModule
   @Named("vertica")
   public DBI getVerticaDBI() {
     try {
-      return new DBIFactory().build(environment, config.vertica, "vertica");
-    } catch (ClassNotFoundException e) {
+      return this.buildDBI(config.vertica, "vertica");
+    } catch (RuntimeException e) {
       throw new ProvisionException("Failed to provision Vertica DBI", e);
     }
   }
@@ -163,6 +204,12 @@ public class MonApiModule
     return new Producer<String, String>(config);
   }
 
+  private DBI buildDBI(final DataSourceFactory dataSourceFactory, final String name) {
+    final ManagedHikariDataSource dataSource = ManagedHikariDataSource.build(
+        dataSourceFactory, this.config.connectionPool, this.environment.metrics(), name);
+    return new DBIFactory().build(this.environment, dataSourceFactory, dataSource, name);
+  }
+
   private Properties getORMProperties(final String dataSourceClassName) {
     final Properties properties = new Properties();
 
@@ -199,10 +246,47 @@ public class MonApiModule
     properties.put("hibernate.hikari.dataSource.user", this.config.hibernate.getUser());
     properties.put("hibernate.hikari.dataSource.password", this.config.hibernate.getPassword());
     properties.put("hibernate.hikari.dataSourceClassName", this.config.hibernate.getDataSourceClassName());
+    // Inserts and updates of the same entity are flushed in JDBC batches
+    properties.put("hibernate.jdbc.batch_size", Integer.toString(JDBC_BATCH_SIZE));
+    properties.put("hibernate.order_inserts", "true");
+    properties.put("hibernate.order_updates", "true");
+    properties.put("hibernate.jdbc.fetch_size", Integer.toString(JDBC_FETCH_SIZE));
+  }
+
+  /**
+   * Replaces Hibernate's own Hikari connection provider with a pool that reports to the metric
+   * registry and is closed with the application.
+   */
+  private void handleManagedPoolORMProperties(final Properties properties) {
+    final Properties hikariProperties = new Properties();
+    for (final String key : properties.stringPropertyNames()) {
+      if (key.startsWith(HIKARI_PROPERTY_PREFIX)) {
+        hikariProperties.setProperty(key.substring(HIKARI_PROPERTY_PREFIX.length()),
+            properties.getProperty(key));
+        properties.remove(key);
+      }
+    }
+
+    final HikariConfig hikariConfig = new HikariConfig(hikariProperties);
+    if (MYSQL_DS_CLASS.equals(this.config.hibernate.getDataSourceClassName())) {
+      ManagedHikariDataSource.addStatementCacheProperties(hikariConfig, this.config.connectionPool);
+    }
+    ManagedHikariDataSource.applyPoolConfiguration(hikariConfig, this.config.connectionPool,
+        this.environment.metrics(), "hibernate");
+
+    final ManagedHikariDataSource dataSource =
+        new ManagedHikariDataSource(hikariConfig, this.config.connectionPool,
+            this.environment.metrics());
+    this.environment.lifecycle().manage(dataSource);
+
+    properties.remove("hibernate.connection.provider_class");
+    properties.put("hibernate.connection.datasource", dataSource);
   }
 
   private void handleMySQLORMProperties(final Properties properties) {
     properties.put("hibernate.hikari.dataSource.url", this.config.hibernate.getDataSourceUrl());
+    // lets the driver send a JDBC batch of inserts as one multi-row insert
+    properties.put("hibernate.hikari.dataSource.rewriteBatchedStatements", "true");
   }
 
   private void handlePostgresORMProperties(final Properties properties) {
@@ -0,0 +1,261 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.DeletedAlarm;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.common.model.event.AlarmDeletedEvent;
+import monasca.common.util.Serialization;
+
+/**
+ * Deletes the alarms of deleted alarm definitions in the background, one definition at a time.
+ * The alarms are deleted in batches of a transaction each, which also writes their
+ * AlarmDeletedEvents to the event outbox.
+ *
+ * <p>A deletion that fails is retried with a growing delay, up to {@link #MAX_ATTEMPTS} times.
+ * Stopping lets the running deletion finish its current batch and leaves the rest of its alarms
+ * and the queued deletions undone. Since a deleted alarm definition keeps its row until all of its
+ * alarms are gone, starting resumes the deletion of every deleted alarm definition that still has
+ * alarms, whether it was left by a stop, a crash or a deletion that ran out of attempts.
+ */
+public class AlarmDefinitionDeletionJobs implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(AlarmDefinitionDeletionJobs.class);
+
+  /**
+   * Alarms deleted per transaction.
+   */
+  static final int BATCH_SIZE = 1000;
+
+  /**
+   * Times a deletion, or resuming the deletions on start, is tried before giving up.
+   */
+  static final int MAX_ATTEMPTS = 5;
+
+  /**
+   * Delay before the first retry, which doubles with each further retry.
+   */
+  static final long RETRY_DELAY_SECONDS = 10;
+
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final ApiConfig config;
+  private final AlarmRepo alarmRepo;
+  private final ScheduledExecutorService executor;
+  private final Cache<String, AlarmDefinitionDeletion> deletions;
+  private volatile boolean stopping;
+
+  @Inject
+  public AlarmDefinitionDeletionJobs(ApiConfig config, AlarmRepo alarmRepo) {
+    this(config, alarmRepo, createExecutor());
+  }
+
+  AlarmDefinitionDeletionJobs(ApiConfig config, AlarmRepo alarmRepo,
+                              ScheduledExecutorService executor) {
+    this.config = config;
+    this.alarmRepo = alarmRepo;
+    this.executor = executor;
+    // Each change of a deletion puts it again, so only finished deletions expire
+    this.deletions = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.HOURS).build();
+  }
+
+  private static ScheduledExecutorService createExecutor() {
+    final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("alarm-definition-deletion").build());
+    // Retries waiting for their delay are resumed by the next start instead
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    return executor;
+  }
+
+  @Override
+  public void start() {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        resume(1);
+      }
+    });
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    stopping = true;
+    executor.shutdown();
+    if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      LOG.warn("Stopped while deleting the alarms of an alarm definition");
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Queues the deletion of the alarms of the already deleted alarm definition
+   * {@code alarmDefId}.
+   */
+  public AlarmDefinitionDeletion submit(final String tenantId, final String alarmDefId) {
+    final AlarmDefinitionDeletion deletion =
+        new AlarmDefinitionDeletion(UUID.randomUUID().toString(), tenantId, alarmDefId);
+    deletions.put(deletion.getId(), deletion);
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        delete(deletion);
+      }
+    });
+
+    return deletion;
+  }
+
+  /**
+   * Queues the deletion of the alarms of every deleted alarm definition that still has alarms.
+   */
+  void resume(final int attempt) {
+    final Map<String, String> tenantIds;
+    try {
+      tenantIds = alarmRepo.findDeletedAlarmDefinitionIds();
+    } catch (RuntimeException e) {
+      if (attempt >= MAX_ATTEMPTS || stopping) {
+        LOG.error("Failed finding the deleted alarm definitions that still have alarms", e);
+        return;
+      }
+      LOG.warn("Failed finding the deleted alarm definitions that still have alarms, retrying",
+               e);
+      retry(new Runnable() {
+        @Override
+        public void run() {
+          resume(attempt + 1);
+        }
+      }, attempt);
+      return;
+    }
+
+    for (Map.Entry<String, String> alarmDef : tenantIds.entrySet()) {
+      if (stopping) {
+        return;
+      }
+      LOG.info("Resuming the deletion of the alarms of alarm definition {}", alarmDef.getKey());
+      submit(alarmDef.getValue(), alarmDef.getKey());
+    }
+  }
+
+  /**
+   * Returns the deletion for the {@code id}, or null if there is none for the tenant or it has
+   * expired.
+   */
+  public AlarmDefinitionDeletion get(String tenantId, String id) {
+    final AlarmDefinitionDeletion deletion = deletions.getIfPresent(id);
+    return deletion == null || !deletion.getTenantId().equals(tenantId) ? null : deletion;
+  }
+
+  void delete(final AlarmDefinitionDeletion deletion) {
+    deletion.started();
+    deletions.put(deletion.getId(), deletion);
+
+    // Keyed by the definition like its AlarmDefinitionDeletedEvent, which is published first
+    // because that is the order thresh wants so that the alarms don't get recreated
+    final Function<DeletedAlarm, List<OutboxEvent>> events =
+        new Function<DeletedAlarm, List<OutboxEvent>>() {
+          @Override
+          public List<OutboxEvent> apply(DeletedAlarm deletedAlarm) {
+            final String event =
+                Serialization.toJson(new AlarmDeletedEvent(deletion.getTenantId(),
+                                                           deletedAlarm.getAlarm().getId(),
+                                                           deletedAlarm.getAlarm().getMetrics(),
+                                                           deletion.getAlarmDefinitionId(),
+                                                           deletedAlarm.getSubAlarms()));
+            return Collections.singletonList(
+                new OutboxEvent(config.eventsTopic, deletion.getAlarmDefinitionId(), event));
+          }
+        };
+
+    try {
+      boolean done = false;
+      while (!done && !stopping) {
+        final List<DeletedAlarm> deleted = alarmRepo.deleteByAlarmDefinition(
+            deletion.getAlarmDefinitionId(), BATCH_SIZE, events);
+        deletion.deleted(deleted.size());
+        deletions.put(deletion.getId(), deletion);
+        done = deleted.isEmpty();
+      }
+
+      if (done) {
+        deletion.completed();
+        LOG.debug("Deleted {} alarms of alarm definition {}", deletion.getAlarmsDeleted(),
+                  deletion.getAlarmDefinitionId());
+      } else {
+        deletion.failed("Stopped before all alarms were deleted, the rest are deleted after the "
+                        + "next start");
+      }
+    } catch (RuntimeException e) {
+      if (deletion.getAttempts() >= MAX_ATTEMPTS || stopping) {
+        LOG.error("Failed deleting the alarms of alarm definition {}, the rest are deleted after "
+                  + "the next start", deletion.getAlarmDefinitionId(), e);
+        deletion.failed(e.getMessage());
+      } else {
+        LOG.warn("Failed deleting the alarms of alarm definition {}, retrying",
+                 deletion.getAlarmDefinitionId(), e);
+        deletion.retrying(e.getMessage());
+        final boolean scheduled = retry(new Runnable() {
+          @Override
+          public void run() {
+            delete(deletion);
+          }
+        }, deletion.getAttempts());
+        if (!scheduled) {
+          deletion.failed(e.getMessage());
+        }
+      }
+    }
+    deletions.put(deletion.getId(), deletion);
+  }
+
+  /**
+   * Runs the {@code retry} after the delay for the failed {@code attempt}.
+   * @return false if the retry was rejected because the jobs are stopping
+   */
+  private boolean retry(Runnable retry, int attempt) {
+    final long delaySeconds = RETRY_DELAY_SECONDS << (attempt - 1);
+    try {
+      executor.schedule(retry, delaySeconds, TimeUnit.SECONDS);
+      return true;
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Stopped before retrying, the alarms left are deleted after the next start");
+      return false;
+    }
+  }
+}
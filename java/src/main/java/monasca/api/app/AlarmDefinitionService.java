@@ -13,6 +13,9 @@
  */
 package monasca.api.app;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,34 +27,37 @@ import java.util.UUID;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
-import kafka.javaapi.producer.Producer;
-import kafka.producer.KeyedMessage;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import monasca.api.ApiConfig;
+import monasca.api.app.command.CreateAlarmDefinitionCommand;
 import monasca.api.app.command.UpdateAlarmDefinitionCommand;
+import monasca.api.app.validation.AlarmValidation;
 import monasca.api.app.validation.DimensionValidation;
 import monasca.common.model.event.AlarmDefinitionCreatedEvent;
 import monasca.common.model.event.AlarmDefinitionDeletedEvent;
 import monasca.common.model.event.AlarmDefinitionUpdatedEvent;
-import monasca.common.model.event.AlarmDeletedEvent;
 import monasca.common.model.alarm.AlarmExpression;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.metric.MetricDefinition;
 import monasca.api.domain.exception.EntityExistsException;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.exception.InvalidEntityException;
-import monasca.api.domain.model.alarm.Alarm;
-import monasca.api.domain.model.alarm.AlarmRepo;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionImportResult;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.AlarmExpressionCache;
+import monasca.api.infrastructure.CollectionVersions;
 import monasca.common.util.Exceptions;
 import monasca.common.util.Serialization;
 
@@ -61,22 +67,28 @@ import monasca.common.util.Serialization;
 public class AlarmDefinitionService {
   private static final Logger LOG = LoggerFactory.getLogger(AlarmService.class);
 
+  /**
+   * Alarm definitions passed to one {@link AlarmDefinitionRepo#createAll} call. Both repositories
+   * create this many definitions in a single transaction, so a failure only affects the
+   * definitions of that call.
+   */
+  static final int IMPORT_BATCH_SIZE = 100;
+
   private final ApiConfig config;
-  private final Producer<String, String> producer;
   private final AlarmDefinitionRepo repo;
-  private final AlarmRepo alarmRepo;
   private final NotificationMethodRepo notificationMethodRepo;
-  long eventCount;
+  private final AlarmDefinitionDeletionJobs deletionJobs;
+  private final CollectionVersions collectionVersions;
 
   @Inject
-  public AlarmDefinitionService(ApiConfig config, Producer<String, String> producer,
-      AlarmDefinitionRepo repo, AlarmRepo alarmRepo,
-      NotificationMethodRepo notificationMethodRepo) {
+  public AlarmDefinitionService(ApiConfig config, AlarmDefinitionRepo repo,
+      NotificationMethodRepo notificationMethodRepo, AlarmDefinitionDeletionJobs deletionJobs,
+      CollectionVersions collectionVersions) {
     this.config = config;
-    this.producer = producer;
     this.repo = repo;
-    this.alarmRepo = alarmRepo;
     this.notificationMethodRepo = notificationMethodRepo;
+    this.deletionJobs = deletionJobs;
+    this.collectionVersions = collectionVersions;
   }
 
   static class SubExpressions {
@@ -91,8 +103,8 @@ public class AlarmDefinitionService {
   }
 
   /**
-   * Creates an alarm definition and publishes an AlarmDefinitionCreatedEvent. Note, the event is
-   * published first since chances of failure are higher.
+   * Creates an alarm definition and publishes an AlarmDefinitionCreatedEvent, which is written to
+   * the event outbox in the same transaction.
    * 
    * @throws EntityExistsException if an alarm already exists for the name
    * @throws InvalidEntityException if one of the actions cannot be found
@@ -110,67 +122,152 @@ public class AlarmDefinitionService {
     DimensionValidation.validateNames(matchBy);
     assertActionsExist(tenantId, alarmActions, okActions, undeterminedActions);
 
-    Map<String, AlarmSubExpression> subAlarms = new HashMap<String, AlarmSubExpression>();
-    for (AlarmSubExpression subExpression : alarmExpression.getSubExpressions())
-      subAlarms.put(UUID.randomUUID().toString(), subExpression);
-
+    Map<String, AlarmSubExpression> subAlarms = subAlarmsFor(alarmExpression);
     String alarmDefId = UUID.randomUUID().toString();
-    AlarmDefinition alarm = null;
 
     try {
       LOG.debug("Creating alarm definition {} for tenant {}", name, tenantId);
-      alarm =
-          repo.create(tenantId, alarmDefId, name, description, severity, expression, subAlarms,
-              matchBy, alarmActions, okActions, undeterminedActions);
 
       // Notify interested parties of new alarm
       String event =
           Serialization.toJson(new AlarmDefinitionCreatedEvent(tenantId, alarmDefId, name,
               description, expression, subAlarms, matchBy));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), event));
 
-      return alarm;
+      AlarmDefinition alarmDef = repo.create(tenantId, alarmDefId, name, description, severity,
+          expression, subAlarms, matchBy, alarmActions, okActions, undeterminedActions,
+          Collections.singletonList(new OutboxEvent(config.eventsTopic, alarmDefId, event)));
+      collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS, tenantId);
+      return alarmDef;
     } catch (Exception e) {
-      if (alarm != null)
-        try {
-          repo.deleteById(tenantId, alarm.getId());
-        } catch (Exception ignore) {
-        }
       throw Exceptions.uncheck(e, "Error creating alarm definition for project / tenant %s",
           tenantId);
     }
   }
 
   /**
-   * Deletes the alarm definition identified by the {@code alarmDefId}.
+   * Creates the alarm definitions of an import in batches and publishes an
+   * AlarmDefinitionCreatedEvent for each of them through the event outbox. All of the definitions
+   * are validated before the first one is created. A definition whose name is already taken, by an
+   * existing definition or by an earlier definition of the import, is skipped. A batch that fails
+   * is rolled back and its definitions are reported as failed, the definitions of the other
+   * batches are still created.
+   * 
+   * @return the outcome of each definition, in the order of the {@code commands}
+   * @throws InvalidEntityException if one of the actions cannot be found
+   */
+  public List<AlarmDefinitionImportResult> importAll(final String tenantId,
+      List<CreateAlarmDefinitionCommand> commands) {
+    final List<AlarmExpression> alarmExpressions = new ArrayList<>(commands.size());
+    final Set<String> names = new HashSet<>();
+    final Set<String> actions = new HashSet<>();
+    for (CreateAlarmDefinitionCommand command : commands) {
+      alarmExpressions.add(AlarmValidation.validateNormalizeAndGet(command.expression));
+      DimensionValidation.validateNames(command.matchBy);
+      names.add(command.name);
+      addAllIfNotNull(actions, command.alarmActions);
+      addAllIfNotNull(actions, command.okActions);
+      addAllIfNotNull(actions, command.undeterminedActions);
+    }
+    assertActionsExist(tenantId, actions);
+
+    final Map<String, String> existingIds = repo.findIdsByName(tenantId, names);
+    final Set<String> importedNames = new HashSet<>();
+    final List<AlarmDefinitionImportResult> results = new ArrayList<>(commands.size());
+    final List<AlarmDefinition> alarmDefinitions = new ArrayList<>(commands.size());
+    final List<AlarmDefinitionImportResult> createdResults = new ArrayList<>(commands.size());
+    final Map<String, Map<String, AlarmSubExpression>> subAlarms = new HashMap<>();
+    for (int i = 0; i < commands.size(); i++) {
+      final CreateAlarmDefinitionCommand command = commands.get(i);
+      if (existingIds.containsKey(command.name) || !importedNames.add(command.name)) {
+        results.add(new AlarmDefinitionImportResult(existingIds.get(command.name), command.name,
+            AlarmDefinitionImportResult.CONFLICT));
+        continue;
+      }
+
+      final String alarmDefId = UUID.randomUUID().toString();
+      subAlarms.put(alarmDefId, subAlarmsFor(alarmExpressions.get(i)));
+      alarmDefinitions.add(new AlarmDefinition(alarmDefId, command.name, command.description,
+          command.severity, command.expression, command.matchBy, true,
+          emptyIfNull(command.alarmActions), emptyIfNull(command.okActions),
+          emptyIfNull(command.undeterminedActions)));
+      final AlarmDefinitionImportResult result = new AlarmDefinitionImportResult(alarmDefId,
+          command.name, AlarmDefinitionImportResult.CREATED);
+      results.add(result);
+      createdResults.add(result);
+    }
+
+    final Function<AlarmDefinition, List<OutboxEvent>> events =
+        new Function<AlarmDefinition, List<OutboxEvent>>() {
+          @Override
+          public List<OutboxEvent> apply(AlarmDefinition alarmDef) {
+            String event =
+                Serialization.toJson(new AlarmDefinitionCreatedEvent(tenantId, alarmDef.getId(),
+                    alarmDef.getName(), alarmDef.getDescription(), alarmDef.getExpression(),
+                    subAlarms.get(alarmDef.getId()), alarmDef.getMatchBy()));
+            return Collections.singletonList(
+                new OutboxEvent(config.eventsTopic, alarmDef.getId(), event));
+          }
+        };
+
+    LOG.debug("Importing {} alarm definitions for tenant {}", alarmDefinitions.size(), tenantId);
+    final List<List<AlarmDefinition>> batches =
+        Lists.partition(alarmDefinitions, IMPORT_BATCH_SIZE);
+    final List<List<AlarmDefinitionImportResult>> batchResults =
+        Lists.partition(createdResults, IMPORT_BATCH_SIZE);
+    boolean created = false;
+    for (int i = 0; i < batches.size(); i++) {
+      try {
+        repo.createAll(tenantId, batches.get(i), subAlarms, events);
+        created = true;
+      } catch (RuntimeException e) {
+        LOG.error("Error importing {} alarm definitions for project / tenant {}",
+            batches.get(i).size(), tenantId, e);
+        for (AlarmDefinitionImportResult result : batchResults.get(i)) {
+          result.setId(null);
+          result.setStatus(AlarmDefinitionImportResult.FAILED);
+        }
+      }
+    }
+    if (created) {
+      collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS, tenantId);
+    }
+    return results;
+  }
+
+  /**
+   * Deletes the alarm definition identified by the {@code alarmDefId} and queues the deletion of
+   * its alarms.
    * 
+   * @return the deletion of the alarms, which runs in the background
    * @throws EntityNotFoundException if the alarm cannot be found
    */
-  public void delete(String tenantId, String alarmDefId) {
+  public AlarmDefinitionDeletion delete(String tenantId, String alarmDefId) {
     Map<String, MetricDefinition> subAlarmMetricDefs =
         repo.findSubAlarmMetricDefinitions(alarmDefId);
 
-    // Have to get information about the Alarms before they are deleted. They will be deleted
-    // by the database as a cascade delete from the Alarm Definition delete
-    final List<Alarm> alarms = alarmRepo.find(tenantId, alarmDefId, null, null, null, null, null, null, null, null, null, 1, false);
-    final Map<String, Map<String, AlarmSubExpression>> alarmSubExpressions =
-                                          alarmRepo.findAlarmSubExpressionsForAlarmDefinition(alarmDefId);
-
-    repo.deleteById(tenantId, alarmDefId);
-
     // Notify interested parties of alarm definition deletion
     String event =
         Serialization.toJson(new AlarmDefinitionDeletedEvent(alarmDefId, subAlarmMetricDefs));
-    producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), event));
-
-    // Notify about the Deletion of the Alarms second because that is the order that thresh
-    // wants it so Alarms don't get recreated
-    for (final Alarm alarm : alarms) {
-      String alarmDeletedEvent =
-          Serialization.toJson(new AlarmDeletedEvent(tenantId, alarm.getId(), alarm.getMetrics(),
-              alarmDefId, alarmSubExpressions.get(alarm.getId())));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(eventCount++), alarmDeletedEvent));
+    repo.deleteById(tenantId, alarmDefId,
+        Collections.singletonList(new OutboxEvent(config.eventsTopic, alarmDefId, event)));
+    collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS, tenantId);
+
+    // The alarms are deleted and their deletion notified second because that is the order that
+    // thresh wants it so Alarms don't get recreated
+    return deletionJobs.submit(tenantId, alarmDefId);
+  }
+
+  /**
+   * Returns the deletion of the alarms of a deleted alarm definition.
+   * 
+   * @throws EntityNotFoundException if the deletion cannot be found
+   */
+  public AlarmDefinitionDeletion getDeletion(String tenantId, String deletionId) {
+    AlarmDefinitionDeletion deletion = deletionJobs.get(tenantId, deletionId);
+    if (deletion == null) {
+      throw new EntityNotFoundException("No alarm definition deletion exists for %s", deletionId);
     }
+    return deletion;
   }
 
     /**
@@ -230,7 +327,9 @@ public class AlarmDefinitionService {
       final int newCount = subExpressions.newAlarmSubExpressions.size() +
                            subExpressions.changedSubExpressions.size() +
                            subExpressions.unchangedSubExpressions.size();
-      if (newCount != AlarmExpression.of(oldAlarmDefinition.getExpression()).getSubExpressions().size()) {
+      final AlarmExpression oldExpression =
+          AlarmExpressionCache.get().expression(oldAlarmDefinition.getExpression());
+      if (newCount != oldExpression.getSubExpressions().size()) {
         throw monasca.api.resource.exception.Exceptions.unprocessableEntity("number of subexpressions must not change");
       }
       else {
@@ -267,8 +366,8 @@ public class AlarmDefinitionService {
                 : expression;
         severity = severity == null ? oldAlarmDefinition.getSeverity()
                 : severity;
-        alarmExpression = alarmExpression == null ? AlarmExpression
-                .of(expression) : alarmExpression;
+        alarmExpression = alarmExpression == null ? AlarmExpressionCache
+                .get().expression(expression) : alarmExpression;
         enabled = enabled == null ? oldAlarmDefinition.isActionsEnabled()
                 : enabled;
         matchBy = matchBy == null ? oldAlarmDefinition.getMatchBy() : matchBy;
@@ -300,13 +399,6 @@ public class AlarmDefinitionService {
         try {
             LOG.debug("Updating alarm definition {} for tenant {}", name,
                     tenantId);
-            repo.update(tenantId, alarmDefId, patch, name, description,
-                    expression, matchBy, severity, enabled,
-                    subExpressions.oldAlarmSubExpressions.keySet(),
-                    subExpressions.changedSubExpressions,
-                    subExpressions.newAlarmSubExpressions, alarmActions,
-                    okActions, undeterminedActions);
-
             // Notify interested parties of updated alarm
             String event = Serialization
                     .toJson(new AlarmDefinitionUpdatedEvent(tenantId,
@@ -316,8 +408,17 @@ public class AlarmDefinitionService {
                             subExpressions.changedSubExpressions,
                             subExpressions.unchangedSubExpressions,
                             subExpressions.newAlarmSubExpressions));
-            producer.send(new KeyedMessage<>(config.eventsTopic, String
-                    .valueOf(eventCount++), event));
+
+            repo.update(tenantId, alarmDefId, patch, name, description,
+                    expression, matchBy, severity, enabled,
+                    subExpressions.oldAlarmSubExpressions.keySet(),
+                    subExpressions.changedSubExpressions,
+                    subExpressions.newAlarmSubExpressions, alarmActions,
+                    okActions, undeterminedActions,
+                    Collections.singletonList(new OutboxEvent(
+                            config.eventsTopic, alarmDefId, event)));
+            collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS,
+                    tenantId);
         } catch (Exception e) {
             throw Exceptions.uncheck(e,
                     "Error updating alarm definition for project / tenant %s",
@@ -402,16 +503,38 @@ public class AlarmDefinitionService {
   private void assertActionsExist(String tenantId, List<String> alarmActions,
       List<String> okActions, List<String> undeterminedActions) {
     Set<String> actions = new HashSet<>();
-    if (alarmActions != null)
-      actions.addAll(alarmActions);
-    if (okActions != null)
-      actions.addAll(okActions);
-    if (undeterminedActions != null)
-      actions.addAll(undeterminedActions);
-    if (!actions.isEmpty())
-      for (String action : actions)
-        if (!notificationMethodRepo.exists(tenantId, action))
-            throw monasca.api.resource.exception.Exceptions.unprocessableEntity(
-            "No notification method exists for action %s", action);
+    addAllIfNotNull(actions, alarmActions);
+    addAllIfNotNull(actions, okActions);
+    addAllIfNotNull(actions, undeterminedActions);
+    assertActionsExist(tenantId, actions);
+  }
+
+  private void assertActionsExist(String tenantId, Set<String> actions) {
+    if (actions.isEmpty() || notificationMethodRepo.existsAll(tenantId, actions))
+      return;
+    // Only reached for invalid actions, look them up one by one to name the missing one
+    for (String action : actions)
+      if (!notificationMethodRepo.exists(tenantId, action))
+          throw monasca.api.resource.exception.Exceptions.unprocessableEntity(
+          "No notification method exists for action %s", action);
+  }
+
+  /**
+   * Maps the sub expressions of the {@code alarmExpression} by new sub alarm definition ids.
+   */
+  private static Map<String, AlarmSubExpression> subAlarmsFor(AlarmExpression alarmExpression) {
+    Map<String, AlarmSubExpression> subAlarms = new HashMap<String, AlarmSubExpression>();
+    for (AlarmSubExpression subExpression : alarmExpression.getSubExpressions())
+      subAlarms.put(UUID.randomUUID().toString(), subExpression);
+    return subAlarms;
+  }
+
+  private static void addAllIfNotNull(Set<String> actions, Collection<String> toAdd) {
+    if (toAdd != null)
+      actions.addAll(toAdd);
+  }
+
+  private static List<String> emptyIfNull(List<String> actions) {
+    return actions == null ? Collections.<String>emptyList() : actions;
   }
 }
@@ -13,29 +13,37 @@
  */
 package monasca.api.app;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
-import kafka.javaapi.producer.Producer;
-import kafka.producer.KeyedMessage;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
 import monasca.api.ApiConfig;
 import monasca.api.app.command.UpdateAlarmCommand;
 import monasca.common.model.event.AlarmDeletedEvent;
 import monasca.common.model.event.AlarmStateTransitionedEvent;
 import monasca.common.model.event.AlarmUpdatedEvent;
+import monasca.common.model.alarm.AlarmSeverity;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.exception.InvalidEntityException;
 import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmPatchResult;
 import monasca.api.domain.model.alarm.AlarmRepo;
-import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
-import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.common.util.Exceptions;
 import monasca.common.util.Serialization;
 
@@ -45,19 +53,19 @@ import monasca.common.util.Serialization;
 public class AlarmService {
   private static final Logger LOG = LoggerFactory.getLogger(AlarmService.class);
 
+  /**
+   * Alarms passed to one {@link AlarmRepo#patchAll} call. Both repositories patch this many alarms
+   * in a single transaction, so a failure only affects the alarms of that call.
+   */
+  static final int PATCH_BATCH_SIZE = 500;
+
   private final ApiConfig config;
-  private final Producer<String, String> producer;
   private final AlarmRepo repo;
-  private final AlarmDefinitionRepo alarmDefRepo;
-  private long messageCount = 0;
 
   @Inject
-  public AlarmService(ApiConfig config, Producer<String, String> producer,
-      AlarmRepo repo, AlarmDefinitionRepo alarmDefRepo) {
+  public AlarmService(ApiConfig config, AlarmRepo repo) {
     this.config = config;
-    this.producer = producer;
     this.repo = repo;
-    this.alarmDefRepo = alarmDefRepo;
   }
 
   /**
@@ -69,13 +77,13 @@ public class AlarmService {
   public void delete(String tenantId, String alarmId) {
     Alarm alarm = repo.findById(tenantId, alarmId);
     Map<String, AlarmSubExpression> subAlarmMetricDefs = repo.findAlarmSubExpressions(alarmId);
-    repo.deleteById(tenantId, alarmId);
 
     // Notify interested parties of alarm deletion
     String event =
         Serialization.toJson(new AlarmDeletedEvent(tenantId, alarmId, alarm.getMetrics(), alarm
             .getAlarmDefinition().getId(), subAlarmMetricDefs));
-    producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event));
+    repo.deleteById(tenantId, alarmId, Collections.singletonList(
+        new OutboxEvent(config.eventsTopic, alarm.getAlarmDefinition().getId(), event)));
   }
 
   /**
@@ -87,18 +95,11 @@ public class AlarmService {
    */
   public Alarm patch(String tenantId, String alarmId, AlarmState state, String lifecycleState,
                      String link) {
-    Alarm oldAlarm = repo.findById(tenantId, alarmId);
-
     if (state == null && lifecycleState == null && link == null) {
-      return oldAlarm;
+      return repo.findById(tenantId, alarmId);
     }
 
-    state = (state == null) ? oldAlarm.getState() : state;
-    lifecycleState = (lifecycleState == null) ? oldAlarm.getLifecycleState() : lifecycleState;
-    link = (link == null) ? oldAlarm.getLink() : link;
-
-    Alarm alarm = updateInternal(tenantId, alarmId, state, lifecycleState, link);
-    return alarm;
+    return updateInternal(tenantId, alarmId, state, lifecycleState, link);
   }
 
   /**
@@ -116,32 +117,55 @@ public class AlarmService {
     return "Alarm state updated via API";
   }
 
-  private Alarm updateInternal(String tenantId, String alarmId, AlarmState newState,
-                               String newLifecycleState, String newLink) {
+  /**
+   * Patches the alarms for the {@code tenantId} and {@code alarmIds} in batched transactions,
+   * leaving a null field unchanged, and returns the outcome for every id in order. A batch that
+   * fails is rolled back and its alarms are reported as failed, the alarms of the other batches
+   * are still patched.
+   */
+  public List<AlarmPatchResult> patchAll(String tenantId, List<String> alarmIds, AlarmState state,
+                                         String lifecycleState, String link) {
+    LOG.debug("Updating {} alarms for tenant {}", alarmIds.size(), tenantId);
+    final List<String> ids = new ArrayList<>(new LinkedHashSet<>(alarmIds));
+    final List<AlarmPatchResult> results = new ArrayList<>(ids.size());
+
+    for (List<String> batch : Lists.partition(ids, PATCH_BATCH_SIZE)) {
+      final Set<String> updatedIds = new HashSet<>(batch.size());
+      int status = AlarmPatchResult.NOT_FOUND;
+      try {
+        for (AlarmUpdate update : repo.patchAll(tenantId, batch, state, lifecycleState, link,
+                                                updateEvents(tenantId))) {
+          updatedIds.add(update.getOldAlarm().getId());
+        }
+      } catch (RuntimeException e) {
+        LOG.error("Error updating {} alarms for project / tenant {}", batch.size(), tenantId, e);
+        status = AlarmPatchResult.FAILED;
+      }
+
+      for (String id : batch) {
+        results.add(new AlarmPatchResult(id, updatedIds.contains(id) ? AlarmPatchResult.UPDATED
+                                                                     : status));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Updates the alarm and writes its events in one repository call, a null field is left
+   * unchanged. The events are published from the outbox so that the response does not wait for
+   * the broker.
+   */
+  private Alarm updateInternal(String tenantId, String alarmId, AlarmState state,
+                               String lifecycleState, String link) {
     try {
       LOG.debug("Updating alarm {} for tenant {}", alarmId, tenantId);
-      final Alarm alarm = repo.update(tenantId, alarmId, newState, newLifecycleState, newLink);
-      final AlarmState oldState = alarm.getState();
-      // Notify interested parties of updated alarm
-      AlarmDefinition alarmDef = alarmDefRepo.findById(tenantId, alarm.getAlarmDefinition().getId());
-      Map<String, AlarmSubExpression> subAlarms = repo.findAlarmSubExpressions(alarmId);
-      String event =
-          Serialization.toJson(new AlarmUpdatedEvent(alarmId, alarmDef.getId(),
-              tenantId, alarm.getMetrics(), subAlarms, newState, oldState, newLink, newLifecycleState));
-      producer.send(new KeyedMessage<>(config.eventsTopic, String.valueOf(messageCount++), event));
-
-      // Notify interested parties of transitioned alarm state
-      if (!oldState.equals(newState)) {
-        event =
-            Serialization.toJson(new AlarmStateTransitionedEvent(tenantId, alarmId, alarmDef
-                .getId(), alarm.getMetrics(), alarmDef.getName(), alarmDef.getDescription(),
-                oldState, newState, alarmDef.getSeverity(), newLink, newLifecycleState, alarmDef.isActionsEnabled(),
-                stateChangeReasonFor(oldState, newState), null, System.currentTimeMillis()));
-        producer.send(new KeyedMessage<>(config.alarmStateTransitionsTopic, String.valueOf(messageCount++), event));
-      }
-      alarm.setState(newState);
-      alarm.setLifecycleState(newLifecycleState);
-      alarm.setLink(newLink);
+      final AlarmUpdate update =
+          repo.patch(tenantId, alarmId, state, lifecycleState, link, updateEvents(tenantId));
+
+      final Alarm alarm = update.getOldAlarm();
+      alarm.setState(update.getState());
+      alarm.setLifecycleState(update.getLifecycleState());
+      alarm.setLink(update.getLink());
       return alarm;
     } catch (EntityNotFoundException e) {
       throw e;
@@ -149,4 +173,47 @@ public class AlarmService {
       throw Exceptions.uncheck(e, "Error updating alarm for project / tenant %s", tenantId);
     }
   }
+
+  /**
+   * Builds the updated event of an alarm, and the state transitioned event if its state changed.
+   */
+  private Function<AlarmUpdate, List<OutboxEvent>> updateEvents(final String tenantId) {
+    return new Function<AlarmUpdate, List<OutboxEvent>>() {
+      @Override
+      public List<OutboxEvent> apply(AlarmUpdate update) {
+        return eventsFor(tenantId, update);
+      }
+    };
+  }
+
+  private List<OutboxEvent> eventsFor(String tenantId, AlarmUpdate update) {
+    final Alarm alarm = update.getOldAlarm();
+    final String alarmId = alarm.getId();
+    final AlarmState oldState = alarm.getState();
+    final AlarmState newState = update.getState();
+    final String newLifecycleState = update.getLifecycleState();
+    final String newLink = update.getLink();
+    final Alarm.AlarmDefinitionShort alarmDef = alarm.getAlarmDefinition();
+    final List<OutboxEvent> events = new ArrayList<>(2);
+
+    // Notify interested parties of updated alarm
+    String event =
+        Serialization.toJson(new AlarmUpdatedEvent(alarmId, alarmDef.getId(),
+            tenantId, alarm.getMetrics(), update.getSubAlarms(), newState, oldState, newLink,
+            newLifecycleState));
+    events.add(new OutboxEvent(config.eventsTopic, alarmDef.getId(), event));
+
+    // Notify interested parties of transitioned alarm state
+    if (!oldState.equals(newState)) {
+      event =
+          Serialization.toJson(new AlarmStateTransitionedEvent(tenantId, alarmId, alarmDef
+              .getId(), alarm.getMetrics(), alarmDef.getName(),
+              update.getAlarmDefinitionDescription(), oldState, newState,
+              AlarmSeverity.valueOf(alarmDef.getSeverity()), newLink, newLifecycleState,
+              update.isActionsEnabled(), stateChangeReasonFor(oldState, newState), null,
+              System.currentTimeMillis()));
+      events.add(new OutboxEvent(config.alarmStateTransitionsTopic, alarmDef.getId(), event));
+    }
+    return events;
+  }
 }
@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app.command;
+
+import java.util.List;
+
+import javax.validation.Valid;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * Creates many alarm definitions at once, each described like the body of a single create.
+ */
+public class ImportAlarmDefinitionsCommand {
+  @NotEmpty
+  @Valid
+  public List<CreateAlarmDefinitionCommand> alarmDefinitions;
+
+  public ImportAlarmDefinitionsCommand() {}
+
+  public ImportAlarmDefinitionsCommand(List<CreateAlarmDefinitionCommand> alarmDefinitions) {
+    this.alarmDefinitions = alarmDefinitions;
+  }
+
+  public void validate() {
+    for (CreateAlarmDefinitionCommand alarmDefinition : alarmDefinitions) {
+      alarmDefinition.validate();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app.command;
+
+import java.util.List;
+
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * Patches many alarms at once. The alarms are either listed by {@code alarmIds} or selected by a
+ * {@code filter} with the query parameters of GET /v2.0/alarms. Like a single alarm patch, a null
+ * {@code state}, {@code lifecycleState} or {@code link} is left unchanged.
+ */
+public class PatchAlarmsCommand {
+  public List<String> alarmIds;
+  public Filter filter;
+  public AlarmState state;
+  public String lifecycleState;
+  public String link;
+
+  public PatchAlarmsCommand() {}
+
+  public PatchAlarmsCommand(List<String> alarmIds, Filter filter, AlarmState state,
+                            String lifecycleState, String link) {
+    this.alarmIds = alarmIds;
+    this.filter = filter;
+    this.state = state;
+    this.lifecycleState = lifecycleState;
+    this.link = link;
+  }
+
+  public static class Filter {
+    public String alarmDefinitionId;
+    public String metricName;
+    public String metricDimensions;
+    public AlarmState state;
+    public String severity;
+    public String lifecycleState;
+    public String link;
+    public String stateUpdatedStartTime;
+  }
+}
@@ -23,6 +23,7 @@ import javax.ws.rs.WebApplicationException;
 import monasca.common.model.alarm.AlarmExpression;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.metric.MetricDefinition;
+import monasca.api.infrastructure.AlarmExpressionCache;
 import monasca.api.resource.exception.Exceptions;
 
 /**
@@ -81,12 +82,17 @@ public final class AlarmValidation {
   }
 
   /**
-   * Validates, normalizes and gets an AlarmExpression for the {@code expression}.
+   * Validates, normalizes and gets an AlarmExpression for the {@code expression}. Valid
+   * expressions are cached, the returned AlarmExpression must not be modified.
    * 
    * @throws WebApplicationException if validation fails
    */
   public static AlarmExpression validateNormalizeAndGet(String expression) {
-    AlarmExpression alarmExpression = null;
+    final AlarmExpressionCache cache = AlarmExpressionCache.get();
+    AlarmExpression alarmExpression = cache.getValidated(expression);
+    if (alarmExpression != null) {
+      return alarmExpression;
+    }
 
     try {
       alarmExpression = AlarmExpression.of(expression);
@@ -125,6 +131,7 @@ public final class AlarmValidation {
             subExpression.getPeriod(), subExpression.getPeriods());
     }
 
+    cache.putValidated(expression, alarmExpression);
     return alarmExpression;
   }
 
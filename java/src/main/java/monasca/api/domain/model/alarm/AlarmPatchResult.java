@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+/**
+ * Outcome of patching one alarm of a bulk patch, with the HTTP status a single patch of the alarm
+ * would have returned.
+ */
+public class AlarmPatchResult {
+  public static final int UPDATED = 200;
+  public static final int NOT_FOUND = 404;
+  /** The alarm was left unchanged because its batch could not be written. */
+  public static final int FAILED = 500;
+
+  private String id;
+  private int status;
+
+  public AlarmPatchResult() {}
+
+  public AlarmPatchResult(String id, int status) {
+    this.id = id;
+    this.status = status;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + ((id == null) ? 0 : id.hashCode());
+    result = prime * result + status;
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    AlarmPatchResult other = (AlarmPatchResult) obj;
+    if (id == null) {
+      if (other.id != null)
+        return false;
+    } else if (!id.equals(other.id))
+      return false;
+    return status == other.status;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AlarmPatchResult [id=%s, status=%s]", id, status);
+  }
+}
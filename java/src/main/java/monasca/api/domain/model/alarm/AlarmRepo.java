@@ -13,6 +13,8 @@
  */
 package monasca.api.domain.model.alarm;
 
+import com.google.common.base.Function;
+
 import org.joda.time.DateTime;
 
 import java.util.List;
@@ -22,12 +24,29 @@ import monasca.common.model.alarm.AlarmSeverity;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.event.OutboxEvent;
 
 public interface AlarmRepo {
   /**
-   * Deletes all alarms associated with the {@code id}.
+   * Deletes all alarms associated with the {@code id}, writing the {@code events} to the outbox in
+   * the same transaction.
    */
-  void deleteById(String tenantId, String id);
+  void deleteById(String tenantId, String id, List<OutboxEvent> events);
+
+  /**
+   * Deletes up to {@code limit} of the alarms of the deleted alarm definition
+   * {@code alarmDefinitionId} in a single transaction, which also writes the {@code events} of
+   * each deleted alarm to the outbox.
+   * @return the deleted alarms with their sub alarms, empty once no alarms remain
+   */
+  List<DeletedAlarm> deleteByAlarmDefinition(String alarmDefinitionId, int limit,
+                                             Function<DeletedAlarm, List<OutboxEvent>> events);
+
+  /**
+   * Returns the ids of the deleted alarm definitions that still have alarms, mapped to the ids of
+   * their tenants, so that the deletion of their alarms can be resumed.
+   */
+  Map<String, String> findDeletedAlarmDefinitionIds();
 
   /**
    * Returns alarms for the given criteria.
@@ -41,12 +60,39 @@ public interface AlarmRepo {
    */
   Alarm findById(String tenantId, String id);
 
+  /**
+   * Returns a version of the alarm for the {@code id}, which changes whenever the alarm returned
+   * by {@link #findById} does. The version is read from the alarm row alone, which is cheaper
+   * than finding the alarm with its metrics.
+   * @throws EntityNotFoundException if an alarm cannot be found for the {@code id}
+   */
+  String findVersion(String tenantId, String id);
+
   /**
    * Updates the state and returns the original alarm for the {@code id}.
    * @return the original alarm before any state change
    */
   Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link);
 
+  /**
+   * Updates the alarm in a single transaction, leaving a null {@code state},
+   * {@code lifecycleState} or {@code link} unchanged, and returns the original alarm together
+   * with its definition details and sub alarms. The {@code events} of the update are written to
+   * the outbox in the same transaction.
+   * @throws EntityNotFoundException if an alarm cannot be found for the {@code id}
+   */
+  AlarmUpdate patch(String tenantId, String id, AlarmState state, String lifecycleState,
+                    String link, Function<AlarmUpdate, List<OutboxEvent>> events);
+
+  /**
+   * Patches the alarms for the {@code ids} like {@link #patch}, in transactions of a batch of
+   * at least 500 alarms each. Ids that do not identify an alarm of the tenant are skipped.
+   * @return the updates of the alarms that were found
+   */
+  List<AlarmUpdate> patchAll(String tenantId, List<String> ids, AlarmState state,
+                             String lifecycleState, String link,
+                             Function<AlarmUpdate, List<OutboxEvent>> events);
+
   /**
    * Gets the AlarmSubExpressions mapped by their Ids for an Alarm Id
    */
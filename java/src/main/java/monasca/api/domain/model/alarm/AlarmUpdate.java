@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+import java.util.Map;
+
+import monasca.common.model.alarm.AlarmState;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * Result of {@link AlarmRepo#patch}, the alarm as it was before the update together with what the
+ * alarm events need from its definition and sub alarms.
+ */
+public class AlarmUpdate {
+  private final Alarm oldAlarm;
+  private final String alarmDefinitionDescription;
+  private final boolean actionsEnabled;
+  private final Map<String, AlarmSubExpression> subAlarms;
+  private final AlarmState state;
+  private final String lifecycleState;
+  private final String link;
+
+  public AlarmUpdate(Alarm oldAlarm, String alarmDefinitionDescription, boolean actionsEnabled,
+                     Map<String, AlarmSubExpression> subAlarms, AlarmState state,
+                     String lifecycleState, String link) {
+    this.oldAlarm = oldAlarm;
+    this.alarmDefinitionDescription = alarmDefinitionDescription;
+    this.actionsEnabled = actionsEnabled;
+    this.subAlarms = subAlarms;
+    this.state = state;
+    this.lifecycleState = lifecycleState;
+    this.link = link;
+  }
+
+  /**
+   * The alarm before the update.
+   */
+  public Alarm getOldAlarm() {
+    return oldAlarm;
+  }
+
+  public String getAlarmDefinitionDescription() {
+    return alarmDefinitionDescription;
+  }
+
+  public boolean isActionsEnabled() {
+    return actionsEnabled;
+  }
+
+  public Map<String, AlarmSubExpression> getSubAlarms() {
+    return subAlarms;
+  }
+
+  /**
+   * The state after the update.
+   */
+  public AlarmState getState() {
+    return state;
+  }
+
+  /**
+   * The lifecycle state after the update.
+   */
+  public String getLifecycleState() {
+    return lifecycleState;
+  }
+
+  /**
+   * The link after the update.
+   */
+  public String getLink() {
+    return link;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarm;
+
+import java.util.Map;
+
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * Result of {@link AlarmRepo#deleteByAlarmDefinition}, an alarm as it was before it was deleted
+ * together with its sub alarms.
+ */
+public class DeletedAlarm {
+  private final Alarm alarm;
+  private final Map<String, AlarmSubExpression> subAlarms;
+
+  public DeletedAlarm(Alarm alarm, Map<String, AlarmSubExpression> subAlarms) {
+    this.alarm = alarm;
+    this.subAlarms = subAlarms;
+  }
+
+  public Alarm getAlarm() {
+    return alarm;
+  }
+
+  public Map<String, AlarmSubExpression> getSubAlarms() {
+    return subAlarms;
+  }
+}
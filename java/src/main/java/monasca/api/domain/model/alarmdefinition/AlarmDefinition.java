@@ -21,6 +21,7 @@ import java.util.List;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import monasca.api.infrastructure.AlarmExpressionCache;
 import monasca.api.domain.model.common.Link;
 import monasca.api.domain.model.common.Linked;
 import monasca.common.model.alarm.AlarmExpression;
@@ -207,7 +208,7 @@ public class AlarmDefinition extends AbstractEntity implements Linked {
   public void setExpression(String expression) {
     this.expression = expression;
 
-    final AlarmExpression alarmExpression = AlarmExpression.of(expression);
+    final AlarmExpression alarmExpression = AlarmExpressionCache.get().expression(expression);
     this.setExpressionData(alarmExpression.getExpressionTree());
     this.deterministic = alarmExpression.isDeterministic();
   }
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarmdefinition;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Progress of deleting the alarms of a deleted alarm definition. It is only changed by the thread
+ * running the deletion and read by the requests asking for it.
+ */
+public class AlarmDefinitionDeletion {
+  public enum Status {
+    QUEUED, RUNNING, COMPLETED, FAILED
+  }
+
+  private final String id;
+  private final String tenantId;
+  private final String alarmDefinitionId;
+  private final DateTime createdTimestamp;
+  private volatile Status status = Status.QUEUED;
+  private volatile int alarmsDeleted;
+  private volatile int attempts;
+  private volatile String error;
+  private volatile DateTime updatedTimestamp;
+
+  public AlarmDefinitionDeletion(String id, String tenantId, String alarmDefinitionId) {
+    this.id = id;
+    this.tenantId = tenantId;
+    this.alarmDefinitionId = alarmDefinitionId;
+    this.createdTimestamp = DateTime.now(DateTimeZone.UTC);
+    this.updatedTimestamp = createdTimestamp;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  @JsonIgnore
+  public String getTenantId() {
+    return tenantId;
+  }
+
+  public String getAlarmDefinitionId() {
+    return alarmDefinitionId;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public int getAlarmsDeleted() {
+    return alarmsDeleted;
+  }
+
+  /**
+   * How often the deletion was started, it is retried after an error.
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Why the deletion or its last attempt failed, null unless one has.
+   */
+  public String getError() {
+    return error;
+  }
+
+  public DateTime getCreatedTimestamp() {
+    return createdTimestamp;
+  }
+
+  public DateTime getUpdatedTimestamp() {
+    return updatedTimestamp;
+  }
+
+  public void started() {
+    attempts++;
+    setStatus(Status.RUNNING);
+  }
+
+  public void deleted(int count) {
+    alarmsDeleted += count;
+    updatedTimestamp = DateTime.now(DateTimeZone.UTC);
+  }
+
+  public void completed() {
+    setStatus(Status.COMPLETED);
+  }
+
+  public void retrying(String error) {
+    this.error = error;
+    setStatus(Status.QUEUED);
+  }
+
+  public void failed(String error) {
+    this.error = error;
+    setStatus(Status.FAILED);
+  }
+
+  private void setStatus(Status status) {
+    this.status = status;
+    updatedTimestamp = DateTime.now(DateTimeZone.UTC);
+  }
+}
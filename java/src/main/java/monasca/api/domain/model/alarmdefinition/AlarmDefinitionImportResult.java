@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.alarmdefinition;
+
+/**
+ * Outcome of importing one alarm definition of a bulk import, with the HTTP status a single create
+ * of the definition would have returned. The id of a conflicting definition is the id of the
+ * existing definition of the same name, or null if the name was repeated within the import. A
+ * definition that failed has no id.
+ */
+public class AlarmDefinitionImportResult {
+  public static final int CREATED = 201;
+  public static final int CONFLICT = 409;
+  /** The definition was not created because its batch could not be written. */
+  public static final int FAILED = 500;
+
+  private String id;
+  private String name;
+  private int status;
+
+  public AlarmDefinitionImportResult() {}
+
+  public AlarmDefinitionImportResult(String id, String name, int status) {
+    this.id = id;
+    this.name = name;
+    this.status = status;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + ((id == null) ? 0 : id.hashCode());
+    result = prime * result + ((name == null) ? 0 : name.hashCode());
+    result = prime * result + status;
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    AlarmDefinitionImportResult other = (AlarmDefinitionImportResult) obj;
+    if (id == null) {
+      if (other.id != null)
+        return false;
+    } else if (!id.equals(other.id))
+      return false;
+    if (name == null) {
+      if (other.name != null)
+        return false;
+    } else if (!name.equals(other.name))
+      return false;
+    return status == other.status;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AlarmDefinitionImportResult [id=%s, name=%s, status=%s]", id, name,
+        status);
+  }
+}
@@ -17,34 +17,57 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.base.Function;
+
 import monasca.common.model.alarm.AlarmSeverity;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.metric.MetricDefinition;
 import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.event.OutboxEvent;
 
 /**
  * Repository for alarm definitions.
  */
 public interface AlarmDefinitionRepo {
   /**
-   * Creates and returns a new alarm definition for the criteria.
+   * Creates and returns a new alarm definition for the criteria, writing the {@code events} to
+   * the outbox in the same transaction.
    */
   AlarmDefinition create(String tenantId, String id, String name, String description,
       String severity, String expression, Map<String, AlarmSubExpression> subExpressions,
       List<String> matchBy, List<String> alarmActions, List<String> okActions,
-      List<String> undeterminedActions);
+      List<String> undeterminedActions, List<OutboxEvent> events);
+
+  /**
+   * Creates the {@code alarmDefinitions} in transactions of a batch of at least 100 definitions
+   * each, inserting the definitions, their sub expressions and their actions with batched
+   * statements. The sub expressions of a definition are looked up by its id in
+   * {@code subExpressions}, and its {@code events} are written to the outbox in the transaction
+   * that creates it.
+   */
+  void createAll(String tenantId, List<AlarmDefinition> alarmDefinitions,
+      Map<String, Map<String, AlarmSubExpression>> subExpressions,
+      Function<AlarmDefinition, List<OutboxEvent>> events);
 
   /**
+   * Soft deletes the alarm definition, writing the {@code events} to the outbox in the same
+   * transaction.
+   * 
    * @throws EntityNotFoundException if an alarm definition cannot be found for the
    *         {@code alarmDefId}
    */
-  void deleteById(String tenantId, String alarmDefId);
+  void deleteById(String tenantId, String alarmDefId, List<OutboxEvent> events);
 
   /**
    * Returns true if an alarm exists for the given criteria, else false.
    */
   String exists(String tenantId, String name);
 
+  /**
+   * Returns the ids of the alarm definitions named by one of the {@code names}, mapped by name.
+   */
+  Map<String, String> findIdsByName(String tenantId, Collection<String> names);
+
   /**
    * Returns alarms for the given criteria.
    */
@@ -68,11 +91,12 @@ public interface AlarmDefinitionRepo {
   Map<String, AlarmSubExpression> findSubExpressions(String alarmDefId);
 
   /**
-   * Updates and returns an alarm definition for the criteria.
+   * Updates an alarm definition for the criteria, writing the {@code events} to the outbox in the
+   * same transaction.
    */
   void update(String tenantId, String id, boolean patch, String name, String description,
       String expression, List<String> matchBy, String severity, boolean actionsEnabled,
       Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
       Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
-      List<String> okActions, List<String> undeterminedActions);
+      List<String> okActions, List<String> undeterminedActions, List<OutboxEvent> events);
 }
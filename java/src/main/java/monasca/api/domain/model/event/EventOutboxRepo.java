@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.event;
+
+import java.util.List;
+
+/**
+ * Repository for the events waiting in the outbox. The events themselves are written by the
+ * alarm and alarm definition repositories in the transactions of their changes.
+ */
+public interface EventOutboxRepo {
+  /**
+   * Receives the events taken from the outbox.
+   */
+  interface Publisher {
+    /**
+     * Publishes the events in order, throwing if any of them could not be published.
+     */
+    void publish(List<OutboxEvent> events);
+  }
+
+  /**
+   * Locks up to {@code limit} of the oldest events, hands them to the {@code publisher} in order
+   * and deletes them, in a single transaction. The events stay in the outbox if the publisher
+   * throws.
+   * 
+   * @return the number of events published
+   */
+  int publishOldest(int limit, Publisher publisher);
+}
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.domain.model.event;
+
+import org.joda.time.DateTime;
+
+/**
+ * An event written to the outbox in the transaction of the change it describes, and published to
+ * Kafka afterwards by the relay.
+ */
+public class OutboxEvent {
+  private final long id;
+  private final String topic;
+  private final String key;
+  private final String message;
+  private final DateTime createdAt;
+
+  /**
+   * Creates an event to be written to the outbox.
+   * 
+   * @param key the message key, the id of the alarm definition the event is about so that the
+   *        events of a definition and its alarms stay in order
+   */
+  public OutboxEvent(String topic, String key, String message) {
+    this(0, topic, key, message, null);
+  }
+
+  /**
+   * Creates an event read from the outbox.
+   */
+  public OutboxEvent(long id, String topic, String key, String message, DateTime createdAt) {
+    this.id = id;
+    this.topic = topic;
+    this.key = key;
+    this.message = message;
+    this.createdAt = createdAt;
+  }
+
+  /**
+   * The position of the event in the outbox, 0 until it is written.
+   */
+  public long getId() {
+    return id;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * When the event was written to the outbox, null until it is written.
+   */
+  public DateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + (int) (id ^ (id >>> 32));
+    result = prime * result + ((topic == null) ? 0 : topic.hashCode());
+    result = prime * result + ((key == null) ? 0 : key.hashCode());
+    result = prime * result + ((message == null) ? 0 : message.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    OutboxEvent other = (OutboxEvent) obj;
+    if (id != other.id)
+      return false;
+    if (topic == null) {
+      if (other.topic != null)
+        return false;
+    } else if (!topic.equals(other.topic))
+      return false;
+    if (key == null) {
+      if (other.key != null)
+        return false;
+    } else if (!key.equals(other.key))
+      return false;
+    if (message == null) {
+      if (other.message != null)
+        return false;
+    } else if (!message.equals(other.message))
+      return false;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("OutboxEvent [id=%s, topic=%s, key=%s]", id, topic, key);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.CharMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import monasca.common.model.alarm.AlarmExpression;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * Caches parsed alarm expressions and sub expressions by their text, trimmed of surrounding
+ * whitespace, so that the same expression is not parsed again by every layer that needs it.
+ * <p>
+ * The cached expressions are shared between threads and must not be modified. Validated
+ * expressions, whose metrics are normalized once when they are validated, are kept apart from
+ * the expressions parsed as they are.
+ * <p>
+ * Alarm definitions parse their expression on construction, so the cache is reached through
+ * {@link #get()} rather than injected. The application installs a cache of the configured size
+ * that reports to its metric registry on startup.
+ */
+public class AlarmExpressionCache {
+  static final long DEFAULT_MAX_SIZE = 10000;
+
+  private static volatile AlarmExpressionCache instance =
+      new AlarmExpressionCache(DEFAULT_MAX_SIZE, new MetricRegistry());
+
+  private final Cache<String, AlarmExpression> expressions;
+  private final Cache<String, AlarmExpression> validated;
+  private final Cache<String, AlarmSubExpression> subExpressions;
+  private final CacheMetrics expressionMetrics;
+  private final CacheMetrics validatedMetrics;
+  private final CacheMetrics subExpressionMetrics;
+
+  /**
+   * @param maxSize most expressions of each kind to keep, 0 disables caching
+   */
+  public AlarmExpressionCache(long maxSize, MetricRegistry metricRegistry) {
+    if (maxSize > 0) {
+      this.expressions = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+      this.validated = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+      this.subExpressions = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    } else {
+      this.expressions = null;
+      this.validated = null;
+      this.subExpressions = null;
+    }
+
+    this.expressionMetrics =
+        new CacheMetrics(metricRegistry, AlarmExpressionCache.class, "expressions",
+                         this.expressions);
+    this.validatedMetrics =
+        new CacheMetrics(metricRegistry, AlarmExpressionCache.class, "validated", this.validated);
+    this.subExpressionMetrics =
+        new CacheMetrics(metricRegistry, AlarmExpressionCache.class, "sub-expressions",
+                         this.subExpressions);
+  }
+
+  /**
+   * Returns the cache shared by the application.
+   */
+  public static AlarmExpressionCache get() {
+    return instance;
+  }
+
+  /**
+   * Replaces the cache shared by the application.
+   */
+  public static void install(AlarmExpressionCache cache) {
+    instance = cache;
+  }
+
+  /**
+   * Returns the parsed {@code expression}.
+   *
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  public AlarmExpression expression(String expression) {
+    final String key = key(expression);
+    AlarmExpression alarmExpression = getIfPresent(expressions, key, expressionMetrics);
+    if (alarmExpression == null) {
+      alarmExpression = AlarmExpression.of(key);
+      put(expressions, key, alarmExpression);
+    }
+    return alarmExpression;
+  }
+
+  /**
+   * Returns the parsed sub expression {@code expression}.
+   *
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  public AlarmSubExpression subExpression(String expression) {
+    final String key = key(expression);
+    AlarmSubExpression subExpression = getIfPresent(subExpressions, key, subExpressionMetrics);
+    if (subExpression == null) {
+      subExpression = AlarmSubExpression.of(key);
+      put(subExpressions, key, subExpression);
+    }
+    return subExpression;
+  }
+
+  /**
+   * Returns the validated and normalized {@code expression}, or null if it has not been
+   * validated yet.
+   */
+  public AlarmExpression getValidated(String expression) {
+    return getIfPresent(validated, key(expression), validatedMetrics);
+  }
+
+  /**
+   * Caches the {@code alarmExpression} once it has been validated and normalized. It must not
+   * be modified afterwards.
+   */
+  public void putValidated(String expression, AlarmExpression alarmExpression) {
+    put(validated, key(expression), alarmExpression);
+  }
+
+  private static String key(String expression) {
+    return CharMatcher.WHITESPACE.trimFrom(expression);
+  }
+
+  private static <T> T getIfPresent(Cache<String, T> cache, String key, CacheMetrics metrics) {
+    final T value = cache == null ? null : cache.getIfPresent(key);
+
+    if (value != null) {
+      metrics.hit();
+    } else {
+      metrics.miss();
+    }
+
+    return value;
+  }
+
+  private static <T> void put(Cache<String, T> cache, String key, T value) {
+    if (cache != null) {
+      cache.put(key, value);
+    }
+  }
+}
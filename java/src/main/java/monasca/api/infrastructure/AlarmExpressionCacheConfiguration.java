@@ -0,0 +1,29 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Settings of the cache of parsed alarm expressions.
+ */
+public class AlarmExpressionCacheConfiguration {
+
+  /**
+   * Most expressions, validated expressions and sub expressions to keep each, 0 disables the
+   * cache.
+   */
+  @JsonProperty
+  public long maxSize = AlarmExpressionCache.DEFAULT_MAX_SIZE;
+}
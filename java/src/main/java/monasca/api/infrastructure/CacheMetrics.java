@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+
+/**
+ * Hit and miss meters, plus hit ratio and size gauges, for an in-process cache.
+ */
+public class CacheMetrics {
+  private final Meter hits;
+  private final Meter misses;
+
+  public CacheMetrics(MetricRegistry metricRegistry, Class<?> owner, final Cache<?, ?> cache) {
+    this(metricRegistry, owner, null, cache);
+  }
+
+  /**
+   * @param name distinguishes the metrics of one of several caches of the {@code owner}
+   */
+  public CacheMetrics(MetricRegistry metricRegistry, Class<?> owner, String name,
+                      final Cache<?, ?> cache) {
+    this.hits = metricRegistry.meter(MetricRegistry.name(owner, name, "cache.hits"));
+    this.misses = metricRegistry.meter(MetricRegistry.name(owner, name, "cache.misses"));
+
+    final String hitRatioName = MetricRegistry.name(owner, name, "cache.hit-ratio");
+    register(metricRegistry, hitRatioName, new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+      }
+    });
+
+    if (cache != null) {
+      final String sizeName = MetricRegistry.name(owner, name, "cache.size");
+      register(metricRegistry, sizeName, new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return cache.size();
+        }
+      });
+    }
+  }
+
+  public void hit() {
+    this.hits.mark();
+  }
+
+  public void miss() {
+    this.misses.mark();
+  }
+
+  public long getHitCount() {
+    return this.hits.getCount();
+  }
+
+  public long getMissCount() {
+    return this.misses.getCount();
+  }
+
+  private static void register(MetricRegistry metricRegistry, String name, Gauge<?> gauge) {
+    // Gauges cannot be registered twice, keep the first one if the cache is created again.
+    if (!metricRegistry.getGauges().containsKey(name)) {
+      metricRegistry.register(name, gauge);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Versions of the collections of each tenant, which let a collection be answered with 304 Not
+ * Modified without querying it. Writes to a collection {@link #bump} its version once they are
+ * committed.
+ *
+ * <p>The versions are kept by each API instance and forgotten after the configured ttl, so a
+ * change made through another instance is seen once the version expires. A version also names the
+ * instance, so a tag handed out by one instance never matches on another.
+ */
+public class CollectionVersions {
+  public static final String ALARM_DEFINITIONS = "alarm-definitions";
+  public static final String NOTIFICATION_METHODS = "notification-methods";
+
+  private final String instance = UUID.randomUUID().toString();
+  private final AtomicLong sequence = new AtomicLong();
+  private final Cache<String, Long> versions;
+  private final Callable<Long> next = new Callable<Long>() {
+    @Override
+    public Long call() {
+      return sequence.incrementAndGet();
+    }
+  };
+
+  @Inject
+  public CollectionVersions(ApiConfig config) {
+    this(config.collectionVersions.maxSize, config.collectionVersions.ttl.toMilliseconds());
+  }
+
+  /**
+   * @param maxSize the maximum number of versions kept, 0 disables the versions
+   * @param ttlMillis how long a version is kept
+   */
+  public CollectionVersions(long maxSize, long ttlMillis) {
+    this.versions = maxSize > 0 ? CacheBuilder.newBuilder().maximumSize(maxSize)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS).<String, Long>build() : null;
+  }
+
+  /**
+   * Returns the current version of the {@code collection} of the {@code tenantId}, or null if
+   * versions are disabled.
+   */
+  public String get(String collection, String tenantId) {
+    if (versions == null) {
+      return null;
+    }
+
+    try {
+      return instance + '-' + versions.get(key(collection, tenantId), next);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Moves the {@code collection} of the {@code tenantId} to a new version, which must be done
+   * after a write to the collection is committed.
+   */
+  public void bump(String collection, String tenantId) {
+    if (versions != null) {
+      versions.put(key(collection, tenantId), sequence.incrementAndGet());
+    }
+  }
+
+  private static String key(String collection, String tenantId) {
+    return collection + '/' + tenantId;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the collection versions behind the entity tags of collections.
+ */
+public class CollectionVersionsConfiguration {
+
+  /**
+   * The maximum number of versions kept, one for each collection of a tenant, 0 disables entity
+   * tags for collections.
+   */
+  @JsonProperty
+  public long maxSize = 10000;
+
+  /**
+   * How long a version is kept, which bounds how long a change made through another API instance
+   * can be answered with 304 Not Modified.
+   */
+  @JsonProperty
+  public Duration ttl = Duration.seconds(15);
+}
@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.event.EventOutboxRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+
+/**
+ * Publishes the events of the outbox to Kafka in batches, oldest first, keyed by the alarm
+ * definition they are about. An event is deleted from the outbox only once it has been sent, so
+ * events are delivered at least once.
+ *
+ * <p>The relay runs while the application does. Stopping it lets the batch being sent finish, the
+ * events left in the outbox are sent after the next start.
+ */
+public class EventOutboxRelay implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(EventOutboxRelay.class);
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final Producer<String, String> producer;
+  private final EventOutboxRepo repo;
+  private final int batchSize;
+  private final long pollMillis;
+  private ScheduledExecutorService executor;
+
+  private final Meter relayed;
+  private final Timer sends;
+  // Age of the oldest event of the last batch, 0 once the outbox has been emptied
+  private volatile long lagMillis;
+
+  private final EventOutboxRepo.Publisher publisher = new EventOutboxRepo.Publisher() {
+    @Override
+    public void publish(List<OutboxEvent> events) {
+      lagMillis = System.currentTimeMillis() - events.get(0).getCreatedAt().getMillis();
+
+      final List<KeyedMessage<String, String>> messages = new ArrayList<>(events.size());
+      for (OutboxEvent event : events) {
+        messages.add(new KeyedMessage<>(event.getTopic(), event.getKey(), event.getMessage()));
+      }
+
+      final Timer.Context context = sends.time();
+      try {
+        producer.send(messages);
+      } finally {
+        context.stop();
+      }
+      relayed.mark(events.size());
+    }
+  };
+
+  @Inject
+  public EventOutboxRelay(ApiConfig config, Producer<String, String> producer,
+                          EventOutboxRepo repo, MetricRegistry metricRegistry) {
+    this(producer, repo, config.eventOutboxRelay.batchSize,
+         config.eventOutboxRelay.enabled
+         ? config.eventOutboxRelay.pollInterval.toMilliseconds() : 0,
+         metricRegistry);
+  }
+
+  /**
+   * @param pollMillis wait between emptying the outbox and looking again, 0 creates a relay that
+   *        only publishes when {@link #relay} is called
+   */
+  EventOutboxRelay(Producer<String, String> producer, EventOutboxRepo repo, int batchSize,
+                   long pollMillis, MetricRegistry metricRegistry) {
+    this.producer = producer;
+    this.repo = repo;
+    this.batchSize = batchSize;
+    this.pollMillis = pollMillis;
+
+    this.relayed = metricRegistry.meter(MetricRegistry.name(EventOutboxRelay.class, "relayed"));
+    this.sends = metricRegistry.timer(MetricRegistry.name(EventOutboxRelay.class, "sends"));
+    final String lagName = MetricRegistry.name(EventOutboxRelay.class, "lag-millis");
+    if (!metricRegistry.getGauges().containsKey(lagName)) {
+      metricRegistry.register(lagName, new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return lagMillis;
+        }
+      });
+    }
+  }
+
+  @Override
+  public void start() {
+    if (pollMillis > 0) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("event-outbox-relay").build());
+      this.executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          relay();
+        }
+      }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("Stopped the event outbox relay while it was still sending events");
+        this.executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Publishes the events in the outbox until it is empty or publishing fails, in which case the
+   * remaining events are retried on the next run.
+   * 
+   * @return the number of events published
+   */
+  int relay() {
+    int total = 0;
+    try {
+      int count;
+      do {
+        count = repo.publishOldest(batchSize, publisher);
+        total += count;
+      } while (count == batchSize);
+      lagMillis = 0;
+    } catch (RuntimeException e) {
+      LOG.error("Failed to publish the events of the outbox, {} published before the failure",
+                total, e);
+    }
+    return total;
+  }
+
+  public long getLagMillis() {
+    return lagMillis;
+  }
+}
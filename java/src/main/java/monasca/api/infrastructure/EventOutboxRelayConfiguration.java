@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the relay that publishes the alarm and alarm definition events from the outbox.
+ */
+public class EventOutboxRelayConfiguration {
+
+  /**
+   * Whether this node relays events. Several nodes may relay, each batch is locked by the node
+   * publishing it.
+   */
+  @JsonProperty
+  public boolean enabled = true;
+
+  /**
+   * Most events published in one producer send.
+   */
+  @JsonProperty
+  public int batchSize = 1000;
+
+  /**
+   * How long the relay waits after emptying the outbox before looking for new events.
+   */
+  @JsonProperty
+  public Duration pollInterval = Duration.milliseconds(500);
+}
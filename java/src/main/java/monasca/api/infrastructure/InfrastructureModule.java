@@ -23,16 +23,22 @@ import monasca.api.domain.model.alarm.AlarmRepo;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
 import monasca.api.domain.model.dimension.DimensionRepo;
+import monasca.api.domain.model.event.EventOutboxRepo;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.metric.MetricDefinitionRepo;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
 import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
 import monasca.api.domain.model.statistic.StatisticRepo;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
+import monasca.api.infrastructure.persistence.AlarmDefinitionInvalidationListener;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.infrastructure.persistence.Utils;
 import monasca.api.infrastructure.persistence.hibernate.AlarmDefinitionSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.AlarmHibernateUtils;
 import monasca.api.infrastructure.persistence.hibernate.AlarmSqlRepoImpl;
+import monasca.api.infrastructure.persistence.hibernate.EventOutboxSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.NotificationMethodSqlRepoImpl;
 import monasca.api.infrastructure.persistence.hibernate.NotificationMethodTypesSqlRepoImpl;
 import monasca.api.infrastructure.persistence.influxdb.InfluxV9AlarmStateHistoryRepo;
@@ -42,16 +48,24 @@ import monasca.api.infrastructure.persistence.influxdb.InfluxV9MetricDefinitionR
 import monasca.api.infrastructure.persistence.influxdb.InfluxV9RepoReader;
 import monasca.api.infrastructure.persistence.influxdb.InfluxV9StatisticRepo;
 import monasca.api.infrastructure.persistence.influxdb.InfluxV9Utils;
+import monasca.api.infrastructure.persistence.mysql.AlarmCountSummary;
 import monasca.api.infrastructure.persistence.mysql.AlarmDefinitionMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.AlarmMySqlRepoImpl;
+import monasca.api.infrastructure.persistence.mysql.DimensionSetIndex;
+import monasca.api.infrastructure.persistence.mysql.EventOutboxMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.MySQLUtils;
 import monasca.api.infrastructure.persistence.mysql.NotificationMethodMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.NotificationMethodTypesMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.vertica.AlarmStateHistoryVerticaRepoImpl;
+import monasca.api.infrastructure.persistence.vertica.DefinitionDimensionsIdCache;
 import monasca.api.infrastructure.persistence.vertica.DimensionVerticaRepoImpl;
 import monasca.api.infrastructure.persistence.vertica.MeasurementVerticaRepoImpl;
+import monasca.api.infrastructure.persistence.vertica.MetricDefinitionCache;
 import monasca.api.infrastructure.persistence.vertica.MetricDefinitionVerticaRepoImpl;
 import monasca.api.infrastructure.persistence.vertica.StatisticVerticaRepoImpl;
+import monasca.api.infrastructure.persistence.vertica.TimeSlicedQueryExecutor;
+import monasca.api.infrastructure.streaming.AlarmEventBroadcaster;
+import monasca.api.infrastructure.streaming.MeasurementBroadcaster;
 
 /**
  * Infrastructure layer bindings.
@@ -76,21 +90,38 @@ public class InfrastructureModule extends AbstractModule {
 
     // Bind repositories
 
+    this.bind(NotificationMethodIdCache.class).in(Singleton.class);
+    this.bind(AlarmDefinitionCache.class).in(Singleton.class);
+    this.bind(AlarmDefinitionInvalidationListener.class).asEagerSingleton();
+
     if (hibernateEnabled) {
       this.bind(AlarmRepo.class).to(AlarmSqlRepoImpl.class).in(Singleton.class);
       this.bind(AlarmDefinitionRepo.class).to(AlarmDefinitionSqlRepoImpl.class).in(Singleton.class);
       this.bind(NotificationMethodRepo.class).to(NotificationMethodSqlRepoImpl.class).in(Singleton.class);
       this.bind(NotificationMethodTypesRepo.class).to(NotificationMethodTypesSqlRepoImpl.class).in(Singleton.class);
+      this.bind(EventOutboxRepo.class).to(EventOutboxSqlRepoImpl.class).in(Singleton.class);
     } else {
+      bind(DimensionSetIndex.class).asEagerSingleton();
+      bind(AlarmCountSummary.class).asEagerSingleton();
       bind(AlarmRepo.class).to(AlarmMySqlRepoImpl.class).in(Singleton.class);
       bind(AlarmDefinitionRepo.class).to(AlarmDefinitionMySqlRepoImpl.class).in(Singleton.class);
       bind(NotificationMethodRepo.class).to(NotificationMethodMySqlRepoImpl.class).in(Singleton.class);
       bind(NotificationMethodTypesRepo.class).to(NotificationMethodTypesMySqlRepoImpl.class).in(Singleton.class);
+      bind(EventOutboxRepo.class).to(EventOutboxMySqlRepoImpl.class).in(Singleton.class);
       bind(PersistUtils.class).in(Singleton.class);
     }
 
+    bind(EventOutboxRelay.class).asEagerSingleton();
+    bind(NotificationMethodTypesCache.class).asEagerSingleton();
+    bind(CollectionVersions.class).in(Singleton.class);
+    bind(AlarmEventBroadcaster.class).asEagerSingleton();
+    bind(MeasurementBroadcaster.class).asEagerSingleton();
+
     if (config.databaseConfiguration.getDatabaseType().trim().equalsIgnoreCase(VERTICA)) {
 
+      bind(DefinitionDimensionsIdCache.class).in(Singleton.class);
+      bind(MetricDefinitionCache.class).in(Singleton.class);
+      bind(TimeSlicedQueryExecutor.class).asEagerSingleton();
       bind(AlarmStateHistoryRepo.class).to(AlarmStateHistoryVerticaRepoImpl.class).in(Singleton.class);
       bind(DimensionRepo.class).to(DimensionVerticaRepoImpl.class).in(Singleton.class);
       bind(MetricDefinitionRepo.class).to(MetricDefinitionVerticaRepoImpl.class).in(Singleton.class);
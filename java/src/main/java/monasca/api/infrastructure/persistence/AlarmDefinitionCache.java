@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.infrastructure.CacheMetrics;
+
+/**
+ * Caches alarm definitions looked up by id, so that reading a definition again usually needs no
+ * query.
+ *
+ * <p>Definitions are keyed by their id, which is unique across tenants, and are only returned to
+ * the tenant that owns them. The repositories invalidate a definition once they have committed a
+ * change to it. A lookup that started before an invalidation does not cache what it read, so a
+ * definition changed during the lookup is not cached stale. Changes made through another API
+ * instance are seen once the {@link AlarmDefinitionInvalidationListener} receives their event,
+ * or else once the definition expires.
+ *
+ * <p>The cache holds its own copies of the definitions, since callers add links to the ones they
+ * get.
+ */
+public class AlarmDefinitionCache {
+
+  private final Cache<String, Entry> cache;
+  private final CacheMetrics metrics;
+  // Incremented by every invalidation, see put
+  private final AtomicLong invalidations = new AtomicLong();
+
+  @Inject
+  public AlarmDefinitionCache(ApiConfig config, MetricRegistry metricRegistry) {
+    this(config.alarmDefinitionCache.maxSize,
+         config.alarmDefinitionCache.ttl.toMilliseconds(),
+         metricRegistry);
+  }
+
+  /**
+   * @param maxSize most alarm definitions to keep, 0 disables the cache
+   */
+  public AlarmDefinitionCache(long maxSize, long ttlMillis, MetricRegistry metricRegistry) {
+    if (maxSize > 0 && ttlMillis > 0) {
+      this.cache = CacheBuilder.newBuilder()
+          .maximumSize(maxSize)
+          .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+          .build();
+    } else {
+      this.cache = null;
+    }
+
+    this.metrics = new CacheMetrics(metricRegistry, AlarmDefinitionCache.class, this.cache);
+  }
+
+  /**
+   * Returns the version to pass to {@link #put} for a lookup that starts now.
+   */
+  public long version() {
+    return this.invalidations.get();
+  }
+
+  /**
+   * Returns a copy of the alarm definition of the tenant, or null if it is not cached.
+   */
+  public AlarmDefinition get(String tenantId, String alarmDefId) {
+    final Entry entry = this.cache == null ? null : this.cache.getIfPresent(alarmDefId);
+
+    if (entry == null || !entry.tenantId.equals(tenantId)) {
+      this.metrics.miss();
+      return null;
+    }
+    this.metrics.hit();
+    return copy(entry.alarmDefinition);
+  }
+
+  /**
+   * Caches a copy of the alarm definition of the tenant, unless a definition was invalidated
+   * since the lookup that read it began.
+   *
+   * @param version the {@link #version} when the lookup began
+   */
+  public void put(String tenantId, AlarmDefinition alarmDefinition, long version) {
+    if (this.cache == null) {
+      return;
+    }
+
+    final Entry entry = new Entry(tenantId, copy(alarmDefinition));
+    if (this.invalidations.get() == version) {
+      this.cache.put(alarmDefinition.getId(), entry);
+      // An invalidation may have run between the check and the put
+      if (this.invalidations.get() != version) {
+        this.cache.invalidate(alarmDefinition.getId());
+      }
+    }
+  }
+
+  /**
+   * Drops the alarm definition, called when it is created, updated or deleted.
+   */
+  public void invalidate(String alarmDefId) {
+    this.invalidations.incrementAndGet();
+    if (this.cache != null) {
+      this.cache.invalidate(alarmDefId);
+    }
+  }
+
+  long getHitCount() {
+    return this.metrics.getHitCount();
+  }
+
+  long getMissCount() {
+    return this.metrics.getMissCount();
+  }
+
+  private static AlarmDefinition copy(AlarmDefinition alarmDefinition) {
+    return new AlarmDefinition(alarmDefinition.getId(), alarmDefinition.getName(),
+        alarmDefinition.getDescription(), alarmDefinition.getSeverity(),
+        alarmDefinition.getExpression(), copy(alarmDefinition.getMatchBy()),
+        alarmDefinition.isActionsEnabled(), copy(alarmDefinition.getAlarmActions()),
+        copy(alarmDefinition.getOkActions()), copy(alarmDefinition.getUndeterminedActions()));
+  }
+
+  private static List<String> copy(List<String> list) {
+    return list == null ? null : new ArrayList<>(list);
+  }
+
+  private static class Entry {
+    final String tenantId;
+    final AlarmDefinition alarmDefinition;
+
+    Entry(String tenantId, AlarmDefinition alarmDefinition) {
+      this.tenantId = tenantId;
+      this.alarmDefinition = alarmDefinition;
+    }
+  }
+}
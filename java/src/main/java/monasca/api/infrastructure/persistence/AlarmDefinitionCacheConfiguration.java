@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the cache of alarm definitions looked up by id.
+ */
+public class AlarmDefinitionCacheConfiguration {
+
+  /**
+   * Most alarm definitions to cache, 0 disables the cache.
+   */
+  @JsonProperty
+  public long maxSize = 10000;
+
+  /**
+   * How long a definition is kept. Bounds how long a change made through another API instance
+   * goes unseen when invalidations are not received from the events topic.
+   */
+  @JsonProperty
+  public Duration ttl = Duration.minutes(5);
+
+  /**
+   * Whether to invalidate the definitions updated or deleted through other API instances when
+   * their events are read back from the events topic.
+   */
+  @JsonProperty
+  public boolean invalidateFromEvents = false;
+}
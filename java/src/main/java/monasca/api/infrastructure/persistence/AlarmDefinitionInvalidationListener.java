@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import kafka.consumer.Consumer;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.KafkaStream;
+import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Reads the events topic and invalidates the cached alarm definitions that the events are about,
+ * so that definitions updated or deleted through other API instances are not served stale.
+ *
+ * <p>Every API instance consumes the whole topic in a consumer group of its own, starting from the
+ * newest events. Events written by this instance are read back as well, invalidating definitions
+ * that were already invalidated when they were changed.
+ *
+ * <p>The consumer is connected when the listener is started and shut down when it is stopped.
+ */
+public class AlarmDefinitionInvalidationListener implements Managed {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(AlarmDefinitionInvalidationListener.class);
+  private static final String ALARM_DEFINITION_EVENT = "alarm-definition-";
+  private static final String ALARM_DEFINITION_ID = "alarmDefinitionId";
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final AlarmDefinitionCache cache;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Meter invalidations;
+  private final Supplier<ConsumerConnector> consumerSupplier;
+  private final String topic;
+  private ConsumerConnector consumer;
+  private ExecutorService executor;
+
+  @Inject
+  public AlarmDefinitionInvalidationListener(final ApiConfig config, AlarmDefinitionCache cache,
+                                             MetricRegistry metricRegistry) {
+    this(cache, metricRegistry, config.alarmDefinitionCache.invalidateFromEvents
+        && config.alarmDefinitionCache.maxSize > 0 ? new Supplier<ConsumerConnector>() {
+          @Override
+          public ConsumerConnector get() {
+            return createConsumer(config);
+          }
+        } : null, config.eventsTopic);
+  }
+
+  /**
+   * @param consumerSupplier connects the consumer to read the {@code topic} with on start, null
+   *        creates a listener that only handles the events passed to {@link #handle}
+   */
+  AlarmDefinitionInvalidationListener(AlarmDefinitionCache cache, MetricRegistry metricRegistry,
+                                      Supplier<ConsumerConnector> consumerSupplier, String topic) {
+    this.cache = cache;
+    this.invalidations = metricRegistry
+        .meter(MetricRegistry.name(AlarmDefinitionInvalidationListener.class, "invalidations"));
+    this.consumerSupplier = consumerSupplier;
+    this.topic = topic;
+  }
+
+  @Override
+  public void start() {
+    if (consumerSupplier == null) {
+      return;
+    }
+
+    this.consumer = consumerSupplier.get();
+    final Map<String, List<KafkaStream<byte[], byte[]>>> streams =
+        consumer.createMessageStreams(Collections.singletonMap(topic, 1));
+    final KafkaStream<byte[], byte[]> stream = streams.get(topic).get(0);
+
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("alarm-definition-invalidation-listener").build());
+    this.executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (MessageAndMetadata<byte[], byte[]> message : stream) {
+          handle(new String(message.message(), StandardCharsets.UTF_8));
+        }
+      }
+    });
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (consumer != null) {
+      // Ends the stream, so the thread reading it returns
+      consumer.shutdown();
+      executor.shutdown();
+      if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Invalidates the alarm definition the {@code event} is about, if any. The events of the topic
+   * are wrapped in an object named after their type, the alarm definition events name the
+   * definition by {@value #ALARM_DEFINITION_ID}.
+   */
+  void handle(String event) {
+    try {
+      final Iterator<Map.Entry<String, JsonNode>> wrapped = mapper.readTree(event).fields();
+      if (!wrapped.hasNext()) {
+        return;
+      }
+
+      final Map.Entry<String, JsonNode> typed = wrapped.next();
+      if (!typed.getKey().startsWith(ALARM_DEFINITION_EVENT)) {
+        return;
+      }
+
+      final JsonNode alarmDefId = typed.getValue().get(ALARM_DEFINITION_ID);
+      if (alarmDefId != null && alarmDefId.isTextual()) {
+        cache.invalidate(alarmDefId.asText());
+        invalidations.mark();
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring event that could not be read: {}", event, e);
+    }
+  }
+
+  private static ConsumerConnector createConsumer(ApiConfig config) {
+    final Properties props = new Properties();
+    props.put("zookeeper.connect", Joiner.on(',').join(config.kafka.zookeeperUris));
+    props.put("group.id", "monasca-api-alarm-definition-cache-" + UUID.randomUUID());
+    // Only events written from now on can make a cached definition stale
+    props.put("auto.offset.reset", "largest");
+    props.put("auto.commit.enable", "false");
+    return Consumer.createJavaConsumerConnector(new ConsumerConfig(props));
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import monasca.api.domain.model.alarm.Alarm;
+
+/**
+ * Opaque paging cursor for alarm listings.
+ *
+ * <p>A cursor holds the sort key of the last alarm of a page: the value of every sort_by field up
+ * to alarm_id, which is always the last key so that the order is total. The next page is selected
+ * with a seek predicate on those keys instead of an OFFSET, so every page costs the same however
+ * deep it is and alarms created or deleted between requests do not shift the pages.
+ *
+ * <p>State and severity are compared by their rank, the value FIELD(...) orders them by, and a
+ * null lifecycle_state or link compares like an empty string.
+ */
+public final class AlarmPageCursor {
+
+  public static final String ALARM_ID = "alarm_id";
+
+  private static final List<String> STATE_ORDER = Arrays.asList("OK", "UNDETERMINED", "ALARM");
+  private static final List<String> SEVERITY_ORDER =
+      Arrays.asList("LOW", "MEDIUM", "HIGH", "CRITICAL");
+
+  private static final Set<String> TIMESTAMP_FIELDS =
+      ImmutableSet.of("created_timestamp", "updated_timestamp", "state_updated_timestamp");
+  private static final Set<String> RANK_FIELDS = ImmutableSet.of("state", "severity");
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+  private static final Joiner COMMA_JOINER = Joiner.on(',');
+  private static final Splitter SPACE_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+
+  private static final String SORT_BY_KEY = "s";
+  private static final String VALUES_KEY = "v";
+  private static final String PARAMETER_PREFIX = "cursor";
+
+  private final List<SortKey> keys;
+  private final List<Object> values;
+
+  private AlarmPageCursor(List<SortKey> keys, List<Object> values) {
+    this.keys = keys;
+    this.values = values;
+  }
+
+  public static final class SortKey {
+    private final String field;
+    private final boolean descending;
+
+    SortKey(String field, boolean descending) {
+      this.field = field;
+      this.descending = descending;
+    }
+
+    public String getField() {
+      return field;
+    }
+
+    public boolean isDescending() {
+      return descending;
+    }
+
+    @Override
+    public String toString() {
+      return field + (descending ? " desc" : " asc");
+    }
+  }
+
+  /**
+   * Returns true if the offset is a cursor rather than a legacy numeric offset.
+   */
+  public static boolean isCursor(String offset) {
+    return !Strings.isNullOrEmpty(offset) && !CharMatcher.DIGIT.matchesAllOf(offset);
+  }
+
+  /**
+   * Returns the keys that totally order the alarms for the validated sort_by fields: the fields
+   * up to alarm_id, followed by alarm_id ascending if it is not one of them.
+   */
+  public static List<SortKey> sortKeys(List<String> sortBy) {
+    List<SortKey> keys = new ArrayList<>();
+
+    if (sortBy != null) {
+      for (String sortByField : sortBy) {
+        List<String> parts = SPACE_SPLITTER.splitToList(sortByField);
+        SortKey key =
+            new SortKey(parts.get(0), parts.size() > 1 && "desc".equalsIgnoreCase(parts.get(1)));
+        keys.add(key);
+        if (ALARM_ID.equals(key.field)) {
+          return keys;
+        }
+      }
+    }
+
+    keys.add(new SortKey(ALARM_ID, false));
+    return keys;
+  }
+
+  /**
+   * Returns the cursor for the page that follows {@code alarm}.
+   */
+  public static String encode(Alarm alarm, List<String> sortBy) {
+    List<SortKey> keys = sortKeys(sortBy);
+    List<Object> values = new ArrayList<>(keys.size());
+
+    for (SortKey key : keys) {
+      values.add(valueOf(alarm, key.field));
+    }
+
+    Map<String, Object> cursor = new LinkedHashMap<>();
+    cursor.put(SORT_BY_KEY, COMMA_JOINER.join(keys));
+    cursor.put(VALUES_KEY, values);
+
+    try {
+      return ENCODING.encode(MAPPER.writeValueAsBytes(cursor));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to encode alarm cursor", e);
+    }
+  }
+
+  /**
+   * Decodes a cursor created by {@link #encode(Alarm, List)} for the same sort_by fields.
+   *
+   * @throws IllegalArgumentException if the cursor is malformed or was created for a different
+   *                                  sort order
+   */
+  public static AlarmPageCursor decode(String cursor, List<String> sortBy) {
+    List<SortKey> keys = sortKeys(sortBy);
+
+    Map<?, ?> decoded;
+    try {
+      decoded = MAPPER.readValue(ENCODING.decode(cursor), Map.class);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed alarm cursor", e);
+    }
+
+    if (!COMMA_JOINER.join(keys).equals(decoded.get(SORT_BY_KEY))) {
+      throw new IllegalArgumentException("Alarm cursor does not match sort_by");
+    }
+
+    if (!(decoded.get(VALUES_KEY) instanceof List)
+        || ((List<?>) decoded.get(VALUES_KEY)).size() != keys.size()) {
+      throw new IllegalArgumentException("Malformed alarm cursor");
+    }
+
+    List<?> encodedValues = (List<?>) decoded.get(VALUES_KEY);
+    List<Object> values = new ArrayList<>(keys.size());
+
+    for (int i = 0; i < keys.size(); i++) {
+      String field = keys.get(i).field;
+      Object value = encodedValues.get(i);
+
+      if (TIMESTAMP_FIELDS.contains(field) || RANK_FIELDS.contains(field)) {
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("Malformed alarm cursor");
+        }
+        values.add(TIMESTAMP_FIELDS.contains(field)
+                   ? new Timestamp(((Number) value).longValue())
+                   : Integer.valueOf(((Number) value).intValue()));
+      } else {
+        if (!(value instanceof String)) {
+          throw new IllegalArgumentException("Malformed alarm cursor");
+        }
+        values.add(value);
+      }
+    }
+
+    return new AlarmPageCursor(keys, values);
+  }
+
+  /**
+   * Returns " and (...)", the predicate that selects the alarms after the cursor. {@code columns}
+   * maps every sort_by field to the SQL expression the query orders by.
+   */
+  public String seekPredicate(Map<String, String> columns) {
+    StringBuilder predicate = new StringBuilder(" and (");
+
+    for (int i = 0; i < keys.size(); i++) {
+      if (i > 0) {
+        predicate.append(" or ");
+      }
+      predicate.append('(');
+      for (int j = 0; j < i; j++) {
+        predicate.append(column(columns, keys.get(j))).append(" = :").append(PARAMETER_PREFIX)
+            .append(j).append(" and ");
+      }
+      predicate.append(column(columns, keys.get(i)))
+          .append(keys.get(i).descending ? " < :" : " > :").append(PARAMETER_PREFIX).append(i)
+          .append(')');
+    }
+
+    return predicate.append(')').toString();
+  }
+
+  /**
+   * Returns the values to bind to the parameters of {@link #seekPredicate(Map)}.
+   */
+  public Map<String, Object> getParameters() {
+    Map<String, Object> parameters = new LinkedHashMap<>();
+    for (int i = 0; i < values.size(); i++) {
+      parameters.put(PARAMETER_PREFIX + i, values.get(i));
+    }
+    return Collections.unmodifiableMap(parameters);
+  }
+
+  /**
+   * Returns " order by ..." for the validated sort_by fields, ending with alarm_id.
+   */
+  public static String orderBy(List<String> sortBy, Map<String, String> columns) {
+    List<String> orderBy = new ArrayList<>();
+    for (SortKey key : sortKeys(sortBy)) {
+      orderBy.add(column(columns, key) + (key.descending ? " desc" : " asc"));
+    }
+    return " order by " + COMMA_JOINER.join(orderBy) + ' ';
+  }
+
+  private static String column(Map<String, String> columns, SortKey key) {
+    String column = columns.get(key.field);
+    if (column == null) {
+      throw new IllegalArgumentException("Unsupported sort_by field " + key.field);
+    }
+    return column;
+  }
+
+  private static Object valueOf(Alarm alarm, String field) {
+    switch (field) {
+      case ALARM_ID:
+        return alarm.getId();
+      case "alarm_definition_id":
+        return alarm.getAlarmDefinition().getId();
+      case "alarm_definition_name":
+        return alarm.getAlarmDefinition().getName();
+      case "state":
+        return STATE_ORDER.indexOf(alarm.getState().name()) + 1;
+      case "severity":
+        return SEVERITY_ORDER.indexOf(alarm.getAlarmDefinition().getSeverity()) + 1;
+      case "lifecycle_state":
+        return Strings.nullToEmpty(alarm.getLifecycleState());
+      case "link":
+        return Strings.nullToEmpty(alarm.getLink());
+      case "created_timestamp":
+        return alarm.getCreatedTimestamp().getMillis();
+      case "updated_timestamp":
+        return alarm.getUpdatedTimestamp().getMillis();
+      case "state_updated_timestamp":
+        return alarm.getStateUpdatedTimestamp().getMillis();
+      default:
+        throw new IllegalArgumentException("Unsupported sort_by field " + field);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings shared by the connection pools of the mysql, vertica and hibernate data sources.
+ */
+public class ConnectionPoolConfiguration {
+
+  /**
+   * How long a connection may be out of the pool before a possible leak is logged, 0 disables
+   * leak detection.
+   */
+  @JsonProperty
+  public Duration leakDetectionThreshold = Duration.seconds(60);
+
+  /**
+   * Number of prepared statements the MySQL driver caches per connection, 0 disables the cache.
+   */
+  @JsonProperty
+  public int statementCacheSize = 250;
+
+  /**
+   * Longest SQL text the MySQL driver will cache a prepared statement for.
+   */
+  @JsonProperty
+  public int statementCacheSqlLimit = 2048;
+
+  /**
+   * How often the active and idle connection counts are sampled into the pool.Active and
+   * pool.Idle histograms, 0 disables sampling.
+   */
+  @JsonProperty
+  public Duration sampleInterval = Duration.seconds(1);
+}
@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.pool.HikariPoolMXBean;
+
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * HikariCP pool that is managed by the Dropwizard lifecycle. Hikari registers the pool.Wait timer,
+ * the pool.Usage histogram and connection count gauges under the pool name. The gauges are only
+ * refreshed every ten seconds, so this class adds pool.Active and pool.Idle histograms that sample
+ * the live connection counts of the pool MBean at a fixed interval.
+ */
+public class ManagedHikariDataSource extends HikariDataSource implements ManagedDataSource {
+  private static final Logger LOG = LoggerFactory.getLogger(ManagedHikariDataSource.class);
+
+  private static final String MYSQL_URL_PREFIX = "jdbc:mysql:";
+  private static final String REWRITE_BATCHED_STATEMENTS = "rewriteBatchedStatements";
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final String poolName;
+  private final long sampleIntervalMillis;
+  private final Histogram activeConnections;
+  private final Histogram idleConnections;
+  private ScheduledExecutorService executor;
+
+  public ManagedHikariDataSource(HikariConfig config,
+                                 ConnectionPoolConfiguration poolConfiguration,
+                                 MetricRegistry metricRegistry) {
+    super(config);
+    this.poolName = config.getPoolName();
+    this.sampleIntervalMillis = poolConfiguration.sampleInterval.toMilliseconds();
+    this.activeConnections =
+        metricRegistry.histogram(MetricRegistry.name(poolName, "pool", "Active"));
+    this.idleConnections =
+        metricRegistry.histogram(MetricRegistry.name(poolName, "pool", "Idle"));
+  }
+
+  /**
+   * Builds a pool from a Dropwizard data source configuration.
+   */
+  public static ManagedHikariDataSource build(DataSourceFactory dataSourceFactory,
+                                              ConnectionPoolConfiguration poolConfiguration,
+                                              MetricRegistry metricRegistry,
+                                              String name) {
+    HikariConfig config = new HikariConfig();
+
+    config.setJdbcUrl(dataSourceFactory.getUrl());
+    config.setDriverClassName(dataSourceFactory.getDriverClass());
+    config.setUsername(dataSourceFactory.getUser());
+    config.setPassword(dataSourceFactory.getPassword());
+    config.setMaximumPoolSize(dataSourceFactory.getMaxSize());
+    config.setMinimumIdle(dataSourceFactory.getMinSize());
+    config.setConnectionTimeout(dataSourceFactory.getMaxWaitForConnection().toMilliseconds());
+    config.setIdleTimeout(dataSourceFactory.getMinIdleTime().toMilliseconds());
+    config.setConnectionTestQuery(dataSourceFactory.getValidationQuery());
+    config.setConnectionInitSql(dataSourceFactory.getInitializationQuery());
+    // Like the Tomcat pool it replaces, do not refuse to start while the database is down.
+    config.setInitializationFailFast(false);
+
+    if (dataSourceFactory.getMaxConnectionAge().isPresent()) {
+      config.setMaxLifetime(dataSourceFactory.getMaxConnectionAge().get().toMilliseconds());
+    }
+
+    if (dataSourceFactory.getAutoCommitByDefault() != null) {
+      config.setAutoCommit(dataSourceFactory.getAutoCommitByDefault());
+    }
+
+    if (dataSourceFactory.getReadOnlyByDefault() != null) {
+      config.setReadOnly(dataSourceFactory.getReadOnlyByDefault());
+    }
+
+    if (dataSourceFactory.getDefaultCatalog() != null) {
+      config.setCatalog(dataSourceFactory.getDefaultCatalog());
+    }
+
+    switch (dataSourceFactory.getDefaultTransactionIsolation()) {
+      case NONE:
+      case DEFAULT:
+        break;
+      default:
+        config.setTransactionIsolation(
+            "TRANSACTION_" + dataSourceFactory.getDefaultTransactionIsolation().name());
+    }
+
+    for (Map.Entry<String, String> property : dataSourceFactory.getProperties().entrySet()) {
+      config.addDataSourceProperty(property.getKey(), property.getValue());
+    }
+
+    if (dataSourceFactory.getUrl() != null
+        && dataSourceFactory.getUrl().startsWith(MYSQL_URL_PREFIX)) {
+      addStatementCacheProperties(config, poolConfiguration);
+      addBatchProperties(config);
+    }
+
+    applyPoolConfiguration(config, poolConfiguration, metricRegistry, name);
+
+    return new ManagedHikariDataSource(config, poolConfiguration, metricRegistry);
+  }
+
+  /**
+   * Applies the settings shared by all pools: name, leak detection and metrics. The pool MBean is
+   * registered so that its live connection counts can be sampled.
+   */
+  public static void applyPoolConfiguration(HikariConfig config,
+                                            ConnectionPoolConfiguration poolConfiguration,
+                                            MetricRegistry metricRegistry,
+                                            String name) {
+    config.setPoolName(name);
+    config.setLeakDetectionThreshold(poolConfiguration.leakDetectionThreshold.toMilliseconds());
+    config.setMetricRegistry(metricRegistry);
+    config.setRegisterMbeans(true);
+  }
+
+  /**
+   * Turns on the MySQL driver's prepared statement cache unless the data source properties
+   * already configure it.
+   */
+  public static void addStatementCacheProperties(HikariConfig config,
+                                                 ConnectionPoolConfiguration poolConfiguration) {
+    if (poolConfiguration.statementCacheSize <= 0) {
+      return;
+    }
+
+    Properties properties = config.getDataSourceProperties();
+
+    if (!properties.containsKey("cachePrepStmts")) {
+      config.addDataSourceProperty("cachePrepStmts", "true");
+    }
+    if (!properties.containsKey("prepStmtCacheSize")) {
+      config.addDataSourceProperty("prepStmtCacheSize",
+                                   Integer.toString(poolConfiguration.statementCacheSize));
+    }
+    if (!properties.containsKey("prepStmtCacheSqlLimit")) {
+      config.addDataSourceProperty("prepStmtCacheSqlLimit",
+                                   Integer.toString(poolConfiguration.statementCacheSqlLimit));
+    }
+  }
+
+  /**
+   * Lets the MySQL driver rewrite a batch of inserts into multi-row inserts, so that the batch is
+   * sent in one round trip rather than one statement at a time. A configured value wins.
+   */
+  public static void addBatchProperties(HikariConfig config) {
+    if (!config.getDataSourceProperties().containsKey(REWRITE_BATCHED_STATEMENTS)) {
+      config.addDataSourceProperty(REWRITE_BATCHED_STATEMENTS, "true");
+    }
+  }
+
+  @Override
+  public void start() throws Exception {
+    // The pool is started when it is created, only the sampling of its connections starts here.
+    if (this.sampleIntervalMillis <= 0) {
+      return;
+    }
+
+    final HikariPoolMXBean pool = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+        poolObjectName(this.poolName), HikariPoolMXBean.class);
+
+    this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat(this.poolName + "-pool-sampler").build());
+    this.executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          activeConnections.update(pool.getActiveConnections());
+          idleConnections.update(pool.getIdleConnections());
+        } catch (RuntimeException e) {
+          LOG.warn("Failed to sample the connections of pool {}", poolName, e);
+        }
+      }
+    }, this.sampleIntervalMillis, this.sampleIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() throws Exception {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        this.executor.shutdownNow();
+      }
+    }
+    close();
+  }
+
+  /**
+   * Returns the name Hikari registers the pool MBean under.
+   */
+  static ObjectName poolObjectName(String poolName) throws MalformedObjectNameException {
+    return new ObjectName("com.zaxxer.hikari:type=Pool (" + poolName + ")");
+  }
+}
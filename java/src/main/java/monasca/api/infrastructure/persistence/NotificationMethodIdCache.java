@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.CacheMetrics;
+
+/**
+ * Caches, per tenant, the ids of notification methods known to exist, so that validating the
+ * actions of an alarm definition usually needs no query.
+ *
+ * <p>Only ids that were found are cached, so a new notification method is usable at once. The
+ * repository invalidates a tenant when it deletes one of its notification methods. Deletes made
+ * through another API instance are only seen once the entry of the tenant expires.
+ */
+public class NotificationMethodIdCache {
+
+  private final Cache<String, Set<String>> cache;
+  private final CacheMetrics metrics;
+  // Incremented by every invalidation, see addAll
+  private final AtomicLong invalidations = new AtomicLong();
+
+  @Inject
+  public NotificationMethodIdCache(ApiConfig config, MetricRegistry metricRegistry) {
+    this(config.notificationMethodIdCache.maxTenants,
+         config.notificationMethodIdCache.ttl.toMilliseconds(),
+         metricRegistry);
+  }
+
+  /**
+   * @param maxTenants most tenants to keep ids for, 0 disables the cache
+   */
+  public NotificationMethodIdCache(long maxTenants, long ttlMillis,
+                                   MetricRegistry metricRegistry) {
+    if (maxTenants > 0 && ttlMillis > 0) {
+      this.cache = CacheBuilder.newBuilder()
+          .maximumSize(maxTenants)
+          .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+          .build();
+    } else {
+      this.cache = null;
+    }
+
+    this.metrics = new CacheMetrics(metricRegistry, NotificationMethodIdCache.class, this.cache);
+  }
+
+  /**
+   * Returns the version to pass to {@link #addAll} for a lookup that starts now.
+   */
+  public long version() {
+    return this.invalidations.get();
+  }
+
+  /**
+   * Returns the distinct ids that are not known to exist for the tenant.
+   */
+  public Set<String> unknown(String tenantId, Collection<String> notificationMethodIds) {
+    final Set<String> unknownIds = new LinkedHashSet<>(notificationMethodIds);
+
+    final Set<String> knownIds = this.cache == null ? null : this.cache.getIfPresent(tenantId);
+    if (knownIds != null) {
+      unknownIds.removeAll(knownIds);
+    }
+
+    if (unknownIds.isEmpty()) {
+      this.metrics.hit();
+    } else {
+      this.metrics.miss();
+    }
+    return unknownIds;
+  }
+
+  /**
+   * Records that the notification methods exist for the tenant, unless a tenant was invalidated
+   * since the lookup that found them began.
+   *
+   * @param version the {@link #version} when the lookup began
+   */
+  public void addAll(String tenantId, Collection<String> notificationMethodIds, long version) {
+    if (this.cache == null || notificationMethodIds.isEmpty()
+        || this.invalidations.get() != version) {
+      return;
+    }
+
+    Set<String> knownIds = this.cache.getIfPresent(tenantId);
+    if (knownIds == null) {
+      knownIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      final Set<String> existing = this.cache.asMap().putIfAbsent(tenantId, knownIds);
+      if (existing != null) {
+        knownIds = existing;
+      }
+    }
+    knownIds.addAll(notificationMethodIds);
+    // An invalidation may have run between the check and the add
+    if (this.invalidations.get() != version) {
+      this.cache.invalidate(tenantId);
+    }
+  }
+
+  /**
+   * Drops the ids of the tenant, called when one of its notification methods is deleted.
+   */
+  public void invalidate(String tenantId) {
+    this.invalidations.incrementAndGet();
+    if (this.cache != null) {
+      this.cache.invalidate(tenantId);
+    }
+  }
+
+  long getHitCount() {
+    return this.metrics.getHitCount();
+  }
+
+  long getMissCount() {
+    return this.metrics.getMissCount();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the cache of notification method ids used to validate alarm definition actions.
+ */
+public class NotificationMethodIdCacheConfiguration {
+
+  /**
+   * Most tenants to cache notification method ids for, 0 disables the cache.
+   */
+  @JsonProperty
+  public long maxTenants = 10000;
+
+  /**
+   * How long the ids of a tenant are kept. Bounds how long a notification method deleted through
+   * another API instance is still accepted as an action.
+   */
+  @JsonProperty
+  public Duration ttl = Duration.minutes(1);
+}
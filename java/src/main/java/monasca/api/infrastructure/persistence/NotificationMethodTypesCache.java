@@ -0,0 +1,164 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
+
+/**
+ * Snapshot of the notification method types, which only change when the API is deployed. The
+ * types are loaded on startup and reloaded periodically, or when {@link #refresh} is called, so
+ * listing and validating them needs no query.
+ *
+ * <p>If the types cannot be loaded on startup they are loaded by the first caller that needs
+ * them.
+ */
+public class NotificationMethodTypesCache implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(NotificationMethodTypesCache.class);
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final NotificationMethodTypesRepo repo;
+  private final long refreshMillis;
+  private ScheduledExecutorService executor;
+  private volatile Snapshot snapshot;
+
+  @Inject
+  public NotificationMethodTypesCache(ApiConfig config, NotificationMethodTypesRepo repo) {
+    this(repo, config.notificationMethodTypesCache.refreshInterval.toMilliseconds());
+  }
+
+  /**
+   * @param refreshMillis wait between reloads of the types, 0 creates a snapshot that is only
+   *        reloaded when {@link #refresh} is called
+   */
+  public NotificationMethodTypesCache(NotificationMethodTypesRepo repo, long refreshMillis) {
+    this.repo = repo;
+    this.refreshMillis = refreshMillis;
+
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      LOG.error("Failed to load the notification method types, they will be loaded when needed", e);
+    }
+  }
+
+  @Override
+  public void start() {
+    if (refreshMillis > 0) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("notification-method-types-refresh").build());
+      this.executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            refresh();
+          } catch (RuntimeException e) {
+            LOG.error("Failed to reload the notification method types, keeping the previous ones",
+                      e);
+          }
+        }
+      }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        this.executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Returns the notification method types, in the order of the repository.
+   */
+  public List<String> list() {
+    return snapshot().types;
+  }
+
+  /**
+   * Returns whether {@code type}, in any case, is a notification method type.
+   */
+  public boolean contains(String type) {
+    return type != null && snapshot().upperCaseTypes.contains(type.toUpperCase());
+  }
+
+  /**
+   * Returns a strong entity tag of the types, which changes whenever the types do.
+   */
+  public String getETag() {
+    return snapshot().eTag;
+  }
+
+  /**
+   * Reloads the types from the repository.
+   */
+  public void refresh() {
+    final Snapshot refreshed = new Snapshot(repo.listNotificationMethodTypes());
+    final Snapshot previous = this.snapshot;
+    this.snapshot = refreshed;
+
+    if (previous == null || !previous.eTag.equals(refreshed.eTag)) {
+      LOG.info("Loaded notification method types {}", refreshed.types);
+    }
+  }
+
+  private Snapshot snapshot() {
+    if (this.snapshot == null) {
+      refresh();
+    }
+    return this.snapshot;
+  }
+
+  private static class Snapshot {
+    final List<String> types;
+    final Set<String> upperCaseTypes;
+    final String eTag;
+
+    Snapshot(List<String> types) {
+      this.types = ImmutableList.copyOf(types);
+
+      final ImmutableSet.Builder<String> upperCaseTypes = ImmutableSet.builder();
+      for (String type : types) {
+        upperCaseTypes.add(type.toUpperCase());
+      }
+      this.upperCaseTypes = upperCaseTypes.build();
+
+      this.eTag = Hashing.sha1()
+          .hashString(Joiner.on('\n').join(this.types), StandardCharsets.UTF_8).toString();
+    }
+  }
+}
@@ -17,8 +17,6 @@ import monasca.api.ApiConfig;
 
 import com.google.inject.Inject;
 
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,8 +31,6 @@ public class PersistUtils {
 
   private final int DEFAULT_MAX_QUERY_LIMIT = 10000;
 
-  private DateTimeFormatter isoFormat = ISODateTimeFormat.dateTime();
-
   @Inject
   public PersistUtils(ApiConfig config) {
 
@@ -100,6 +96,6 @@ public class PersistUtils {
   }
 
   public Date parseTimestamp(String timestampString) throws ParseException {
-    return isoFormat.parseDateTime(timestampString.trim().replace(' ', 'T')).toDate();
+    return new Date(TimestampCodec.parseMillis(timestampString));
   }
 }
@@ -0,0 +1,335 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Fixed-width ISO 8601 timestamp formatting and parsing for UTC millis.
+ *
+ * Measurement and statistics responses format one timestamp per row, so this avoids the Joda
+ * formatter and intermediate strings on the hot read paths. The "yyyy-MM-dd" part of a timestamp
+ * is cached per day; entries are immutable, so the cache is safe to share between threads
+ * without locking.
+ */
+public final class TimestampCodec {
+
+  /** Length of "yyyy-MM-ddTHH:mm:ss.SSSZ". */
+  public static final int MILLIS_LENGTH = 24;
+
+  /** Length of "yyyy-MM-ddTHH:mm:ssZ". */
+  public static final int SECONDS_LENGTH = 20;
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  // Years outside of this range do not fit the fixed width format.
+  private static final long MIN_MILLIS = -62167219200000L; // 0000-01-01T00:00:00.000Z
+  private static final long MAX_MILLIS = 253402300799999L; // 9999-12-31T23:59:59.999Z
+
+  private static final DateTimeFormatter FALLBACK_FORMATTER =
+      ISODateTimeFormat.dateTime().withZoneUTC();
+
+  private static final int DATE_CACHE_SIZE = 1024;
+  private static final DatePrefix[] DATE_CACHE = new DatePrefix[DATE_CACHE_SIZE];
+
+  private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+  private TimestampCodec() {}
+
+  private static final class DatePrefix {
+    final long epochDay;
+    final char[] chars;
+
+    DatePrefix(long epochDay, char[] chars) {
+      this.epochDay = epochDay;
+      this.chars = chars;
+    }
+  }
+
+  /**
+   * Formats {@code millis} as "yyyy-MM-ddTHH:mm:ss.SSSZ" in UTC.
+   */
+  public static String formatMillis(long millis) {
+    if (millis < MIN_MILLIS || millis > MAX_MILLIS) {
+      return FALLBACK_FORMATTER.print(millis);
+    }
+    final char[] buf = new char[MILLIS_LENGTH];
+    formatMillis(millis, buf, 0);
+    return new String(buf);
+  }
+
+  /**
+   * Writes {@code millis} as "yyyy-MM-ddTHH:mm:ss.SSSZ" into {@code buf} starting at
+   * {@code offset}. The buffer must have room for {@link #MILLIS_LENGTH} characters.
+   */
+  public static void formatMillis(long millis, char[] buf, int offset) {
+    final int millisOfDay = writeDateAndTime(millis, buf, offset);
+    buf[offset + 19] = '.';
+    write3(millisOfDay % 1000, buf, offset + 20);
+    buf[offset + 23] = 'Z';
+  }
+
+  /**
+   * Pads the fraction of an ISO 8601 UTC timestamp, such as "2016-01-11T16:10:34.4Z" or
+   * "2016-01-11T16:10:34Z", to three digits. Timestamps that already have three or more digits
+   * are returned unchanged.
+   */
+  public static String padMillis(String timestamp) {
+    final int length = timestamp.length();
+    if (length == MILLIS_LENGTH || length < SECONDS_LENGTH) {
+      return timestamp;
+    }
+    if (length == SECONDS_LENGTH) {
+      final char[] buf = new char[MILLIS_LENGTH];
+      timestamp.getChars(0, 19, buf, 0);
+      buf[19] = '.';
+      buf[20] = '0';
+      buf[21] = '0';
+      buf[22] = '0';
+      buf[23] = 'Z';
+      return new String(buf);
+    }
+    final int digits = length - 21;
+    if (digits >= 3) {
+      return timestamp;
+    }
+    final char[] buf = new char[MILLIS_LENGTH];
+    timestamp.getChars(0, length - 1, buf, 0);
+    for (int i = length - 1; i < MILLIS_LENGTH - 1; i++) {
+      buf[i] = '0';
+    }
+    buf[23] = 'Z';
+    return new String(buf);
+  }
+
+  /**
+   * Removes the fraction from an ISO 8601 UTC timestamp, so "2016-01-11T16:10:34.470Z" becomes
+   * "2016-01-11T16:10:34Z". Timestamps without a fraction are returned unchanged.
+   */
+  public static String stripFraction(String timestamp) {
+    final int index = timestamp.indexOf('.');
+    if (index <= 0) {
+      return timestamp;
+    }
+    final char[] buf = new char[index + 1];
+    timestamp.getChars(0, index, buf, 0);
+    buf[index] = 'Z';
+    return new String(buf);
+  }
+
+  /**
+   * Parses an ISO 8601 timestamp of the form "yyyy-MM-ddTHH:mm:ss[.f*][Z|+HH:mm|+HHmm]" and returns
+   * its UTC millis. A space is accepted in place of the 'T' separator, as produced by
+   * {@link java.sql.Timestamp#toString()}. Fractions longer than three digits are truncated and a
+   * missing zone designator is taken to mean UTC.
+   *
+   * @throws IllegalArgumentException if {@code text} is not a valid timestamp
+   */
+  public static long parseMillis(CharSequence text) {
+    int start = 0;
+    int end = text.length();
+    while (start < end && Character.isWhitespace(text.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+
+    if (end - start < 19) {
+      throw invalid(text);
+    }
+
+    final int year = digits(text, start, 4);
+    expect(text, start + 4, '-');
+    final int month = digits(text, start + 5, 2);
+    expect(text, start + 7, '-');
+    final int day = digits(text, start + 8, 2);
+    final char separator = text.charAt(start + 10);
+    if (separator != 'T' && separator != ' ') {
+      throw invalid(text);
+    }
+    final int hour = digits(text, start + 11, 2);
+    expect(text, start + 13, ':');
+    final int minute = digits(text, start + 14, 2);
+    expect(text, start + 16, ':');
+    final int second = digits(text, start + 17, 2);
+
+    if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+        || (month == 2 && day == 29 && !isLeapYear(year))
+        || hour > 23 || minute > 59 || second > 59) {
+      throw invalid(text);
+    }
+
+    int pos = start + 19;
+
+    int millis = 0;
+    if (pos < end && text.charAt(pos) == '.') {
+      pos++;
+      final int fractionStart = pos;
+      int scale = 100;
+      while (pos < end && isDigit(text.charAt(pos))) {
+        if (pos - fractionStart >= 9) {
+          throw invalid(text);
+        }
+        millis += (text.charAt(pos) - '0') * scale;
+        scale /= 10;
+        pos++;
+      }
+      if (pos == fractionStart) {
+        throw invalid(text);
+      }
+    }
+
+    int offsetMinutes = 0;
+    if (pos < end) {
+      final char zone = text.charAt(pos);
+      if (zone == 'Z') {
+        pos++;
+      } else if (zone == '+' || zone == '-') {
+        final int sign = zone == '-' ? -1 : 1;
+        pos++;
+        if (pos + 2 > end) {
+          throw invalid(text);
+        }
+        final int offsetHours = digits(text, pos, 2);
+        pos += 2;
+        int offsetMins = 0;
+        if (pos < end) {
+          if (text.charAt(pos) == ':') {
+            pos++;
+          }
+          if (pos + 2 > end) {
+            throw invalid(text);
+          }
+          offsetMins = digits(text, pos, 2);
+          pos += 2;
+        }
+        if (offsetHours > 23 || offsetMins > 59) {
+          throw invalid(text);
+        }
+        offsetMinutes = sign * (offsetHours * 60 + offsetMins);
+      }
+      if (pos != end) {
+        throw invalid(text);
+      }
+    }
+
+    return epochDay(year, month, day) * MILLIS_PER_DAY
+           + ((hour * 60L + minute - offsetMinutes) * 60L + second) * 1000L
+           + millis;
+  }
+
+  private static int writeDateAndTime(long millis, char[] buf, int offset) {
+    long epochDay = millis / MILLIS_PER_DAY;
+    int millisOfDay = (int) (millis % MILLIS_PER_DAY);
+    if (millisOfDay < 0) {
+      epochDay--;
+      millisOfDay += MILLIS_PER_DAY;
+    }
+
+    System.arraycopy(datePrefix(epochDay), 0, buf, offset, 10);
+    buf[offset + 10] = 'T';
+
+    final int secondOfDay = millisOfDay / 1000;
+    write2(secondOfDay / 3600, buf, offset + 11);
+    buf[offset + 13] = ':';
+    write2((secondOfDay / 60) % 60, buf, offset + 14);
+    buf[offset + 16] = ':';
+    write2(secondOfDay % 60, buf, offset + 17);
+
+    return millisOfDay;
+  }
+
+  private static char[] datePrefix(long epochDay) {
+    final int slot = (int) (epochDay & (DATE_CACHE_SIZE - 1));
+    final DatePrefix cached = DATE_CACHE[slot];
+    if (cached != null && cached.epochDay == epochDay) {
+      return cached.chars;
+    }
+
+    // Civil date from days since 1970-01-01 in the proleptic Gregorian calendar.
+    final long z = epochDay + 719468;
+    final long era = (z >= 0 ? z : z - 146096) / 146097;
+    final long doe = z - era * 146097;
+    final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    final long mp = (5 * doy + 2) / 153;
+    final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+    final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    final int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+    final char[] chars = new char[10];
+    write2(year / 100, chars, 0);
+    write2(year % 100, chars, 2);
+    chars[4] = '-';
+    write2(month, chars, 5);
+    chars[7] = '-';
+    write2(day, chars, 8);
+
+    DATE_CACHE[slot] = new DatePrefix(epochDay, chars);
+    return chars;
+  }
+
+  private static long epochDay(int year, int month, int day) {
+    final long y = month <= 2 ? year - 1 : year;
+    final long era = (y >= 0 ? y : y - 399) / 400;
+    final long yoe = y - era * 400;
+    final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  private static void write2(int value, char[] buf, int offset) {
+    buf[offset] = (char) ('0' + value / 10);
+    buf[offset + 1] = (char) ('0' + value % 10);
+  }
+
+  private static void write3(int value, char[] buf, int offset) {
+    buf[offset] = (char) ('0' + value / 100);
+    buf[offset + 1] = (char) ('0' + (value / 10) % 10);
+    buf[offset + 2] = (char) ('0' + value % 10);
+  }
+
+  private static int digits(CharSequence text, int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; i++) {
+      final char c = text.charAt(i);
+      if (!isDigit(c)) {
+        throw invalid(text);
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static void expect(CharSequence text, int offset, char expected) {
+    if (text.charAt(offset) != expected) {
+      throw invalid(text);
+    }
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static IllegalArgumentException invalid(CharSequence text) {
+    return new IllegalArgumentException(
+        String.format("Invalid ISO 8601 timestamp: \"%1$s\"", text));
+  }
+}
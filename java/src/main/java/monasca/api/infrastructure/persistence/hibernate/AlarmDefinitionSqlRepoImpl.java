@@ -40,6 +40,7 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
@@ -50,9 +51,10 @@ import com.google.common.collect.Sets;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
 import monasca.api.infrastructure.persistence.SubAlarmDefinitionQueries;
 import monasca.common.hibernate.db.AlarmActionDb;
-import monasca.common.hibernate.db.AlarmDb;
 import monasca.common.hibernate.db.AlarmDefinitionDb;
 import monasca.common.hibernate.db.SubAlarmDefinitionDb;
 import monasca.common.hibernate.db.SubAlarmDefinitionDimensionDb;
@@ -83,6 +85,8 @@ public class AlarmDefinitionSqlRepoImpl
   private static final Joiner COMMA_JOINER = Joiner.on(',');
   private static final Splitter COMMA_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
   private static final Logger logger = LoggerFactory.getLogger(AlarmDefinitionSqlRepoImpl.class);
+  private static final int CREATE_BATCH_SIZE = 100;
+  private static final int IN_CLAUSE_BATCH_SIZE = 1000;
   private static final String FIND_ALARM_DEF_SQL = "SELECT t.id, t.tenant_id, t.name, "
       + "t.description, t.expression, t.severity, t.match_by, "
       + "t.actions_enabled, aa.alarm_state AS state, aa.action_id AS notificationIds "
@@ -93,15 +97,19 @@ public class AlarmDefinitionSqlRepoImpl
       + "WHERE ad.tenant_id = :tenantId AND ad.deleted_at IS NULL %2$s ORDER BY ad.id %3$s) AS t "
       + "LEFT OUTER JOIN alarm_action AS aa ON t.id = aa.alarm_definition_id %4$s";
 
+  private final AlarmDefinitionCache cache;
+
   @Inject
-  public AlarmDefinitionSqlRepoImpl(@Named("orm") SessionFactory sessionFactory) {
+  public AlarmDefinitionSqlRepoImpl(@Named("orm") SessionFactory sessionFactory,
+                                    AlarmDefinitionCache cache) {
     super(sessionFactory);
+    this.cache = cache;
   }
 
   @Override
   public AlarmDefinition create(String tenantId, String id, String name, String description, String severity, String expression,
                                 Map<String, AlarmSubExpression> subExpressions, List<String> matchBy, List<String> alarmActions, List<String> okActions,
-                                List<String> undeterminedActions) {
+                                List<String> undeterminedActions, List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "create(...) entering...");
 
     Transaction tx = null;
@@ -110,31 +118,15 @@ public class AlarmDefinitionSqlRepoImpl
       session = sessionFactory.openSession();
       tx = session.beginTransaction();
 
-      final DateTime now = this.getUTCNow();
-      final AlarmDefinitionDb alarmDefinition = new AlarmDefinitionDb(
-          id,
-          tenantId,
-          name,
-          description,
-          expression,
-          AlarmSeverity.valueOf(severity.toUpperCase()),
-          matchBy == null || Iterables.isEmpty(matchBy) ? null : COMMA_JOINER.join(matchBy),
-          true,
-          now,
-          now,
-          null
-      );
-      session.save(alarmDefinition);
-
-      this.createSubExpressions(session, alarmDefinition, subExpressions);
+      final AlarmDefinitionDb alarmDefinition = this.save(session, tenantId, id, name,
+          description, severity, expression, subExpressions, matchBy, alarmActions, okActions,
+          undeterminedActions);
 
-      // Persist actions
-      this.persistActions(session, alarmDefinition, AlarmState.ALARM, alarmActions);
-      this.persistActions(session, alarmDefinition, AlarmState.OK, okActions);
-      this.persistActions(session, alarmDefinition, AlarmState.UNDETERMINED, undeterminedActions);
+      EventOutboxSqlRepoImpl.insert(session, events);
 
       tx.commit();
       tx = null;
+      this.cache.invalidate(id);
 
       logger.debug(ORM_LOG_MARKER, "AlarmDefinition [ {} ] has been committed to database", alarmDefinition);
 
@@ -162,7 +154,51 @@ public class AlarmDefinitionSqlRepoImpl
   }
 
   @Override
-  public void deleteById(String tenantId, String alarmDefId) {
+  public void createAll(String tenantId, List<AlarmDefinition> alarmDefinitions,
+                        Map<String, Map<String, AlarmSubExpression>> subExpressions,
+                        Function<AlarmDefinition, List<OutboxEvent>> events) {
+    logger.trace(ORM_LOG_MARKER, "createAll(...) entering...");
+
+    for (final List<AlarmDefinition> batch : Lists.partition(alarmDefinitions, CREATE_BATCH_SIZE)) {
+      Transaction tx = null;
+      Session session = null;
+      try {
+        session = sessionFactory.openSession();
+        tx = session.beginTransaction();
+
+        final List<OutboxEvent> outboxEvents = Lists.newArrayListWithCapacity(batch.size());
+        for (final AlarmDefinition alarmDefinition : batch) {
+          this.save(session, tenantId, alarmDefinition.getId(), alarmDefinition.getName(),
+              alarmDefinition.getDescription(), alarmDefinition.getSeverity(),
+              alarmDefinition.getExpression(), subExpressions.get(alarmDefinition.getId()),
+              alarmDefinition.getMatchBy(), alarmDefinition.getAlarmActions(),
+              alarmDefinition.getOkActions(), alarmDefinition.getUndeterminedActions());
+          outboxEvents.addAll(events.apply(alarmDefinition));
+        }
+        EventOutboxSqlRepoImpl.insert(session, outboxEvents);
+
+        // The inserts are flushed in JDBC batches of hibernate.jdbc.batch_size
+        tx.commit();
+        tx = null;
+        for (final AlarmDefinition alarmDefinition : batch) {
+          this.cache.invalidate(alarmDefinition.getId());
+        }
+
+        logger.debug(ORM_LOG_MARKER, "{} AlarmDefinitions have been committed to database",
+            batch.size());
+      } catch (RuntimeException e) {
+        this.rollbackIfNotNull(tx);
+        throw e;
+      } finally {
+        if (session != null) {
+          session.close();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId, List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "deleteById(...) entering...");
 
     Session session = null;
@@ -180,14 +216,12 @@ public class AlarmDefinitionSqlRepoImpl
       result.setDeletedAt(this.getUTCNow());
       session.update(result);
 
-      // Cascade soft delete to alarms
-      session
-          .getNamedQuery(AlarmDb.Queries.DELETE_BY_ALARMDEFINITION_ID)
-          .setString("alarmDefinitionId", alarmDefId)
-          .executeUpdate();
+      // The alarms are deleted afterwards in batches, see AlarmRepo.deleteByAlarmDefinition
+      EventOutboxSqlRepoImpl.insert(session, events);
 
       tx.commit();
       tx = null;
+      this.cache.invalidate(alarmDefId);
 
       logger.debug(ORM_LOG_MARKER, "AlarmDefinition [ {} ] has been deleted from database", result);
 
@@ -233,6 +267,41 @@ public class AlarmDefinitionSqlRepoImpl
     }
   }
 
+  @Override
+  public Map<String, String> findIdsByName(final String tenantId,
+                                           final Collection<String> names) {
+    logger.trace(ORM_LOG_MARKER, "findIdsByName(...) entering...");
+
+    final Map<String, String> ids = Maps.newHashMap();
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+
+      for (final List<String> batch : Iterables.partition(names, IN_CLAUSE_BATCH_SIZE)) {
+        final List<?> rows = session
+            .createCriteria(AlarmDefinitionDb.class)
+            .add(Restrictions.eq("tenantId", tenantId))
+            .add(Restrictions.in("name", batch))
+            .add(Restrictions.isNull("deletedAt"))
+            .setProjection(Projections.projectionList()
+                .add(Projections.property("id"))
+                .add(Projections.property("name")))
+            .list();
+
+        for (final Object row : rows) {
+          final Object[] columns = (Object[]) row;
+          ids.put((String) columns[1], (String) columns[0]);
+        }
+      }
+
+      return ids;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public List<AlarmDefinition> find(String tenantId, String name, Map<String, String> dimensions,
@@ -240,7 +309,7 @@ public class AlarmDefinitionSqlRepoImpl
                                     String offset, int limit) {
     logger.trace(ORM_LOG_MARKER, "find(...) entering...");
 
-    Session session = null;
+    StatelessSession session = null;
     List<AlarmDefinition> resultSet = Lists.newArrayList();
 
     final StringBuilder sbWhere = new StringBuilder();
@@ -292,7 +361,7 @@ public class AlarmDefinitionSqlRepoImpl
     );
 
     try {
-      session = sessionFactory.openSession();
+      session = sessionFactory.openStatelessSession();
 
       final Query qAlarmDefinition = session
           .createSQLQuery(sql)
@@ -344,6 +413,12 @@ public class AlarmDefinitionSqlRepoImpl
   public AlarmDefinition findById(String tenantId, String alarmDefId) {
     logger.trace(ORM_LOG_MARKER, "findById(...) entering...");
 
+    final AlarmDefinition cached = this.cache.get(tenantId, alarmDefId);
+    if (cached != null) {
+      return cached;
+    }
+
+    final long version = this.cache.version();
     Session session = null;
     List<String> okActionIds = null;
     List<String> alarmActionIds = null;
@@ -387,7 +462,7 @@ public class AlarmDefinitionSqlRepoImpl
 
       }
 
-      return new AlarmDefinition(
+      final AlarmDefinition alarmDefinition = new AlarmDefinition(
           alarmDefinitionDb.getId(),
           alarmDefinitionDb.getName(),
           alarmDefinitionDb.getDescription(),
@@ -399,6 +474,9 @@ public class AlarmDefinitionSqlRepoImpl
           okActionIds == null ? Collections.<String>emptyList() : okActionIds,
           undeterminedActionIds == null ? Collections.<String>emptyList() : undeterminedActionIds
       );
+      this.cache.put(tenantId, alarmDefinition, version);
+
+      return alarmDefinition;
 
     } finally {
       if (session != null) {
@@ -514,7 +592,8 @@ public class AlarmDefinitionSqlRepoImpl
   @Override
   public void update(String tenantId, String id, boolean patch, String name, String description, String expression, List<String> matchBy,
                      String severity, boolean actionsEnabled, Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
-                     Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions, List<String> okActions, List<String> undeterminedActions) {
+                     Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions, List<String> okActions, List<String> undeterminedActions,
+                     List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "update(...) entering...");
 
     Transaction tx = null;
@@ -546,8 +625,11 @@ public class AlarmDefinitionSqlRepoImpl
       this.persistActions(session, alarmDefinitionDb, AlarmState.UNDETERMINED, undeterminedActions);
       // Insert new actions
 
+      EventOutboxSqlRepoImpl.insert(session, events);
+
       tx.commit();
       tx = null;
+      this.cache.invalidate(id);
     } catch (RuntimeException e) {
       this.rollbackIfNotNull(tx);
       throw e;
@@ -747,6 +829,44 @@ public class AlarmDefinitionSqlRepoImpl
     return str == null ? Lists.<String>newArrayList() : Lists.newArrayList(COMMA_SPLITTER.split(str));
   }
 
+  private AlarmDefinitionDb save(final Session session,
+                                 final String tenantId,
+                                 final String id,
+                                 final String name,
+                                 final String description,
+                                 final String severity,
+                                 final String expression,
+                                 final Map<String, AlarmSubExpression> subExpressions,
+                                 final List<String> matchBy,
+                                 final List<String> alarmActions,
+                                 final List<String> okActions,
+                                 final List<String> undeterminedActions) {
+    final DateTime now = this.getUTCNow();
+    final AlarmDefinitionDb alarmDefinition = new AlarmDefinitionDb(
+        id,
+        tenantId,
+        name,
+        description,
+        expression,
+        AlarmSeverity.valueOf(severity.toUpperCase()),
+        matchBy == null || Iterables.isEmpty(matchBy) ? null : COMMA_JOINER.join(matchBy),
+        true,
+        now,
+        now,
+        null
+    );
+    session.save(alarmDefinition);
+
+    this.createSubExpressions(session, alarmDefinition, subExpressions);
+
+    // Persist actions
+    this.persistActions(session, alarmDefinition, AlarmState.ALARM, alarmActions);
+    this.persistActions(session, alarmDefinition, AlarmState.OK, okActions);
+    this.persistActions(session, alarmDefinition, AlarmState.UNDETERMINED, undeterminedActions);
+
+    return alarmDefinition;
+  }
+
   private void createSubExpressions(Session session,
                                     AlarmDefinitionDb alarmDefinition,
                                     Map<String, AlarmSubExpression> alarmSubExpressions) {
@@ -30,6 +30,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -37,7 +38,9 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.joda.time.DateTime;
@@ -49,6 +52,11 @@ import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.alarm.DeletedAlarm;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.infrastructure.AlarmExpressionCache;
+import monasca.api.infrastructure.persistence.AlarmPageCursor;
 import monasca.common.hibernate.db.AlarmDb;
 import monasca.common.hibernate.db.SubAlarmDb;
 import monasca.common.hibernate.type.BinaryId;
@@ -71,7 +79,31 @@ public class AlarmSqlRepoImpl
   private static final Splitter SPACE_SPLITTER = Splitter.on(" ");
   private static final AlarmSortByFunction ALARM_SORT_BY_FUNCTION = new AlarmSortByFunction();
 
-  private static final String FIND_ALARM_BY_ID_SQL =
+  /**
+   * Alarms patched per transaction by {@link #patchAll}.
+   */
+  private static final int PATCH_BATCH_SIZE = 500;
+
+  /**
+   * Columns the alarm id sub query is ordered by for each sort_by field. State and severity are
+   * ranked like FIELD(...) would rank them, which is not available in every database.
+   */
+  private static final Map<String, String> SORT_BY_COLUMNS = ImmutableMap.<String, String>builder()
+      .put("alarm_id", "a.id")
+      .put("alarm_definition_id", "ad.id")
+      .put("alarm_definition_name", "ad.name")
+      .put("created_timestamp", "a.created_at")
+      .put("updated_timestamp", "a.updated_at")
+      .put("state_updated_timestamp", "a.state_updated_at")
+      .put("state", "CASE a.state WHEN 'OK' THEN 1 WHEN 'UNDETERMINED' THEN 2 "
+                    + "WHEN 'ALARM' THEN 3 ELSE 0 END")
+      .put("severity", "CASE ad.severity WHEN 'LOW' THEN 1 WHEN 'MEDIUM' THEN 2 "
+                       + "WHEN 'HIGH' THEN 3 WHEN 'CRITICAL' THEN 4 ELSE 0 END")
+      .put("lifecycle_state", "COALESCE(a.lifecycle_state, '')")
+      .put("link", "COALESCE(a.link, '')")
+      .build();
+
+  private static final String ALARM_DETAILS_SQL =
       "select distinct ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
           + "a.id, a.state, a.updatedAt, a.createdAt as created_timestamp, "
           + "md.name as metric_name, mdg.id.name, mdg.value, a.lifecycleState, a.link, a.stateUpdatedAt, "
@@ -86,11 +118,37 @@ public class AlarmSqlRepoImpl
           + " and am.alarmMetricId.alarm.id = a.id "
           + " and mdd.id = am.alarmMetricId.metricDefinitionDimensions.id "
           + " and md.id = mdd.metricDefinition.id "
-          + " and mdg.id.dimensionSetId = mdd.metricDimensionSetId "
+          + " and mdg.id.dimensionSetId = mdd.metricDimensionSetId ";
+
+  private static final String FIND_ALARM_BY_ID_SQL =
+      ALARM_DETAILS_SQL
           + " and ad.tenantId = :tenantId "
           + " %s "
           + " and ad.deletedAt is null order by a.id, mdg.id.dimensionSetId %s";
 
+  private static final String FIND_DELETED_ALARM_DEFINITIONS_SQL =
+      "select ad.id, ad.tenantId from AlarmDefinitionDb as ad where ad.deletedAt is not null "
+          + "and exists (select a.id from AlarmDb as a where a.alarmDefinition.id = ad.id)";
+
+  /**
+   * Everything of an alarm that findById returns and that can change, the state is read too as
+   * the timestamps only have a precision of seconds.
+   */
+  private static final String FIND_ALARM_VERSION_SQL =
+      "select a.state, a.lifecycleState, a.link, a.stateUpdatedAt, a.updatedAt, ad.name, "
+          + "ad.severity, "
+          + "(select count(*) from AlarmMetricDb as am where am.alarmMetricId.alarm.id = a.id) "
+          + "from AlarmDb as a, AlarmDefinitionDb as ad "
+          + "where ad.id = a.alarmDefinition.id and ad.tenantId = :tenantId "
+          + "and ad.deletedAt is null and a.id = :id";
+
+  /**
+   * Alarms of a definition being deleted, which is already soft deleted and so not filtered on.
+   */
+  private static final String FIND_ALARMS_BY_IDS_SQL =
+      ALARM_DETAILS_SQL
+          + " and a.id in (:ids) order by a.id, mdg.id.dimensionSetId";
+
   private static final String FIND_ALARMS_SQL =
       "select ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
       + "a.id, a.state, a.updated_at as updated_timestamp, a.created_at as created_timestamp, "
@@ -112,7 +170,7 @@ public class AlarmSqlRepoImpl
   }
 
   @Override
-  public void deleteById(String tenantId, String id) {
+  public void deleteById(String tenantId, String id, List<OutboxEvent> events) {
     logger.trace(ORM_LOG_MARKER, "deleteById(...) entering");
 
     Transaction tx = null;
@@ -146,8 +204,93 @@ public class AlarmSqlRepoImpl
           .setString("id", id)
           .executeUpdate();
 
+      EventOutboxSqlRepoImpl.insert(session, events);
+
+      tx.commit();
+      tx = null;
+    } catch (Exception e) {
+      this.rollbackIfNotNull(tx);
+      throw e;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<DeletedAlarm> deleteByAlarmDefinition(String alarmDefinitionId, int limit,
+                                                    Function<DeletedAlarm, List<OutboxEvent>> events) {
+    logger.trace(ORM_LOG_MARKER, "deleteByAlarmDefinition(...) entering");
+
+    Session session = null;
+    Transaction tx = null;
+    try {
+      session = sessionFactory.openSession();
+      tx = session.beginTransaction();
+
+      final List<String> ids = (List<String>) session
+          .createCriteria(AlarmDb.class, "a")
+          .add(Restrictions.eq("a.alarmDefinition.id", alarmDefinitionId))
+          .setProjection(Projections.property("a.id"))
+          .addOrder(Order.asc("a.id"))
+          .setMaxResults(limit)
+          .list();
+
+      if (ids.isEmpty()) {
+        tx.commit();
+        tx = null;
+        return Collections.emptyList();
+      }
+
+      final List<Alarm> alarms = this.createAlarms((List<Object[]>) session
+          .createQuery(FIND_ALARMS_BY_IDS_SQL)
+          .setParameterList("ids", ids)
+          .setReadOnly(true)
+          .list());
+
+      final Map<String, Map<String, AlarmSubExpression>> subAlarms = Maps.newHashMap();
+      final List<SubAlarmDb> subAlarmRows = (List<SubAlarmDb>) session
+          .createCriteria(SubAlarmDb.class)
+          .add(Restrictions.in("alarm.id", ids))
+          .setReadOnly(true)
+          .list();
+      for (SubAlarmDb row : subAlarmRows) {
+        final String alarmId = (String) session.getIdentifier(row.getAlarm());
+        Map<String, AlarmSubExpression> alarmSubAlarms = subAlarms.get(alarmId);
+        if (alarmSubAlarms == null) {
+          alarmSubAlarms = Maps.newHashMap();
+          subAlarms.put(alarmId, alarmSubAlarms);
+        }
+        alarmSubAlarms.put(row.getId(),
+                           AlarmExpressionCache.get().subExpression(row.getExpression()));
+      }
+
+      // Deletes every selected alarm, including any without metrics which the query above skips
+      session
+          .createQuery("delete from AlarmDb where id in (:ids)")
+          .setParameterList("ids", ids)
+          .executeUpdate();
+
+      final List<DeletedAlarm> deleted = Lists.newArrayListWithCapacity(alarms.size());
+      final List<OutboxEvent> outboxEvents = Lists.newArrayListWithCapacity(alarms.size());
+      for (Alarm alarm : alarms) {
+        final Map<String, AlarmSubExpression> alarmSubAlarms = subAlarms.get(alarm.getId());
+        final DeletedAlarm deletedAlarm =
+            new DeletedAlarm(alarm, alarmSubAlarms == null
+                                    ? Maps.<String, AlarmSubExpression>newHashMap()
+                                    : alarmSubAlarms);
+        deleted.add(deletedAlarm);
+        outboxEvents.addAll(events.apply(deletedAlarm));
+      }
+      EventOutboxSqlRepoImpl.insert(session, outboxEvents);
+
       tx.commit();
       tx = null;
+
+      return deleted;
     } catch (Exception e) {
       this.rollbackIfNotNull(tx);
       throw e;
@@ -156,7 +299,29 @@ public class AlarmSqlRepoImpl
         session.close();
       }
     }
+  }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public Map<String, String> findDeletedAlarmDefinitionIds() {
+    logger.trace(ORM_LOG_MARKER, "findDeletedAlarmDefinitionIds(...) entering");
+
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+      final List<Object[]> rows =
+          (List<Object[]>) session.createQuery(FIND_DELETED_ALARM_DEFINITIONS_SQL).list();
+
+      final Map<String, String> tenantIds = Maps.newHashMapWithExpectedSize(rows.size());
+      for (Object[] row : rows) {
+        tenantIds.put((String) row[0], (String) row[1]);
+      }
+      return tenantIds;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -178,10 +343,13 @@ public class AlarmSqlRepoImpl
 
     Preconditions.checkNotNull(tenantId, "TenantId is required");
 
-    Session session = null;
+    StatelessSession session = null;
 
     List<Alarm> alarms = new LinkedList<>();
 
+    final AlarmPageCursor cursor =
+        AlarmPageCursor.isCursor(offset) ? AlarmPageCursor.decode(offset, sortBy) : null;
+
     try {
       final Query query;
 
@@ -197,6 +365,7 @@ public class AlarmSqlRepoImpl
           stateUpdatedStart,
           sortBy,
           offset,
+          cursor,
           limit,
           enforceLimit
       );
@@ -204,11 +373,11 @@ public class AlarmSqlRepoImpl
       final String sql = String.format(FIND_ALARMS_SQL, alarmsSubQuery, sortByClause);
 
       try {
-        query = new Function<Session, Query>(){
+        query = new Function<StatelessSession, Query>(){
 
           @Nullable
           @Override
-          public Query apply(@Nullable final Session input) {
+          public Query apply(@Nullable final StatelessSession input) {
             assert input != null;
             final Query query = input.createSQLQuery(sql)
                 .setReadOnly(true);
@@ -253,12 +422,18 @@ public class AlarmSqlRepoImpl
               query.setInteger("limit", limit + 1);
             }
 
+            if (cursor != null) {
+              for (Map.Entry<String, Object> parameter : cursor.getParameters().entrySet()) {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+              }
+            }
+
             bindDimensionsToQuery(query, metricDimensions);
 
             return query;
           }
 
-        }.apply((session = sessionFactory.openSession()));
+        }.apply((session = sessionFactory.openStatelessSession()));
       } catch (Exception e) {
         logger.error("Failed to bind query {}, error is {}", sql, e.getMessage());
         throw new RuntimeException("Failed to bind query", e);
@@ -291,11 +466,12 @@ public class AlarmSqlRepoImpl
                                        final DateTime stateUpdatedStart,
                                        final List<String> sortBy,
                                        final String offset,
+                                       final AlarmPageCursor cursor,
                                        final int limit,
                                        final boolean enforceLimit) {
     final StringBuilder
         sbWhere =
-        new StringBuilder("(select distinct a.id "
+        new StringBuilder("(select a.id "
             + "from alarm as a, alarm_definition as ad "
             + "where ad.id = a.alarm_definition_id "
             + "  and ad.deleted_at is null "
@@ -363,10 +539,16 @@ public class AlarmSqlRepoImpl
       sbWhere.append(" and a.state_updated_at >= :stateUpdatedStart");
     }
 
+    if (cursor != null) {
+      sbWhere.append(cursor.seekPredicate(SORT_BY_COLUMNS));
+    }
+
+    sbWhere.append(AlarmPageCursor.orderBy(sortBy, SORT_BY_COLUMNS));
+
     if (enforceLimit && limit > 0) {
       sbWhere.append(" limit :limit");
     }
-    if (offset != null) {
+    if (offset != null && cursor == null) {
       sbWhere.append(" offset ");
       sbWhere.append(offset);
       sbWhere.append(' ');
@@ -471,12 +653,12 @@ public class AlarmSqlRepoImpl
   public Alarm findById(String tenantId, String id) {
     logger.trace(ORM_LOG_MARKER, "findById(...) entering");
 
-    Session session = null;
+    StatelessSession session = null;
 
     final String sql = String.format(FIND_ALARM_BY_ID_SQL, " and a.id = :id", "");
     List<Alarm> alarms = new LinkedList<>();
     try {
-      session = sessionFactory.openSession();
+      session = sessionFactory.openStatelessSession();
       Query qAlarmDefinition =
           session.createQuery(sql).setString("tenantId", tenantId)
               .setString("id", id);
@@ -496,6 +678,30 @@ public class AlarmSqlRepoImpl
     return alarms.get(0);
   }
 
+  @Override
+  public String findVersion(String tenantId, String id) {
+    logger.trace(ORM_LOG_MARKER, "findVersion(...) entering");
+
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+      final Object[] version = (Object[]) session.createQuery(FIND_ALARM_VERSION_SQL)
+          .setString("tenantId", tenantId)
+          .setString("id", id)
+          .uniqueResult();
+
+      if (version == null) {
+        throw new EntityNotFoundException("No alarm exists for %s", id);
+      }
+
+      return Joiner.on('|').useForNull("").join(version);
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   @Override
   public Alarm update(String tenantId, String id, AlarmState state, String lifecycleState, String link) {
     Session session = null;
@@ -535,29 +741,130 @@ public class AlarmSqlRepoImpl
   }
 
   @Override
+  public AlarmUpdate patch(String tenantId, String id, AlarmState state, String lifecycleState,
+                           String link, Function<AlarmUpdate, List<OutboxEvent>> events) {
+    final List<AlarmUpdate> updates = this.patchAll(tenantId, Collections.singletonList(id), state,
+                                                    lifecycleState, link, events);
+
+    if (updates.isEmpty()) {
+      throw new EntityNotFoundException("No alarm exists for %s", id);
+    }
+    return updates.get(0);
+  }
+
+  @Override
+  public List<AlarmUpdate> patchAll(String tenantId, List<String> ids, AlarmState state,
+                                    String lifecycleState, String link,
+                                    Function<AlarmUpdate, List<OutboxEvent>> events) {
+    logger.trace(ORM_LOG_MARKER, "patchAll(...) entering");
+
+    final List<AlarmUpdate> updates = Lists.newArrayListWithCapacity(ids.size());
+
+    for (final List<String> batch : Lists.partition(ids, PATCH_BATCH_SIZE)) {
+      Session session = null;
+      Transaction tx = null;
+      try {
+        session = sessionFactory.openSession();
+        tx = session.beginTransaction();
+
+        final List<OutboxEvent> outboxEvents = Lists.newArrayList();
+        for (final String id : batch) {
+          final AlarmUpdate update = this.patch(session, tenantId, id, state, lifecycleState, link);
+          if (update != null) {
+            updates.add(update);
+            outboxEvents.addAll(events.apply(update));
+          }
+        }
+        EventOutboxSqlRepoImpl.insert(session, outboxEvents);
+
+        tx.commit();
+        tx = null;
+      } catch (Exception e) {
+        this.rollbackIfNotNull(tx);
+        throw e;
+      } finally {
+        if (session != null) {
+          session.close();
+        }
+      }
+    }
+    return updates;
+  }
+
+  /**
+   * @return the update, or null if the alarm does not exist
+   */
   @SuppressWarnings("unchecked")
+  private AlarmUpdate patch(Session session, String tenantId, String id, AlarmState state,
+                            String lifecycleState, String link) {
+    final String sql = String.format(FIND_ALARM_BY_ID_SQL, " and a.id = :id", "");
+    final List<Object[]> alarmList = (List<Object[]>) session.createQuery(sql)
+        .setString("tenantId", tenantId)
+        .setString("id", id)
+        .list();
+
+    if (alarmList.isEmpty()) {
+      return null;
+    }
+
+    final Alarm originalAlarm = this.createAlarms(alarmList).get(0);
+    final Map<String, AlarmSubExpression> subAlarms = this.findAlarmSubExpressions(session, id);
+
+    final AlarmDb result = (AlarmDb) session
+        .getNamedQuery(AlarmDb.Queries.FIND_BY_ID)
+        .setString("id", id)
+        .uniqueResult();
+
+    final AlarmState newState = state == null ? originalAlarm.getState() : state;
+    final String newLifecycleState =
+        lifecycleState == null ? originalAlarm.getLifecycleState() : lifecycleState;
+    final String newLink = link == null ? originalAlarm.getLink() : link;
+
+    if (!originalAlarm.getState().equals(newState)) {
+      result.setStateUpdatedAt(this.getUTCNow());
+      result.setState(newState);
+    }
+
+    result.setUpdatedAt(this.getUTCNow());
+    result.setLink(newLink);
+    result.setLifecycleState(newLifecycleState);
+    session.update(result);
+
+    return new AlarmUpdate(originalAlarm,
+                           result.getAlarmDefinition().getDescription(),
+                           result.getAlarmDefinition().isActionsEnabled(),
+                           subAlarms, newState, newLifecycleState, newLink);
+  }
+
+  @Override
   public Map<String, AlarmSubExpression> findAlarmSubExpressions(String alarmId) {
     Session session = null;
-    final Map<String, AlarmSubExpression> subAlarms = Maps.newHashMap();
     logger.debug("AlarmSqlRepoImpl[findAlarmSubExpressions] called");
     try {
-
       session = sessionFactory.openSession();
-      final List<SubAlarmDb> result = session
-          .getNamedQuery(SubAlarmDb.Queries.BY_ALARM_ID)
-          .setString("id", alarmId)
-          .list();
-
-      if (result != null) {
-        for (SubAlarmDb row : result) {
-          subAlarms.put(row.getId(), AlarmSubExpression.of(row.getExpression()));
-        }
-      }
+      return this.findAlarmSubExpressions(session, alarmId);
     } finally {
       if (session != null) {
         session.close();
       }
     }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, AlarmSubExpression> findAlarmSubExpressions(Session session,
+                                                                  String alarmId) {
+    final Map<String, AlarmSubExpression> subAlarms = Maps.newHashMap();
+    final List<SubAlarmDb> result = session
+        .getNamedQuery(SubAlarmDb.Queries.BY_ALARM_ID)
+        .setString("id", alarmId)
+        .list();
+
+    if (result != null) {
+      for (SubAlarmDb row : result) {
+        subAlarms.put(row.getId(),
+                      AlarmExpressionCache.get().subExpression(row.getExpression()));
+      }
+    }
     return subAlarms;
   }
 
@@ -594,7 +901,7 @@ public class AlarmSqlRepoImpl
 
         final String id = row.getId();
         final String expression = row.getExpression();
-        alarmMap.put(id, AlarmSubExpression.of(expression));
+        alarmMap.put(id, AlarmExpressionCache.get().subExpression(expression));
       }
 
       tx.commit();
@@ -644,6 +951,10 @@ public class AlarmSqlRepoImpl
           Lists.newArrayList("a.state='OK'", "a.state='UNDETERMINED'", "a.state='ALARM'"));
       SORT_BY_TO_COLUMN_ALIAS.put("severity",
           Lists.newArrayList("ad.severity='LOW'", "ad.severity='MEDIUM'", "ad.severity='HIGH'", "ad.severity='CRITICAL'"));
+      SORT_BY_TO_COLUMN_ALIAS.put("lifecycle_state",
+          Lists.newArrayList("COALESCE(a.lifecycle_state, '')"));
+      SORT_BY_TO_COLUMN_ALIAS.put("link",
+          Lists.newArrayList("COALESCE(a.link, '')"));
     }
 
     @Nullable
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import com.google.common.collect.Lists;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import monasca.api.domain.model.event.EventOutboxRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.common.util.Conversions;
+
+/**
+ * Event outbox repository implementation. The outbox is not mapped to an entity, it is read and
+ * written with plain SQL which both MySQL and PostgreSQL understand.
+ */
+public class EventOutboxSqlRepoImpl
+    extends BaseSqlRepo
+    implements EventOutboxRepo {
+  private static final Logger logger = LoggerFactory.getLogger(EventOutboxSqlRepoImpl.class);
+
+  private static final String INSERT_EVENT_SQL =
+      "insert into event_outbox (topic, message_key, message, created_at) values (?, ?, ?, ?)";
+
+  private static final String FIND_OLDEST_EVENTS_SQL =
+      "select id, topic, message_key, message, created_at from event_outbox "
+      + "order by id limit :limit for update";
+
+  private static final String DELETE_EVENTS_SQL = "delete from event_outbox where id in (:ids)";
+
+  @Inject
+  public EventOutboxSqlRepoImpl(@Named("orm") SessionFactory sessionFactory) {
+    super(sessionFactory);
+  }
+
+  /**
+   * Writes the events to the outbox in the transaction of the session, as one JDBC batch.
+   */
+  static void insert(Session session, final List<OutboxEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    final Timestamp now = new Timestamp(System.currentTimeMillis());
+    session.doWork(new Work() {
+      @Override
+      public void execute(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_EVENT_SQL)) {
+          for (OutboxEvent event : events) {
+            statement.setString(1, event.getTopic());
+            statement.setString(2, event.getKey());
+            statement.setString(3, event.getMessage());
+            statement.setTimestamp(4, now);
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public int publishOldest(int limit, Publisher publisher) {
+    logger.trace(ORM_LOG_MARKER, "publishOldest(...) entering");
+
+    Session session = null;
+    Transaction tx = null;
+    try {
+      session = sessionFactory.openSession();
+      tx = session.beginTransaction();
+
+      final List<Object[]> rows = (List<Object[]>) session
+          .createSQLQuery(FIND_OLDEST_EVENTS_SQL)
+          .setInteger("limit", limit)
+          .list();
+
+      if (rows.isEmpty()) {
+        tx.commit();
+        tx = null;
+        return 0;
+      }
+
+      final List<OutboxEvent> events = Lists.newArrayListWithCapacity(rows.size());
+      final List<Long> ids = Lists.newArrayListWithCapacity(rows.size());
+      for (Object[] row : rows) {
+        final long id = ((Number) row[0]).longValue();
+        ids.add(id);
+        events.add(new OutboxEvent(id, (String) row[1], (String) row[2], (String) row[3],
+                                   Conversions.variantToDateTime(row[4])));
+      }
+
+      publisher.publish(events);
+
+      session
+          .createSQLQuery(DELETE_EVENTS_SQL)
+          .setParameterList("ids", ids)
+          .executeUpdate();
+
+      tx.commit();
+      tx = null;
+
+      return events.size();
+    } catch (Exception e) {
+      this.rollbackIfNotNull(tx);
+      throw e;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+}
@@ -14,7 +14,9 @@
  */
 package monasca.api.infrastructure.persistence.hibernate;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -26,7 +28,10 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +40,7 @@ import monasca.api.domain.exception.EntityExistsException;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
 import monasca.common.hibernate.db.NotificationMethodDb;
 import monasca.common.model.alarm.AlarmNotificationMethodType;
 
@@ -47,9 +53,13 @@ public class NotificationMethodSqlRepoImpl
   private static final Joiner COMMA_JOINER = Joiner.on(',');
   private static final Logger LOG = LoggerFactory.getLogger(NotificationMethodSqlRepoImpl.class);
 
+  private final NotificationMethodIdCache idCache;
+
   @Inject
-  public NotificationMethodSqlRepoImpl(@Named("orm") SessionFactory sessionFactory) {
+  public NotificationMethodSqlRepoImpl(@Named("orm") SessionFactory sessionFactory,
+                                       NotificationMethodIdCache idCache) {
     super(sessionFactory);
+    this.idCache = idCache;
   }
 
   @Override
@@ -122,6 +132,7 @@ public class NotificationMethodSqlRepoImpl
         session.close();
       }
     }
+    idCache.invalidate(tenantId);
   }
 
   @Override
@@ -137,6 +148,35 @@ public class NotificationMethodSqlRepoImpl
     }
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean existsAll(String tenantId, Collection<String> notificationMethodIds) {
+    final long version = idCache.version();
+    final Set<String> unknownIds = idCache.unknown(tenantId, notificationMethodIds);
+    if (unknownIds.isEmpty()) {
+      return true;
+    }
+
+    StatelessSession session = null;
+    try {
+      session = sessionFactory.openStatelessSession();
+
+      final List<String> foundIds = (List<String>) session
+          .createCriteria(NotificationMethodDb.class)
+          .add(Restrictions.eq("tenantId", tenantId))
+          .add(Restrictions.in("id", unknownIds))
+          .setProjection(Projections.property("id"))
+          .list();
+
+      idCache.addAll(tenantId, foundIds, version);
+      return foundIds.size() == unknownIds.size();
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   @Override
   public NotificationMethod findById(String tenantId, String notificationMethodId) {
     Session session = null;
@@ -205,13 +245,13 @@ public class NotificationMethodSqlRepoImpl
   @SuppressWarnings("unchecked")
   public List<NotificationMethod> find(String tenantId, List<String> sortBy, String offset,
                                        int limit) {
-    Session session = null;
+    StatelessSession session = null;
     List<NotificationMethodDb> resultList;
     List<NotificationMethod> notificationList = Lists.newArrayList();
     final String rawQuery = "from NotificationMethodDb where tenant_id = :tenantId %1$s";
 
     try {
-      session = sessionFactory.openSession();
+      session = sessionFactory.openStatelessSession();
 
       final StringBuilder orderByPart = new StringBuilder();
       if (sortBy != null && !sortBy.isEmpty()) {
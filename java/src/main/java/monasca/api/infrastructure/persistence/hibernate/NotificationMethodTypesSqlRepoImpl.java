@@ -21,7 +21,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.hibernate.Query;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.SessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,11 +47,11 @@ public class NotificationMethodTypesSqlRepoImpl
   @SuppressWarnings("unchecked")
   public List<String> listNotificationMethodTypes() {
 
-    Session session = null;
+    StatelessSession session = null;
     List<String> notification_method_types = new ArrayList<String>();
 
     try {
-      session = sessionFactory.openSession();
+      session = sessionFactory.openStatelessSession();
       //Query q = session.createSQLQuery("Select * from notification_method_type").addEntity(String.class);
       Query q = session.createQuery("from NotificationMethodTypesDb");
 
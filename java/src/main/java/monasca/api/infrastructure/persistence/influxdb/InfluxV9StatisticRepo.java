@@ -36,6 +36,7 @@ import monasca.api.ApiConfig;
 import monasca.api.domain.exception.MultipleMetricsException;
 import monasca.api.domain.model.statistic.StatisticRepo;
 import monasca.api.domain.model.statistic.Statistics;
+import monasca.api.infrastructure.persistence.TimestampCodec;
 
 
 public class InfluxV9StatisticRepo implements StatisticRepo {
@@ -225,14 +226,9 @@ public class InfluxV9StatisticRepo implements StatisticRepo {
     ArrayList<Object> valObjArryList = new ArrayList<>();
 
     // First value is the timestamp.
-    String timestamp = values[0].toString();
-    int index = timestamp.indexOf('.');
-    if (index > 0)
-      // In certain queries, timestamps will not align to second resolution,
-      // remove the sub-second values.
-      valObjArryList.add(timestamp.substring(0,index).concat("Z"));
-    else
-      valObjArryList.add(timestamp);
+    // In certain queries, timestamps will not align to second resolution,
+    // remove the sub-second values.
+    valObjArryList.add(TimestampCodec.stripFraction(values[0].toString()));
 
     // All other values are doubles or nulls.
     for (int i = 1; i < values.length; ++i) {
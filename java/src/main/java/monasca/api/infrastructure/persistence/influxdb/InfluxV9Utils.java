@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import monasca.api.infrastructure.persistence.TimestampCodec;
 import monasca.common.util.Conversions;
 
 public class InfluxV9Utils {
@@ -297,16 +298,7 @@ public class InfluxV9Utils {
   }
 
   public String threeDigitMillisTimestamp(String origTimestamp) {
-    final int length = origTimestamp.length();
-    final String timestamp;
-    if (length == 20) {
-      timestamp = origTimestamp.substring(0, 19) + ".000Z";
-    } else {
-      final String millisecond = origTimestamp.substring(20, length - 1);
-      final String millisecond_3d = StringUtils.rightPad(millisecond, 3, '0');
-      timestamp = origTimestamp.substring(0, 19) + '.' + millisecond_3d + 'Z';
-    }
-    return timestamp;
+    return TimestampCodec.padMillis(origTimestamp);
   }
 
   public List<String> parseMultiOffset(String offsetStr) {
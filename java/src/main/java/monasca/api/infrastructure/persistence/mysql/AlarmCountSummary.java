@@ -0,0 +1,434 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import monasca.api.ApiConfig;
+import monasca.common.model.alarm.AlarmSeverity;
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * In memory alarm counts per tenant, state, severity, lifecycle state and alarm definition.
+ *
+ * <p>The counts are reloaded from the database with one grouped query at a fixed interval, which
+ * also corrects changes made outside of the API, such as state transitions by the threshold
+ * engine. Alarm updates and deletes made through the API are applied right away. A tenant whose
+ * alarm definitions are updated or deleted, or whose alarms changed while the counts were being
+ * reloaded, is left out until the next reload.
+ *
+ * <p>Counts that filter or group on anything other than the kept columns, or that are asked for
+ * before the first load or for a tenant that is left out, are not answered and must be counted
+ * in the database.
+ *
+ * <p>The counts are only reloaded while they are asked for. When no counts were asked for since
+ * the previous reload they are dropped instead, and the next request is counted in the database
+ * while the counts are loaded again.
+ */
+public class AlarmCountSummary implements Managed {
+
+  private static final Logger logger = LoggerFactory.getLogger(AlarmCountSummary.class);
+
+  public static final Set<String> SUPPORTED_GROUP_BY =
+      ImmutableSet.of("alarm_definition_id", "state", "severity", "lifecycle_state");
+
+  private static final String LOAD_SQL =
+      "select ad.tenant_id, a.state, ad.severity, a.lifecycle_state, "
+      + "ad.id as alarm_definition_id, count(*) as count "
+      + "from alarm as a inner join alarm_definition as ad on ad.id = a.alarm_definition_id "
+      + "where ad.deleted_at is null "
+      + "group by ad.tenant_id, a.state, ad.severity, a.lifecycle_state, ad.id";
+
+  /**
+   * Orders group values like the database orders the group_by columns: nulls first, then case
+   * insensitive.
+   */
+  private static final Comparator<List<Object>> GROUP_ORDER = new Comparator<List<Object>>() {
+    @Override
+    public int compare(List<Object> o1, List<Object> o2) {
+      for (int i = 0; i < o1.size(); i++) {
+        String v1 = (String) o1.get(i);
+        String v2 = (String) o2.get(i);
+        if (v1 == null || v2 == null) {
+          if (v1 != v2) {
+            return v1 == null ? -1 : 1;
+          }
+          continue;
+        }
+        int result = String.CASE_INSENSITIVE_ORDER.compare(v1, v2);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return 0;
+    }
+  };
+
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final DBI db;
+  private final long reloadMillis;
+  private ScheduledExecutorService executor;
+
+  private final Object lock = new Object();
+  // Guarded by lock
+  private Map<String, Map<Key, Long>> counts;
+  // Guarded by lock, the tenants changed while a reload is running, or null if none is
+  private Set<String> changedDuringLoad;
+  // Guarded by lock, whether counts were asked for since the previous reload
+  private boolean requested;
+
+  private final Meter answered;
+  private final Meter fallbacks;
+
+  @Inject
+  public AlarmCountSummary(@Named("mysql") DBI db, ApiConfig config,
+                           MetricRegistry metricRegistry) {
+    this(db,
+         config.alarmCountSummary.enabled
+         ? config.alarmCountSummary.reloadInterval.toMilliseconds() : 0,
+         metricRegistry);
+  }
+
+  /**
+   * @param reloadMillis interval between reloads, 0 creates a summary that is never loaded
+   */
+  AlarmCountSummary(DBI db, long reloadMillis, MetricRegistry metricRegistry) {
+    this.db = db;
+    this.reloadMillis = reloadMillis;
+
+    this.answered =
+        metricRegistry.meter(MetricRegistry.name(AlarmCountSummary.class, "answered"));
+    this.fallbacks =
+        metricRegistry.meter(MetricRegistry.name(AlarmCountSummary.class, "fallbacks"));
+  }
+
+  @Override
+  public void start() {
+    if (this.reloadMillis > 0) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("alarm-count-summary").build());
+      this.executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          reload();
+        }
+      }, 0, this.reloadMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        this.executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Returns the count rows the database would return for the filters and group_by, with a
+   * "count" column followed by the group_by columns, or null if they cannot be answered from
+   * memory.
+   */
+  public List<Map<String, Object>> count(String tenantId, String alarmDefId, AlarmState state,
+                                         List<AlarmSeverity> severities, String lifecycleState,
+                                         List<String> groupBy, String offset, int limit) {
+
+    if (groupBy != null && !SUPPORTED_GROUP_BY.containsAll(groupBy)) {
+      this.fallbacks.mark();
+      return null;
+    }
+
+    Map<List<Object>, Long> groups = new HashMap<>();
+
+    synchronized (lock) {
+      this.requested = true;
+
+      if (this.counts == null
+          || this.counts.containsKey(tenantId) && this.counts.get(tenantId) == null) {
+        this.fallbacks.mark();
+        return null;
+      }
+
+      // A tenant without counts had no alarms when the counts were loaded.
+      Map<Key, Long> tenantCounts = this.counts.containsKey(tenantId)
+                                    ? this.counts.get(tenantId)
+                                    : Collections.<Key, Long>emptyMap();
+
+      for (Map.Entry<Key, Long> entry : tenantCounts.entrySet()) {
+        Key key = entry.getKey();
+        if (alarmDefId != null && !alarmDefId.equals(key.alarmDefinitionId)
+            || state != null && !state.name().equals(key.state)
+            || severities != null && !severities.isEmpty() && !containsSeverity(severities,
+                                                                                key.severity)
+            || lifecycleState != null && !lifecycleState.equals(key.lifecycleState)) {
+          continue;
+        }
+
+        List<Object> group = new ArrayList<>();
+        if (groupBy != null) {
+          for (String column : groupBy) {
+            group.add(key.get(column));
+          }
+        }
+
+        Long count = groups.get(group);
+        groups.put(group, count == null ? entry.getValue() : count + entry.getValue());
+      }
+    }
+
+    this.answered.mark();
+
+    List<Map<String, Object>> rows = new ArrayList<>();
+
+    if (groupBy == null) {
+      Long count = groups.get(Collections.emptyList());
+      rows.add(Collections.<String, Object>singletonMap("count", count == null ? 0L : count));
+      return rows;
+    }
+
+    List<List<Object>> sortedGroups = new ArrayList<>(groups.keySet());
+    Collections.sort(sortedGroups, GROUP_ORDER);
+
+    int first = offset == null ? 0 : Integer.parseInt(offset);
+    // Like the query, return one more row than the limit so that paging can tell there are more.
+    int last = Math.min(sortedGroups.size(), first + limit + 1);
+
+    for (int i = first; i < last; i++) {
+      List<Object> group = sortedGroups.get(i);
+      Map<String, Object> row = new LinkedHashMap<>();
+      row.put("count", groups.get(group));
+      for (int j = 0; j < groupBy.size(); j++) {
+        row.put(groupBy.get(j), group.get(j));
+      }
+      rows.add(row);
+    }
+
+    return rows;
+  }
+
+  /**
+   * Records that an alarm changed from one state and lifecycle state to another.
+   */
+  public void updated(String tenantId, String alarmDefinitionId, String severity,
+                      AlarmState oldState, String oldLifecycleState,
+                      AlarmState newState, String newLifecycleState) {
+    synchronized (lock) {
+      Map<Key, Long> tenantCounts = tenantCounts(tenantId);
+      if (tenantCounts != null) {
+        add(tenantCounts, new Key(oldState.name(), severity, oldLifecycleState,
+                                  alarmDefinitionId), -1);
+        add(tenantCounts, new Key(newState.name(), severity, newLifecycleState,
+                                  alarmDefinitionId), 1);
+      }
+    }
+  }
+
+  /**
+   * Records that an alarm was deleted.
+   */
+  public void deleted(String tenantId, String alarmDefinitionId, String severity,
+                      AlarmState state, String lifecycleState) {
+    synchronized (lock) {
+      Map<Key, Long> tenantCounts = tenantCounts(tenantId);
+      if (tenantCounts != null) {
+        add(tenantCounts, new Key(state.name(), severity, lifecycleState, alarmDefinitionId), -1);
+      }
+    }
+  }
+
+  /**
+   * Leaves the tenant out until the next reload, for changes that cannot be applied to the counts.
+   */
+  public void invalidate(String tenantId) {
+    synchronized (lock) {
+      if (this.counts != null) {
+        this.counts.put(tenantId, null);
+      }
+      if (this.changedDuringLoad != null) {
+        this.changedDuringLoad.add(tenantId);
+      }
+    }
+  }
+
+  /**
+   * Returns the counts of the tenant to change, or null if the tenant is left out. Must hold the
+   * lock.
+   */
+  private Map<Key, Long> tenantCounts(String tenantId) {
+    if (this.changedDuringLoad != null) {
+      this.changedDuringLoad.add(tenantId);
+    }
+    if (this.counts == null) {
+      return null;
+    }
+    if (!this.counts.containsKey(tenantId)) {
+      // The tenant had no alarms when the counts were loaded.
+      this.counts.put(tenantId, new HashMap<Key, Long>());
+    }
+    return this.counts.get(tenantId);
+  }
+
+  private static void add(Map<Key, Long> tenantCounts, Key key, long delta) {
+    Long count = tenantCounts.get(key);
+    long newCount = (count == null ? 0 : count) + delta;
+    if (newCount > 0) {
+      tenantCounts.put(key, newCount);
+    } else {
+      tenantCounts.remove(key);
+    }
+  }
+
+  private static boolean containsSeverity(List<AlarmSeverity> severities, String severity) {
+    for (AlarmSeverity alarmSeverity : severities) {
+      if (alarmSeverity.name().equals(severity)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void reload() {
+    synchronized (lock) {
+      if (!this.requested) {
+        // Nobody is using the counts, stop keeping them current.
+        this.counts = null;
+        return;
+      }
+      this.requested = false;
+      this.changedDuringLoad = new HashSet<>();
+    }
+
+    Map<String, Map<Key, Long>> loaded = new HashMap<>();
+
+    try (Handle h = this.db.open();
+         ResultIterator<Map<String, Object>> rows = h.createQuery(LOAD_SQL).iterator()) {
+
+      while (rows.hasNext()) {
+        Map<String, Object> row = rows.next();
+        String tenantId = (String) row.get("tenant_id");
+        Map<Key, Long> tenantCounts = loaded.get(tenantId);
+        if (tenantCounts == null) {
+          tenantCounts = new HashMap<>();
+          loaded.put(tenantId, tenantCounts);
+        }
+        tenantCounts.put(new Key((String) row.get("state"), (String) row.get("severity"),
+                                 (String) row.get("lifecycle_state"),
+                                 (String) row.get("alarm_definition_id")),
+                         ((Number) row.get("count")).longValue());
+      }
+
+    } catch (RuntimeException e) {
+      logger.warn("Failed to reload alarm counts", e);
+      synchronized (lock) {
+        this.changedDuringLoad = null;
+      }
+      return;
+    }
+
+    synchronized (lock) {
+      // The loaded counts of these tenants may or may not include their latest changes.
+      for (String tenantId : this.changedDuringLoad) {
+        loaded.put(tenantId, null);
+      }
+      this.changedDuringLoad = null;
+      this.counts = loaded;
+    }
+  }
+
+  /**
+   * Loads the counts, for tests.
+   */
+  void load(Map<String, Map<Key, Long>> loaded) {
+    synchronized (lock) {
+      this.counts = loaded;
+    }
+  }
+
+  static final class Key {
+    final String state;
+    final String severity;
+    final String lifecycleState;
+    final String alarmDefinitionId;
+
+    Key(String state, String severity, String lifecycleState, String alarmDefinitionId) {
+      this.state = state;
+      this.severity = severity;
+      this.lifecycleState = lifecycleState;
+      this.alarmDefinitionId = alarmDefinitionId;
+    }
+
+    Object get(String column) {
+      switch (column) {
+        case "state":
+          return state;
+        case "severity":
+          return severity;
+        case "lifecycle_state":
+          return lifecycleState;
+        default:
+          return alarmDefinitionId;
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return Objects.equals(state, other.state) && Objects.equals(severity, other.severity)
+             && Objects.equals(lifecycleState, other.lifecycleState)
+             && Objects.equals(alarmDefinitionId, other.alarmDefinitionId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(state, severity, lifecycleState, alarmDefinitionId);
+    }
+  }
+}
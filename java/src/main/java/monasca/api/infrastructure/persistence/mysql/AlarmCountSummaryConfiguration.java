@@ -0,0 +1,38 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the in memory alarm counts that answer GET /v2.0/alarms/count.
+ */
+public class AlarmCountSummaryConfiguration {
+
+  /**
+   * Off by default, since state transitions made by the threshold engine show up in the counts
+   * only after the next reload.
+   */
+  @JsonProperty
+  public boolean enabled = false;
+
+  /**
+   * How often the counts are reloaded from the database while they are asked for. Alarm state
+   * transitions made by the threshold engine show up in the counts after at most this long.
+   */
+  @JsonProperty
+  public Duration reloadInterval = Duration.seconds(10);
+}
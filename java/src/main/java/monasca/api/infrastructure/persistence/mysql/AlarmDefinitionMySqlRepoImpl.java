@@ -13,6 +13,7 @@
  */
 package monasca.api.infrastructure.persistence.mysql;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,13 +28,16 @@ import javax.inject.Named;
 
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.Query;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.StatementContext;
 
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
 
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AggregateFunction;
 import monasca.common.model.alarm.AlarmOperator;
@@ -45,6 +49,7 @@ import monasca.common.util.Conversions;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.api.infrastructure.persistence.DimensionQueries;
 import monasca.api.infrastructure.persistence.SubAlarmDefinitionQueries;
 
@@ -60,46 +65,65 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       "select sa.*, sad.dimensions from sub_alarm_definition as sa "
           + "left join (select sub_alarm_definition_id, group_concat(dimension_name, '=', value) as dimensions from sub_alarm_definition_dimension group by sub_alarm_definition_id ) as sad "
           + "on sad.sub_alarm_definition_id = sa.id where sa.alarm_definition_id = :alarmDefId";
+  private static final String CREATE_ALARM_DEFINITION_SQL = "insert into alarm_definition "
+          + "(id, tenant_id, name, description, severity, expression, match_by, actions_enabled, "
+          + "created_at, updated_at, deleted_at) "
+          + "values (?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW(), NULL)";
   private static final String CREATE_SUB_EXPRESSION_SQL = "insert into sub_alarm_definition "
           + "(id, alarm_definition_id, function, metric_name, "
           + "operator, threshold, period, periods, is_deterministic, "
           + "created_at, updated_at) "
           + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW())";
+  private static final String CREATE_SUB_EXPRESSION_DIMENSION_SQL =
+      "insert into sub_alarm_definition_dimension values (?, ?, ?)";
+  private static final String CREATE_ACTION_SQL = "insert into alarm_action values (?, ?, ?)";
   private static final String UPDATE_SUB_ALARM_DEF_SQL = "update sub_alarm_definition set "
       + "operator = ?, threshold = ?, is_deterministic = ?, updated_at = NOW() where id = ?";
+  private static final String FIND_IDS_BY_NAME_SQL = "select id, name from alarm_definition "
+      + "where tenant_id = :tenantId and name in (%s) and deleted_at is NULL";
+  private static final int CREATE_BATCH_SIZE = 100;
+  private static final int IN_CLAUSE_BATCH_SIZE = 1000;
 
   private final DBI db;
   private final PersistUtils persistUtils;
+  private final AlarmCountSummary alarmCountSummary;
+  private final AlarmDefinitionCache cache;
 
   @Inject
-  public AlarmDefinitionMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils) {
+  public AlarmDefinitionMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils,
+                                      AlarmCountSummary alarmCountSummary,
+                                      AlarmDefinitionCache cache) {
     this.db = db;
     this.persistUtils = persistUtils;
+    this.alarmCountSummary = alarmCountSummary;
+    this.cache = cache;
   }
 
   @Override
   public AlarmDefinition create(String tenantId, String id, String name, String description,
       String severity, String expression, Map<String, AlarmSubExpression> subExpressions,
       List<String> matchBy, List<String> alarmActions, List<String> okActions,
-      List<String> undeterminedActions) {
+      List<String> undeterminedActions, List<OutboxEvent> events) {
     Handle h = db.open();
 
     try {
       h.begin();
-      h.insert(
-          "insert into alarm_definition (id, tenant_id, name, description, severity, expression, match_by, actions_enabled, created_at, updated_at, deleted_at) values (?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW(), NULL)",
-          id, tenantId, name, description, severity, expression,
-          matchBy == null || Iterables.isEmpty(matchBy) ? null : COMMA_JOINER.join(matchBy), true);
+      final Inserts inserts = new Inserts(h);
+      inserts.addAlarmDefinition(tenantId, id, name, description, severity, expression, matchBy);
 
       // Persist sub-alarms
-      createSubExpressions(h, id, subExpressions);
+      inserts.addSubExpressions(id, subExpressions);
 
       // Persist actions
-      persistActions(h, id, AlarmState.ALARM, alarmActions);
-      persistActions(h, id, AlarmState.OK, okActions);
-      persistActions(h, id, AlarmState.UNDETERMINED, undeterminedActions);
+      inserts.addActions(id, AlarmState.ALARM, alarmActions);
+      inserts.addActions(id, AlarmState.OK, okActions);
+      inserts.addActions(id, AlarmState.UNDETERMINED, undeterminedActions);
+
+      inserts.execute();
+      EventOutboxMySqlRepoImpl.insert(h, events);
 
       h.commit();
+      cache.invalidate(id);
       return new AlarmDefinition(id, name, description, severity, expression, matchBy, true,
           alarmActions, okActions == null ? Collections.<String>emptyList() : okActions,
           undeterminedActions == null ? Collections.<String>emptyList() : undeterminedActions);
@@ -112,16 +136,66 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
   }
 
   @Override
-  public void deleteById(String tenantId, String alarmDefId) {
-    try (Handle h = db.open()) {
+  public void createAll(String tenantId, List<AlarmDefinition> alarmDefinitions,
+      Map<String, Map<String, AlarmSubExpression>> subExpressions,
+      Function<AlarmDefinition, List<OutboxEvent>> events) {
+    for (List<AlarmDefinition> batch : Lists.partition(alarmDefinitions, CREATE_BATCH_SIZE)) {
+      Handle h = db.open();
+
+      try {
+        h.begin();
+        final Inserts inserts = new Inserts(h);
+        final List<OutboxEvent> outboxEvents = new ArrayList<>(batch.size());
+        for (AlarmDefinition alarmDefinition : batch) {
+          final String id = alarmDefinition.getId();
+          inserts.addAlarmDefinition(tenantId, id, alarmDefinition.getName(),
+              alarmDefinition.getDescription(), alarmDefinition.getSeverity(),
+              alarmDefinition.getExpression(), alarmDefinition.getMatchBy());
+          inserts.addSubExpressions(id, subExpressions.get(id));
+          inserts.addActions(id, AlarmState.ALARM, alarmDefinition.getAlarmActions());
+          inserts.addActions(id, AlarmState.OK, alarmDefinition.getOkActions());
+          inserts.addActions(id, AlarmState.UNDETERMINED,
+              alarmDefinition.getUndeterminedActions());
+          outboxEvents.addAll(events.apply(alarmDefinition));
+        }
+
+        inserts.execute();
+        EventOutboxMySqlRepoImpl.insert(h, outboxEvents);
+        h.commit();
+        for (AlarmDefinition alarmDefinition : batch) {
+          cache.invalidate(alarmDefinition.getId());
+        }
+      } catch (RuntimeException e) {
+        h.rollback();
+        throw e;
+      } finally {
+        h.close();
+      }
+    }
+  }
+
+  @Override
+  public void deleteById(String tenantId, String alarmDefId, List<OutboxEvent> events) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
       if (h
           .update(
               "update alarm_definition set deleted_at = NOW() where tenant_id = ? and id = ? and deleted_at is NULL",
               tenantId, alarmDefId) == 0)
         throw new EntityNotFoundException("No alarm definition exists for %s", alarmDefId);
 
-      // Cascade soft delete to alarms
-      h.execute("delete from alarm where alarm_definition_id = :id", alarmDefId);
+      // The alarms are deleted afterwards in batches, see AlarmRepo.deleteByAlarmDefinition
+      EventOutboxMySqlRepoImpl.insert(h, events);
+      h.commit();
+      cache.invalidate(alarmDefId);
+      alarmCountSummary.invalidate(tenantId);
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
     }
   }
 
@@ -144,6 +218,30 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
         }
     }
 
+  @Override
+  public Map<String, String> findIdsByName(String tenantId, Collection<String> names) {
+    final Map<String, String> ids = new HashMap<>();
+    try (Handle h = db.open()) {
+      for (List<String> batch : Iterables.partition(names, IN_CLAUSE_BATCH_SIZE)) {
+        final StringBuilder inClause = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+          inClause.append(i == 0 ? ":name" : ",:name").append(i);
+        }
+
+        final Query<Map<String, Object>> q = h
+            .createQuery(String.format(FIND_IDS_BY_NAME_SQL, inClause))
+            .bind("tenantId", tenantId);
+        for (int i = 0; i < batch.size(); i++) {
+          q.bind("name" + i, batch.get(i));
+        }
+        for (Map<String, Object> row : q.list()) {
+          ids.put((String) row.get("name"), (String) row.get("id"));
+        }
+      }
+    }
+    return ids;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public List<AlarmDefinition> find(String tenantId, String name,
@@ -224,7 +322,12 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
 
   @Override
   public AlarmDefinition findById(String tenantId, String alarmDefId) {
+    AlarmDefinition cached = cache.get(tenantId, alarmDefId);
+    if (cached != null) {
+      return cached;
+    }
 
+    final long version = cache.version();
     try (Handle h = db.open()) {
       String query = "SELECT alarm_definition.id, alarm_definition.tenant_id, alarm_definition.name, alarm_definition.description, "
           + "alarm_definition.expression, alarm_definition.severity, alarm_definition.match_by, alarm_definition.actions_enabled, "
@@ -245,6 +348,7 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
      {
        throw new EntityNotFoundException("No alarm definition exists for %s", alarmDefId);
      }
+      cache.put(tenantId, alarmDefinition, version);
       return alarmDefinition;
     }
   }
@@ -311,7 +415,7 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
       String expression, List<String> matchBy, String severity, boolean actionsEnabled,
       Collection<String> oldSubAlarmIds, Map<String, AlarmSubExpression> changedSubAlarms,
       Map<String, AlarmSubExpression> newSubAlarms, List<String> alarmActions,
-      List<String> okActions, List<String> undeterminedActions) {
+      List<String> okActions, List<String> undeterminedActions, List<OutboxEvent> events) {
     Handle h = db.open();
 
     try {
@@ -340,7 +444,8 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
         }
 
       // Insert new sub-alarms
-      createSubExpressions(h, id, newSubAlarms);
+      final Inserts inserts = new Inserts(h);
+      inserts.addSubExpressions(id, newSubAlarms);
 
       // Delete old actions
       if (patch) {
@@ -351,11 +456,17 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
         h.execute("delete from alarm_action where alarm_definition_id = ?", id);
 
       // Insert new actions
-      persistActions(h, id, AlarmState.ALARM, alarmActions);
-      persistActions(h, id, AlarmState.OK, okActions);
-      persistActions(h, id, AlarmState.UNDETERMINED, undeterminedActions);
+      inserts.addActions(id, AlarmState.ALARM, alarmActions);
+      inserts.addActions(id, AlarmState.OK, okActions);
+      inserts.addActions(id, AlarmState.UNDETERMINED, undeterminedActions);
+
+      inserts.execute();
+      EventOutboxMySqlRepoImpl.insert(h, events);
 
       h.commit();
+      cache.invalidate(id);
+      // The severity of the alarms may have changed
+      alarmCountSummary.invalidate(tenantId);
     } catch (RuntimeException e) {
       h.rollback();
       throw e;
@@ -370,32 +481,59 @@ public class AlarmDefinitionMySqlRepoImpl implements AlarmDefinitionRepo {
           alarmState.name());
   }
 
-  private void persistActions(Handle handle, String id, AlarmState alarmState, List<String> actions) {
-    if (actions != null)
-      for (String action : actions)
-        handle.insert("insert into alarm_action values (?, ?, ?)", id, alarmState.name(), action);
-  }
+  /**
+   * Batched inserts of alarm definitions, their sub expressions and their actions. The batches are
+   * executed in the order of their foreign keys, each in one round trip.
+   */
+  private static class Inserts {
+    private final PreparedBatch alarmDefinitions;
+    private final PreparedBatch subExpressions;
+    private final PreparedBatch dimensions;
+    private final PreparedBatch actions;
+
+    Inserts(Handle h) {
+      this.alarmDefinitions = h.prepareBatch(CREATE_ALARM_DEFINITION_SQL);
+      this.subExpressions = h.prepareBatch(CREATE_SUB_EXPRESSION_SQL);
+      this.dimensions = h.prepareBatch(CREATE_SUB_EXPRESSION_DIMENSION_SQL);
+      this.actions = h.prepareBatch(CREATE_ACTION_SQL);
+    }
 
-  private void createSubExpressions(Handle handle, String id,
-      Map<String, AlarmSubExpression> alarmSubExpressions) {
-    if (alarmSubExpressions != null) {
+    void addAlarmDefinition(String tenantId, String id, String name, String description,
+        String severity, String expression, List<String> matchBy) {
+      alarmDefinitions.add(id, tenantId, name, description, severity, expression,
+          matchBy == null || Iterables.isEmpty(matchBy) ? null : COMMA_JOINER.join(matchBy), true);
+    }
+
+    void addSubExpressions(String id, Map<String, AlarmSubExpression> alarmSubExpressions) {
+      if (alarmSubExpressions == null)
+        return;
       for (Map.Entry<String, AlarmSubExpression> subEntry : alarmSubExpressions.entrySet()) {
         String subAlarmId = subEntry.getKey();
         AlarmSubExpression subExpr = subEntry.getValue();
         MetricDefinition metricDef = subExpr.getMetricDefinition();
 
-        // Persist sub-alarm
-        handle.insert(CREATE_SUB_EXPRESSION_SQL, subAlarmId, id, subExpr.getFunction().name(),
-            metricDef.name, subExpr.getOperator().name(), subExpr.getThreshold(),
-            subExpr.getPeriod(), subExpr.getPeriods(), subExpr.isDeterministic());
+        subExpressions.add(subAlarmId, id, subExpr.getFunction().name(), metricDef.name,
+            subExpr.getOperator().name(), subExpr.getThreshold(), subExpr.getPeriod(),
+            subExpr.getPeriods(), subExpr.isDeterministic());
 
-        // Persist sub-alarm dimensions
-        if (metricDef.dimensions != null && !metricDef.dimensions.isEmpty())
+        if (metricDef.dimensions != null)
           for (Map.Entry<String, String> dimEntry : metricDef.dimensions.entrySet())
-            handle.insert("insert into sub_alarm_definition_dimension values (?, ?, ?)", subAlarmId,
-                dimEntry.getKey(), dimEntry.getValue());
+            dimensions.add(subAlarmId, dimEntry.getKey(), dimEntry.getValue());
       }
     }
+
+    void addActions(String id, AlarmState alarmState, List<String> actionIds) {
+      if (actionIds != null)
+        for (String action : actionIds)
+          actions.add(id, alarmState.name(), action);
+    }
+
+    void execute() {
+      for (PreparedBatch batch : Arrays.asList(alarmDefinitions, subExpressions, dimensions,
+                                               actions))
+        if (batch.size() > 0)
+          batch.execute();
+    }
   }
 
   private static class AlarmDefinitionMapper implements ResultSetMapper<AlarmDefinition> {
@@ -13,14 +13,22 @@
  */
 package monasca.api.infrastructure.persistence.mysql;
 
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.alarm.DeletedAlarm;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.infrastructure.AlarmExpressionCache;
+import monasca.api.infrastructure.persistence.AlarmPageCursor;
 import monasca.api.infrastructure.persistence.DimensionQueries;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AlarmSeverity;
@@ -33,14 +41,15 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.Query;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.skife.jdbi.v2.Update;
 
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -53,44 +62,162 @@ import javax.inject.Named;
 public class AlarmMySqlRepoImpl implements AlarmRepo {
 
   private static final Joiner COMMA_JOINER = Joiner.on(',');
+  private static final Joiner VERSION_JOINER = Joiner.on('|').useForNull("");
+  private static final String[] VERSION_COLUMNS = {"state", "lifecycle_state", "link",
+      "state_updated_at", "updated_at", "alarm_definition_name", "severity", "metric_count"};
   private static final Splitter SPACE_SPLITTER = Splitter.on(' ');
-  private static final Logger logger = LoggerFactory.getLogger(AlarmMySqlRepoImpl.class);
+
+  /**
+   * Columns the alarms are ordered by for each sort_by field.
+   */
+  private static final Map<String, String> SORT_BY_COLUMNS = ImmutableMap.<String, String>builder()
+      .put("alarm_id", "a.id")
+      .put("alarm_definition_id", "ad.id")
+      .put("alarm_definition_name", "ad.name")
+      .put("created_timestamp", "a.created_at")
+      .put("updated_timestamp", "a.updated_at")
+      .put("state_updated_timestamp", "a.state_updated_at")
+      .put("state", "FIELD(a.state, 'OK', 'UNDETERMINED', 'ALARM')")
+      .put("severity", "FIELD(ad.severity, 'LOW', 'MEDIUM', 'HIGH', 'CRITICAL')")
+      .put("lifecycle_state", "COALESCE(a.lifecycle_state, '')")
+      .put("link", "COALESCE(a.link, '')")
+      .build();
 
   private final DBI db;
   private final PersistUtils persistUtils;
+  private final DimensionSetIndex dimensionSetIndex;
+  private final AlarmCountSummary alarmCountSummary;
 
-  private static final String FIND_ALARM_BY_ID_SQL =
+  private static final String ALARM_COLUMNS =
       "select ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
       + "a.id as alarm_id, a.state, a.lifecycle_state, a.link, a.state_updated_at as state_updated_timestamp, "
-      + "a.updated_at as updated_timestamp, a.created_at as created_timestamp, "
-      + "md.name as metric_name, mdg.dimensions as metric_dimensions from alarm as a "
+      + "a.updated_at as updated_timestamp, a.created_at as created_timestamp ";
+
+  private static final String FIND_ALARM_BY_ID_SQL =
+      ALARM_COLUMNS
+      + "from alarm as a "
       + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
-      + "inner join alarm_metric as am on am.alarm_id = a.id "
-      + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
-      + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
-      + "left outer join (select dimension_set_id, name, value, group_concat(name, '=', value) as dimensions "
-      + "from metric_dimension group by dimension_set_id) as mdg on mdg.dimension_set_id = mdd.metric_dimension_set_id "
-      + "where ad.tenant_id = :tenantId and ad.deleted_at is null %s order by a.id %s";
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id = :id";
+
+  /**
+   * Everything of an alarm that findById returns and that can change, the state is read too as
+   * the timestamps only have a precision of seconds.
+   */
+  private static final String FIND_ALARM_VERSION_SQL =
+      "select a.state, a.lifecycle_state, a.link, a.state_updated_at, a.updated_at, "
+      + "ad.name as alarm_definition_name, ad.severity, "
+      + "(select count(*) from alarm_metric as am where am.alarm_id = a.id) as metric_count "
+      + "from alarm as a "
+      + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id = :id";
+
+  private static final String FIND_ALARMS_FOR_PATCH_SQL =
+      ALARM_COLUMNS
+      + ", ad.description as alarm_definition_description, ad.actions_enabled "
+      + "from alarm as a "
+      + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+      + "where ad.tenant_id = :tenantId and ad.deleted_at is null and a.id in (%s)";
+
+  /**
+   * Alarms of a definition being deleted, which is already soft deleted and so not filtered on.
+   */
+  private static final String FIND_ALARMS_OF_DEFINITION_SQL =
+      ALARM_COLUMNS
+      + "from alarm as a "
+      + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
+      + "where ad.id = :alarmDefinitionId "
+      + "order by a.id limit :limit";
+
+  private static final String DELETE_ALARMS_SQL = "delete from alarm where id in (%s)";
+
+  private static final String FIND_DELETED_ALARM_DEFINITIONS_SQL =
+      "select ad.id, ad.tenant_id from alarm_definition as ad "
+      + "where ad.deleted_at is not null "
+      + "and exists (select 1 from alarm as a where a.alarm_definition_id = ad.id)";
+
+  private static final String FIND_SUB_ALARMS_SQL =
+      "select id, alarm_id, expression from sub_alarm where alarm_id in (%s)";
+
+  /**
+   * Moves state_updated_at only when the state changes. MySQL assigns from left to right, so the
+   * state is compared before it is set.
+   */
+  private static final String PATCH_ALARM_SQL =
+      "update alarm set state_updated_at = if(state = ?, state_updated_at, NOW()), state = ?, "
+      + "lifecycle_state = ?, link = ?, updated_at = NOW() where id = ?";
 
   private static final String FIND_ALARMS_SQL =
-      "select ad.id as alarm_definition_id, ad.severity, ad.name as alarm_definition_name, "
-      + "a.id as alarm_id, a.state, a.lifecycle_state, a.link, a.state_updated_at as state_updated_timestamp, "
-      + "a.updated_at as updated_timestamp, a.created_at as created_timestamp, "
-      + "md.name as metric_name, group_concat(mdim.name, '=', mdim.value order by mdim.name) as metric_dimensions "
+      ALARM_COLUMNS
       + "from alarm as a "
       + "inner join %1$s as alarm_id_list on alarm_id_list.id = a.id "
       + "inner join alarm_definition ad on ad.id = a.alarm_definition_id "
-      + "inner join alarm_metric as am on am.alarm_id = a.id "
+      + "%2$s";
+
+  private static final String FIND_ALARM_METRICS_SQL =
+      "select am.alarm_id, md.name as metric_name, mdd.metric_dimension_set_id "
+      + "from alarm_metric as am "
       + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
       + "inner join metric_definition as md on md.id = mdd.metric_definition_id "
-      + "left outer join metric_dimension as mdim on mdim.dimension_set_id = mdd.metric_dimension_set_id "
-      + "group by a.id, md.name, mdim.dimension_set_id "
-      + "%2$s";
+      + "where am.alarm_id in (%s) "
+      + "order by am.alarm_id, md.name";
+
+  private static final String FIND_DIMENSION_SETS_SQL =
+      "select dimension_set_id, name, value from metric_dimension "
+      + "where dimension_set_id in (%s)";
+
+  /**
+   * Most alarm ids or dimension set ids bound to a single in (...) clause.
+   */
+  private static final int IN_CLAUSE_BATCH_SIZE = 1000;
 
   @Inject
-  public AlarmMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils) {
+  public AlarmMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils,
+                            DimensionSetIndex dimensionSetIndex,
+                            AlarmCountSummary alarmCountSummary) {
     this.db = db;
     this.persistUtils = persistUtils;
+    this.dimensionSetIndex = dimensionSetIndex;
+    this.alarmCountSummary = alarmCountSummary;
+  }
+
+  /**
+   * Restricts the dimension sets of the alarmed metrics to the ones the index found, or joins the
+   * dimensions if the index could not answer the filter. The metrics added to alarms since the
+   * index was loaded are matched on their dimensions, so the index never hides them.
+   */
+  private void buildDimensionClauseFor(Map<String, String> dimensions,
+                                       DimensionSetIndex.Matches dimensionSetMatches,
+                                       StringBuilder sb) {
+    if (dimensionSetMatches == null) {
+      buildJoinClauseFor(dimensions, sb);
+      return;
+    }
+    final List<byte[]> dimensionSetIds = dimensionSetMatches.getDimensionSetIds();
+    // "in (null)" matches nothing, which is right when no indexed dimension set matches.
+    sb.append(" where (mdd.metric_dimension_set_id in (")
+        .append(dimensionSetIds.isEmpty() ? "null" : inClause("dimensionSetId", dimensionSetIds.size()))
+        .append(") or (am.created_at >= :indexedSince");
+    int i = 0;
+    for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+      sb.append(" and exists (select 1 from metric_dimension md").append(i).append(" where ");
+      buildDimensionMatchFor(i, dimension.getValue(), sb);
+      sb.append(')');
+      i++;
+    }
+    sb.append("))");
+  }
+
+  private void bindDimensionsToQuery(Query<?> q, Map<String, String> dimensions,
+                                     DimensionSetIndex.Matches dimensionSetMatches) {
+    DimensionQueries.bindDimensionsToQuery(q, dimensions);
+    if (dimensionSetMatches == null) {
+      return;
+    }
+    final List<byte[]> dimensionSetIds = dimensionSetMatches.getDimensionSetIds();
+    for (int i = 0; i < dimensionSetIds.size(); i++) {
+      q.bind("dimensionSetId" + i, dimensionSetIds.get(i));
+    }
+    q.bind("indexedSince", dimensionSetMatches.getSince());
   }
 
   private void buildJoinClauseFor(Map<String, String> dimensions, StringBuilder sbJoin) {
@@ -100,37 +227,125 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
     }
     int i = 0;
     for (String dimension_key : dimensions.keySet()) {
-      final String indexStr = String.valueOf(i);
-      sbJoin.append(" inner join metric_dimension md").append(indexStr).append(" on md")
-          .append(indexStr)
-          .append(".name = :dname").append(indexStr);
-      String dim_value = dimensions.get(dimension_key);
-      if (!Strings.isNullOrEmpty(dim_value)) {
-        sbJoin.append(" and (");
-        List<String> values = Splitter.on('|').splitToList(dim_value);
-        for (int j = 0; j < values.size(); j++) {
-          sbJoin.append(" md").append(indexStr)
-              .append(".value = :dvalue").append(indexStr).append('_').append(j);
-          if (j < values.size() - 1) {
-            sbJoin.append(" or");
-          }
+      sbJoin.append(" inner join metric_dimension md").append(i).append(" on ");
+      buildDimensionMatchFor(i, dimensions.get(dimension_key), sbJoin);
+      i++;
+    }
+  }
+
+  /**
+   * Matches the metric_dimension row md&lt;i&gt; of the dimension set of mdd to the i-th dimension
+   * of the filter.
+   */
+  private void buildDimensionMatchFor(int i, String dim_value, StringBuilder sb) {
+    final String indexStr = String.valueOf(i);
+    sb.append("md").append(indexStr).append(".name = :dname").append(indexStr);
+    if (!Strings.isNullOrEmpty(dim_value)) {
+      sb.append(" and (");
+      List<String> values = Splitter.on('|').splitToList(dim_value);
+      for (int j = 0; j < values.size(); j++) {
+        sb.append(" md").append(indexStr)
+            .append(".value = :dvalue").append(indexStr).append('_').append(j);
+        if (j < values.size() - 1) {
+          sb.append(" or");
         }
-        sbJoin.append(")");
       }
-      sbJoin.append(" and mdd.metric_dimension_set_id = md")
-          .append(indexStr).append(".dimension_set_id");
-      i++;
+      sb.append(")");
     }
+    sb.append(" and mdd.metric_dimension_set_id = md")
+        .append(indexStr).append(".dimension_set_id");
   }
 
   @Override
-  public void deleteById(String tenantId, String id) {
+  public void deleteById(String tenantId, String id, List<OutboxEvent> events) {
     final String sql = "delete a from alarm a where a.id = ?";
 
-    try (Handle h = db.open()) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
       // This will throw an EntityNotFoundException if Alarm doesn't exist or has a different tenant id
-      findAlarm(tenantId, id, h);
+      final Alarm alarm = findAlarm(tenantId, id, h);
       h.execute(sql, id);
+      EventOutboxMySqlRepoImpl.insert(h, events);
+      h.commit();
+      alarmCountSummary.deleted(tenantId, alarm.getAlarmDefinition().getId(),
+                                alarm.getAlarmDefinition().getSeverity(), alarm.getState(),
+                                alarm.getLifecycleState());
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
+    }
+  }
+
+  @Override
+  public List<DeletedAlarm> deleteByAlarmDefinition(String alarmDefinitionId, int limit,
+                                                    Function<DeletedAlarm, List<OutboxEvent>> events) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
+      final List<Map<String, Object>> rows = h
+          .createQuery(FIND_ALARMS_OF_DEFINITION_SQL)
+          .bind("alarmDefinitionId", alarmDefinitionId)
+          .bind("limit", limit)
+          .list();
+
+      if (rows.isEmpty()) {
+        h.commit();
+        return Collections.emptyList();
+      }
+
+      final List<Alarm> alarms = createAlarms(h, rows);
+      final List<String> ids = new ArrayList<>(alarms.size());
+      for (Alarm alarm : alarms) {
+        ids.add(alarm.getId());
+      }
+      final Map<String, Map<String, AlarmSubExpression>> subAlarms =
+          findAlarmSubExpressions(h, ids);
+
+      final Update delete = h.createStatement(String.format(DELETE_ALARMS_SQL,
+                                                            inClause("id", ids.size())));
+      for (int i = 0; i < ids.size(); i++) {
+        delete.bind("id" + i, ids.get(i));
+      }
+      delete.execute();
+
+      final List<DeletedAlarm> deleted = new ArrayList<>(alarms.size());
+      final List<OutboxEvent> outboxEvents = new ArrayList<>(alarms.size());
+      for (Alarm alarm : alarms) {
+        final Map<String, AlarmSubExpression> alarmSubAlarms = subAlarms.get(alarm.getId());
+        final DeletedAlarm deletedAlarm =
+            new DeletedAlarm(alarm, alarmSubAlarms == null
+                                    ? new HashMap<String, AlarmSubExpression>() : alarmSubAlarms);
+        deleted.add(deletedAlarm);
+        outboxEvents.addAll(events.apply(deletedAlarm));
+      }
+      EventOutboxMySqlRepoImpl.insert(h, outboxEvents);
+      h.commit();
+
+      return deleted;
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
+    }
+  }
+
+  @Override
+  public Map<String, String> findDeletedAlarmDefinitionIds() {
+    try (Handle h = db.open()) {
+      final List<Map<String, Object>> rows =
+          h.createQuery(FIND_DELETED_ALARM_DEFINITIONS_SQL).list();
+
+      final Map<String, String> tenantIds = new HashMap<>(rows.size());
+      for (Map<String, Object> row : rows) {
+        tenantIds.put(getString(row, "id"), getString(row, "tenant_id"));
+      }
+      return tenantIds;
     }
   }
 
@@ -141,6 +356,11 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                           DateTime stateUpdatedStart, List<String> sortBy,
                           String offset, int limit, boolean enforceLimit) {
 
+    final AlarmPageCursor cursor =
+        AlarmPageCursor.isCursor(offset) ? AlarmPageCursor.decode(offset, sortBy) : null;
+    final DimensionSetIndex.Matches dimensionSetMatches =
+        metricDimensions == null ? null : dimensionSetIndex.find(metricDimensions);
+
     StringBuilder
         sbWhere =
         new StringBuilder("(select a.id "
@@ -163,7 +383,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                      + "            where name = :metricName) as md "
                      + "  on md.id = mdd.metric_definition_id ");
 
-      buildJoinClauseFor(metricDimensions, sbWhere);
+      buildDimensionClauseFor(metricDimensions, dimensionSetMatches, sbWhere);
 
       sbWhere.append(")");
 
@@ -174,7 +394,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                      + "inner join metric_definition_dimensions as mdd "
                      + "  on mdd.id = am.metric_definition_dimensions_id ");
 
-      buildJoinClauseFor(metricDimensions, sbWhere);
+      buildDimensionClauseFor(metricDimensions, dimensionSetMatches, sbWhere);
 
       sbWhere.append(")");
 
@@ -198,18 +418,18 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
       sbWhere.append(" and a.state_updated_at >= :stateUpdatedStart");
     }
 
+    if (cursor != null) {
+      sbWhere.append(cursor.seekPredicate(SORT_BY_COLUMNS));
+    }
+
     StringBuilder orderClause = new StringBuilder();
 
     if (sortBy != null && !sortBy.isEmpty()) {
-      // Convert friendly names to column names
-      replaceFieldName(sortBy, "alarm_id", "a.id");
-      replaceFieldName(sortBy, "alarm_definition_id", "ad.id");
-      replaceFieldName(sortBy, "alarm_definition_name", "ad.name");
-      replaceFieldName(sortBy, "created_timestamp", "a.created_at");
-      replaceFieldName(sortBy, "updated_timestamp", "a.updated_at");
-      replaceFieldName(sortBy, "state_updated_timestamp", "a.state_updated_at");
-      replaceFieldName(sortBy, "state", "FIELD(state, \"OK\", \"UNDETERMINED\", \"ALARM\")");
-      replaceFieldName(sortBy, "severity", "FIELD(severity, \"LOW\", \"MEDIUM\", \"HIGH\", \"CRITICAL\")");
+      // Convert friendly names to column names, leaving the caller's list alone
+      sortBy = new ArrayList<>(sortBy);
+      for (Map.Entry<String, String> column : SORT_BY_COLUMNS.entrySet()) {
+        replaceFieldName(sortBy, column.getKey(), column.getValue());
+      }
 
       orderClause.append(" order by ");
       orderClause.append(COMMA_JOINER.join(sortBy));
@@ -228,7 +448,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
       sbWhere.append(" limit :limit");
     }
 
-    if (offset != null) {
+    if (offset != null && cursor == null) {
       sbWhere.append(" offset ");
       sbWhere.append(offset);
       sbWhere.append(' ');
@@ -272,11 +492,17 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
         q.bind("limit", limit + 1);
       }
 
-      DimensionQueries.bindDimensionsToQuery(q, metricDimensions);
+      if (cursor != null) {
+        for (Map.Entry<String, Object> parameter : cursor.getParameters().entrySet()) {
+          q.bind(parameter.getKey(), parameter.getValue());
+        }
+      }
+
+      bindDimensionsToQuery(q, metricDimensions, dimensionSetMatches);
 
       final List<Map<String, Object>> rows = q.list();
 
-      return createAlarms(tenantId, rows);
+      return createAlarms(h, rows);
 
     }
   }
@@ -298,11 +524,28 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
     }
   }
 
-  private Alarm findAlarm(String tenantId, String alarmId, Handle h) {
+  @Override
+  public String findVersion(String tenantId, String alarmId) {
+    try (Handle h = db.open()) {
+      final Map<String, Object> row = h.createQuery(FIND_ALARM_VERSION_SQL).bind("id", alarmId)
+          .bind("tenantId", tenantId)
+          .first();
 
-    final String sql = String.format(FIND_ALARM_BY_ID_SQL, " and a.id = :id", "");
+      if (row == null) {
+        throw new EntityNotFoundException("No alarm exists for %s", alarmId);
+      }
+
+      final List<Object> values = new ArrayList<>(VERSION_COLUMNS.length);
+      for (String column : VERSION_COLUMNS) {
+        values.add(row.get(column));
+      }
+      return VERSION_JOINER.join(values);
+    }
+  }
 
-    final List<Map<String, Object>> rows = h.createQuery(sql).bind("id", alarmId)
+  private Alarm findAlarm(String tenantId, String alarmId, Handle h) {
+
+    final List<Map<String, Object>> rows = h.createQuery(FIND_ALARM_BY_ID_SQL).bind("id", alarmId)
             .bind("tenantId", tenantId)
             .list();
 
@@ -310,50 +553,93 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
       throw new EntityNotFoundException("No alarm exists for %s", alarmId);
     }
 
-    return createAlarms(tenantId, rows).get(0);
+    return createAlarms(h, rows).get(0);
   }
 
-  private List<Alarm> createAlarms(String tenantId, List<Map<String, Object>> rows) {
-    Alarm alarm;
-    String previousAlarmId = null;
-    final List<Alarm> alarms = new LinkedList<>();
-    List<MetricDefinition> alarmedMetrics = null;
+  private List<Alarm> createAlarms(Handle h, List<Map<String, Object>> rows) {
+    final List<Alarm> alarms = new ArrayList<>(rows.size());
+    final Map<String, List<MetricDefinition>> alarmedMetrics = new HashMap<>(rows.size());
     for (final Map<String, Object> row : rows) {
       final String alarmId = (String) row.get("alarm_id");
-      if (!alarmId.equals(previousAlarmId)) {
-        alarmedMetrics = new ArrayList<>();
-        alarm =
-            new Alarm(alarmId, getString(row, "alarm_definition_id"), getString(row,
-                      "alarm_definition_name"), getString(row, "severity"), alarmedMetrics,
-                      AlarmState.valueOf(getString(row, "state")),
-                      getString(row, "lifecycle_state"),
-                      getString(row, "link"),
-                      new DateTime(((Timestamp)row.get("state_updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
-                      new DateTime(((Timestamp)row.get("updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
-                      new DateTime(((Timestamp)row.get("created_timestamp")).getTime(), DateTimeZone.forID("UTC")));
-        alarms.add(alarm);
-      }
-      previousAlarmId = alarmId;
-      final Map<String, String> dimensionMap = new HashMap<>();
-
-      // Not all Metrics have dimensions (at least theoretically)
-      if (row.containsKey("metric_dimensions")) {
-        final String dimensions = getString(row, "metric_dimensions");
-        if (dimensions != null && !dimensions.isEmpty()) {
-          for (String dimension : dimensions.split(",")) {
-            final String[] parsed_dimension = dimension.split("=");
-            if (parsed_dimension.length == 2) {
-              dimensionMap.put(parsed_dimension[0], parsed_dimension[1]);
-            } else {
-              logger.error("Failed to parse dimension. Dimension is malformed: {}", dimension);
-            }
-          }
-        }
+      final List<MetricDefinition> metrics = new ArrayList<>();
+      alarmedMetrics.put(alarmId, metrics);
+      alarms.add(
+          new Alarm(alarmId, getString(row, "alarm_definition_id"), getString(row,
+                    "alarm_definition_name"), getString(row, "severity"), metrics,
+                    AlarmState.valueOf(getString(row, "state")),
+                    getString(row, "lifecycle_state"),
+                    getString(row, "link"),
+                    new DateTime(((Timestamp)row.get("state_updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
+                    new DateTime(((Timestamp)row.get("updated_timestamp")).getTime(), DateTimeZone.forID("UTC")),
+                    new DateTime(((Timestamp)row.get("created_timestamp")).getTime(), DateTimeZone.forID("UTC"))));
+    }
+    addAlarmedMetrics(h, alarmedMetrics);
+    return alarms;
+  }
+
+  /**
+   * Adds the metrics of the alarms to their lists. The metrics are loaded for all of the alarms at
+   * once and the dimensions once per dimension set, the dimension map of a set is shared by every
+   * metric that has it.
+   */
+  private void addAlarmedMetrics(Handle h, Map<String, List<MetricDefinition>> alarmedMetrics) {
+    final List<Map<String, Object>> metricRows = new ArrayList<>();
+    for (List<String> alarmIds : Iterables.partition(alarmedMetrics.keySet(),
+                                                     IN_CLAUSE_BATCH_SIZE)) {
+      final Query<Map<String, Object>> q =
+          h.createQuery(String.format(FIND_ALARM_METRICS_SQL, inClause("alarmId", alarmIds.size())));
+      bindInClause(q, "alarmId", alarmIds);
+      metricRows.addAll(q.list());
+    }
+
+    final Map<ByteBuffer, Map<String, String>> dimensionSets = new HashMap<>();
+    for (final Map<String, Object> row : metricRows) {
+      final ByteBuffer dimensionSetId = ByteBuffer.wrap((byte[]) row.get("metric_dimension_set_id"));
+      if (!dimensionSets.containsKey(dimensionSetId)) {
+        dimensionSets.put(dimensionSetId, new HashMap<String, String>());
       }
+    }
+    addDimensions(h, dimensionSets);
 
-      alarmedMetrics.add(new MetricDefinition(getString(row, "metric_name"), dimensionMap));
+    for (final Map<String, Object> row : metricRows) {
+      final Map<String, String> dimensions =
+          dimensionSets.get(ByteBuffer.wrap((byte[]) row.get("metric_dimension_set_id")));
+      alarmedMetrics.get(getString(row, "alarm_id"))
+          .add(new MetricDefinition(getString(row, "metric_name"), dimensions));
+    }
+  }
+
+  private void addDimensions(Handle h, Map<ByteBuffer, Map<String, String>> dimensionSets) {
+    for (List<ByteBuffer> dimensionSetIds : Iterables.partition(dimensionSets.keySet(),
+                                                                IN_CLAUSE_BATCH_SIZE)) {
+      final Query<Map<String, Object>> q =
+          h.createQuery(String.format(FIND_DIMENSION_SETS_SQL,
+                                      inClause("dimensionSetId", dimensionSetIds.size())));
+      for (int i = 0; i < dimensionSetIds.size(); i++) {
+        q.bind("dimensionSetId" + i, dimensionSetIds.get(i).array());
+      }
+      for (final Map<String, Object> row : q.list()) {
+        dimensionSets.get(ByteBuffer.wrap((byte[]) row.get("dimension_set_id")))
+            .put(getString(row, "name"), getString(row, "value"));
+      }
+    }
+  }
+
+  private static String inClause(String prefix, int size) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(':').append(prefix).append(i);
+    }
+    return sb.toString();
+  }
+
+  private static void bindInClause(Query<?> q, String prefix, List<String> values) {
+    for (int i = 0; i < values.size(); i++) {
+      q.bind(prefix + i, values.get(i));
     }
-    return alarms;
   }
 
   private String getString(final Map<String, Object> row, String fieldName) {
@@ -375,6 +661,10 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
       h.insert("update alarm set lifecycle_state = ?, link = ?, updated_at = NOW() where id = ?",
                lifecycleState, link, id);
       h.commit();
+      alarmCountSummary.updated(tenantId, originalAlarm.getAlarmDefinition().getId(),
+                                originalAlarm.getAlarmDefinition().getSeverity(),
+                                originalAlarm.getState(), originalAlarm.getLifecycleState(),
+                                state, lifecycleState);
       return originalAlarm;
     } catch (RuntimeException e) {
       h.rollback();
@@ -384,6 +674,110 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
     }
   }
 
+  @Override
+  public AlarmUpdate patch(String tenantId, String id, AlarmState state, String lifecycleState,
+                           String link, Function<AlarmUpdate, List<OutboxEvent>> events) {
+    final List<AlarmUpdate> updates =
+        patchAll(tenantId, Collections.singletonList(id), state, lifecycleState, link, events);
+
+    if (updates.isEmpty()) {
+      throw new EntityNotFoundException("No alarm exists for %s", id);
+    }
+
+    return updates.get(0);
+  }
+
+  @Override
+  public List<AlarmUpdate> patchAll(String tenantId, List<String> ids, AlarmState state,
+                                    String lifecycleState, String link,
+                                    Function<AlarmUpdate, List<OutboxEvent>> events) {
+    final List<AlarmUpdate> updates = new ArrayList<>(ids.size());
+    for (List<String> batch : Iterables.partition(ids, IN_CLAUSE_BATCH_SIZE)) {
+      updates.addAll(patchBatch(tenantId, batch, state, lifecycleState, link, events));
+    }
+    return updates;
+  }
+
+  /**
+   * Patches one batch of alarms in a single transaction with one select of the alarms, their
+   * metrics and sub alarms, one batched update and one batched insert of the events.
+   */
+  private List<AlarmUpdate> patchBatch(String tenantId, List<String> ids, AlarmState state,
+                                       String lifecycleState, String link,
+                                       Function<AlarmUpdate, List<OutboxEvent>> events) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
+      final Query<Map<String, Object>> q = h
+          .createQuery(String.format(FIND_ALARMS_FOR_PATCH_SQL, inClause("id", ids.size())))
+          .bind("tenantId", tenantId);
+      bindInClause(q, "id", ids);
+      final List<Map<String, Object>> rows = q.list();
+
+      if (rows.isEmpty()) {
+        h.commit();
+        return Collections.emptyList();
+      }
+
+      final List<Alarm> originalAlarms = createAlarms(h, rows);
+      final List<String> foundIds = new ArrayList<>(originalAlarms.size());
+      for (Alarm alarm : originalAlarms) {
+        foundIds.add(alarm.getId());
+      }
+      final Map<String, Map<String, AlarmSubExpression>> subAlarms =
+          findAlarmSubExpressions(h, foundIds);
+
+      final List<AlarmUpdate> updates = new ArrayList<>(originalAlarms.size());
+      final List<OutboxEvent> outboxEvents = new ArrayList<>(originalAlarms.size() * 2);
+      final PreparedBatch batch = h.prepareBatch(PATCH_ALARM_SQL);
+      for (int i = 0; i < originalAlarms.size(); i++) {
+        final Map<String, Object> row = rows.get(i);
+        final Alarm originalAlarm = originalAlarms.get(i);
+
+        final AlarmState newState = state == null ? originalAlarm.getState() : state;
+        final String newLifecycleState =
+            lifecycleState == null ? originalAlarm.getLifecycleState() : lifecycleState;
+        final String newLink = link == null ? originalAlarm.getLink() : link;
+
+        batch.add(newState.name(), newState.name(), newLifecycleState, newLink,
+                  originalAlarm.getId());
+
+        final Map<String, AlarmSubExpression> alarmSubAlarms = subAlarms.get(originalAlarm.getId());
+        final AlarmUpdate update =
+            new AlarmUpdate(originalAlarm, getString(row, "alarm_definition_description"),
+                            isTrue(row.get("actions_enabled")),
+                            alarmSubAlarms == null
+                            ? new HashMap<String, AlarmSubExpression>() : alarmSubAlarms,
+                            newState, newLifecycleState, newLink);
+        updates.add(update);
+        outboxEvents.addAll(events.apply(update));
+      }
+      batch.execute();
+      EventOutboxMySqlRepoImpl.insert(h, outboxEvents);
+      h.commit();
+
+      for (AlarmUpdate update : updates) {
+        final Alarm originalAlarm = update.getOldAlarm();
+        alarmCountSummary.updated(tenantId, originalAlarm.getAlarmDefinition().getId(),
+                                  originalAlarm.getAlarmDefinition().getSeverity(),
+                                  originalAlarm.getState(), originalAlarm.getLifecycleState(),
+                                  update.getState(), update.getLifecycleState());
+      }
+
+      return updates;
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
+    }
+  }
+
+  private static boolean isTrue(Object value) {
+    return value instanceof Number ? ((Number) value).intValue() != 0 : Boolean.TRUE.equals(value);
+  }
+
   public static class SubAlarm {
 
     private String id;
@@ -417,18 +811,45 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
   @Override
   public Map<String, AlarmSubExpression> findAlarmSubExpressions(String alarmId) {
     try (Handle h = db.open()) {
-      final List<SubAlarm> result = h
-          .createQuery("select * from sub_alarm where alarm_id = :alarmId")
-          .bind("alarmId", alarmId)
-          .map(new BeanMapper<>(SubAlarm.class)).list();
-      final Map<String, AlarmSubExpression> subAlarms = new HashMap<>(result.size());
+      return findAlarmSubExpressions(h, alarmId);
+    }
+  }
 
-      for (SubAlarm row : result) {
-        subAlarms.put(row.id, AlarmSubExpression.of(row.expression));
+  /**
+   * Returns the sub alarms of the alarms mapped by their ids, mapped by alarm id.
+   */
+  private Map<String, Map<String, AlarmSubExpression>> findAlarmSubExpressions(
+      Handle h, List<String> alarmIds) {
+    final Query<Map<String, Object>> q =
+        h.createQuery(String.format(FIND_SUB_ALARMS_SQL, inClause("alarmId", alarmIds.size())));
+    bindInClause(q, "alarmId", alarmIds);
+
+    final Map<String, Map<String, AlarmSubExpression>> subAlarms = new HashMap<>();
+    for (Map<String, Object> row : q.list()) {
+      final String alarmId = getString(row, "alarm_id");
+      Map<String, AlarmSubExpression> alarmSubAlarms = subAlarms.get(alarmId);
+      if (alarmSubAlarms == null) {
+        alarmSubAlarms = new HashMap<>();
+        subAlarms.put(alarmId, alarmSubAlarms);
       }
+      alarmSubAlarms.put(getString(row, "id"),
+                         AlarmExpressionCache.get().subExpression(getString(row, "expression")));
+    }
+    return subAlarms;
+  }
 
-      return subAlarms;
+  private Map<String, AlarmSubExpression> findAlarmSubExpressions(Handle h, String alarmId) {
+    final List<SubAlarm> result = h
+        .createQuery("select * from sub_alarm where alarm_id = :alarmId")
+        .bind("alarmId", alarmId)
+        .map(new BeanMapper<>(SubAlarm.class)).list();
+    final Map<String, AlarmSubExpression> subAlarms = new HashMap<>(result.size());
+
+    for (SubAlarm row : result) {
+      subAlarms.put(row.id, AlarmExpressionCache.get().subExpression(row.expression));
     }
+
+    return subAlarms;
   }
 
   @Override
@@ -452,7 +873,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
 
         final String id = (String) row.get("id");
         final String expression = (String) row.get("expression");
-        alarmMap.put(id, AlarmSubExpression.of(expression));
+        alarmMap.put(id, AlarmExpressionCache.get().subExpression(expression));
       }
 
       return subAlarms;
@@ -465,12 +886,24 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                                    List<AlarmSeverity> severities, String lifecycleState, String link,
                                    DateTime stateUpdatedStart, List<String> groupBy,
                                    String offset, int limit) {
+    if (metricName == null && metricDimensions == null && link == null
+        && stateUpdatedStart == null) {
+      final List<Map<String, Object>> rows = alarmCountSummary.count(tenantId, alarmDefId, state,
+          severities, lifecycleState, groupBy, offset, limit);
+      if (rows != null) {
+        return createAlarmCounts(groupBy, rows);
+      }
+    }
+
     final String SELECT_CLAUSE = "SELECT count(*) as count%1$s "
                                  + " FROM alarm AS a "
                                  + " INNER JOIN alarm_definition as ad on ad.id = a.alarm_definition_id ";
 
     StringBuilder queryBuilder = new StringBuilder();
 
+    final DimensionSetIndex.Matches dimensionSetMatches =
+        metricDimensions == null ? null : dimensionSetIndex.find(metricDimensions);
+
     String groupByStr = "";
     String metricSelect;
     if (groupBy != null) {
@@ -523,7 +956,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                      + "            WHERE name = :metricName) AS md "
                      + "  ON md.id = mdd.metric_definition_id ");
 
-      buildJoinClauseFor(metricDimensions, queryBuilder);
+      buildDimensionClauseFor(metricDimensions, dimensionSetMatches, queryBuilder);
 
       queryBuilder.append(")");
 
@@ -534,7 +967,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
                      + "INNER JOIN metric_definition_dimensions AS mdd "
                      + "  ON mdd.id = am.metric_definition_dimensions_id ");
 
-      buildJoinClauseFor(metricDimensions, queryBuilder);
+      buildDimensionClauseFor(metricDimensions, dimensionSetMatches, queryBuilder);
 
       queryBuilder.append(")");
 
@@ -612,7 +1045,7 @@ public class AlarmMySqlRepoImpl implements AlarmRepo {
 
       q.bind("limit", limit + 1);
 
-      DimensionQueries.bindDimensionsToQuery(q, metricDimensions);
+      bindDimensionsToQuery(q, metricDimensions, dimensionSetMatches);
 
       final List<Map<String, Object>> rows = q.list();
 
@@ -0,0 +1,426 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.util.TimestampMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import monasca.api.ApiConfig;
+
+/**
+ * In memory inverted index from dimension name and value to the dimension sets of alarmed metrics.
+ *
+ * <p>Every dimension set gets an ordinal, and each name and each name and value pair maps to a
+ * bitmap of the ordinals of the sets that have it. A dimension filter is answered by intersecting
+ * the bitmaps, which replaces one self join of metric_dimension per filtered dimension with an
+ * in (...) list of dimension set ids.
+ *
+ * <p>The index is loaded from the dimension sets referenced by alarm_metric. After that, every
+ * refresh adds the dimension sets of the alarm_metric rows created since the previous load. A
+ * rebuild from scratch at a longer interval drops the sets of metrics that are no longer alarmed.
+ * A metric added to an alarm after a load is not in the index until the next one, so
+ * {@link #find(Map)} also returns the time from which alarm_metric rows may be missing, and
+ * callers match those rows on their dimensions. {@link #find(Map)} returns null, and callers use
+ * the dimension joins, until the first load completes.
+ */
+public class DimensionSetIndex implements Managed {
+
+  private static final Logger logger = LoggerFactory.getLogger(DimensionSetIndex.class);
+
+  private static final Splitter BAR_SPLITTER = Splitter.on('|');
+
+  private static final String LOAD_SQL =
+      "select mdim.dimension_set_id, mdim.name, mdim.value from metric_dimension as mdim "
+      + "where exists (select 1 from metric_definition_dimensions as mdd "
+      + "inner join alarm_metric as am on am.metric_definition_dimensions_id = mdd.id "
+      + "where mdd.metric_dimension_set_id = mdim.dimension_set_id)";
+
+  private static final String LOAD_ADDED_SQL =
+      "select mdim.dimension_set_id, mdim.name, mdim.value from metric_dimension as mdim "
+      + "inner join (select distinct mdd.metric_dimension_set_id "
+      + "from alarm_metric as am "
+      + "inner join metric_definition_dimensions as mdd on mdd.id = am.metric_definition_dimensions_id "
+      + "where am.created_at >= :since) as added "
+      + "on added.metric_dimension_set_id = mdim.dimension_set_id";
+
+  private static final String CURRENT_TIMESTAMP_SQL = "select current_timestamp";
+
+  /**
+   * How long before a load an alarm_metric row may have been created and still be uncommitted,
+   * and so not seen by the load. Rows created within this margin are looked for again.
+   */
+  static final long COMMIT_MARGIN_MILLIS = 60000;
+
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final DBI db;
+  private final int maxMatches;
+  private final long refreshMillis;
+  private final long rebuildMillis;
+  private ScheduledExecutorService executor;
+  private long rebuiltAtMillis;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Snapshot snapshot;
+  private Timestamp since;
+
+  private final Meter indexed;
+  private final Meter fallbacks;
+
+  /**
+   * Dimension sets that match a filter.
+   */
+  public static final class Matches {
+    private final List<byte[]> dimensionSetIds;
+    private final Timestamp since;
+
+    Matches(List<byte[]> dimensionSetIds, Timestamp since) {
+      this.dimensionSetIds = dimensionSetIds;
+      this.since = since;
+    }
+
+    /**
+     * Returns the ids of the matching dimension sets of the index.
+     */
+    public List<byte[]> getDimensionSetIds() {
+      return dimensionSetIds;
+    }
+
+    /**
+     * Returns the time from which alarm_metric rows may be missing from the index. Their metrics
+     * have to be matched on their dimensions.
+     */
+    public Timestamp getSince() {
+      return since;
+    }
+  }
+
+  /**
+   * The dimension sets loaded into the index. It is only changed by the refresh thread, while
+   * holding the write lock of the index once it is published.
+   */
+  static final class Snapshot {
+    private final List<byte[]> dimensionSetIds = new ArrayList<>();
+    private final Map<ByteBuffer, Integer> ordinals = new HashMap<>();
+    private final Map<String, BitSet> names = new HashMap<>();
+    private final Map<String, Map<String, BitSet>> values = new HashMap<>();
+
+    void add(byte[] dimensionSetId, String name, String value) {
+      ByteBuffer key = ByteBuffer.wrap(dimensionSetId);
+      Integer ordinal = this.ordinals.get(key);
+      if (ordinal == null) {
+        ordinal = this.dimensionSetIds.size();
+        this.dimensionSetIds.add(dimensionSetId);
+        this.ordinals.put(key, ordinal);
+      }
+
+      BitSet named = this.names.get(name);
+      if (named == null) {
+        named = new BitSet();
+        this.names.put(name, named);
+      }
+      named.set(ordinal);
+
+      Map<String, BitSet> valuesOfName = this.values.get(name);
+      if (valuesOfName == null) {
+        valuesOfName = new HashMap<>();
+        this.values.put(name, valuesOfName);
+      }
+      BitSet valued = valuesOfName.get(value);
+      if (valued == null) {
+        valued = new BitSet();
+        valuesOfName.put(value, valued);
+      }
+      valued.set(ordinal);
+    }
+
+    int size() {
+      return this.dimensionSetIds.size();
+    }
+
+    /**
+     * Returns a new bitmap of the sets that have the dimension.
+     */
+    private BitSet match(String name, String value) {
+      BitSet matches = new BitSet();
+
+      if (Strings.isNullOrEmpty(value)) {
+        BitSet named = this.names.get(name);
+        if (named != null) {
+          matches.or(named);
+        }
+        return matches;
+      }
+
+      Map<String, BitSet> valuesOfName = this.values.get(name);
+      if (valuesOfName != null) {
+        for (String alternative : BAR_SPLITTER.split(value)) {
+          BitSet valued = valuesOfName.get(alternative);
+          if (valued != null) {
+            matches.or(valued);
+          }
+        }
+      }
+      return matches;
+    }
+  }
+
+  @Inject
+  public DimensionSetIndex(@Named("mysql") DBI db, ApiConfig config,
+                           MetricRegistry metricRegistry) {
+    this(db,
+         config.dimensionSetIndex.enabled
+         ? config.dimensionSetIndex.refreshInterval.toMilliseconds() : 0,
+         config.dimensionSetIndex.rebuildInterval.toMilliseconds(),
+         config.dimensionSetIndex.maxMatches,
+         metricRegistry);
+  }
+
+  /**
+   * @param refreshMillis interval between loads of the added dimension sets, 0 creates an index
+   *                      that is only loaded by {@link #refresh()} and {@link #publish}
+   * @param rebuildMillis interval between rebuilds from scratch, 0 only builds the index once
+   */
+  DimensionSetIndex(DBI db, long refreshMillis, long rebuildMillis, int maxMatches,
+                    MetricRegistry metricRegistry) {
+    this.db = db;
+    this.maxMatches = maxMatches;
+    this.refreshMillis = refreshMillis;
+    this.rebuildMillis = rebuildMillis;
+
+    this.indexed = metricRegistry.meter(MetricRegistry.name(DimensionSetIndex.class, "indexed"));
+    this.fallbacks =
+        metricRegistry.meter(MetricRegistry.name(DimensionSetIndex.class, "fallbacks"));
+
+    String sizeName = MetricRegistry.name(DimensionSetIndex.class, "size");
+    if (!metricRegistry.getGauges().containsKey(sizeName)) {
+      metricRegistry.register(sizeName, new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return size();
+        }
+      });
+    }
+  }
+
+  @Override
+  public void start() {
+    if (this.refreshMillis > 0) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("dimension-set-index").build());
+      this.executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          refresh();
+        }
+      }, 0, this.refreshMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        this.executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Returns the dimension sets of the index that have all of the dimensions, or null if the index
+   * is not loaded or the filter matches too many sets. A dimension with an empty value matches
+   * any value, and values separated by '|' match any of them.
+   */
+  public Matches find(Map<String, String> dimensions) {
+    this.lock.readLock().lock();
+    try {
+      if (this.snapshot == null) {
+        this.fallbacks.mark();
+        return null;
+      }
+
+      BitSet matches = null;
+
+      for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+        BitSet dimensionMatches = this.snapshot.match(dimension.getKey(), dimension.getValue());
+        if (matches == null) {
+          matches = dimensionMatches;
+        } else {
+          matches.and(dimensionMatches);
+        }
+        if (matches.isEmpty()) {
+          break;
+        }
+      }
+
+      if (matches == null || matches.cardinality() > this.maxMatches) {
+        this.fallbacks.mark();
+        return null;
+      }
+
+      List<byte[]> ids = new ArrayList<>(matches.cardinality());
+      for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+        ids.add(this.snapshot.dimensionSetIds.get(i));
+      }
+
+      this.indexed.mark();
+      return new Matches(ids, this.since);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  int size() {
+    this.lock.readLock().lock();
+    try {
+      return this.snapshot == null ? 0 : this.snapshot.size();
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rebuilds the index when it is due, otherwise adds the dimension sets of the metrics added to
+   * alarms since the last load.
+   */
+  void refresh() {
+    long start = System.currentTimeMillis();
+
+    if (this.rebuiltAtMillis == 0
+        || (this.rebuildMillis > 0 && start - this.rebuiltAtMillis >= this.rebuildMillis)) {
+      rebuild(start);
+    } else {
+      loadAdded(start);
+    }
+  }
+
+  private void rebuild(long start) {
+    Snapshot rebuilt = new Snapshot();
+    Timestamp loadedAt;
+
+    try (Handle h = this.db.open()) {
+      // Rows created from here on may not be seen by the load, so the time is read first.
+      loadedAt = currentTimestamp(h);
+
+      // Let the MySQL driver stream the rows instead of reading all of them into memory.
+      try (ResultIterator<Map<String, Object>> rows =
+               h.createQuery(LOAD_SQL).setFetchSize(Integer.MIN_VALUE).iterator()) {
+        while (rows.hasNext()) {
+          Map<String, Object> row = rows.next();
+          rebuilt.add((byte[]) row.get("dimension_set_id"), (String) row.get("name"),
+                      (String) row.get("value"));
+        }
+      }
+
+    } catch (RuntimeException e) {
+      // Keep the previous index, the next refresh retries.
+      logger.warn("Failed to rebuild dimension set index", e);
+      return;
+    }
+
+    publish(rebuilt, loadedAt);
+    this.rebuiltAtMillis = start;
+
+    logger.debug("Loaded {} dimension sets in {} ms", rebuilt.size(),
+                 System.currentTimeMillis() - start);
+  }
+
+  private void loadAdded(long start) {
+    Timestamp from;
+    this.lock.readLock().lock();
+    try {
+      from = this.since;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+
+    Timestamp loadedAt;
+    List<Map<String, Object>> rows;
+
+    try (Handle h = this.db.open()) {
+      loadedAt = currentTimestamp(h);
+      rows = h.createQuery(LOAD_ADDED_SQL).bind("since", from).list();
+    } catch (RuntimeException e) {
+      // Callers match the rows created since the last load on their dimensions meanwhile.
+      logger.warn("Failed to load added dimension sets into dimension set index", e);
+      return;
+    }
+
+    this.lock.writeLock().lock();
+    try {
+      for (Map<String, Object> row : rows) {
+        this.snapshot.add((byte[]) row.get("dimension_set_id"), (String) row.get("name"),
+                          (String) row.get("value"));
+      }
+      this.since = sinceFor(loadedAt);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+
+    logger.debug("Loaded {} added dimensions in {} ms", rows.size(),
+                 System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Replaces the index with a snapshot of the dimension sets of the alarm_metric rows that were
+   * committed when the database time was loadedAt.
+   */
+  void publish(Snapshot rebuilt, Timestamp loadedAt) {
+    this.lock.writeLock().lock();
+    try {
+      this.snapshot = rebuilt;
+      this.since = sinceFor(loadedAt);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private static Timestamp sinceFor(Timestamp loadedAt) {
+    return new Timestamp(loadedAt.getTime() - COMMIT_MARGIN_MILLIS);
+  }
+
+  private static Timestamp currentTimestamp(Handle h) {
+    return h.createQuery(CURRENT_TIMESTAMP_SQL).map(TimestampMapper.FIRST).first();
+  }
+}
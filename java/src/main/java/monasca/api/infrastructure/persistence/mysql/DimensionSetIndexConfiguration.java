@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the in memory index that answers alarm dimension filters.
+ */
+public class DimensionSetIndexConfiguration {
+
+  /**
+   * Needs the created_at column of alarm_metric. Without it the index fails to load and the
+   * dimension joins are used.
+   */
+  @JsonProperty
+  public boolean enabled = true;
+
+  /**
+   * How often the dimension sets of metrics added to alarms since the last load are added to the
+   * index.
+   */
+  @JsonProperty
+  public Duration refreshInterval = Duration.seconds(5);
+
+  /**
+   * How often the index is rebuilt from scratch, which drops the dimension sets of metrics that
+   * are no longer alarmed.
+   */
+  @JsonProperty
+  public Duration rebuildInterval = Duration.hours(1);
+
+  /**
+   * Most dimension sets a filter may match to be answered by the index. Broader filters use the
+   * dimension joins, which handle them better than a long in (...) list.
+   */
+  @JsonProperty
+  public int maxMatches = 1000;
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+
+import monasca.api.domain.model.event.EventOutboxRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+
+/**
+ * Event outbox repository implementation.
+ */
+public class EventOutboxMySqlRepoImpl implements EventOutboxRepo {
+  private static final String INSERT_EVENT_SQL =
+      "insert into event_outbox (topic, message_key, message, created_at) values (?, ?, ?, NOW(3))";
+
+  private static final String FIND_OLDEST_EVENTS_SQL =
+      "select id, topic, message_key, message, created_at from event_outbox "
+      + "order by id limit :limit for update";
+
+  private static final String DELETE_EVENT_SQL = "delete from event_outbox where id = ?";
+
+  private final DBI db;
+
+  @Inject
+  public EventOutboxMySqlRepoImpl(@Named("mysql") DBI db) {
+    this.db = db;
+  }
+
+  /**
+   * Writes the events to the outbox in the transaction of the handle.
+   */
+  static void insert(Handle h, List<OutboxEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    final PreparedBatch batch = h.prepareBatch(INSERT_EVENT_SQL);
+    for (OutboxEvent event : events) {
+      batch.add(event.getTopic(), event.getKey(), event.getMessage());
+    }
+    batch.execute();
+  }
+
+  @Override
+  public int publishOldest(int limit, Publisher publisher) {
+    Handle h = db.open();
+
+    try {
+      h.begin();
+      final List<Map<String, Object>> rows = h.createQuery(FIND_OLDEST_EVENTS_SQL)
+          .bind("limit", limit)
+          .list();
+
+      if (rows.isEmpty()) {
+        h.commit();
+        return 0;
+      }
+
+      final List<OutboxEvent> events = new ArrayList<>(rows.size());
+      final PreparedBatch delete = h.prepareBatch(DELETE_EVENT_SQL);
+      for (Map<String, Object> row : rows) {
+        final long id = ((Number) row.get("id")).longValue();
+        events.add(new OutboxEvent(id, (String) row.get("topic"), (String) row.get("message_key"),
+                                   (String) row.get("message"),
+                                   new DateTime(((Timestamp) row.get("created_at")).getTime(),
+                                                DateTimeZone.UTC)));
+        delete.add(id);
+      }
+
+      publisher.publish(events);
+      delete.execute();
+      h.commit();
+      return events.size();
+    } catch (RuntimeException e) {
+      h.rollback();
+      throw e;
+    } finally {
+      h.close();
+    }
+  }
+}
@@ -13,6 +13,8 @@
  */
 package monasca.api.infrastructure.persistence.mysql;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -23,6 +25,7 @@ import javax.inject.Named;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +35,7 @@ import monasca.api.domain.exception.EntityExistsException;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.persistence.BeanMapper;
 
@@ -44,11 +48,14 @@ public class NotificationMethodMySqlRepoImpl implements NotificationMethodRepo {
   private static final Joiner COMMA_JOINER = Joiner.on(',');
   private final DBI db;
   private final PersistUtils persistUtils;
+  private final NotificationMethodIdCache idCache;
 
   @Inject
-  public NotificationMethodMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils) {
+  public NotificationMethodMySqlRepoImpl(@Named("mysql") DBI db, PersistUtils persistUtils,
+                                         NotificationMethodIdCache idCache) {
     this.db = db;
     this.persistUtils = persistUtils;
+    this.idCache = idCache;
   }
 
   @Override
@@ -88,6 +95,7 @@ public class NotificationMethodMySqlRepoImpl implements NotificationMethodRepo {
         throw new EntityNotFoundException("No notification method exists for %s",
             notificationMethodId);
     }
+    idCache.invalidate(tenantId);
   }
 
   @Override
@@ -101,6 +109,35 @@ public class NotificationMethodMySqlRepoImpl implements NotificationMethodRepo {
     }
   }
 
+  @Override
+  public boolean existsAll(String tenantId, Collection<String> notificationMethodIds) {
+    final long version = idCache.version();
+    final List<String> unknownIds =
+        new ArrayList<>(idCache.unknown(tenantId, notificationMethodIds));
+    if (unknownIds.isEmpty()) {
+      return true;
+    }
+
+    final StringBuilder inClause = new StringBuilder();
+    for (int i = 0; i < unknownIds.size(); i++) {
+      inClause.append(i == 0 ? ":id" : ",:id").append(i);
+    }
+
+    try (Handle h = db.open()) {
+      final Query<Map<String, Object>> q = h
+          .createQuery("select id from notification_method where tenant_id = :tenantId and id in ("
+                       + inClause + ")")
+          .bind("tenantId", tenantId);
+      for (int i = 0; i < unknownIds.size(); i++) {
+        q.bind("id" + i, unknownIds.get(i));
+      }
+      final List<String> foundIds = q.map(StringMapper.FIRST).list();
+
+      idCache.addAll(tenantId, foundIds, version);
+      return foundIds.size() == unknownIds.size();
+    }
+  }
+
   private String getNotificationIdForTenantIdAndName(Handle h,String tenantId, String name) {
     Map<String, Object> map = h
         .createQuery(
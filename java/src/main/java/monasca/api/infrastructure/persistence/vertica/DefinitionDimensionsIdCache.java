@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.vertica;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import org.skife.jdbi.v2.Handle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.CacheMetrics;
+
+/**
+ * Caches the definition dimensions ids that match a tenant, metric name and set of dimensions, so
+ * that repeated measurement and statistic queries skip the metadata join. Results are kept for a
+ * bounded time; empty results are kept for a shorter time so that newly created metrics show up
+ * quickly. Only id sets small enough to be bound into a query are cached, larger ones are matched
+ * with the definition subquery anyway, and the size of the cache is bounded by the number of ids
+ * it holds.
+ */
+public class DefinitionDimensionsIdCache {
+
+  private static final Splitter BAR_SPLITTER = Splitter.on('|').omitEmptyStrings().trimResults();
+  private static final Joiner BAR_JOINER = Joiner.on('|');
+
+  private final Cache<Key, Entry> cache;
+  private final long ttlMillis;
+  private final long negativeTtlMillis;
+  private final CacheMetrics metrics;
+
+  @Inject
+  public DefinitionDimensionsIdCache(ApiConfig config, MetricRegistry metricRegistry) {
+    this(config.vertica.getDefinitionIdCacheMaxSize(),
+         config.vertica.getDefinitionIdCacheTtl().toMilliseconds(),
+         config.vertica.getDefinitionIdCacheNegativeTtl().toMilliseconds(),
+         metricRegistry);
+  }
+
+  /**
+   * @param maxIds the most ids held by the cache, 0 disables it
+   */
+  DefinitionDimensionsIdCache(long maxIds, long ttlMillis, long negativeTtlMillis,
+                              MetricRegistry metricRegistry) {
+    this.ttlMillis = ttlMillis;
+    this.negativeTtlMillis = negativeTtlMillis;
+
+    if (maxIds > 0 && ttlMillis > 0) {
+      this.cache = CacheBuilder.newBuilder()
+          .maximumWeight(maxIds)
+          .weigher(new Weigher<Key, Entry>() {
+            @Override
+            public int weigh(Key key, Entry entry) {
+              // Empty results still take up an entry
+              return Math.max(1, entry.ids.size());
+            }
+          })
+          .expireAfterWrite(Math.max(ttlMillis, negativeTtlMillis), TimeUnit.MILLISECONDS)
+          .build();
+    } else {
+      this.cache = null;
+    }
+
+    this.metrics = new CacheMetrics(metricRegistry, DefinitionDimensionsIdCache.class, this.cache);
+  }
+
+  /**
+   * Returns the definition dimensions ids that match the given tenant, name and dimensions,
+   * querying Vertica only when there is no live cache entry. Like
+   * {@link MetricQueries#findDefinitionDimensionIds}, at most
+   * {@link MetricQueries#MAX_BOUND_DEF_DIMS_IDS} + 1 ids are returned.
+   */
+  public List<byte[]> get(final Handle h, final String dbHint, final String tenantId,
+                          final String name, final Map<String, String> dimensions) {
+
+    return get(new Key(tenantId, name, dimensions), new Callable<List<byte[]>>() {
+      @Override
+      public List<byte[]> call() {
+        return MetricQueries.findDefinitionDimensionIds(h, dbHint, tenantId, name, dimensions);
+      }
+    });
+  }
+
+  List<byte[]> get(Key key, Callable<List<byte[]>> loader) {
+
+    if (this.cache == null) {
+      this.metrics.miss();
+      return load(loader);
+    }
+
+    long now = System.currentTimeMillis();
+
+    Entry entry = this.cache.getIfPresent(key);
+
+    if (entry != null && entry.expiresAt > now) {
+      this.metrics.hit();
+      return entry.ids;
+    }
+
+    this.metrics.miss();
+
+    List<byte[]> ids = Collections.unmodifiableList(new ArrayList<>(load(loader)));
+
+    long ttl = ids.isEmpty() ? this.negativeTtlMillis : this.ttlMillis;
+
+    if (ttl > 0 && ids.size() <= MetricQueries.MAX_BOUND_DEF_DIMS_IDS) {
+      this.cache.put(key, new Entry(ids, now + ttl));
+    }
+
+    return ids;
+  }
+
+  /**
+   * Drops every cached entry.
+   */
+  public void invalidateAll() {
+    if (this.cache != null) {
+      this.cache.invalidateAll();
+    }
+  }
+
+  long getHitCount() {
+    return this.metrics.getHitCount();
+  }
+
+  long getMissCount() {
+    return this.metrics.getMissCount();
+  }
+
+  private static List<byte[]> load(Callable<List<byte[]>> loader) {
+    try {
+      return loader.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final class Entry {
+    final List<byte[]> ids;
+    final long expiresAt;
+
+    Entry(List<byte[]> ids, long expiresAt) {
+      this.ids = ids;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * Lookup key. Dimensions are sorted by name and multi-valued dimensions ("a|b") by value, so
+   * queries that only differ in ordering share an entry.
+   */
+  static final class Key {
+    private final String tenantId;
+    private final String name;
+    private final SortedMap<String, String> dimensions;
+
+    Key(String tenantId, String name, Map<String, String> dimensions) {
+      this.tenantId = tenantId;
+      this.name = Strings.nullToEmpty(name);
+      this.dimensions = new TreeMap<>();
+
+      if (dimensions != null) {
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+          this.dimensions.put(dimension.getKey(), normalizeValue(dimension.getValue()));
+        }
+      }
+    }
+
+    private static String normalizeValue(String value) {
+      if (Strings.isNullOrEmpty(value) || value.indexOf('|') < 0) {
+        return Strings.nullToEmpty(value);
+      }
+      List<String> values = new ArrayList<>(BAR_SPLITTER.splitToList(value));
+      Collections.sort(values);
+      return BAR_JOINER.join(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return Objects.equals(tenantId, other.tenantId)
+          && name.equals(other.name)
+          && dimensions.equals(other.dimensions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tenantId, name, dimensions);
+    }
+  }
+}
@@ -49,10 +49,10 @@ public class DimensionVerticaRepoImpl implements DimensionRepo {
       + "  def.id = defdims.definition_id"
       + "  %s "                      // optional offset goes here
       + "  %s "                      // optional metric name goes here
-      + "  and def.tenant_id = '%s'" // tenant_id goes here
-      + "  and dims.name = '%s' "    // dimension name goes here
+      + "  and def.tenant_id = :tenantId"
+      + "  and dims.name = :dimensionName "
       + "ORDER BY dims.value ASC "
-      + "%s ";                       // limit goes here
+      + "LIMIT :limit";
 
   private static final String FIND_DIMENSION_NAMES_SQL =
         "SELECT %s"                   // dbHint goes here
@@ -67,9 +67,9 @@ public class DimensionVerticaRepoImpl implements DimensionRepo {
       + "  def.id = defdims.definition_id"
       + "  %s "                       // optional offset goes here
       + "  %s "                       // metric name goes here
-      + "  and def.tenant_id = '%s' " // tenant_id goes here
+      + "  and def.tenant_id = :tenantId "
       + "ORDER BY dims.name ASC "
-      + "%s ";                        // limit goes here
+      + "LIMIT :limit";
 
   private final DBI db;
   private final String dbHint;
@@ -103,18 +103,17 @@ public class DimensionVerticaRepoImpl implements DimensionRepo {
         metricNamePart = " and def.name = :metricName";
       }
 
-      String limitPart = " limit " + Integer.toString(limit + 1);
-
+      // Values are bound rather than interpolated, so only the optional offset and metric name
+      // change the statement text and there are at most four distinct texts of this query.
       String sql = String.format(FIND_DIMENSION_VALUES_SQL,
                                  this.dbHint,
                                  offsetPart,
-                                 metricNamePart,
-                                 tenantId,
-                                 dimensionName,
-                                 limitPart);
-
-      Query<Map<String, Object>> query = h.createQuery(sql);
+                                 metricNamePart);
 
+      Query<Map<String, Object>> query = h.createQuery(sql)
+          .bind("tenantId", tenantId)
+          .bind("dimensionName", dimensionName)
+          .bind("limit", limit + 1);
 
       if (!Strings.isNullOrEmpty(offset)) {
         logger.debug("binding offset: {}", offset);
@@ -160,16 +159,14 @@ public class DimensionVerticaRepoImpl implements DimensionRepo {
         metricNamePart = " and def.name = :metricName";
       }
 
-      String limitPart = " limit " + Integer.toString(limit + 1);
-
       String sql = String.format(FIND_DIMENSION_NAMES_SQL,
               this.dbHint,
               offsetPart,
-              metricNamePart,
-              tenantId,
-              limitPart);
+              metricNamePart);
 
-      Query<Map<String, Object>> query = h.createQuery(sql);
+      Query<Map<String, Object>> query = h.createQuery(sql)
+          .bind("tenantId", tenantId)
+          .bind("limit", limit + 1);
 
       if (!Strings.isNullOrEmpty(offset)) {
         logger.debug("binding offset: {}", offset);
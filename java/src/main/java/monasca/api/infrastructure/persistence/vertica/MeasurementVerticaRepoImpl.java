@@ -16,15 +16,20 @@ import monasca.api.domain.exception.MultipleMetricsException;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 import monasca.api.ApiConfig;
+import monasca.api.infrastructure.persistence.TimestampCodec;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.primitives.UnsignedBytes;
 
 import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,11 +40,12 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,18 +54,15 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
   private static final Logger logger = LoggerFactory
       .getLogger(MeasurementVerticaRepoImpl.class);
 
-  public static final DateTimeFormatter DATETIME_FORMATTER =
-      ISODateTimeFormat.dateTime().withZoneUTC();
-
   private static final String FIND_BY_METRIC_DEF_SQL =
       "SELECT %s " // db hint to satisfy query
-      + "%s to_hex(mes.definition_dimensions_id) as def_dims_id, " // select for groupBy if present
+      + "%s mes.definition_dimensions_id as def_dims_id, " // select for groupBy if present
       + "mes.time_stamp, mes.value, mes.value_meta "
       + "FROM MonMetrics.Measurements mes "
       + "%s" // joins for group by
       + "WHERE mes.time_stamp >= :startTime "
       + "%s " // endtime and offset here
-      + "AND TO_HEX(definition_dimensions_id) IN (%s) " // id subquery here
+      + "AND mes.definition_dimensions_id IN (%s) " // definition dimensions ids here
       + "ORDER BY %s" // sort by id if not merging
       + "mes.time_stamp ASC "
       + "LIMIT :limit";
@@ -70,14 +73,43 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
 
   private final static TypeReference VALUE_META_TYPE = new TypeReference<Map<String, String>>() {};
 
+  private static final Comparator<MeasurementRow> MEASUREMENT_ROW_ID_ORDER =
+      new Comparator<MeasurementRow>() {
+        @Override
+        public int compare(MeasurementRow o1, MeasurementRow o2) {
+          return UnsignedBytes.lexicographicalComparator().compare(o1.defDimsId, o2.defDimsId);
+        }
+      };
+
+  private static final Comparator<MeasurementRow> MEASUREMENT_ROW_DIMENSION_VALUES_ORDER =
+      new Comparator<MeasurementRow>() {
+        @Override
+        public int compare(MeasurementRow o1, MeasurementRow o2) {
+          return MetricQueries.compareDimensionValues(o1.dimensionValues, o2.dimensionValues);
+        }
+      };
+
   private final String dbHint;
 
+  private final int fetchSize;
+
+  private final DefinitionDimensionsIdCache definitionIdCache;
+
+  private final MetricDefinitionCache definitionCache;
+
+  private final TimeSlicedQueryExecutor queryExecutor;
+
   @Inject
   public MeasurementVerticaRepoImpl(
-      @Named("vertica") DBI db, ApiConfig config)
+      @Named("vertica") DBI db, ApiConfig config, DefinitionDimensionsIdCache definitionIdCache,
+      MetricDefinitionCache definitionCache, TimeSlicedQueryExecutor queryExecutor)
   {
     this.db = db;
     this.dbHint = config.vertica.dbHint;
+    this.fetchSize = config.vertica.fetchSize;
+    this.definitionIdCache = definitionIdCache;
+    this.definitionCache = definitionCache;
+    this.queryExecutor = queryExecutor;
   }
 
   @Override
@@ -86,20 +118,28 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
       String name,
       Map<String, String> dimensions,
       DateTime startTime,
-      @Nullable DateTime endTime,
-      @Nullable String offset,
+      @Nullable final DateTime endTime,
+      @Nullable final String offset,
       int limit,
       Boolean mergeMetricsFlag,
-      List<String> groupBy) throws MultipleMetricsException {
+      final List<String> groupBy) throws MultipleMetricsException {
 
     try (Handle h = db.open()) {
 
-      Map<String, Measurements> results = new HashMap<>();
+      final List<byte[]> defDimsIds =
+          this.definitionIdCache.get(h, this.dbHint, tenantId, name, dimensions);
+
+      if (groupBy.isEmpty() && !Boolean.TRUE.equals(mergeMetricsFlag) && defDimsIds.size() > 1) {
+        throw new MultipleMetricsException(name, dimensions);
+      }
 
-      if (groupBy.isEmpty() && !Boolean.TRUE.equals(mergeMetricsFlag)) {
-        MetricQueries.checkForMultipleDefinitions(h, tenantId, name, dimensions);
+      if (defDimsIds.isEmpty()) {
+        return new ArrayList<>();
       }
- 
+
+      final MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter =
+          new MetricQueries.DefinitionDimensionsIdFilter(defDimsIds, tenantId, name, dimensions);
+
       StringBuilder endtimeAndOffsetSql = new StringBuilder();
 
       if (endTime != null) {
@@ -114,8 +154,8 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
 
         if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-          endtimeAndOffsetSql.append(" and (TO_HEX(mes.definition_dimensions_id) > :offset_id "
-                    + "or (TO_HEX(mes.definition_dimensions_id) = :offset_id and mes.time_stamp > :offset_timestamp)) ");
+          endtimeAndOffsetSql.append(" and (mes.definition_dimensions_id > :offset_id "
+                    + "or (mes.definition_dimensions_id = :offset_id and mes.time_stamp > :offset_timestamp)) ");
 
         } else if (!groupBy.isEmpty()){
 
@@ -145,144 +185,241 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
       if (!groupBySelect.isEmpty())
         groupBySelect += " as dimension_values, ";
 
-      String sql = String.format(
-              FIND_BY_METRIC_DEF_SQL,
-              this.dbHint,
-              groupBySelect,
-              MetricQueries.buildGroupBySql(groupBy),
-              endtimeAndOffsetSql,
-              MetricQueries.buildMetricDefinitionSubSql(name, dimensions, null, null),
-              orderById);
+      List<TimeSlicedQueryExecutor.TimeSlice> slices =
+          this.queryExecutor.split(startTime.getMillis(),
+                                   endTime != null ? endTime.getMillis()
+                                                   : System.currentTimeMillis(),
+                                   0);
+
+      final String sql = buildSql(groupBySelect, groupBy, endtimeAndOffsetSql.toString(),
+                                  defDimsIdFilter, orderById);
+
+      // Every slice but the last one ends before the start of the next slice.
+      final String slicedSql = slices.size() == 1 ? null
+          : buildSql(groupBySelect, groupBy,
+                     endtimeAndOffsetSql + " and mes.time_stamp < :sliceEndTime",
+                     defDimsIdFilter, orderById);
+
+      final MeasurementRowMapper rowMapper = new MeasurementRowMapper(!groupBySelect.isEmpty());
+
+      TimeSlicedQueryExecutor.SliceQuery<MeasurementRow> sliceQuery =
+          new TimeSlicedQueryExecutor.SliceQuery<MeasurementRow>() {
+            @Override
+            public List<MeasurementRow> find(Handle handle,
+                                             TimeSlicedQueryExecutor.TimeSlice slice,
+                                             int maxRows) {
+              return findRows(handle, slice.last ? sql : slicedSql, slice, maxRows,
+                              defDimsIdFilter, endTime, groupBy, offset, rowMapper);
+            }
+          };
+
+      // Rows of different series are ordered by series first, unless there is only one series.
+      Comparator<MeasurementRow> seriesOrder = null;
+
+      if (!orderById.isEmpty() && defDimsIds.size() > 1) {
+        seriesOrder = groupBy.isEmpty() || groupBy.contains("*")
+                      ? MEASUREMENT_ROW_ID_ORDER
+                      : MEASUREMENT_ROW_DIMENSION_VALUES_ORDER;
+      }
 
-      logger.debug(sql);
+      // The query asks for one row more than the limit so that a next link can be created.
+      List<MeasurementRow> rows =
+          this.queryExecutor.execute(this.db, h, slices, sliceQuery, limit + 1, seriesOrder);
 
-      Query<Map<String, Object>> query = h.createQuery(sql)
-              .bind("tenantId", tenantId)
-              .bind("startTime", new Timestamp(startTime.getMillis()))
-              .bind("limit", limit + 1);
+      Map<String, Measurements> results = new HashMap<>();
 
-      if (name != null && !name.isEmpty()) {
-        query.bind("name", name);
-      }
+      String firstDefDimsId = null;
 
-      MetricQueries.bindDimensionsToQuery(query, dimensions);
+      byte[] currentDefDimsId = null;
 
-      if (endTime != null) {
-        logger.debug("binding endtime: {}", endTime);
+      String currentDimensionValues = null;
 
-        query.bind("endTime", new Timestamp(endTime.getMillis()));
+      Measurements currentMeasurements = null;
 
-      }
+      for (MeasurementRow row : rows) {
 
-      if (!groupBy.isEmpty() && !groupBy.contains("*")) {
-        logger.debug("binding groupBy: {}", groupBy);
+        if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-        MetricQueries.bindGroupBy(query, groupBy);
-      }
+          if (!Arrays.equals(row.defDimsId, currentDefDimsId)) {
+            currentDefDimsId = row.defDimsId;
+            currentMeasurements = new Measurements();
+            results.put(MetricQueries.encodeDefinitionDimensionsId(row.defDimsId),
+                        currentMeasurements);
+          }
 
-      if (offset != null && !offset.isEmpty()) {
-        logger.debug("binding offset: {}", offset);
+        } else if (!groupBy.isEmpty()) {
 
-        MetricQueries.bindOffsetToQuery(query, offset);
+          if (row.dimensionValues != null
+              && !row.dimensionValues.equals(currentDimensionValues)) {
+            currentDimensionValues = row.dimensionValues;
 
-      }
+            currentMeasurements = new Measurements();
+            currentMeasurements.setId(row.dimensionValues);
+            currentMeasurements.setName(name);
+            currentMeasurements.setDimensions(
+                MetricQueries.combineGroupByAndValues(groupBy, row.dimensionValues));
 
-      List<Map<String, Object>> rows = query.list();
+            results.put(row.dimensionValues, currentMeasurements);
+          }
+
+        } else if (currentMeasurements == null) {
+
+          currentMeasurements = new Measurements();
+          currentMeasurements.setName(name);
+
+          firstDefDimsId = MetricQueries.encodeDefinitionDimensionsId(row.defDimsId);
+          results.put(firstDefDimsId, currentMeasurements);
+
+        }
 
-      if (rows.size() == 0) {
+        currentMeasurements.addMeasurement(row.measurement);
+
+      }
+
+      if (results.isEmpty()) {
         return new ArrayList<>();
       }
 
       if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-        String currentDefId = null;
+        MetricQueries.addDefsToResults(results, h, this.dbHint, this.definitionCache);
 
-        for (Map<String, Object> row : rows) {
+      } else if (groupBy.isEmpty()) {
 
-          String defDimsId = (String) row.get("def_dims_id");
+        Measurements firstMeasurement = results.get(firstDefDimsId);
 
-          if (defDimsId != null && !defDimsId.equals(currentDefId)) {
-            currentDefId = defDimsId;
-            results.put(defDimsId, new Measurements());
+        if (!Boolean.TRUE.equals(mergeMetricsFlag)) {
+          firstMeasurement.setId(firstDefDimsId);
+          MetricQueries.addDefsToResults(results, h, this.dbHint, this.definitionCache);
+        } else {
+          if (dimensions == null) {
+            dimensions = new HashMap<>();
           }
+          firstMeasurement.setDimensions(dimensions);
+        }
 
-          List<Object> measurement = parseRow(row);
+      }
 
-          results.get(defDimsId).addMeasurement(measurement);
+      List<Measurements> returnValue = new ArrayList<>(results.values());
+      Collections.sort(returnValue);
 
-        }
+      return returnValue;
+    }
+  }
 
-        MetricQueries.addDefsToResults(results, h, this.dbHint);
+  private String buildSql(String groupBySelect, List<String> groupBy,
+                          String endtimeAndOffsetSql,
+                          MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter,
+                          String orderById) {
 
-      } else if (!groupBy.isEmpty()) {
+    String sql = String.format(
+            FIND_BY_METRIC_DEF_SQL,
+            this.dbHint,
+            groupBySelect,
+            MetricQueries.buildGroupBySql(groupBy),
+            endtimeAndOffsetSql,
+            defDimsIdFilter.sql(),
+            orderById);
 
-        String currentId = null;
+    logger.debug(sql);
 
-        for (Map<String, Object> row : rows) {
+    return sql;
+  }
 
-          String dimensionValues = (String) row.get("dimension_values");
+  private List<MeasurementRow> findRows(
+      Handle h,
+      String sql,
+      TimeSlicedQueryExecutor.TimeSlice slice,
+      int maxRows,
+      MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter,
+      @Nullable DateTime endTime,
+      List<String> groupBy,
+      @Nullable String offset,
+      MeasurementRowMapper rowMapper) {
 
-          if (dimensionValues != null && !dimensionValues.equals(currentId)) {
-            currentId = dimensionValues;
+    Query<Map<String, Object>> query = h.createQuery(sql)
+            .bind("startTime", new Timestamp(slice.start))
+            .bind("limit", maxRows);
 
-            Measurements tmp = new Measurements();
-            tmp.setId(dimensionValues);
-            tmp.setName(name);
-            tmp.setDimensions(MetricQueries.combineGroupByAndValues(groupBy, dimensionValues));
+    defDimsIdFilter.bind(query);
 
-            results.put(dimensionValues, tmp);
-          }
+    if (!slice.last) {
+      query.bind("sliceEndTime", new Timestamp(slice.end));
+    }
 
-          List<Object> measurement = parseRow(row);
+    if (endTime != null) {
+      logger.debug("binding endtime: {}", endTime);
 
-          results.get(dimensionValues).addMeasurement(measurement);
+      query.bind("endTime", new Timestamp(endTime.getMillis()));
 
-        }
+    }
 
-      } else {
+    if (!groupBy.isEmpty() && !groupBy.contains("*")) {
+      logger.debug("binding groupBy: {}", groupBy);
 
-        Measurements firstMeasurement = new Measurements();
+      MetricQueries.bindGroupBy(query, groupBy);
+    }
 
-        firstMeasurement.setName(name);
+    if (offset != null && !offset.isEmpty()) {
+      logger.debug("binding offset: {}", offset);
 
-        String firstDefDimsId = (String) rows.get(0).get("def_dims_id");
+      MetricQueries.bindOffsetToQuery(query, offset, groupBy.contains("*"));
 
-        for (Map<String, Object> row : rows) {
+    }
 
-          List<Object> measurement = parseRow(row);
+    List<MeasurementRow> rows = new ArrayList<>();
 
-          firstMeasurement.addMeasurement(measurement);
+    try (ResultIterator<MeasurementRow> iterator = query
+             .setFetchSize(this.fetchSize)
+             .map(rowMapper)
+             .iterator()) {
 
-        }
+      // No page needs more rows than asked for, there is no need to read any further.
+      while (rows.size() < maxRows && iterator.hasNext()) {
+        rows.add(iterator.next());
+      }
 
-        results.put(firstDefDimsId, firstMeasurement);
+    }
 
-        if (!Boolean.TRUE.equals(mergeMetricsFlag)) {
-          firstMeasurement.setId(firstDefDimsId);
-          MetricQueries.addDefsToResults(results, h, this.dbHint);
-        } else {
-          if (dimensions == null) {
-            dimensions = new HashMap<>();
-          }
-          firstMeasurement.setDimensions(dimensions);
-        }
+    return rows;
+  }
 
-      }
+  private static final class MeasurementRow {
+    byte[] defDimsId;
+    String dimensionValues;
+    List<Object> measurement;
+  }
 
-      List<Measurements> returnValue = new ArrayList<>(results.values());
-      Collections.sort(returnValue);
+  private final class MeasurementRowMapper implements ResultSetMapper<MeasurementRow> {
 
-      return returnValue;
+    private final boolean hasDimensionValues;
+
+    MeasurementRowMapper(boolean hasDimensionValues) {
+      this.hasDimensionValues = hasDimensionValues;
     }
-  }
 
-  private List<Object> parseRow(Map<String, Object> row) {
+    @Override
+    public MeasurementRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+
+      MeasurementRow row = new MeasurementRow();
+
+      row.defDimsId = r.getBytes("def_dims_id");
+
+      if (this.hasDimensionValues) {
+        row.dimensionValues = r.getString("dimension_values");
+      }
+
+      String timestamp = TimestampCodec.formatMillis(r.getTimestamp("time_stamp").getTime());
+
+      double value = r.getDouble("value");
 
-    String timestamp = DATETIME_FORMATTER.print(((Timestamp) row.get("time_stamp")).getTime());
+      row.measurement = Arrays.asList(timestamp, value, parseValueMeta(r.getString("value_meta")));
 
-    double value = (double) row.get("value");
+      return row;
+    }
+  }
 
-    String valueMetaString = (String) row.get("value_meta");
+  private Map<String, String> parseValueMeta(String valueMetaString) {
 
     Map<String, String> valueMetaMap = new HashMap<>();
 
@@ -299,6 +436,6 @@ public class MeasurementVerticaRepoImpl implements MeasurementRepo {
 
     }
 
-    return Arrays.asList(timestamp, value, valueMetaMap);
+    return valueMetaMap;
   }
 }
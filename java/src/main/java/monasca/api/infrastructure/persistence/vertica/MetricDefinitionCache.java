@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.vertica;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+import monasca.api.infrastructure.CacheMetrics;
+
+/**
+ * Caches the metric name and dimensions of a definition dimensions id. A definition dimensions
+ * id is derived from the name and dimensions it stands for, so entries never go stale and are
+ * only evicted to bound the size of the cache.
+ */
+public class MetricDefinitionCache {
+
+  private final Cache<String, Definition> cache;
+  private final CacheMetrics metrics;
+
+  @Inject
+  public MetricDefinitionCache(ApiConfig config, MetricRegistry metricRegistry) {
+    this(config.vertica.getDefinitionCacheMaxSize(), metricRegistry);
+  }
+
+  MetricDefinitionCache(long maxSize, MetricRegistry metricRegistry) {
+    if (maxSize > 0) {
+      this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    } else {
+      this.cache = null;
+    }
+
+    this.metrics = new CacheMetrics(metricRegistry, MetricDefinitionCache.class, this.cache);
+  }
+
+  /**
+   * Returns the cached definition for the hex encoded definition dimensions id, or null.
+   */
+  public Definition get(String defDimsId) {
+    Definition definition = this.cache == null ? null : this.cache.getIfPresent(defDimsId);
+
+    if (definition != null) {
+      this.metrics.hit();
+    } else {
+      this.metrics.miss();
+    }
+
+    return definition;
+  }
+
+  public void put(String defDimsId, String name, Map<String, String> dimensions) {
+    if (this.cache != null) {
+      this.cache.put(defDimsId, new Definition(name, dimensions));
+    }
+  }
+
+  public static final class Definition {
+    private final String name;
+    private final Map<String, String> dimensions;
+
+    Definition(String name, Map<String, String> dimensions) {
+      this.name = name;
+      this.dimensions = Collections.unmodifiableMap(new HashMap<>(dimensions));
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns a copy of the dimensions that the caller is free to modify.
+     */
+    public Map<String, String> getDimensions() {
+      return new HashMap<>(dimensions);
+    }
+  }
+}
@@ -15,19 +15,21 @@ package monasca.api.infrastructure.persistence.vertica;
 
 import monasca.api.domain.model.metric.MetricDefinitionRepo;
 import monasca.api.domain.model.metric.MetricName;
-import monasca.api.resource.exception.Exceptions;
 import monasca.api.ApiConfig;
 import monasca.common.model.metric.MetricDefinition;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
 import org.joda.time.DateTime;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,7 +45,7 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
       LoggerFactory.getLogger(MetricDefinitionVerticaRepoImpl.class);
 
   private static final String METRIC_DEF_SUB_QUERY =
-      "SELECT TO_HEX(defDimsSub.id) "
+      "SELECT defDimsSub.id "
       + "FROM MonMetrics.Definitions defSub "
       + "JOIN MonMetrics.DefinitionDimensions defDimsSub ON defSub.id = defDimsSub.definition_id "
       + "%s " // possible measurements time join here
@@ -64,19 +66,30 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
       + "%s " // Offset goes here
       + "%s " // Dimensions and clause goes here
       + "ORDER BY def.name ASC "
-      + "%s "; // Limit goes here.
+      + "LIMIT :limit";
 
   private static final String TABLE_TO_JOIN_ON = "defDimsSub";
 
+  private static final ResultSetMapper<MetricName> METRIC_NAME_MAPPER =
+      new ResultSetMapper<MetricName>() {
+        @Override
+        public MetricName map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+          return new MetricName(r.getString("name"));
+        }
+      };
+
   private final DBI db;
 
   private final String dbHint;
 
+  private final int fetchSize;
+
   @Inject
   public MetricDefinitionVerticaRepoImpl(@Named("vertica") DBI db, ApiConfig config)
   {
     this.db = db;
     this.dbHint = config.vertica.dbHint;
+    this.fetchSize = config.vertica.fetchSize;
   }
 
   @Override
@@ -86,25 +99,11 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
       String offset,
       int limit) throws Exception {
 
-    List<Map<String, Object>> rows = executeMetricNamesQuery(tenantId, dimensions, offset, limit);
-
-    List<MetricName> metricNameList = new ArrayList<>(rows.size());
-
-    for (Map<String, Object> row : rows) {
-
-      String name = (String) row.get("name");
-
-      MetricName metricName = new MetricName(name);
-
-      metricNameList.add(metricName);
-
-    }
-
-    return metricNameList;
+    return executeMetricNamesQuery(tenantId, dimensions, offset, limit);
 
   }
 
-  private List<Map<String, Object>> executeMetricNamesQuery(
+  private List<MetricName> executeMetricNamesQuery(
       String tenantId,
       Map<String, String> dimensions,
       String offset,
@@ -114,26 +113,29 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
 
     if (offset != null && !offset.isEmpty()) {
 
-      offsetPart = " and def.name > '" + offset + "' ";
+      offsetPart = " and def.name > :offset ";
 
     }
 
-    // Can't bind limit in a nested sub query. So, just tack on as String.
-    String limitPart = " limit " + Integer.toString(limit + 1);
-
     try (Handle h = db.open()) {
       String sql = String.format(
               FIND_METRIC_NAMES_SQL,
               this.dbHint,
               offsetPart,
-              MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_ON),
-              limitPart);
+              MetricQueries.buildDimensionAndClause(dimensions, TABLE_TO_JOIN_ON));
 
-      Query<Map<String, Object>> query = h.createQuery(sql).bind("tenantId", tenantId);
+      Query<Map<String, Object>> query = h.createQuery(sql)
+          .bind("tenantId", tenantId)
+          .bind("limit", limit + 1);
+
+      if (offset != null && !offset.isEmpty()) {
+        logger.debug("binding offset: {}", offset);
+        query.bind("offset", offset);
+      }
 
       MetricQueries.bindDimensionsToQuery(query, dimensions);
 
-      return query.list();
+      return query.setFetchSize(this.fetchSize).map(METRIC_NAME_MAPPER).list();
 
     }
   }
@@ -148,54 +150,75 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
       String offset,
       int limit) {
 
-    List<Map<String, Object>>
-        rows =
-        executeMetricDefsQuery(tenantId, name, dimensions, startTime, endTime, offset, limit);
+    return executeMetricDefsQuery(tenantId, name, dimensions, startTime, endTime, offset, limit);
+  }
+
+  private List<MetricDefinition> executeMetricDefsQuery(
+      String tenantId,
+      String name,
+      Map<String, String> dimensions,
+      DateTime startTime,
+      DateTime endTime,
+      String offset,
+      int limit) {
+
+    try (Handle h = db.open()) {
 
-    List<MetricDefinition> metricDefs = new ArrayList<>(rows.size());
+      List<MetricDefinition> metricDefs = new ArrayList<>();
 
-    String currentDefDimId = null;
+      readMetricDefs(createMetricDefsSubQuery(h, tenantId, name, dimensions, startTime, endTime,
+                                              offset, limit),
+                     metricDefs);
 
-    Map<String, String> dims = null;
+      return metricDefs;
 
-    for (Map<String, Object> row : rows) {
+    }
+  }
+
+  private void readMetricDefs(Query<Map<String, Object>> query,
+                              List<MetricDefinition> metricDefs) {
+
+    String currentDefDimId = null;
 
-      String defDimId = (String) row.get("defDimsId");
+    Map<String, String> dims = null;
 
-      String metricName = (String) row.get("name");
+    try (ResultIterator<MetricQueries.DefinitionDimensionRow> rows = query
+             .setFetchSize(this.fetchSize)
+             .map(MetricQueries.DEFINITION_DIMENSION_ROW_MAPPER)
+             .iterator()) {
 
-      String dimName = (String) row.get("dName");
+      while (rows.hasNext()) {
 
-      String dimValue = (String) row.get("dValue");
+        MetricQueries.DefinitionDimensionRow row = rows.next();
 
-      if (defDimId == null || !defDimId.equals(currentDefDimId)) {
+        if (row.defDimsId == null || !row.defDimsId.equals(currentDefDimId)) {
 
-        currentDefDimId = defDimId;
+          currentDefDimId = row.defDimsId;
 
-        dims = new HashMap<>();
+          dims = new HashMap<>();
 
-        if (dimName != null && dimValue != null) {
+          if (row.dimName != null && row.dimValue != null) {
 
-          dims.put(dimName, dimValue);
+            dims.put(row.dimName, row.dimValue);
 
-        }
+          }
 
-        MetricDefinition m = new MetricDefinition(metricName, dims);
-        m.setId(defDimId);
-        metricDefs.add(m);
+          MetricDefinition m = new MetricDefinition(row.name, dims);
+          m.setId(row.defDimsId);
+          metricDefs.add(m);
 
 
-      } else {
+        } else {
 
-        dims.put(dimName, dimValue);
+          dims.put(row.dimName, row.dimValue);
 
+        }
       }
     }
-
-    return metricDefs;
   }
 
-  private List<Map<String, Object>> executeMetricDefsQuery(
+  private Query<Map<String, Object>> createMetricDefsSubQuery(
+      Handle h,
       String tenantId,
       String name,
       Map<String, String> dimensions,
@@ -228,55 +251,44 @@ public class MetricDefinitionVerticaRepoImpl implements MetricDefinitionRepo {
 
     }
 
-    try (Handle h = db.open()) {
-
-      String sql =
-        String.format(MetricQueries.FIND_METRIC_DEFS_SQL,
-                      this.dbHint,
-                      String.format(METRIC_DEF_SUB_QUERY,
-                                    MetricQueries.buildTimeJoin(startTime),
-                                    namePart,
-                                    offsetPart,
-                                    MetricQueries.buildDimensionAndClause(dimensions,
-                                                                          TABLE_TO_JOIN_ON),
-                                    MetricQueries.buildTimeAndClause(startTime, endTime),
-                                    limitPart)
-                      );
-
-      Query<Map<String, Object>> query = h.createQuery(sql).bind("tenantId", tenantId);
-
-      if (name != null && !name.isEmpty()) {
-        logger.debug("binding name: {}", name);
-        query.bind("name", name);
-      }
+    String sql =
+      String.format(MetricQueries.FIND_METRIC_DEFS_SQL,
+                    this.dbHint,
+                    String.format(METRIC_DEF_SUB_QUERY,
+                                  MetricQueries.buildTimeJoin(startTime),
+                                  namePart,
+                                  offsetPart,
+                                  MetricQueries.buildDimensionAndClause(dimensions,
+                                                                        TABLE_TO_JOIN_ON),
+                                  MetricQueries.buildTimeAndClause(startTime, endTime),
+                                  limitPart)
+                    );
+
+    Query<Map<String, Object>> query = h.createQuery(sql).bind("tenantId", tenantId);
 
-      if (startTime != null) {
-        query.bind("startTime", startTime);
-      }
-
-      if (endTime != null) {
-        query.bind("endTime", endTime);
-      }
-
-      if (offset != null && !offset.isEmpty()) {
-
-        logger.debug("binding offset: {}", offset);
+    if (name != null && !name.isEmpty()) {
+      logger.debug("binding name: {}", name);
+      query.bind("name", name);
+    }
 
-        try {
+    if (startTime != null) {
+      query.bind("startTime", startTime);
+    }
 
-          query.bind("offset", Hex.decodeHex(offset.toCharArray()));
+    if (endTime != null) {
+      query.bind("endTime", endTime);
+    }
 
-        } catch (DecoderException e) {
+    if (offset != null && !offset.isEmpty()) {
 
-          throw Exceptions.badRequest("failed to decode offset " + offset, e);
-        }
+      logger.debug("binding offset: {}", offset);
 
-      }
+      query.bind("offset", MetricQueries.decodeDefinitionDimensionsId(offset));
 
-      MetricQueries.bindDimensionsToQuery(query, dimensions);
+    }
 
-      return query.list();
+    MetricQueries.bindDimensionsToQuery(query, dimensions);
 
-    }
+    return query;
   }
 }
@@ -16,19 +16,29 @@ package monasca.api.infrastructure.persistence.vertica;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.joda.time.DateTime;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.SQLStatement;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.util.ByteArrayMapper;
 
-import monasca.api.domain.exception.MultipleMetricsException;
 import monasca.api.domain.model.measurement.Measurements;
 
 /**
@@ -46,11 +56,11 @@ final class MetricQueries {
       // Outer join needed in case there are no dimensions for a definition.
       + "LEFT OUTER JOIN MonMetrics.Dimensions dims ON dims.dimension_set_id = defDims"
       + ".dimension_set_id "
-      + "WHERE TO_HEX(defDims.id) in (%s) "
+      + "WHERE defDims.id in (%s) "
       + "ORDER BY defDims.id ASC";
 
   static final String METRIC_DEF_SUB_SQL =
-      "SELECT TO_HEX(defDimsSub.id) as id "
+      "SELECT %s defDimsSub.id as id "
       + "FROM MonMetrics.Definitions as defSub "
       + "JOIN MonMetrics.DefinitionDimensions as defDimsSub ON defDimsSub.definition_id = defSub.id "
       + "%s " // possible measurements time join here
@@ -60,6 +70,39 @@ final class MetricQueries {
       + "%s " // possible time and clause here
       + "GROUP BY defDimsSub.id";
 
+  private static final String DEF_DIMS_ID_PARAM = "defDimsId";
+
+  /**
+   * Most definition dimensions ids bound into a single "IN (...)" predicate. Larger sets are
+   * matched with the definition subquery, or read in several queries, so that a broad query does
+   * not send thousands of parameters to Vertica.
+   */
+  static final int MAX_BOUND_DEF_DIMS_IDS = 1000;
+
+  /**
+   * One row of {@link #FIND_METRIC_DEFS_SQL}, a definition joined with one of its dimensions.
+   */
+  static final class DefinitionDimensionRow {
+    String defDimsId;
+    String name;
+    String dimName;
+    String dimValue;
+  }
+
+  static final ResultSetMapper<DefinitionDimensionRow> DEFINITION_DIMENSION_ROW_MAPPER =
+      new ResultSetMapper<DefinitionDimensionRow>() {
+        @Override
+        public DefinitionDimensionRow map(int index, ResultSet r, StatementContext ctx)
+            throws SQLException {
+          DefinitionDimensionRow row = new DefinitionDimensionRow();
+          row.defDimsId = r.getString("defDimsId");
+          row.name = r.getString("name");
+          row.dimName = r.getString("dName");
+          row.dimValue = r.getString("dValue");
+          return row;
+        }
+      };
+
   private static final String MEASUREMENT_AND_CLAUSE =
       "AND time_stamp >= :startTime "; // start or start and end time here
 
@@ -70,7 +113,8 @@ final class MetricQueries {
 
   private MetricQueries() {}
 
-  static String buildMetricDefinitionSubSql(String name, Map<String, String> dimensions,
+  static String buildMetricDefinitionSubSql(String dbHint, String name,
+                                            Map<String, String> dimensions,
                                             DateTime startTime, DateTime endTime) {
 
     String namePart = "";
@@ -80,6 +124,7 @@ final class MetricQueries {
     }
 
     return String.format(METRIC_DEF_SUB_SQL,
+                         dbHint,
                          buildTimeJoin(startTime),
                          namePart,
                          buildDimensionAndClause(dimensions, TABLE_TO_JOIN_ON),
@@ -189,10 +234,15 @@ final class MetricQueries {
     }
   }
 
-  static void bindOffsetToQuery(Query<Map<String, Object>> query, String offset) {
+  static void bindOffsetToQuery(Query<Map<String, Object>> query, String offset,
+                                boolean binaryOffsetId) {
     List<String> offsets =  UNDERSCORE_SPLITTER.splitToList(offset);
     if (offsets.size() > 1) {
-      query.bind("offset_id", offsets.get(0));
+      if (binaryOffsetId) {
+        query.bind("offset_id", decodeDefinitionDimensionsId(offsets.get(0)));
+      } else {
+        query.bind("offset_id", offsets.get(0));
+      }
       query.bind("offset_timestamp",
                  new Timestamp(DateTime.parse(offsets.get(1)).getMillis()));
     } else {
@@ -201,98 +251,194 @@ final class MetricQueries {
     }
   }
 
-  static void checkForMultipleDefinitions(Handle h, String tenantId, String name, Map<String, String> dimensions)
-      throws MultipleMetricsException {
+  /**
+   * Returns the binary ids of the definition dimensions matching the tenant, name and dimensions.
+   * The ids are bound directly into the measurement queries so that Vertica can use the sort order
+   * and segmentation of the Measurements projections instead of evaluating TO_HEX on every row.
+   * At most {@link #MAX_BOUND_DEF_DIMS_IDS} + 1 ids are read, more ids than can be bound are only
+   * told apart from fewer, as they are matched with the definition subquery instead.
+   */
+  static List<byte[]> findDefinitionDimensionIds(Handle h, String dbHint, String tenantId,
+                                                 String name, Map<String, String> dimensions) {
+
+    String sql = buildMetricDefinitionSubSql(dbHint, name, dimensions, null, null)
+                 + " LIMIT " + (MAX_BOUND_DEF_DIMS_IDS + 1);
+
+    Query<Map<String, Object>> query = h.createQuery(sql).bind("tenantId", tenantId);
 
-    String namePart = "";
     if (name != null && !name.isEmpty()) {
-      namePart = "AND name = :name ";
+      query.bind("name", name);
     }
 
-    String sql = String.format(METRIC_DEF_SUB_SQL,
-                               "",
-                               namePart,
-                               buildDimensionAndClause(dimensions,
-                                                 TABLE_TO_JOIN_ON),
-                               "") + " limit 2";
+    bindDimensionsToQuery(query, dimensions);
 
-    Query<Map<String, Object>> query = h.createQuery(sql);
+    return query.map(ByteArrayMapper.FIRST).list();
+  }
 
-    query.bind("tenantId", tenantId);
+  /**
+   * The operand of an "IN (...)" predicate on the definition dimensions ids of a tenant, name and
+   * dimensions. Up to {@link #MAX_BOUND_DEF_DIMS_IDS} resolved ids are bound directly, more are
+   * matched with the definition subquery.
+   */
+  static final class DefinitionDimensionsIdFilter {
+    private final List<byte[]> ids;
+    private final String tenantId;
+    private final String name;
+    private final Map<String, String> dimensions;
+
+    DefinitionDimensionsIdFilter(List<byte[]> ids, String tenantId, String name,
+                                 Map<String, String> dimensions) {
+      this.ids = ids;
+      this.tenantId = tenantId;
+      this.name = name;
+      this.dimensions = dimensions;
+    }
 
-    if (name != null) {
-      query.bind("name", name);
+    boolean isBound() {
+      return ids.size() <= MAX_BOUND_DEF_DIMS_IDS;
     }
 
-    bindDimensionsToQuery(query, dimensions);
+    String sql() {
+      if (isBound()) {
+        return buildDefinitionDimensionIdsList(ids.size());
+      }
+      return buildMetricDefinitionSubSql("", name, dimensions, null, null);
+    }
+
+    void bind(Query<?> query) {
+      if (isBound()) {
+        bindDefinitionDimensionIds(query, ids);
+        return;
+      }
+      query.bind("tenantId", tenantId);
+      if (name != null && !name.isEmpty()) {
+        query.bind("name", name);
+      }
+      bindDimensionsToQuery(query, dimensions);
+    }
+  }
 
-    List<Map<String, Object>> rows = query.list();
+  /**
+   * Builds the bind parameter list for an "IN (...)" predicate on definition dimensions ids. Bind
+   * the ids with {@link #bindDefinitionDimensionIds(SQLStatement, List)}.
+   */
+  static String buildDefinitionDimensionIdsList(int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(':').append(DEF_DIMS_ID_PARAM).append(i);
+    }
+    return sb.toString();
+  }
 
-    if (rows.size() > 1) {
-      throw new MultipleMetricsException(name, dimensions);
+  static void bindDefinitionDimensionIds(SQLStatement<?> query, List<byte[]> ids) {
+    for (int i = 0; i < ids.size(); i++) {
+      query.bind(DEF_DIMS_ID_PARAM + i, ids.get(i));
     }
   }
 
-  static void addDefsToResults(Map<String, ? extends Measurements> results, Handle h, String dbHint) {
+  static String encodeDefinitionDimensionsId(byte[] id) {
+    return id == null ? null : Hex.encodeHexString(id);
+  }
 
-    StringBuilder sb = new StringBuilder();
-    boolean first = true;
-    for (String id : results.keySet()) {
-      if (first) {
-        sb.append("'").append(id).append("'");
-        first = false;
+  static byte[] decodeDefinitionDimensionsId(String id) {
+    try {
+      return Hex.decodeHex(id.toCharArray());
+    } catch (DecoderException e) {
+      throw new IllegalArgumentException("failed to decode offset " + id, e);
+    }
+  }
+
+  /**
+   * Sets the id, name and dimensions of each result from its definition dimensions id. Ids found
+   * in the definition cache are served from memory, the rest are read from Vertica, at most
+   * {@link #MAX_BOUND_DEF_DIMS_IDS} per query, and added to the cache.
+   */
+  static void addDefsToResults(Map<String, ? extends Measurements> results, Handle h,
+                               String dbHint, MetricDefinitionCache definitionCache) {
+
+    List<byte[]> ids = new ArrayList<>(results.size());
+    for (Map.Entry<String, ? extends Measurements> entry : results.entrySet()) {
+      MetricDefinitionCache.Definition definition = definitionCache.get(entry.getKey());
+      if (definition != null) {
+        setDefinition(entry.getValue(), entry.getKey(), definition.getName(),
+                      definition.getDimensions());
       } else {
-        sb.append(',').append("'").append(id).append("'");
+        ids.add(decodeDefinitionDimensionsId(entry.getKey()));
       }
     }
 
+    for (List<byte[]> batch : Lists.partition(ids, MAX_BOUND_DEF_DIMS_IDS)) {
+      readDefsIntoResults(results, h, dbHint, definitionCache, batch);
+    }
+  }
+
+  private static void readDefsIntoResults(Map<String, ? extends Measurements> results, Handle h,
+                                          String dbHint, MetricDefinitionCache definitionCache,
+                                          List<byte[]> ids) {
+
     String defDimSql = String.format(MetricQueries.FIND_METRIC_DEFS_SQL,
                                      dbHint,
-                                     sb.toString());
+                                     buildDefinitionDimensionIdsList(ids.size()));
 
     Query<Map<String, Object>> query = h.createQuery(defDimSql);
 
-    List<Map<String, Object>> rows = query.list();
+    bindDefinitionDimensionIds(query, ids);
 
     String currentDefDimId = null;
 
-    Map<String, String> dims = null;
+    String currentName = null;
 
-    for (Map<String, Object> row : rows) {
+    Map<String, String> dims = null;
 
-      String defDimId = (String) row.get("defDimsId");
+    try (ResultIterator<DefinitionDimensionRow> rows =
+             query.map(DEFINITION_DIMENSION_ROW_MAPPER).iterator()) {
 
-      String defName = (String) row.get("name");
+      while (rows.hasNext()) {
 
-      String dimName = (String) row.get("dName");
+        DefinitionDimensionRow row = rows.next();
 
-      String dimValue = (String) row.get("dValue");
+        if (row.defDimsId != null && !row.defDimsId.equals(currentDefDimId)) {
 
-      if (defDimId != null && !defDimId.equals(currentDefDimId)) {
+          if (currentDefDimId != null) {
+            definitionCache.put(currentDefDimId, currentName, dims);
+          }
 
-        currentDefDimId = defDimId;
+          currentDefDimId = row.defDimsId;
 
-        dims = new HashMap<>();
+          currentName = row.name;
 
-        if (dimName != null && dimValue != null)
-          dims.put(dimName, dimValue);
+          dims = new HashMap<>();
 
-        results.get(defDimId).setId(defDimId);
+          if (row.dimName != null && row.dimValue != null)
+            dims.put(row.dimName, row.dimValue);
 
-        results.get(defDimId).setName(defName);
+          setDefinition(results.get(row.defDimsId), row.defDimsId, row.name, dims);
 
-        results.get(defDimId).setDimensions(dims);
+        } else {
 
-      } else {
+          if (row.dimName != null && row.dimValue != null)
+            dims.put(row.dimName, row.dimValue);
 
-        if (dimName != null && dimValue != null)
-          dims.put(dimName, dimValue);
+        }
 
       }
+    }
 
+    if (currentDefDimId != null) {
+      definitionCache.put(currentDefDimId, currentName, dims);
     }
   }
 
+  private static void setDefinition(Measurements measurements, String defDimsId, String name,
+                                    Map<String, String> dimensions) {
+    measurements.setId(defDimsId);
+    measurements.setName(name);
+    measurements.setDimensions(dimensions);
+  }
+
   static Map<String, String> combineGroupByAndValues(List<String> groupBy, String valueStr) {
     List<String> values = COMMA_SPLITTER.splitToList(valueStr);
     Map<String, String> newDimensions = new HashMap<>();
@@ -302,6 +448,25 @@ final class MetricQueries {
     return newDimensions;
   }
 
+  /**
+   * Compares two comma separated dimension_values strings value by value, which is the order of
+   * the group by columns they were built from.
+   */
+  static int compareDimensionValues(String values1, String values2) {
+    if (values1 == null || values2 == null) {
+      return values1 == null ? (values2 == null ? 0 : -1) : 1;
+    }
+    List<String> list1 = COMMA_SPLITTER.splitToList(values1);
+    List<String> list2 = COMMA_SPLITTER.splitToList(values2);
+    for (int i = 0; i < list1.size() && i < list2.size(); i++) {
+      int result = list1.get(i).compareTo(list2.get(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(list1.size(), list2.size());
+  }
+
   static String buildGroupByConcatString(List<String> groupBy) {
     if (groupBy.isEmpty() || "*".equals(groupBy.get(0)))
       return "";
@@ -17,19 +17,27 @@ import monasca.api.domain.exception.MultipleMetricsException;
 import monasca.api.domain.model.statistic.StatisticRepo;
 import monasca.api.domain.model.statistic.Statistics;
 import monasca.api.ApiConfig;
+import monasca.api.infrastructure.persistence.TimestampCodec;
+
+import com.google.common.primitives.UnsignedBytes;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,18 +50,45 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
   private static final Logger logger =
       LoggerFactory.getLogger(StatisticVerticaRepoImpl.class);
 
-  public static final DateTimeFormatter DATETIME_FORMATTER =
-      ISODateTimeFormat.dateTime().withZoneUTC();
+  private static final Comparator<StatisticsRow> STATISTICS_ROW_ID_ORDER =
+      new Comparator<StatisticsRow>() {
+        @Override
+        public int compare(StatisticsRow o1, StatisticsRow o2) {
+          return UnsignedBytes.lexicographicalComparator().compare(o1.defDimsId, o2.defDimsId);
+        }
+      };
+
+  private static final Comparator<StatisticsRow> STATISTICS_ROW_DIMENSION_VALUES_ORDER =
+      new Comparator<StatisticsRow>() {
+        @Override
+        public int compare(StatisticsRow o1, StatisticsRow o2) {
+          return MetricQueries.compareDimensionValues(o1.dimensionValues, o2.dimensionValues);
+        }
+      };
 
   private final DBI db;
   private final String dbHint;
+  private final int fetchSize;
+
+  private final DefinitionDimensionsIdCache definitionIdCache;
+
+  private final MetricDefinitionCache definitionCache;
+
+  private final TimeSlicedQueryExecutor queryExecutor;
 
   @Inject
   public StatisticVerticaRepoImpl(@Named("vertica") DBI db,
-                                  ApiConfig config)
+                                  ApiConfig config,
+                                  DefinitionDimensionsIdCache definitionIdCache,
+                                  MetricDefinitionCache definitionCache,
+                                  TimeSlicedQueryExecutor queryExecutor)
   {
     this.db = db;
     this.dbHint = config.vertica.dbHint;
+    this.fetchSize = config.vertica.fetchSize;
+    this.definitionIdCache = definitionIdCache;
+    this.definitionCache = definitionCache;
+    this.queryExecutor = queryExecutor;
   }
 
   @Override
@@ -62,13 +97,13 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
       String name,
       Map<String, String> dimensions,
       DateTime startTime,
-      DateTime endTime,
+      final DateTime endTime,
       List<String> statisticsCols,
       int period,
-      String offset,
+      final String offset,
       int limit,
       Boolean mergeMetricsFlag,
-      List<String> groupBy) throws MultipleMetricsException {
+      final List<String> groupBy) throws MultipleMetricsException {
 
     Map<String, Statistics> statisticsMap = new HashMap<>();
 
@@ -77,121 +112,144 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
     try (Handle h = db.open()) {
 
-      if (groupBy.isEmpty() && !Boolean.TRUE.equals(mergeMetricsFlag)) {
+      final List<byte[]> defDimsIds =
+          this.definitionIdCache.get(h, this.dbHint, tenantId, name, dimensions);
 
-        MetricQueries.checkForMultipleDefinitions(h, tenantId, name, dimensions);
+      if (groupBy.isEmpty() && !Boolean.TRUE.equals(mergeMetricsFlag) && defDimsIds.size() > 1) {
 
-      }
-
-      String sql = createQuery(name, dimensions, period, startTime, endTime, offset,
-                               statisticsCols, mergeMetricsFlag, groupBy);
-
-      logger.debug("vertica sql: {}", sql);
+        throw new MultipleMetricsException(name, dimensions);
 
-      Query<Map<String, Object>>
-          query =
-          h.createQuery(sql)
-              .bind("tenantId", tenantId)
-              .bind("start_time", startTime)
-              .bind("end_time", endTime)
-              .bind("limit", limit + 1);
+      }
 
-      if (name != null && !name.isEmpty()) {
-        query.bind("name", name);
+      if (defDimsIds.isEmpty()) {
+        return new ArrayList<>();
       }
 
-      MetricQueries.bindDimensionsToQuery(query, dimensions);
+      final MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter =
+          new MetricQueries.DefinitionDimensionsIdFilter(defDimsIds, tenantId, name, dimensions);
 
-      if (!groupBy.isEmpty()) {
-        MetricQueries.bindGroupBy(query, groupBy);
-      }
+      List<TimeSlicedQueryExecutor.TimeSlice> slices;
 
-      if (offset != null && !offset.isEmpty()) {
-        logger.debug("binding offset: {}", offset);
+      if (period >= 1) {
+        slices = this.queryExecutor.split(startTime.getMillis(),
+                                          endTime != null ? endTime.getMillis()
+                                                          : System.currentTimeMillis(),
+                                          period);
+      } else {
+        // Without a period the statistics are aggregated over the whole range.
+        slices = Collections.singletonList(
+            new TimeSlicedQueryExecutor.TimeSlice(startTime.getMillis(), 0, true));
+      }
 
-        MetricQueries.bindOffsetToQuery(query, offset);
+      final String sql = createQuery(defDimsIdFilter, period, startTime, endTime, offset,
+                                     statisticsCols, mergeMetricsFlag, groupBy, false);
+
+      // Every slice but the last one ends before the start of the next slice.
+      final String slicedSql = slices.size() == 1 ? null
+          : createQuery(defDimsIdFilter, period, startTime, endTime, offset, statisticsCols,
+                        mergeMetricsFlag, groupBy, true);
+
+      final StatisticsRowMapper rowMapper =
+          new StatisticsRowMapper(statisticsColumns, period >= 1,
+                                  !groupBy.isEmpty() && !groupBy.contains("*"));
+
+      TimeSlicedQueryExecutor.SliceQuery<StatisticsRow> sliceQuery =
+          new TimeSlicedQueryExecutor.SliceQuery<StatisticsRow>() {
+            @Override
+            public List<StatisticsRow> find(Handle handle,
+                                            TimeSlicedQueryExecutor.TimeSlice slice,
+                                            int maxRows) {
+              return findRows(handle, slice.last ? sql : slicedSql, slice, maxRows,
+                              defDimsIdFilter, endTime, groupBy, offset, rowMapper);
+            }
+          };
+
+      // Rows of different series are ordered by series first, unless there is only one series.
+      Comparator<StatisticsRow> seriesOrder = null;
+
+      if (!groupBy.isEmpty() && defDimsIds.size() > 1) {
+        seriesOrder = groupBy.contains("*")
+                      ? STATISTICS_ROW_ID_ORDER
+                      : STATISTICS_ROW_DIMENSION_VALUES_ORDER;
       }
 
-      List<Map<String, Object>> rows = query.list();
+      // The query asks for one row more than the limit so that a next link can be created.
+      List<StatisticsRow> rows =
+          this.queryExecutor.execute(this.db, h, slices, sliceQuery, limit + 1, seriesOrder);
 
-      if (rows.size() == 0) {
-        return new ArrayList<>();
-      }
+      String firstDefId = null;
 
-      if (!groupBy.isEmpty() && groupBy.contains("*")) {
+      byte[] currentDefId = null;
 
-        String currentDefId = null;
+      String currentDimensionValues = null;
 
-        for (Map<String, Object> row : rows) {
+      Statistics currentStatistics = null;
 
-          List<Object> statisticsRow = parseRow(row);
+      for (StatisticsRow row : rows) {
 
-          String defDimsId = (String) row.get("id");
+        if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-          if (defDimsId != null && !defDimsId.equals(currentDefId)) {
-            Statistics newStats = new Statistics();
-            newStats.setColumns(statisticsColumns);
+          if (row.defDimsId != null && !Arrays.equals(row.defDimsId, currentDefId)) {
+            currentStatistics = new Statistics();
+            currentStatistics.setColumns(statisticsColumns);
 
-            statisticsMap.put(defDimsId, newStats);
-            currentDefId = defDimsId;
+            statisticsMap.put(MetricQueries.encodeDefinitionDimensionsId(row.defDimsId),
+                              currentStatistics);
+            currentDefId = row.defDimsId;
           }
 
-          statisticsMap.get(defDimsId).addMeasurement(statisticsRow);
+        } else if (!groupBy.isEmpty()) {
 
-        }
+          if (row.dimensionValues != null
+              && !row.dimensionValues.equals(currentDimensionValues)) {
+            currentDimensionValues = row.dimensionValues;
 
-        MetricQueries.addDefsToResults(statisticsMap, h, this.dbHint);
-
-      } else if (!groupBy.isEmpty()) {
+            currentStatistics = new Statistics();
+            currentStatistics.setId(row.dimensionValues);
+            currentStatistics.setName(name);
+            currentStatistics.setDimensions(
+                MetricQueries.combineGroupByAndValues(groupBy, row.dimensionValues));
 
-        String currentId = null;
+            statisticsMap.put(row.dimensionValues, currentStatistics);
+          }
 
-        for (Map<String, Object> row : rows) {
+        } else if (currentStatistics == null) {
 
-          String dimensionValues = (String) row.get("dimension_values");
+          currentStatistics = new Statistics();
 
-          if (dimensionValues != null && !dimensionValues.equals(currentId)) {
-            currentId = dimensionValues;
+          currentStatistics.setId("");
 
-            Statistics tmp = new Statistics();
-            tmp.setId(dimensionValues);
-            tmp.setName(name);
-            tmp.setDimensions(MetricQueries.combineGroupByAndValues(groupBy, dimensionValues));
+          currentStatistics.setName(name);
 
-            statisticsMap.put(dimensionValues, tmp);
-          }
+          currentStatistics.setColumns(statisticsColumns);
 
-          List<Object> statisticsRow = parseRow(row);
+          firstDefId = MetricQueries.encodeDefinitionDimensionsId(row.defDimsId);
 
-          statisticsMap.get(dimensionValues).addMeasurement(statisticsRow);
+          statisticsMap.put(firstDefId, currentStatistics);
 
         }
 
-      } else {
-
-        Statistics statistics = new Statistics();
+        currentStatistics.addMeasurement(row.statistics);
 
-        statistics.setId("");
-
-        statistics.setName(name);
-
-        statistics.setColumns(statisticsColumns);
-
-        String firstDefId = (String) rows.get(0).get("id");
+      }
 
-        for (Map<String, Object> row : rows) {
+      if (statisticsMap.isEmpty()) {
+        return new ArrayList<>();
+      }
 
-          List<Object> statisticsRow = parseRow(row);
+      if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-          statistics.addMeasurement(statisticsRow);
+        MetricQueries.addDefsToResults(statisticsMap, h, this.dbHint,
+                                       this.definitionCache);
 
-        }
+      } else if (groupBy.isEmpty()) {
 
-        statisticsMap.put(firstDefId, statistics);
+        Statistics statistics = statisticsMap.get(firstDefId);
 
         if (!Boolean.TRUE.equals(mergeMetricsFlag)) {
           statistics.setId(firstDefId);
-          MetricQueries.addDefsToResults(statisticsMap, h, this.dbHint);
+          MetricQueries.addDefsToResults(statisticsMap, h, this.dbHint,
+                                       this.definitionCache);
         } else {
           if (dimensions == null) {
             dimensions = new HashMap<>();
@@ -209,42 +267,113 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
     return results;
   }
 
-  private List<Object> parseRow(Map<String, Object> row) {
+  private List<StatisticsRow> findRows(
+      Handle h,
+      String sql,
+      TimeSlicedQueryExecutor.TimeSlice slice,
+      int maxRows,
+      MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter,
+      DateTime endTime,
+      List<String> groupBy,
+      String offset,
+      StatisticsRowMapper rowMapper) {
 
-    List<Object> statisticsRow = new ArrayList<>();
+    Query<Map<String, Object>>
+        query =
+        h.createQuery(sql)
+            .bind("start_time", new Timestamp(slice.start))
+            .bind("end_time", endTime)
+            .bind("limit", maxRows);
 
-    Double sum = (Double) row.get("sum");
-    Double average = (Double) row.get("avg");
-    Double min = (Double) row.get("min");
-    Double max = (Double) row.get("max");
-    Long count = (Long) row.get("count");
-    Timestamp time_stamp = (Timestamp) row.get("time_interval");
+    defDimsIdFilter.bind(query);
 
-    if (time_stamp != null) {
-      statisticsRow.add(DATETIME_FORMATTER.print(time_stamp.getTime()));
+    if (!slice.last) {
+      query.bind("slice_end_time", new Timestamp(slice.end));
     }
 
-    if (average != null) {
-      statisticsRow.add(average);
+    if (!groupBy.isEmpty()) {
+      MetricQueries.bindGroupBy(query, groupBy);
     }
 
-    if (count != null) {
-      statisticsRow.add(count);
-    }
+    if (offset != null && !offset.isEmpty()) {
+      logger.debug("binding offset: {}", offset);
 
-    if (max != null) {
-      statisticsRow.add(max);
+      MetricQueries.bindOffsetToQuery(query, offset, groupBy.contains("*"));
     }
 
-    if (min != null) {
-      statisticsRow.add(min);
+    List<StatisticsRow> rows = new ArrayList<>();
+
+    try (ResultIterator<StatisticsRow> iterator = query
+             .setFetchSize(this.fetchSize)
+             .map(rowMapper)
+             .iterator()) {
+
+      // No page needs more rows than asked for, there is no need to read any further.
+      while (rows.size() < maxRows && iterator.hasNext()) {
+        rows.add(iterator.next());
+      }
+
     }
 
-    if (sum != null) {
-      statisticsRow.add(sum);
+    return rows;
+  }
+
+  private static final class StatisticsRow {
+    byte[] defDimsId;
+    String dimensionValues;
+    List<Object> statistics;
+  }
+
+  private static final class StatisticsRowMapper implements ResultSetMapper<StatisticsRow> {
+
+    private final List<String> statisticsColumns;
+    private final boolean hasTimeInterval;
+    private final boolean hasDimensionValues;
+
+    StatisticsRowMapper(List<String> statisticsColumns, boolean hasTimeInterval,
+                        boolean hasDimensionValues) {
+      // The first column is the timestamp, the statistics follow in alphabetical order.
+      this.statisticsColumns = statisticsColumns.subList(1, statisticsColumns.size());
+      this.hasTimeInterval = hasTimeInterval;
+      this.hasDimensionValues = hasDimensionValues;
     }
 
-    return statisticsRow;
+    @Override
+    public StatisticsRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+
+      StatisticsRow row = new StatisticsRow();
+
+      row.defDimsId = r.getBytes("id");
+
+      if (this.hasDimensionValues) {
+        row.dimensionValues = r.getString("dimension_values");
+      }
+
+      List<Object> statisticsRow = new ArrayList<>(this.statisticsColumns.size() + 1);
+
+      if (this.hasTimeInterval) {
+        Timestamp timeStamp = r.getTimestamp("time_interval");
+        if (timeStamp != null) {
+          statisticsRow.add(TimestampCodec.formatMillis(timeStamp.getTime()));
+        }
+      }
+
+      for (String column : this.statisticsColumns) {
+        Object value;
+        if ("count".equalsIgnoreCase(column)) {
+          value = r.getLong(column);
+        } else {
+          value = r.getDouble(column);
+        }
+        if (!r.wasNull()) {
+          statisticsRow.add(value);
+        }
+      }
+
+      row.statistics = statisticsRow;
+
+      return row;
+    }
   }
 
   List<String> createColumnsList(
@@ -261,15 +390,15 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
   }
 
   private String createQuery(
-      String name,
-      Map<String, String> dimensions,
+      MetricQueries.DefinitionDimensionsIdFilter defDimsIdFilter,
       int period,
       DateTime startTime,
       DateTime endTime,
       String offset,
       List<String> statistics,
       Boolean mergeMetricsFlag,
-      List<String> groupBy) {
+      List<String> groupBy,
+      boolean sliced) {
 
     StringBuilder sb = new StringBuilder();
 
@@ -280,7 +409,7 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
       sb.append(" as dimension_values, ");
 
     }
-    sb.append(" max(to_hex(definition_dimensions_id)) AS id, ");
+    sb.append(" max(definition_dimensions_id) AS id, ");
     sb.append(createColumnsStr(statistics));
 
     if (period >= 1) {
@@ -295,11 +424,15 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
     }
 
-    sb.append("WHERE TO_HEX(definition_dimensions_id) IN (")
-        .append(MetricQueries.buildMetricDefinitionSubSql(name, dimensions, null, null))
+    sb.append("WHERE definition_dimensions_id IN (")
+        .append(defDimsIdFilter.sql())
         .append(") ");
     sb.append(createWhereClause(startTime, endTime, offset, groupBy));
 
+    if (sliced) {
+      sb.append(" AND time_stamp < :slice_end_time ");
+    }
+
     if (period >= 1) {
       sb.append(" group by ");
       if (!groupBy.isEmpty() && groupBy.contains("*")) {
@@ -318,7 +451,7 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
       sb.append(" order by ");
       if (!groupBy.isEmpty() && groupBy.contains("*")) {
 
-        sb.append("to_hex(definition_dimensions_id),");
+        sb.append("definition_dimensions_id,");
 
       } else {
 
@@ -351,9 +484,9 @@ public class StatisticVerticaRepoImpl implements StatisticRepo {
 
     if (offset != null && !offset.isEmpty()) {
 
-      if (!groupBy.isEmpty()) {
-        s += " AND (TO_HEX(definition_dimensions_id) > :offset_id "
-             + "OR (TO_HEX(definition_dimensions_id) = :offset_id AND time_stamp > :offset_timestamp)) ";
+      if (!groupBy.isEmpty() && groupBy.contains("*")) {
+        s += " AND (definition_dimensions_id > :offset_id "
+             + "OR (definition_dimensions_id = :offset_id AND time_stamp > :offset_timestamp)) ";
       } else if (!groupBy.isEmpty()){
 
         String concatGroupByString = MetricQueries.buildGroupByConcatString(groupBy);
@@ -0,0 +1,314 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.vertica;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Runs a long range measurement or statistics query as several queries over consecutive time
+ * slices on a bounded pool of threads, each with its own connection, and merges the rows back
+ * into the order of the unsplit query.
+ *
+ * <p>The request thread already holds a connection while it waits for the slices, so the pool
+ * threads are limited to half of the Vertica pool. Slices that find every thread busy run on the
+ * request thread with its own handle rather than taking another connection.
+ *
+ * <p>Each slice query must return its rows in the order of the unsplit query and may stop after
+ * the number of rows asked for, since no page needs more than that from any one slice. When the
+ * rows are ordered by time only, the slices are consumed in time order and the remaining slices
+ * are cancelled as soon as the page is full.
+ */
+public class TimeSlicedQueryExecutor implements Managed {
+
+  private static final Logger logger = LoggerFactory.getLogger(TimeSlicedQueryExecutor.class);
+
+  /**
+   * Reference time of Vertica's TIME_SLICE, 2000-01-01T00:00:00Z. Slice boundaries are aligned to
+   * it so that no statistics period is split between two slices.
+   */
+  static final long TIME_SLICE_ORIGIN_MILLIS = 946684800000L;
+
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final long minSliceMillis;
+  private final int maxSlices;
+  private final ExecutorService executor;
+  private final Meter splitQueries;
+  private final Meter cancelledSlices;
+
+  @Inject
+  public TimeSlicedQueryExecutor(ApiConfig config, MetricRegistry metricRegistry) {
+    this(maxParallelism(config.vertica.getQueryParallelism(), config.vertica.getMaxSize()),
+         config.vertica.getQueryMinSliceSize().toMilliseconds(),
+         config.vertica.getQueryMaxSlices(),
+         metricRegistry);
+  }
+
+  TimeSlicedQueryExecutor(int parallelism, long minSliceMillis, int maxSlices,
+                          MetricRegistry metricRegistry) {
+    this.minSliceMillis = Math.max(minSliceMillis, 1);
+    this.maxSlices = maxSlices;
+
+    if (parallelism > 1 && maxSlices > 1) {
+      // When every thread is busy and the queue is full the slice is rejected and runs on the
+      // request thread, see execute.
+      this.executor = new ThreadPoolExecutor(
+          parallelism, parallelism, 60, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(parallelism * maxSlices),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("vertica-slice-%d").build(),
+          new ThreadPoolExecutor.AbortPolicy());
+    } else {
+      this.executor = null;
+    }
+
+    this.splitQueries =
+        metricRegistry.meter(MetricRegistry.name(TimeSlicedQueryExecutor.class, "split-queries"));
+    this.cancelledSlices =
+        metricRegistry.meter(MetricRegistry.name(TimeSlicedQueryExecutor.class,
+                                                 "cancelled-slices"));
+  }
+
+  /**
+   * Limits the slice threads to half of the Vertica pool so that the connections of the request
+   * threads waiting for them cannot exhaust it.
+   */
+  static int maxParallelism(int parallelism, int poolMaxSize) {
+    int max = poolMaxSize / 2;
+    if (parallelism > max) {
+      logger.warn("Limiting queryParallelism {} to {}, half of the Vertica pool maxSize {}",
+                  parallelism, max, poolMaxSize);
+      return max;
+    }
+    return parallelism;
+  }
+
+  @Override
+  public void start() {
+    // The pool starts its threads as slices are submitted.
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      if (!this.executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        this.executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * A query over one time slice.
+   */
+  public interface SliceQuery<T> {
+    List<T> find(Handle h, TimeSlice slice, int maxRows);
+  }
+
+  /**
+   * The half open range [start, end) of a slice. The last slice keeps the end time of the unsplit
+   * query, if any, and has no end of its own.
+   */
+  public static final class TimeSlice {
+    final long start;
+    final long end;
+    final boolean last;
+
+    TimeSlice(long start, long end, boolean last) {
+      this.start = start;
+      this.end = end;
+      this.last = last;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + start + ", " + (last ? "end" : Long.toString(end)) + ")";
+    }
+  }
+
+  /**
+   * Splits [startMillis, endMillis) into slices whose boundaries are multiples of the period
+   * counted from the TIME_SLICE origin. A period of 0 aligns the boundaries to seconds. Returns a
+   * single slice when splitting is disabled or the range is too short to be worth it.
+   */
+  List<TimeSlice> split(long startMillis, long endMillis, int periodSeconds) {
+
+    long alignment = Math.max(periodSeconds, 1) * 1000L;
+
+    long sliceCount = Math.min(this.maxSlices, (endMillis - startMillis) / this.minSliceMillis);
+
+    if (this.executor == null || sliceCount < 2) {
+      return Collections.singletonList(new TimeSlice(startMillis, endMillis, true));
+    }
+
+    long sliceLength = (endMillis - startMillis + sliceCount - 1) / sliceCount;
+
+    List<TimeSlice> slices = new ArrayList<>();
+
+    long sliceStart = startMillis;
+
+    while (true) {
+
+      long sliceEnd = alignUp(sliceStart + sliceLength, alignment);
+
+      if (sliceEnd >= endMillis || slices.size() == this.maxSlices - 1) {
+        slices.add(new TimeSlice(sliceStart, endMillis, true));
+        break;
+      }
+
+      slices.add(new TimeSlice(sliceStart, sliceEnd, false));
+
+      sliceStart = sliceEnd;
+    }
+
+    return slices;
+  }
+
+  static long alignUp(long millis, long alignment) {
+    long offset = (millis - TIME_SLICE_ORIGIN_MILLIS) % alignment;
+    if (offset < 0) {
+      offset += alignment;
+    }
+    return offset == 0 ? millis : millis + alignment - offset;
+  }
+
+  /**
+   * Runs the query over every slice and returns at most maxRows rows in the order of the unsplit
+   * query. A single slice, and any slice the pool has no room for, runs on the caller's handle.
+   *
+   * @param seriesOrder orders the rows of different series like the unsplit query does, or null
+   *                    when the rows are ordered by time only
+   */
+  <T> List<T> execute(DBI db, Handle h, List<TimeSlice> slices, SliceQuery<T> query,
+                      int maxRows, Comparator<? super T> seriesOrder) {
+
+    if (slices.size() == 1) {
+      return query.find(h, slices.get(0), maxRows);
+    }
+
+    this.splitQueries.mark();
+
+    logger.debug("running query over time slices {}", slices);
+
+    List<Future<List<T>>> futures = new ArrayList<>(slices.size());
+
+    try {
+
+      for (TimeSlice slice : slices) {
+        try {
+          futures.add(this.executor.submit(new SliceTask<>(db, query, slice, maxRows)));
+        } catch (RejectedExecutionException e) {
+          futures.add(Futures.immediateFuture(query.find(h, slice, maxRows)));
+        }
+      }
+
+      List<T> rows = new ArrayList<>();
+
+      for (int i = 0; i < futures.size(); i++) {
+
+        rows.addAll(futures.get(i).get());
+
+        if (seriesOrder == null && rows.size() >= maxRows) {
+          // Later slices only hold later rows, the page is complete.
+          cancel(futures, i + 1);
+          break;
+        }
+      }
+
+      if (seriesOrder != null) {
+        // The sort is stable and the rows were added in time order, so the rows of each series
+        // stay in time order.
+        Collections.sort(rows, seriesOrder);
+      }
+
+      return rows.size() > maxRows ? new ArrayList<>(rows.subList(0, maxRows)) : rows;
+
+    } catch (InterruptedException e) {
+
+      cancel(futures, 0);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for time sliced query", e);
+
+    } catch (ExecutionException e) {
+
+      cancel(futures, 0);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Time sliced query failed", e.getCause());
+
+    } catch (RuntimeException e) {
+
+      // A slice run on the caller's handle failed.
+      cancel(futures, 0);
+      throw e;
+
+    }
+  }
+
+  private <T> void cancel(List<Future<List<T>>> futures, int from) {
+    for (int i = from; i < futures.size(); i++) {
+      if (futures.get(i).cancel(true)) {
+        this.cancelledSlices.mark();
+      }
+    }
+  }
+
+  private static final class SliceTask<T> implements Callable<List<T>> {
+    private final DBI db;
+    private final SliceQuery<T> query;
+    private final TimeSlice slice;
+    private final int maxRows;
+
+    SliceTask(DBI db, SliceQuery<T> query, TimeSlice slice, int maxRows) {
+      this.db = db;
+      this.query = query;
+      this.slice = slice;
+      this.maxRows = maxRows;
+    }
+
+    @Override
+    public List<T> call() {
+      try (Handle h = this.db.open()) {
+        return this.query.find(h, this.slice, this.maxRows);
+      }
+    }
+  }
+}
@@ -15,14 +15,94 @@ package monasca.api.infrastructure.persistence.vertica;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
 
 public class VerticaDataSourceFactory extends DataSourceFactory {
 
   @JsonProperty
   String dbHint = "";
 
+  /**
+   * Number of rows the driver fetches per round trip when reading measurements, statistics and
+   * metric definitions.
+   */
+  @JsonProperty
+  int fetchSize = 1000;
+
+  /**
+   * Maximum number of definition dimensions ids held by the id lookup cache, 0 disables the
+   * cache.
+   */
+  @JsonProperty
+  long definitionIdCacheMaxSize = 100000;
+
+  @JsonProperty
+  Duration definitionIdCacheTtl = Duration.seconds(30);
+
+  /**
+   * How long a lookup that matched no metrics is cached.
+   */
+  @JsonProperty
+  Duration definitionIdCacheNegativeTtl = Duration.seconds(10);
+
+  /**
+   * Maximum number of metric names and dimensions cached by definition dimensions id, 0 disables
+   * the cache.
+   */
+  @JsonProperty
+  long definitionCacheMaxSize = 100000;
+
+  /**
+   * Number of threads running time slices of long range measurement and statistics queries,
+   * 0 or 1 disables splitting. Each running slice holds a connection of its own, so at most half
+   * of maxSize threads are used.
+   */
+  @JsonProperty
+  int queryParallelism = 0;
+
+  /**
+   * Queries are only split into slices at least this long.
+   */
+  @JsonProperty
+  Duration queryMinSliceSize = Duration.days(1);
+
+  @JsonProperty
+  int queryMaxSlices = 8;
+
   public String getDbHint() {
     return dbHint;
   }
 
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  public long getDefinitionIdCacheMaxSize() {
+    return definitionIdCacheMaxSize;
+  }
+
+  public Duration getDefinitionIdCacheTtl() {
+    return definitionIdCacheTtl;
+  }
+
+  public Duration getDefinitionIdCacheNegativeTtl() {
+    return definitionIdCacheNegativeTtl;
+  }
+
+  public int getQueryParallelism() {
+    return queryParallelism;
+  }
+
+  public Duration getQueryMinSliceSize() {
+    return queryMinSliceSize;
+  }
+
+  public int getQueryMaxSlices() {
+    return queryMaxSlices;
+  }
+
+  public long getDefinitionCacheMaxSize() {
+    return definitionCacheMaxSize;
+  }
+
 }
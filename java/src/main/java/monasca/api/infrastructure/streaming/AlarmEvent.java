@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+
+/**
+ * An alarm state transition or update read from Kafka, with what streams filter it by.
+ */
+public class AlarmEvent {
+  private final String type;
+  private final String tenantId;
+  private final String alarmDefinitionId;
+  private final Supplier<String> severity;
+  private final List<Map<String, String>> metricDimensions;
+  private final String json;
+
+  /**
+   * @param type the type of the event, e.g. alarm-transitioned
+   * @param severity supplies the severity when a stream filters by it, null if it is unknown
+   * @param metricDimensions the dimensions of each metric of the alarm
+   * @param json the event as it is sent to clients
+   */
+  public AlarmEvent(String type, String tenantId, String alarmDefinitionId,
+                    Supplier<String> severity,
+                    List<Map<String, String>> metricDimensions, String json) {
+    this.type = type;
+    this.tenantId = tenantId;
+    this.alarmDefinitionId = alarmDefinitionId;
+    this.severity = severity;
+    this.metricDimensions = metricDimensions;
+    this.json = json;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getTenantId() {
+    return tenantId;
+  }
+
+  public String getAlarmDefinitionId() {
+    return alarmDefinitionId;
+  }
+
+  public String getSeverity() {
+    return severity.get();
+  }
+
+  public List<Map<String, String>> getMetricDimensions() {
+    return metricDimensions;
+  }
+
+  public String getJson() {
+    return json;
+  }
+}
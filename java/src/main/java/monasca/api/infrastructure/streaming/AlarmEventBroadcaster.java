@@ -0,0 +1,192 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import kafka.javaapi.consumer.ConsumerConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+
+/**
+ * Reads the alarm state transitions and the alarm updates of the events topic with a single
+ * consumer and publishes them to the open alarm event streams.
+ *
+ * <p>Every API instance consumes both topics in a consumer group of its own, starting from the
+ * newest messages, so every stream sees every event of its tenant. Messages are only parsed while
+ * a stream is open.
+ */
+public class AlarmEventBroadcaster implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(AlarmEventBroadcaster.class);
+  static final String ALARM_TRANSITIONED = "alarm-transitioned";
+  static final String ALARM_UPDATED = "alarm-updated";
+
+  private final AlarmDefinitionRepo alarmDefinitionRepo;
+  private final Fanout<AlarmEvent> fanout;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final boolean enabled;
+  private final TopicReader reader;
+
+  @Inject
+  public AlarmEventBroadcaster(ApiConfig config, AlarmDefinitionRepo alarmDefinitionRepo,
+                               MetricRegistry metricRegistry) {
+    this(alarmDefinitionRepo, new Fanout<AlarmEvent>(metricRegistry, AlarmEventBroadcaster.class,
+        config.streaming.maxSubscribers, config.streaming.bufferSize),
+        config.streaming.alarmEventsEnabled, config.streaming.alarmEventsEnabled
+            ? TopicReader.consumerOf(config, "monasca-api-alarm-events-") : null,
+        config.alarmStateTransitionsTopic, config.eventsTopic);
+  }
+
+  /**
+   * @param consumerSupplier connects the consumer to read the {@code topics} with on start, null
+   *        creates a broadcaster that only publishes the messages passed to {@link #handle}
+   */
+  AlarmEventBroadcaster(AlarmDefinitionRepo alarmDefinitionRepo, Fanout<AlarmEvent> fanout,
+                        boolean enabled, Supplier<ConsumerConnector> consumerSupplier,
+                        String... topics) {
+    this.alarmDefinitionRepo = alarmDefinitionRepo;
+    this.fanout = fanout;
+    this.enabled = enabled;
+    this.reader = new TopicReader(consumerSupplier, fanout, new TopicReader.Handler() {
+      @Override
+      public void handle(String message) {
+        AlarmEventBroadcaster.this.handle(message);
+      }
+    }, "alarm-event-broadcaster-%d", topics);
+  }
+
+  @Override
+  public void start() {
+    reader.start();
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    reader.stop();
+  }
+
+  /**
+   * Subscribes to the alarm events the {@code filter} accepts.
+   *
+   * @return the subscription, or null if streaming is disabled or there are too many streams open
+   */
+  public Subscription<AlarmEvent> subscribe(Predicate<? super AlarmEvent> filter) {
+    return enabled ? fanout.subscribe(filter) : null;
+  }
+
+  /**
+   * Publishes the alarm event of the {@code message}, if it is one. The messages of both topics
+   * are wrapped in an object named after their type. Alarm updates carry no severity, it is looked
+   * up from the alarm definition once, and only if a stream of the tenant filters by severity.
+   */
+  void handle(String message) {
+    try {
+      final Iterator<Map.Entry<String, JsonNode>> wrapped = mapper.readTree(message).fields();
+      if (!wrapped.hasNext()) {
+        return;
+      }
+
+      final Map.Entry<String, JsonNode> typed = wrapped.next();
+      final String type = typed.getKey();
+      if (!ALARM_TRANSITIONED.equals(type) && !ALARM_UPDATED.equals(type)) {
+        return;
+      }
+
+      final JsonNode event = typed.getValue();
+      final String tenantId = text(event, "tenantId");
+      final String alarmDefinitionId = text(event, "alarmDefinitionId");
+      if (tenantId == null || alarmDefinitionId == null) {
+        return;
+      }
+
+      final String eventSeverity = text(event, "severity");
+      final Supplier<String> severity = eventSeverity != null
+          ? Suppliers.ofInstance(eventSeverity)
+          : Suppliers.memoize(new Supplier<String>() {
+              @Override
+              public String get() {
+                return severityOf(tenantId, alarmDefinitionId);
+              }
+            });
+
+      final JsonNode metrics = event.has("metrics") ? event.get("metrics")
+          : event.get("alarmMetrics");
+      fanout.publish(new AlarmEvent(type, tenantId, alarmDefinitionId, severity,
+          dimensionsOf(metrics), mapper.writeValueAsString(event)));
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring alarm event that could not be read: {}", message, e);
+    }
+  }
+
+  private String severityOf(String tenantId, String alarmDefinitionId) {
+    try {
+      return alarmDefinitionRepo.findById(tenantId, alarmDefinitionId).getSeverity();
+    } catch (EntityNotFoundException e) {
+      // The definition was deleted since, no severity filter matches its alarms
+      return null;
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to look up the severity of alarm definition {}", alarmDefinitionId, e);
+      return null;
+    }
+  }
+
+  private static List<Map<String, String>> dimensionsOf(JsonNode metrics) {
+    final List<Map<String, String>> dimensions = new ArrayList<>();
+    if (metrics == null) {
+      return dimensions;
+    }
+
+    // Alarm updates key the metrics by id, transitions list them
+    for (JsonNode metric : metrics) {
+      final Map<String, String> metricDimensions = new HashMap<>();
+      final JsonNode node = metric.get("dimensions");
+      if (node != null) {
+        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+          final Map.Entry<String, JsonNode> field = fields.next();
+          metricDimensions.put(field.getKey(), field.getValue().asText());
+        }
+      }
+      dimensions.add(metricDimensions);
+    }
+    return dimensions;
+  }
+
+  private static String text(JsonNode event, String field) {
+    final JsonNode node = event.get(field);
+    return node == null || node.isNull() ? null : node.asText();
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Predicate;
+
+import monasca.common.model.alarm.AlarmSeverity;
+
+/**
+ * Accepts the alarm events of a tenant that match the optional alarm definition, severities and
+ * metric dimensions of a stream. The dimensions match if any metric of the alarm has them.
+ */
+public class AlarmEventFilter implements Predicate<AlarmEvent> {
+  private final String tenantId;
+  private final String alarmDefinitionId;
+  private final List<AlarmSeverity> severities;
+  private final Map<String, String> metricDimensions;
+
+  public AlarmEventFilter(String tenantId, @Nullable String alarmDefinitionId,
+                          @Nullable List<AlarmSeverity> severities,
+                          @Nullable Map<String, String> metricDimensions) {
+    this.tenantId = tenantId;
+    this.alarmDefinitionId = alarmDefinitionId;
+    this.severities = severities;
+    this.metricDimensions = metricDimensions;
+  }
+
+  @Override
+  public boolean apply(AlarmEvent event) {
+    if (!tenantId.equals(event.getTenantId())) {
+      return false;
+    }
+    if (alarmDefinitionId != null && !alarmDefinitionId.equals(event.getAlarmDefinitionId())) {
+      return false;
+    }
+    if (severities != null && !severities.isEmpty() && !hasSeverity(event.getSeverity())) {
+      return false;
+    }
+    if (metricDimensions == null || metricDimensions.isEmpty()) {
+      return true;
+    }
+
+    for (Map<String, String> dimensions : event.getMetricDimensions()) {
+      if (DimensionMatcher.matches(metricDimensions, dimensions)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean hasSeverity(String severity) {
+    for (AlarmSeverity accepted : severities) {
+      if (accepted.name().equals(severity)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.Map;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+/**
+ * Matches dimensions against the dimensions of a query, the way the metrics repositories do. A
+ * query dimension without a value matches any value, a value of the form {@code a|b} matches
+ * either value.
+ */
+public final class DimensionMatcher {
+  private static final Splitter BAR_SPLITTER = Splitter.on('|').omitEmptyStrings().trimResults();
+
+  private DimensionMatcher() {
+  }
+
+  /**
+   * Returns whether the {@code dimensions} have all of the {@code queried} dimensions, a null or
+   * empty query matching any dimensions.
+   */
+  public static boolean matches(Map<String, String> queried, Map<String, String> dimensions) {
+    if (queried == null || queried.isEmpty()) {
+      return true;
+    }
+    if (dimensions == null) {
+      return false;
+    }
+
+    for (Map.Entry<String, String> dimension : queried.entrySet()) {
+      final String value = dimensions.get(dimension.getKey());
+      if (value == null) {
+        return false;
+      }
+
+      final String queriedValue = dimension.getValue();
+      if (Strings.isNullOrEmpty(queriedValue)) {
+        continue;
+      }
+      if (queriedValue.contains("|")) {
+        if (!BAR_SPLITTER.splitToList(queriedValue).contains(value)) {
+          return false;
+        }
+      } else if (!queriedValue.equals(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
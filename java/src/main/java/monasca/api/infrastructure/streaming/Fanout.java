@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+
+/**
+ * Hands each published item to every subscription that asks for it. Publishing never blocks,
+ * items that do not fit the buffer of a subscription are dropped for that subscription only.
+ */
+public class Fanout<T> {
+  private final Set<Subscription<T>> subscriptions = new CopyOnWriteArraySet<>();
+  private final int maxSubscriptions;
+  private final int bufferSize;
+  private final Meter published;
+  private final Meter dropped;
+
+  /**
+   * @param owner names the metrics of the fanout
+   */
+  public Fanout(MetricRegistry metricRegistry, Class<?> owner, int maxSubscriptions,
+                int bufferSize) {
+    this.maxSubscriptions = maxSubscriptions;
+    this.bufferSize = bufferSize;
+    this.published = metricRegistry.meter(MetricRegistry.name(owner, "published"));
+    this.dropped = metricRegistry.meter(MetricRegistry.name(owner, "dropped"));
+
+    final String subscriptionsName = MetricRegistry.name(owner, "subscriptions");
+    if (!metricRegistry.getGauges().containsKey(subscriptionsName)) {
+      metricRegistry.register(subscriptionsName, new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return subscriptions.size();
+        }
+      });
+    }
+  }
+
+  /**
+   * Subscribes to the items that the {@code filter} accepts.
+   *
+   * @return the subscription, or null if the fanout already has as many subscriptions as it takes
+   */
+  public synchronized Subscription<T> subscribe(Predicate<? super T> filter) {
+    if (subscriptions.size() >= maxSubscriptions) {
+      return null;
+    }
+
+    final Subscription<T> subscription = new Subscription<>(this, filter, bufferSize);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  /**
+   * Hands the {@code item} to the subscriptions.
+   */
+  public void publish(T item) {
+    published.mark();
+    for (Subscription<T> subscription : subscriptions) {
+      if (!subscription.offer(item)) {
+        dropped.mark();
+      }
+    }
+  }
+
+  /**
+   * Returns whether there are no subscriptions, in which case there is no need to publish.
+   */
+  public boolean isEmpty() {
+    return subscriptions.isEmpty();
+  }
+
+  synchronized void unsubscribe(Subscription<T> subscription) {
+    subscriptions.remove(subscription);
+  }
+}
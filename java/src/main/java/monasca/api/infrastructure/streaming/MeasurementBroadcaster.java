@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+
+import io.dropwizard.lifecycle.Managed;
+
+import kafka.javaapi.consumer.ConsumerConnector;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Reads the metrics topic with a single consumer and publishes the measurements to the open
+ * measurement streams.
+ *
+ * <p>Every API instance consumes the topic in a consumer group of its own, starting from the
+ * newest messages. The topic carries every metric posted to the API, so messages are only parsed
+ * while a stream is open.
+ */
+public class MeasurementBroadcaster implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(MeasurementBroadcaster.class);
+  private static final DateTimeFormatter TIMESTAMP_FORMAT =
+      ISODateTimeFormat.dateTime().withZone(DateTimeZone.UTC);
+
+  private final Fanout<MeasurementEvent> fanout;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final boolean enabled;
+  private final TopicReader reader;
+
+  @Inject
+  public MeasurementBroadcaster(ApiConfig config, MetricRegistry metricRegistry) {
+    this(new Fanout<MeasurementEvent>(metricRegistry, MeasurementBroadcaster.class,
+        config.streaming.maxSubscribers, config.streaming.bufferSize),
+        config.streaming.measurementsEnabled, config.streaming.measurementsEnabled
+            ? TopicReader.consumerOf(config, "monasca-api-measurements-") : null,
+        config.metricsTopic);
+  }
+
+  /**
+   * @param consumerSupplier connects the consumer to read the {@code topic} with on start, null
+   *        creates a broadcaster that only publishes the messages passed to {@link #handle}
+   */
+  MeasurementBroadcaster(Fanout<MeasurementEvent> fanout, boolean enabled,
+                         Supplier<ConsumerConnector> consumerSupplier, String topic) {
+    this.fanout = fanout;
+    this.enabled = enabled;
+    this.reader = new TopicReader(consumerSupplier, fanout, new TopicReader.Handler() {
+      @Override
+      public void handle(String message) {
+        MeasurementBroadcaster.this.handle(message);
+      }
+    }, "measurement-broadcaster-%d", topic);
+  }
+
+  @Override
+  public void start() {
+    reader.start();
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    reader.stop();
+  }
+
+  /**
+   * Subscribes to the measurements the {@code filter} accepts.
+   *
+   * @return the subscription, or null if streaming is disabled or there are too many streams open
+   */
+  public Subscription<MeasurementEvent> subscribe(Predicate<? super MeasurementEvent> filter) {
+    return enabled ? fanout.subscribe(filter) : null;
+  }
+
+  /**
+   * Publishes the measurement of the metric envelope in the {@code message}. The measurement is
+   * sent to clients with the timestamp formatted like the measurements of queries.
+   */
+  void handle(String message) {
+    try {
+      final JsonNode envelope = mapper.readTree(message);
+      final JsonNode metric = envelope.get("metric");
+      final JsonNode meta = envelope.get("meta");
+      if (metric == null || meta == null) {
+        return;
+      }
+
+      final String tenantId = text(meta, "tenantId");
+      final String name = text(metric, "name");
+      final JsonNode timestamp = metric.get("timestamp");
+      final JsonNode value = metric.get("value");
+      if (tenantId == null || name == null || timestamp == null || value == null) {
+        return;
+      }
+
+      final Map<String, String> dimensions = new TreeMap<>();
+      final JsonNode dimensionsNode = metric.get("dimensions");
+      if (dimensionsNode != null) {
+        final Iterator<Map.Entry<String, JsonNode>> fields = dimensionsNode.fields();
+        while (fields.hasNext()) {
+          final Map.Entry<String, JsonNode> field = fields.next();
+          dimensions.put(field.getKey(), field.getValue().asText());
+        }
+      }
+
+      final ObjectNode measurement = mapper.createObjectNode();
+      measurement.put("name", name);
+      measurement.set("dimensions", mapper.valueToTree(dimensions));
+      measurement.put("timestamp", TIMESTAMP_FORMAT.print(timestamp.asLong()));
+      measurement.set("value", value);
+      final JsonNode valueMeta = metric.has("value_meta") ? metric.get("value_meta")
+          : metric.get("valueMeta");
+      if (valueMeta == null || valueMeta.isNull()) {
+        measurement.set("value_meta", mapper.createObjectNode());
+      } else {
+        measurement.set("value_meta", valueMeta);
+      }
+
+      fanout.publish(new MeasurementEvent(tenantId, name, dimensions,
+          mapper.writeValueAsString(measurement)));
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring metric that could not be read: {}", message, e);
+    }
+  }
+
+  private static String text(JsonNode node, String field) {
+    final JsonNode value = node.get(field);
+    return value == null || value.isNull() ? null : value.asText();
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.Map;
+
+/**
+ * A measurement read from the metrics topic, with what streams filter it by.
+ */
+public class MeasurementEvent {
+  private final String tenantId;
+  private final String name;
+  private final Map<String, String> dimensions;
+  private final String json;
+
+  /**
+   * @param json the measurement as it is sent to clients
+   */
+  public MeasurementEvent(String tenantId, String name, Map<String, String> dimensions,
+                          String json) {
+    this.tenantId = tenantId;
+    this.name = name;
+    this.dimensions = dimensions;
+    this.json = json;
+  }
+
+  public String getTenantId() {
+    return tenantId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, String> getDimensions() {
+    return dimensions;
+  }
+
+  public String getJson() {
+    return json;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Accepts the measurements of a tenant that have the metric name and the optional dimensions of a
+ * stream, matching the dimensions the way measurement queries do.
+ */
+public class MeasurementFilter implements Predicate<MeasurementEvent> {
+  private final String tenantId;
+  private final String name;
+  private final Map<String, String> dimensions;
+
+  public MeasurementFilter(String tenantId, String name,
+                           @Nullable Map<String, String> dimensions) {
+    this.tenantId = tenantId;
+    this.name = name;
+    this.dimensions = dimensions;
+  }
+
+  @Override
+  public boolean apply(MeasurementEvent event) {
+    return tenantId.equals(event.getTenantId()) && name.equals(event.getName())
+        && DimensionMatcher.matches(dimensions, event.getDimensions());
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Settings of the streaming endpoints.
+ */
+public class StreamingConfiguration {
+
+  /**
+   * Whether alarm state transitions and updates can be streamed, which starts a consumer of the
+   * alarm state transitions and events topics.
+   */
+  @JsonProperty
+  public boolean alarmEventsEnabled = false;
+
+  /**
+   * Whether new measurements can be streamed, which starts a consumer of the metrics topic. Every
+   * metric posted to the API is read by every API instance while a measurement stream is open.
+   */
+  @JsonProperty
+  public boolean measurementsEnabled = false;
+
+  /**
+   * The maximum number of open streams of each kind. Every stream holds a server thread, so this
+   * must stay well below the maximum number of threads of the server.
+   */
+  @JsonProperty
+  public int maxSubscribers = 100;
+
+  /**
+   * The number of messages buffered for each stream, further messages are dropped until the
+   * client catches up.
+   */
+  @JsonProperty
+  public int bufferSize = 1000;
+
+  /**
+   * How often an idle stream is written a comment, which keeps proxies from closing it and lets
+   * the server notice clients that went away.
+   */
+  @JsonProperty
+  public Duration heartbeatInterval = Duration.seconds(15);
+
+  /**
+   * How long a stream is kept open before the client is asked to reconnect.
+   */
+  @JsonProperty
+  public Duration maxDuration = Duration.minutes(30);
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Predicate;
+
+/**
+ * The items of a {@link Fanout} that a subscriber asked for, buffered until the subscriber takes
+ * them. Once the buffer is full further items are dropped and counted, so a slow subscriber never
+ * holds up the others.
+ */
+public class Subscription<T> implements Closeable {
+  private final Fanout<T> fanout;
+  private final Predicate<? super T> filter;
+  private final BlockingQueue<T> buffer;
+  private final AtomicLong dropped = new AtomicLong();
+
+  Subscription(Fanout<T> fanout, Predicate<? super T> filter, int bufferSize) {
+    this.fanout = fanout;
+    this.filter = filter;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+  }
+
+  /**
+   * Buffers the {@code item} if the subscriber asked for it.
+   *
+   * @return false if the item was dropped for a full buffer
+   */
+  boolean offer(T item) {
+    if (!filter.apply(item) || buffer.offer(item)) {
+      return true;
+    }
+    dropped.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Returns the next item, waiting up to {@code timeoutMillis} for one, or null if none came.
+   */
+  public T poll(long timeoutMillis) throws InterruptedException {
+    return buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the number of items dropped since the last call.
+   */
+  public long takeDropped() {
+    return dropped.getAndSet(0);
+  }
+
+  /**
+   * Stops the subscription, the items buffered so far are discarded.
+   */
+  @Override
+  public void close() {
+    fanout.unsubscribe(this);
+    buffer.clear();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.dropwizard.lifecycle.Managed;
+
+import kafka.consumer.Consumer;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.KafkaStream;
+import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import monasca.api.ApiConfig;
+
+/**
+ * Reads the topics of a broadcaster with a thread per topic, handing each message to the
+ * broadcaster while any of its streams is open. The consumer is connected on start and shut down
+ * on stop.
+ */
+final class TopicReader implements Managed {
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  interface Handler {
+    void handle(String message);
+  }
+
+  private final Supplier<ConsumerConnector> consumerSupplier;
+  private final Fanout<?> fanout;
+  private final Handler handler;
+  private final String threadNameFormat;
+  private final String[] topics;
+  private ConsumerConnector consumer;
+  private ExecutorService executor;
+
+  /**
+   * @param consumerSupplier connects the consumer on start, null creates a reader that reads
+   *        nothing
+   */
+  TopicReader(Supplier<ConsumerConnector> consumerSupplier, Fanout<?> fanout, Handler handler,
+              String threadNameFormat, String... topics) {
+    this.consumerSupplier = consumerSupplier;
+    this.fanout = fanout;
+    this.handler = handler;
+    this.threadNameFormat = threadNameFormat;
+    this.topics = topics;
+  }
+
+  /**
+   * Returns a supplier of a consumer in a group of its own, named after the {@code groupPrefix},
+   * so that every API instance reads every message. Streams only carry the messages written while
+   * they are open, so the consumer starts from the newest messages and never commits its offsets.
+   */
+  static Supplier<ConsumerConnector> consumerOf(final ApiConfig config, final String groupPrefix) {
+    return new Supplier<ConsumerConnector>() {
+      @Override
+      public ConsumerConnector get() {
+        final Properties props = new Properties();
+        props.put("zookeeper.connect", Joiner.on(',').join(config.kafka.zookeeperUris));
+        props.put("group.id", groupPrefix + UUID.randomUUID());
+        props.put("auto.offset.reset", "largest");
+        props.put("auto.commit.enable", "false");
+        return Consumer.createJavaConsumerConnector(new ConsumerConfig(props));
+      }
+    };
+  }
+
+  @Override
+  public void start() {
+    if (consumerSupplier == null) {
+      return;
+    }
+
+    this.consumer = consumerSupplier.get();
+    final Map<String, Integer> topicCounts = new HashMap<>();
+    for (String topic : topics) {
+      topicCounts.put(topic, 1);
+    }
+    final Map<String, List<KafkaStream<byte[], byte[]>>> streams =
+        consumer.createMessageStreams(topicCounts);
+
+    this.executor = Executors.newFixedThreadPool(topics.length, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat(threadNameFormat).build());
+    for (String topic : topics) {
+      final KafkaStream<byte[], byte[]> stream = streams.get(topic).get(0);
+      this.executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (MessageAndMetadata<byte[], byte[]> message : stream) {
+            if (!fanout.isEmpty()) {
+              handler.handle(new String(message.message(), StandardCharsets.UTF_8));
+            }
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (consumer != null) {
+      // Ends the streams, so the threads reading them return
+      consumer.shutdown();
+      executor.shutdown();
+      if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    }
+  }
+}
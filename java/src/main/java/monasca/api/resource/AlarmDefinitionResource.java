@@ -26,6 +26,7 @@ import java.util.Map;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -37,20 +38,27 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import monasca.api.app.AlarmDefinitionService;
 import monasca.api.app.command.CreateAlarmDefinitionCommand;
+import monasca.api.app.command.ImportAlarmDefinitionsCommand;
 import monasca.api.app.command.PatchAlarmDefinitionCommand;
 import monasca.api.app.command.UpdateAlarmDefinitionCommand;
 import monasca.api.app.validation.AlarmValidation;
 import monasca.api.app.validation.Validation;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.common.Paged;
+import monasca.api.infrastructure.CollectionVersions;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.resource.annotation.PATCH;
+import monasca.api.resource.exception.Exceptions;
 import monasca.common.model.alarm.AlarmExpression;
 import monasca.common.model.alarm.AlarmSeverity;
 
@@ -62,6 +70,7 @@ public class AlarmDefinitionResource {
   private final AlarmDefinitionService service;
   private final AlarmDefinitionRepo repo;
   private final PersistUtils persistUtils;
+  private final CollectionVersions collectionVersions;
   public final static String ALARM_DEFINITIONS = "alarm-definitions";
   public final static String ALARM_DEFINITIONS_PATH = "/v2.0/" + ALARM_DEFINITIONS;
   private final static List<String> ALLOWED_SORT_BY = Arrays.asList("id", "name", "severity",
@@ -70,10 +79,12 @@ public class AlarmDefinitionResource {
   @Inject
   public AlarmDefinitionResource(AlarmDefinitionService service,
                                  AlarmDefinitionRepo repo,
-                                 PersistUtils persistUtils) {
+                                 PersistUtils persistUtils,
+                                 CollectionVersions collectionVersions) {
     this.service = service;
     this.repo = repo;
     this.persistUtils = persistUtils;
+    this.collectionVersions = collectionVersions;
   }
 
   @POST
@@ -91,10 +102,29 @@ public class AlarmDefinitionResource {
     return Response.created(URI.create(alarm.getId())).entity(alarm).build();
   }
 
+  @POST
+  @Timed
+  @Path("/import")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Object importAll(@HeaderParam("X-Tenant-Id") String tenantId,
+      @Valid @NotNull ImportAlarmDefinitionsCommand command) {
+    final int maxAlarmDefinitions = this.persistUtils.getLimit(null);
+    if (command.alarmDefinitions.size() > maxAlarmDefinitions) {
+      throw Exceptions.unprocessableEntity("At most %d alarm definitions can be imported at once",
+          maxAlarmDefinitions);
+    }
+    command.validate();
+
+    final Paged paged = new Paged();
+    paged.elements = service.importAll(tenantId, command.alarmDefinitions);
+    return paged;
+  }
+
   @GET
   @Timed
   @Produces(MediaType.APPLICATION_JSON)
-  public Object list(@Context UriInfo uriInfo,
+  public Response list(@Context UriInfo uriInfo, @Context Request request,
       @HeaderParam("X-Tenant-Id") String tenantId, @QueryParam("name") String name,
       @QueryParam("dimensions") String dimensionsStr,
       @QueryParam("severity") String severityStr,
@@ -112,6 +142,17 @@ public class AlarmDefinitionResource {
 
     List<AlarmSeverity> severityList = Validation.parseAndValidateSeverity(severityStr);
 
+    // Answer clients holding the current page without querying for it
+    final String version = collectionVersions.get(CollectionVersions.ALARM_DEFINITIONS, tenantId);
+    final EntityTag eTag =
+        version == null ? null : ETags.of(version, tenantId, uriInfo.getRequestUri());
+    if (eTag != null) {
+      final Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+      if (notModified != null) {
+        return notModified.tag(eTag).build();
+      }
+    }
+
     final int paging_limit = this.persistUtils.getLimit(limit);
     final List<AlarmDefinition> resources = repo.find(tenantId,
                                                       name,
@@ -121,7 +162,9 @@ public class AlarmDefinitionResource {
                                                       offset,
                                                       paging_limit
     );
-    return Links.paginateAlarming(paging_limit, Links.hydrate(resources, uriInfo), uriInfo);
+    return Response
+        .ok(Links.paginateAlarming(paging_limit, Links.hydrate(resources, uriInfo), uriInfo))
+        .tag(eTag).build();
   }
 
   @GET
@@ -172,11 +215,28 @@ public class AlarmDefinitionResource {
                          uriInfo, true);
   }
 
+  /**
+   * Deletes the alarm definition and answers with the deletion of its alarms, which runs in the
+   * background and can be followed at the returned location.
+   */
   @DELETE
   @Timed
   @Path("/{alarm_definition_id}")
-  public void delete(@HeaderParam("X-Tenant-Id") String tenantId,
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response delete(@Context UriInfo uriInfo, @HeaderParam("X-Tenant-Id") String tenantId,
       @PathParam("alarm_definition_id") String alarmDefinitionId) {
-    service.delete(tenantId, alarmDefinitionId);
+    AlarmDefinitionDeletion deletion = service.delete(tenantId, alarmDefinitionId);
+    URI location = uriInfo.getBaseUriBuilder().path(ALARM_DEFINITIONS_PATH).path("deletions")
+        .path(deletion.getId()).build();
+    return Response.status(Response.Status.ACCEPTED).location(location).entity(deletion).build();
+  }
+
+  @GET
+  @Timed
+  @Path("/deletions/{deletion_id}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public AlarmDefinitionDeletion getDeletion(@HeaderParam("X-Tenant-Id") String tenantId,
+      @PathParam("deletion_id") String deletionId) {
+    return service.getDeletion(tenantId, deletionId);
   }
 }
@@ -23,12 +23,14 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.joda.time.DateTime;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -39,10 +41,15 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import monasca.api.ApiConfig;
 import monasca.api.app.AlarmService;
+import monasca.api.app.command.PatchAlarmsCommand;
 import monasca.api.app.command.UpdateAlarmCommand;
 import monasca.api.app.validation.MetricNameValidation;
 import monasca.api.app.validation.Validation;
@@ -51,7 +58,14 @@ import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.alarm.AlarmRepo;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistory;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
+import monasca.api.domain.model.common.Paged;
+import monasca.api.infrastructure.persistence.AlarmPageCursor;
 import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.infrastructure.streaming.AlarmEvent;
+import monasca.api.infrastructure.streaming.AlarmEventBroadcaster;
+import monasca.api.infrastructure.streaming.AlarmEventFilter;
+import monasca.api.infrastructure.streaming.StreamingConfiguration;
+import monasca.api.infrastructure.streaming.Subscription;
 import monasca.api.resource.annotation.PATCH;
 import monasca.api.resource.exception.Exceptions;
 import monasca.common.model.alarm.AlarmSeverity;
@@ -66,6 +80,8 @@ public class AlarmResource {
   private final AlarmRepo repo;
   private final PersistUtils persistUtils;
   private final AlarmStateHistoryRepo stateHistoryRepo;
+  private final AlarmEventBroadcaster alarmEvents;
+  private final StreamingConfiguration streaming;
 
   private final static List<String> ALLOWED_GROUP_BY = Arrays.asList("alarm_definition_id", "name",
                                                                      "state", "severity", "link",
@@ -79,13 +95,15 @@ public class AlarmResource {
                                                                     "created_timestamp");
 
   @Inject
-  public AlarmResource(AlarmService service, AlarmRepo repo,
+  public AlarmResource(ApiConfig config, AlarmService service, AlarmRepo repo,
       AlarmStateHistoryRepo stateHistoryRepo,
-      PersistUtils persistUtils) {
+      PersistUtils persistUtils, AlarmEventBroadcaster alarmEvents) {
     this.service = service;
     this.repo = repo;
     this.stateHistoryRepo = stateHistoryRepo;
     this.persistUtils = persistUtils;
+    this.alarmEvents = alarmEvents;
+    this.streaming = config.streaming;
   }
 
   @DELETE
@@ -100,10 +118,19 @@ public class AlarmResource {
   @Timed
   @Path("/{alarm_id}")
   @Produces(MediaType.APPLICATION_JSON)
-  public Alarm get(
-      @Context UriInfo uriInfo,
+  public Response get(
+      @Context UriInfo uriInfo, @Context Request request,
       @HeaderParam("X-Tenant-Id") String tenantId, @PathParam("alarm_id") String alarm_id) {
-    return fixAlarmLinks(uriInfo, repo.findById(tenantId, alarm_id));
+    // The threshold engine changes alarms behind the API, so their version is read each time
+    final EntityTag eTag =
+        ETags.of(repo.findVersion(tenantId, alarm_id), tenantId, uriInfo.getRequestUri());
+    final Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+    if (notModified != null) {
+      return notModified.tag(eTag).build();
+    }
+
+    return Response.ok(fixAlarmLinks(uriInfo, repo.findById(tenantId, alarm_id))).tag(eTag)
+        .build();
   }
 
   private Alarm fixAlarmLinks(UriInfo uriInfo, Alarm alarm) {
@@ -196,7 +223,13 @@ public class AlarmResource {
                                         "state_updated_start_time", false);
 
     List<String> sortByList = Validation.parseAndValidateSortBy(sortBy, ALLOWED_SORT_BY);
-    if (!Strings.isNullOrEmpty(offset)) {
+    if (AlarmPageCursor.isCursor(offset)) {
+      try {
+        AlarmPageCursor.decode(offset, sortByList);
+      } catch (IllegalArgumentException e) {
+        throw Exceptions.unprocessableEntity("Invalid offset %s: %s", offset, e.getMessage());
+      }
+    } else if (!Strings.isNullOrEmpty(offset)) {
       Validation.parseAndValidateNumber(offset, "offset");
     }
     List<AlarmSeverity> severityList = Validation.parseAndValidateSeverity(severity);
@@ -212,7 +245,8 @@ public class AlarmResource {
           AlarmDefinitionResource.ALARM_DEFINITIONS_PATH
       );
     }
-    return Links.paginateAlarming(paging_limit, Links.hydrate(alarms, uriInfo), uriInfo);
+    return Links.paginateAlarms(paging_limit, Links.hydrate(alarms, uriInfo), sortByList,
+                                uriInfo);
   }
 
 
@@ -236,6 +270,61 @@ public class AlarmResource {
     return fixAlarmLinks(uriInfo, service.patch(tenantId, alarmId, state, lifecycleState, link));
   }
 
+  @PATCH
+  @Timed
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Object patchAll(@HeaderParam("X-Tenant-Id") String tenantId,
+      @NotNull PatchAlarmsCommand command) {
+    if ((command.alarmIds == null) == (command.filter == null)) {
+      throw Exceptions.unprocessableEntity("Exactly one of alarm_ids and filter is required");
+    }
+    if (command.state == null && command.lifecycleState == null && command.link == null) {
+      throw Exceptions.unprocessableEntity(
+          "At least one of state, lifecycle_state and link is required");
+    }
+    Validation.validateLifecycleState(command.lifecycleState);
+    Validation.validateLink(command.link);
+
+    final int maxAlarms = this.persistUtils.getLimit(null);
+    final List<String> alarmIds =
+        command.alarmIds != null ? command.alarmIds : findAlarmIds(tenantId, command.filter,
+                                                                   maxAlarms);
+    if (alarmIds.size() > maxAlarms) {
+      throw Exceptions.unprocessableEntity("At most %d alarms can be patched at once", maxAlarms);
+    }
+
+    final Paged paged = new Paged();
+    paged.elements = service.patchAll(tenantId, alarmIds, command.state, command.lifecycleState,
+                                      command.link);
+    return paged;
+  }
+
+  /**
+   * Returns the ids of the alarms matching the filter, at most one more than {@code limit}.
+   */
+  private List<String> findAlarmIds(String tenantId, PatchAlarmsCommand.Filter filter,
+                                    int limit) {
+    Map<String, String> metricDimensions =
+        Strings.isNullOrEmpty(filter.metricDimensions) ? null : Validation
+            .parseAndValidateDimensions(filter.metricDimensions);
+    MetricNameValidation.validate(filter.metricName, false);
+    DateTime stateUpdatedStart =
+        Validation.parseAndValidateDate(filter.stateUpdatedStartTime,
+                                        "state_updated_start_time", false);
+    List<AlarmSeverity> severityList = Validation.parseAndValidateSeverity(filter.severity);
+
+    final List<Alarm> alarms = repo.find(tenantId, filter.alarmDefinitionId, filter.metricName,
+                                         metricDimensions, filter.state, severityList,
+                                         filter.lifecycleState, filter.link, stateUpdatedStart,
+                                         null, null, limit, true);
+    final List<String> alarmIds = new ArrayList<>(alarms.size());
+    for (Alarm alarm : alarms) {
+      alarmIds.add(alarm.getId());
+    }
+    return alarmIds;
+  }
+
   @PUT
   @Timed
   @Path("/{alarm_id}")
@@ -300,6 +389,42 @@ public class AlarmResource {
     return resource;
   }
 
+  /**
+   * Streams the state transitions and updates of the alarms of the tenant as server-sent events,
+   * named alarm-transitioned and alarm-updated, for dashboards to follow alarms without polling.
+   */
+  @GET
+  @Timed
+  @Path("/stream")
+  @Produces(EventStreamOutput.EVENT_STREAM)
+  public Response stream(@HeaderParam("X-Tenant-Id") String tenantId,
+                         @QueryParam("alarm_definition_id") String alarmDefId,
+                         @QueryParam("metric_dimensions") String metricDimensionsStr,
+                         @QueryParam("severity") String severity) {
+    Map<String, String> metricDimensions =
+        Strings.isNullOrEmpty(metricDimensionsStr) ? null : Validation
+            .parseAndValidateDimensions(metricDimensionsStr);
+    List<AlarmSeverity> severityList = Validation.parseAndValidateSeverity(severity);
+
+    final Subscription<AlarmEvent> subscription = alarmEvents.subscribe(
+        new AlarmEventFilter(tenantId, alarmDefId, severityList, metricDimensions));
+    if (subscription == null) {
+      throw Exceptions.serviceUnavailable("Alarm event streams are disabled or all in use");
+    }
+
+    return new EventStreamOutput<AlarmEvent>(subscription, streaming) {
+      @Override
+      protected String eventName(AlarmEvent event) {
+        return event.getType();
+      }
+
+      @Override
+      protected String data(AlarmEvent event) {
+        return event.getJson();
+      }
+    }.toResponse();
+  }
+
   private List<String> parseAndValidateGroupBy(String groupByStr) {
     List<String> groupBy = null;
     if (!Strings.isNullOrEmpty(groupByStr)) {
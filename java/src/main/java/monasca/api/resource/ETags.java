@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.EntityTag;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+
+/**
+ * Utilities for building entity tags.
+ */
+final class ETags {
+  private static final Joiner JOINER = Joiner.on('\n').useForNull("");
+
+  private ETags() {
+  }
+
+  /**
+   * Returns a strong entity tag hashed from the {@code parts}, which must together identify the
+   * representation, e.g. the version of the data, the tenant and the request URI with its query.
+   */
+  static EntityTag of(Object... parts) {
+    return new EntityTag(Hashing.sha1().hashString(JOINER.join(parts), StandardCharsets.UTF_8)
+        .toString());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import monasca.api.infrastructure.streaming.StreamingConfiguration;
+import monasca.api.infrastructure.streaming.Subscription;
+
+/**
+ * Writes the items of a subscription to the client as server-sent events, until the client goes
+ * away or the stream reaches its maximum duration. Idle streams are written a comment every
+ * heartbeat interval, and the number of items dropped for a slow client is sent as a
+ * {@value #DROPPED} event. The subscription is closed when the stream ends.
+ */
+abstract class EventStreamOutput<T> implements StreamingOutput {
+  static final String EVENT_STREAM = "text/event-stream";
+  static final String DROPPED = "dropped";
+  /** How long clients wait before they reconnect once a stream ends. */
+  private static final long RECONNECT_MILLIS = 5000;
+
+  private final Subscription<T> subscription;
+  private final long heartbeatMillis;
+  private final long maxDurationMillis;
+
+  EventStreamOutput(Subscription<T> subscription, StreamingConfiguration config) {
+    this.subscription = subscription;
+    this.heartbeatMillis = config.heartbeatInterval.toMilliseconds();
+    this.maxDurationMillis = config.maxDuration.toMilliseconds();
+  }
+
+  /**
+   * Returns the name of the event the {@code item} is sent as.
+   */
+  protected abstract String eventName(T item);
+
+  /**
+   * Returns the {@code item} as a single line of JSON.
+   */
+  protected abstract String data(T item) throws IOException;
+
+  /**
+   * Returns a response which streams this output.
+   */
+  Response toResponse() {
+    return Response.ok(this, EVENT_STREAM).header("Cache-Control", "no-cache").build();
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+    try {
+      writer.write("retry: " + RECONNECT_MILLIS + "\n\n");
+      writer.flush();
+
+      final long end = System.currentTimeMillis() + maxDurationMillis;
+      for (long now = System.currentTimeMillis(); now < end; now = System.currentTimeMillis()) {
+        final T item = subscription.poll(Math.min(heartbeatMillis, end - now));
+
+        final long dropped = subscription.takeDropped();
+        if (dropped > 0) {
+          writeEvent(writer, DROPPED, "{\"dropped\":" + dropped + "}");
+        }
+        if (item != null) {
+          writeEvent(writer, eventName(item), data(item));
+        } else {
+          writer.write(": heartbeat\n\n");
+        }
+        writer.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      subscription.close();
+    }
+  }
+
+  private static void writeEvent(Writer writer, String name, String data) throws IOException {
+    writer.write("event: ");
+    writer.write(name);
+    writer.write("\ndata: ");
+    writer.write(data);
+    writer.write("\n\n");
+  }
+}
@@ -24,10 +24,12 @@ import javax.ws.rs.core.UriInfo;
 import com.google.common.base.Preconditions;
 
 import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmCount;
 import monasca.api.domain.model.common.Paged;
 import monasca.api.domain.model.dimension.DimensionBase;
 import monasca.api.domain.model.measurement.Measurements;
+import monasca.api.infrastructure.persistence.AlarmPageCursor;
 import monasca.common.model.domain.common.AbstractEntity;
 import monasca.api.domain.model.common.Link;
 import monasca.api.domain.model.common.Linked;
@@ -242,6 +244,49 @@ public final class Links {
 
   }
 
+  /**
+   * Like {@link #paginateAlarming(int, List, UriInfo)}, but the next link carries a cursor for the
+   * sort key of the last alarm instead of a numeric offset.
+   */
+  public static Object paginateAlarms(int limit, List<Alarm> elements, List<String> sortBy,
+                                      UriInfo uriInfo)
+      throws UnsupportedEncodingException {
+
+    // Check for paging turned off. Happens if maxQueryLimit is not set or is set to zero.
+    if (limit == 0) {
+      Paged paged = new Paged();
+      paged.elements = elements != null ? elements : new ArrayList<>();
+      return paged;
+    }
+
+    Paged paged = new Paged();
+
+    paged.links.add(getSelfLink(uriInfo));
+
+    if (elements != null) {
+
+      if (elements.size() > limit) {
+
+        String nextOffset = AlarmPageCursor.encode(elements.get(limit - 1), sortBy);
+
+        paged.links.add(getNextLink(nextOffset, uriInfo));
+
+        // Truncate the list. Normally this will just truncate one extra element.
+        elements = elements.subList(0, limit);
+      }
+
+      paged.elements = elements;
+
+    } else {
+
+      paged.elements = new ArrayList<>();
+
+    }
+
+    return paged;
+
+  }
+
   public static Object paginateMeasurements(int limit, List<? extends Measurements> elements, UriInfo uriInfo)
       throws UnsupportedEncodingException {
 
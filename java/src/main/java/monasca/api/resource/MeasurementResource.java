@@ -32,6 +32,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import monasca.api.app.validation.MetricNameValidation;
@@ -40,6 +41,12 @@ import monasca.api.app.validation.Validation;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.infrastructure.streaming.MeasurementBroadcaster;
+import monasca.api.infrastructure.streaming.MeasurementEvent;
+import monasca.api.infrastructure.streaming.MeasurementFilter;
+import monasca.api.infrastructure.streaming.StreamingConfiguration;
+import monasca.api.infrastructure.streaming.Subscription;
+import monasca.api.resource.exception.Exceptions;
 
 /**
  * Measurement resource implementation.
@@ -50,13 +57,18 @@ public class MeasurementResource {
   private final MeasurementRepo repo;
   private final PersistUtils persistUtils;
   private final String admin_role;
+  private final MeasurementBroadcaster measurements;
+  private final StreamingConfiguration streaming;
 
   @Inject
-  public MeasurementResource(ApiConfig config, MeasurementRepo repo, PersistUtils persistUtils) {
+  public MeasurementResource(ApiConfig config, MeasurementRepo repo, PersistUtils persistUtils,
+                             MeasurementBroadcaster measurements) {
     this.admin_role = (config.middleware == null || config.middleware.adminRole == null)
                       ? DEFAULT_ADMIN_ROLE : config.middleware.adminRole;
     this.repo = repo;
     this.persistUtils = persistUtils;
+    this.measurements = measurements;
+    this.streaming = config.streaming;
   }
 
   @GET
@@ -104,4 +116,46 @@ public class MeasurementResource {
     return Links.paginateMeasurements(paging_limit, resources, uriInfo);
   }
 
+  /**
+   * Streams the new measurements of the metrics with the name and dimensions as server-sent
+   * events named measurement, for clients to follow a metric without polling.
+   */
+  @GET
+  @Timed
+  @Path("/stream")
+  @Produces(EventStreamOutput.EVENT_STREAM)
+  public Response stream(
+      @HeaderParam("X-Tenant-Id") String tenantId,
+      @HeaderParam("X-Roles") String roles,
+      @QueryParam("name") String name,
+      @QueryParam("dimensions") String dimensionsStr,
+      @QueryParam("tenant_id") String crossTenantId) throws Exception {
+
+    Map<String, String>
+        dimensions =
+          Strings.isNullOrEmpty(dimensionsStr) ? null : Validation
+              .parseAndValidateDimensions(dimensionsStr);
+    MetricNameValidation.validate(name, true);
+
+    String queryTenantId = Validation.getQueryProject(roles, crossTenantId, tenantId, admin_role);
+
+    final Subscription<MeasurementEvent> subscription =
+        measurements.subscribe(new MeasurementFilter(queryTenantId, name, dimensions));
+    if (subscription == null) {
+      throw Exceptions.serviceUnavailable("Measurement streams are disabled or all in use");
+    }
+
+    return new EventStreamOutput<MeasurementEvent>(subscription, streaming) {
+      @Override
+      protected String eventName(MeasurementEvent event) {
+        return "measurement";
+      }
+
+      @Override
+      protected String data(MeasurementEvent event) {
+        return event.getJson();
+      }
+    }.toResponse();
+  }
+
 }
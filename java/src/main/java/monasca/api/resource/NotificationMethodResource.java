@@ -34,7 +34,9 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
@@ -46,8 +48,11 @@ import monasca.api.app.validation.NotificationMethodValidation;
 import monasca.api.app.validation.Validation;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.CollectionVersions;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.resource.annotation.PATCH;
+import monasca.api.resource.exception.Exceptions;
 
 /**
  * Notification Method resource implementation.
@@ -55,7 +60,9 @@ import monasca.api.resource.annotation.PATCH;
 @Path("/v2.0/notification-methods")
 public class NotificationMethodResource {
   private final NotificationMethodRepo repo;
+  private final NotificationMethodTypesCache types;
   private final PersistUtils persistUtils;
+  private final CollectionVersions collectionVersions;
   private final static List<String> ALLOWED_SORT_BY = Arrays.asList("id", "name", "type",
                                                                     "address", "updated_at",
                                                                     "created_at");
@@ -65,9 +72,13 @@ public class NotificationMethodResource {
 
   @Inject
   public NotificationMethodResource(ApiConfig config, NotificationMethodRepo repo,
-                                    PersistUtils persistUtils) {
+                                    NotificationMethodTypesCache types,
+                                    PersistUtils persistUtils,
+                                    CollectionVersions collectionVersions) {
     this.repo = repo;
+    this.types = types;
     this.persistUtils = persistUtils;
+    this.collectionVersions = collectionVersions;
     this.validPeriods = config.validNotificationPeriods == null ? Arrays.asList(0, 60):
             config.validNotificationPeriods;
 
@@ -79,12 +90,14 @@ public class NotificationMethodResource {
   @Produces(MediaType.APPLICATION_JSON)
   public Response create(@Context UriInfo uriInfo, @HeaderParam("X-Tenant-Id") String tenantId,
       @Valid CreateNotificationMethodCommand command) {
+    validateType(command.type);
     command.validate(this.validPeriods);
 
     NotificationMethod notificationMethod =
         Links.hydrate(repo.create(tenantId, command.name, command.type,
                 command.address, command.getConvertedPeriod()), uriInfo,
             false);
+    collectionVersions.bump(CollectionVersions.NOTIFICATION_METHODS, tenantId);
     return Response.created(URI.create(notificationMethod.getId())).entity(notificationMethod)
         .build();
   }
@@ -92,22 +105,35 @@ public class NotificationMethodResource {
   @GET
   @Timed
   @Produces(MediaType.APPLICATION_JSON)
-  public Object list(@Context UriInfo uriInfo, @HeaderParam("X-Tenant-Id") String tenantId,
-                     @QueryParam("sort_by") String sortByStr,
-                     @QueryParam("offset") String offset,
-                     @QueryParam("limit") String limit) throws UnsupportedEncodingException {
+  public Response list(@Context UriInfo uriInfo, @Context Request request,
+                       @HeaderParam("X-Tenant-Id") String tenantId,
+                       @QueryParam("sort_by") String sortByStr,
+                       @QueryParam("offset") String offset,
+                       @QueryParam("limit") String limit) throws UnsupportedEncodingException {
 
     List<String> sortByList = Validation.parseAndValidateSortBy(sortByStr, ALLOWED_SORT_BY);
     if (!Strings.isNullOrEmpty(offset)) {
       Validation.parseAndValidateNumber(offset, "offset");
     }
 
+    // Answer clients holding the current page without querying for it
+    final String version =
+        collectionVersions.get(CollectionVersions.NOTIFICATION_METHODS, tenantId);
+    final EntityTag eTag =
+        version == null ? null : ETags.of(version, tenantId, uriInfo.getRequestUri());
+    if (eTag != null) {
+      final Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+      if (notModified != null) {
+        return notModified.tag(eTag).build();
+      }
+    }
+
     final int paging_limit = this.persistUtils.getLimit(limit);
     final List<NotificationMethod> resources = repo.find(tenantId, sortByList, offset,
                                                          paging_limit);
-    return Links.paginate(paging_limit,
-                          Links.hydrate(resources, uriInfo),
-                          uriInfo);
+    return Response.ok(Links.paginate(paging_limit,
+                                      Links.hydrate(resources, uriInfo),
+                                      uriInfo)).tag(eTag).build();
 
   }
 
@@ -130,12 +156,14 @@ public class NotificationMethodResource {
       @HeaderParam("X-Tenant-Id") String tenantId,
       @PathParam("notification_method_id") String notificationMethodId,
       @Valid UpdateNotificationMethodCommand command) {
+    validateType(command.type);
     command.validate(this.validPeriods);
 
-    return Links.hydrate(
+    NotificationMethod notificationMethod =
         repo.update(tenantId, notificationMethodId, command.name, command.type,
-                command.address, command.getConvertedPeriod()),
-        uriInfo, true);
+                command.address, command.getConvertedPeriod());
+    collectionVersions.bump(CollectionVersions.NOTIFICATION_METHODS, tenantId);
+    return Links.hydrate(notificationMethod, uriInfo, true);
   }
 
   @PATCH
@@ -157,12 +185,13 @@ public class NotificationMethodResource {
     int period = command.period == null ? originalNotificationMethod.getPeriod()
             : command.getConvertedPeriod();
 
+    validateType(type);
     NotificationMethodValidation.validate(type, address, period, this.validPeriods);
 
-    return Links.hydrate(
-            repo.update(tenantId, notificationMethodId, name, type,
-                    address, period),
-            uriInfo, true);
+    NotificationMethod notificationMethod =
+        repo.update(tenantId, notificationMethodId, name, type, address, period);
+    collectionVersions.bump(CollectionVersions.NOTIFICATION_METHODS, tenantId);
+    return Links.hydrate(notificationMethod, uriInfo, true);
   }
 
   @DELETE
@@ -171,5 +200,14 @@ public class NotificationMethodResource {
   public void delete(@HeaderParam("X-Tenant-Id") String tenantId,
       @PathParam("notification_method_id") String notificationMethodId) {
     repo.deleteById(tenantId, notificationMethodId);
+    collectionVersions.bump(CollectionVersions.NOTIFICATION_METHODS, tenantId);
+    // Deleting a notification method removes it from the actions of the alarm definitions
+    collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS, tenantId);
+  }
+
+  private void validateType(String type) {
+    if (!types.contains(type)) {
+      throw Exceptions.unprocessableEntity("%s is not a valid notification method type", type);
+    }
   }
 }
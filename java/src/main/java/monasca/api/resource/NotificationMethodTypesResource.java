@@ -13,26 +13,35 @@
  */
 package monasca.api.resource;
 
+import static monasca.api.app.validation.Validation.DEFAULT_ADMIN_ROLE;
+
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 
 import monasca.api.ApiConfig;
 import monasca.api.domain.model.notificationmethod.NotificationMethodType;
-import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.resource.exception.Exceptions;
 
 
 /**
@@ -40,32 +49,58 @@ import monasca.api.infrastructure.persistence.PersistUtils;
  */
 @Path("/v2.0/notification-methods/types")
 public class NotificationMethodTypesResource {
+  private static final Splitter COMMA_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
 
-
-  NotificationMethodTypesRepo repo = null;
+  private final NotificationMethodTypesCache types;
   private final PersistUtils persistUtils;
+  private final String admin_role;
 
 
   @Inject
-  public NotificationMethodTypesResource(ApiConfig config, NotificationMethodTypesRepo repo,
+  public NotificationMethodTypesResource(ApiConfig config, NotificationMethodTypesCache types,
                                          PersistUtils persistUtils) {
-    this.repo = repo;
+    this.types = types;
     this.persistUtils = persistUtils;
+    this.admin_role = (config.middleware == null || config.middleware.adminRole == null)
+                      ? DEFAULT_ADMIN_ROLE : config.middleware.adminRole;
   }
 
   @GET
   @Timed
   @Produces(MediaType.APPLICATION_JSON)
-  public Object list(@Context UriInfo uriInfo,  @QueryParam("sort_by") String sortByStr,
+  public Response list(@Context UriInfo uriInfo, @Context Request request,
+              @QueryParam("sort_by") String sortByStr,
               @QueryParam("offset") String offset,
               @QueryParam("limit") String limit) throws UnsupportedEncodingException {
 
+     // The types only change on deploy, clients holding the current ones get no body
+     final EntityTag eTag = new EntityTag(types.getETag());
+     final Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+     if (notModified != null) {
+       return notModified.tag(eTag).build();
+     }
+
      List<NotificationMethodType> resources = new ArrayList<NotificationMethodType>();
-     for (String method_type: repo.listNotificationMethodTypes()){
+     for (String method_type: types.list()){
        resources.add(new NotificationMethodType(method_type));
      }
 
      final int paging_limit = this.persistUtils.getLimit(limit);
-     return Links.paginate(paging_limit, resources, uriInfo);
+     return Response.ok(Links.paginate(paging_limit, resources, uriInfo)).tag(eTag).build();
+  }
+
+  /**
+   * Reloads the notification method types, for admins to make types added to the database
+   * visible before the next periodic reload.
+   */
+  @POST
+  @Timed
+  @Path("/refresh")
+  public void refresh(@HeaderParam("X-Roles") String roles) {
+    if (Strings.isNullOrEmpty(roles) || !COMMA_SPLITTER.splitToList(roles).contains(admin_role)) {
+      throw Exceptions.forbidden("Only users with %s role can refresh notification method types",
+                                 admin_role);
+    }
+    types.refresh();
   }
 }
@@ -52,7 +52,8 @@ public final class Exceptions {
     NOT_FOUND(Status.NOT_FOUND, true),
     CONFLICT(Status.CONFLICT, true),
     UNPROCESSABLE_ENTITY(422, true),
-    FORBIDDEN(Status.FORBIDDEN, true);
+    FORBIDDEN(Status.FORBIDDEN, true),
+    SERVICE_UNAVAILABLE(Status.SERVICE_UNAVAILABLE, true);
 
     public final int statusCode;
     public final boolean loggable;
@@ -141,6 +142,11 @@ public final class Exceptions {
         msg, args));
   }
 
+  public static WebApplicationException serviceUnavailable(String msg, Object... args) {
+    return new WebAppException(FaultType.SERVICE_UNAVAILABLE, buildLoggedErrorMessage(
+        FaultType.SERVICE_UNAVAILABLE, msg, args));
+  }
+
   /**
    * Returns the first line off of a stacktrace message.
    */
@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.app;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.DeletedAlarm;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.common.model.alarm.AlarmState;
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.metric.MetricDefinition;
+
+@Test
+public class AlarmDefinitionDeletionJobsTest {
+  private static final String TENANT_ID = "bob";
+
+  private AlarmRepo alarmRepo;
+  private ScheduledExecutorService executor;
+  private AlarmDefinitionDeletionJobs jobs;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    alarmRepo = mock(AlarmRepo.class);
+    executor = mock(ScheduledExecutorService.class);
+    jobs = new AlarmDefinitionDeletionJobs(new ApiConfig(), alarmRepo, executor);
+  }
+
+  public void shouldQueueDeletion() {
+    AlarmDefinitionDeletion deletion = jobs.submit(TENANT_ID, "123");
+
+    assertEquals(deletion.getStatus(), AlarmDefinitionDeletion.Status.QUEUED);
+    assertEquals(jobs.get(TENANT_ID, deletion.getId()), deletion);
+    assertNull(jobs.get("alice", deletion.getId()));
+    verify(executor).execute(any(Runnable.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldDeleteInBatches() {
+    when(alarmRepo.deleteByAlarmDefinition(eq("123"), eq(AlarmDefinitionDeletionJobs.BATCH_SIZE),
+                                           any(Function.class)))
+        .thenReturn(Arrays.asList(deletedAlarm("1"), deletedAlarm("2")))
+        .thenReturn(Arrays.asList(deletedAlarm("3")))
+        .thenReturn(Collections.<DeletedAlarm>emptyList());
+
+    AlarmDefinitionDeletion deletion = jobs.submit(TENANT_ID, "123");
+    jobs.delete(deletion);
+
+    assertEquals(deletion.getStatus(), AlarmDefinitionDeletion.Status.COMPLETED);
+    assertEquals(deletion.getAlarmsDeleted(), 3);
+
+    ArgumentCaptor<Function> events = ArgumentCaptor.forClass(Function.class);
+    verify(alarmRepo, times(3)).deleteByAlarmDefinition(eq("123"), anyInt(), events.capture());
+    List<OutboxEvent> alarmEvents =
+        (List<OutboxEvent>) events.getValue().apply(deletedAlarm("1"));
+    assertEquals(alarmEvents.size(), 1);
+    assertEquals(alarmEvents.get(0).getTopic(), "events");
+    assertEquals(alarmEvents.get(0).getKey(), "123");
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldRetryFailure() {
+    when(alarmRepo.deleteByAlarmDefinition(eq("123"), eq(AlarmDefinitionDeletionJobs.BATCH_SIZE),
+                                           any(Function.class)))
+        .thenThrow(new RuntimeException("database gone"))
+        .thenReturn(Arrays.asList(deletedAlarm("1")))
+        .thenReturn(Collections.<DeletedAlarm>emptyList());
+
+    AlarmDefinitionDeletion deletion = jobs.submit(TENANT_ID, "123");
+    jobs.delete(deletion);
+
+    assertEquals(deletion.getStatus(), AlarmDefinitionDeletion.Status.QUEUED);
+    assertEquals(deletion.getError(), "database gone");
+    verify(executor).schedule(any(Runnable.class),
+                              eq(AlarmDefinitionDeletionJobs.RETRY_DELAY_SECONDS),
+                              eq(TimeUnit.SECONDS));
+
+    jobs.delete(deletion);
+
+    assertEquals(deletion.getStatus(), AlarmDefinitionDeletion.Status.COMPLETED);
+    assertEquals(deletion.getAttempts(), 2);
+    assertEquals(deletion.getAlarmsDeleted(), 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldReportFailure() {
+    when(alarmRepo.deleteByAlarmDefinition(eq("123"), eq(AlarmDefinitionDeletionJobs.BATCH_SIZE),
+                                           any(Function.class)))
+        .thenThrow(new RuntimeException("database gone"));
+
+    AlarmDefinitionDeletion deletion = jobs.submit(TENANT_ID, "123");
+    for (int i = 0; i < AlarmDefinitionDeletionJobs.MAX_ATTEMPTS; i++) {
+      jobs.delete(deletion);
+    }
+
+    assertEquals(deletion.getStatus(), AlarmDefinitionDeletion.Status.FAILED);
+    assertEquals(deletion.getError(), "database gone");
+    assertNotNull(jobs.get(TENANT_ID, deletion.getId()));
+    verify(executor, times(AlarmDefinitionDeletionJobs.MAX_ATTEMPTS - 1))
+        .schedule(any(Runnable.class), anyLong(), eq(TimeUnit.SECONDS));
+  }
+
+  public void shouldResumeOnStart() {
+    jobs.start();
+
+    verify(executor).execute(any(Runnable.class));
+  }
+
+  public void shouldResumeDeletedAlarmDefinitions() {
+    when(alarmRepo.findDeletedAlarmDefinitionIds())
+        .thenReturn(ImmutableMap.of("123", TENANT_ID, "456", "alice"));
+
+    jobs.resume(1);
+
+    verify(executor, times(2)).execute(any(Runnable.class));
+  }
+
+  public void shouldRetryResume() {
+    when(alarmRepo.findDeletedAlarmDefinitionIds())
+        .thenThrow(new RuntimeException("database gone"));
+
+    jobs.resume(1);
+    jobs.resume(AlarmDefinitionDeletionJobs.MAX_ATTEMPTS);
+
+    verify(executor).schedule(any(Runnable.class),
+                              eq(AlarmDefinitionDeletionJobs.RETRY_DELAY_SECONDS),
+                              eq(TimeUnit.SECONDS));
+    verify(executor, never()).execute(any(Runnable.class));
+  }
+
+  private static DeletedAlarm deletedAlarm(String id) {
+    List<MetricDefinition> metrics =
+        Arrays.asList(new MetricDefinition("cpu", new HashMap<String, String>()));
+    DateTime now = DateTime.now();
+    return new DeletedAlarm(new Alarm(id, "123", "90% CPU", "LOW", metrics, AlarmState.OK, null,
+                                      null, now, now, now),
+                            new HashMap<String, AlarmSubExpression>());
+  }
+}
@@ -14,17 +14,30 @@
 
 package monasca.api.app;
 
+import com.google.common.base.Function;
 import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.HashBiMap;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -38,9 +51,8 @@ import java.util.Set;
 
 import javax.ws.rs.WebApplicationException;
 
-import kafka.javaapi.producer.Producer;
-import kafka.producer.KeyedMessage;
-
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
@@ -48,16 +60,21 @@ import org.testng.annotations.Test;
 
 import monasca.api.ApiConfig;
 import monasca.api.app.AlarmDefinitionService.SubExpressions;
+import monasca.api.app.command.CreateAlarmDefinitionCommand;
 import monasca.api.app.command.UpdateAlarmDefinitionCommand;
 import monasca.common.model.alarm.AlarmExpression;
 import monasca.common.model.alarm.AlarmSubExpression;
 import monasca.common.model.event.AlarmDefinitionUpdatedEvent;
 import monasca.common.util.Serialization;
-import monasca.api.domain.model.alarm.AlarmRepo;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionImportResult;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.CollectionVersions;
 import monasca.api.domain.exception.EntityExistsException;
+import monasca.api.domain.exception.EntityNotFoundException;
 
 @Test
 public class AlarmDefinitionServiceTest {
@@ -69,23 +86,24 @@ public class AlarmDefinitionServiceTest {
 
   AlarmDefinitionService service;
   ApiConfig config;
-  Producer<String, String> producer;
   AlarmDefinitionRepo repo;
   NotificationMethodRepo notificationMethodRepo;
+  AlarmDefinitionDeletionJobs deletionJobs;
 
   @BeforeMethod
   @SuppressWarnings("unchecked")
   protected void beforeMethod() {
     config = new ApiConfig();
-    producer = mock(Producer.class);
     repo = mock(AlarmDefinitionRepo.class);
     notificationMethodRepo = mock(NotificationMethodRepo.class);
-    AlarmRepo alarmRepo = mock(AlarmRepo.class);
-    service = new AlarmDefinitionService(config, producer, repo, alarmRepo, notificationMethodRepo);
+    deletionJobs = mock(AlarmDefinitionDeletionJobs.class);
+    service = new AlarmDefinitionService(config, repo, notificationMethodRepo, deletionJobs,
+        new CollectionVersions(0, 0));
 
     when(
         repo.create(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
-            any(Map.class), any(List.class), any(List.class), any(List.class), any(List.class)))
+            any(Map.class), any(List.class), any(List.class), any(List.class), any(List.class),
+            any(List.class)))
         .thenAnswer(new Answer<AlarmDefinition>() {
           @Override
           public AlarmDefinition answer(InvocationOnMock invocation) throws Throwable {
@@ -105,7 +123,7 @@ public class AlarmDefinitionServiceTest {
     List<String> okActions = Arrays.asList("2", "3");
     List<String> undeterminedActions = Arrays.asList("3");
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
 
     AlarmDefinition alarm =
         service.create(TENANT_ID, "90% CPU", "foo", "LOW", exprStr, AlarmExpression.of(exprStr),
@@ -116,8 +134,110 @@ public class AlarmDefinitionServiceTest {
             alarmActions, okActions, undeterminedActions);
     assertEquals(expected, alarm);
     verify(repo).create(eq(TENANT_ID), anyString(), eq("90% CPU"), eq("foo"), eq("LOW"), eq(exprStr),
-        any(Map.class), eq(matchBy), eq(alarmActions), eq(okActions), eq(undeterminedActions));
-    verify(producer).send(any(KeyedMessage.class));
+        any(Map.class), eq(matchBy), eq(alarmActions), eq(okActions), eq(undeterminedActions),
+        argThat(hasEventKeyedBy(alarm.getId())));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldImportAll() {
+    List<String> alarmActions = Arrays.asList("1");
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(true);
+    when(repo.findIdsByName(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(ImmutableMap.of("Existing", "123"));
+
+    List<AlarmDefinitionImportResult> results =
+        service.importAll(TENANT_ID, Arrays.asList(
+            new CreateAlarmDefinitionCommand("90% CPU", null, EXPR1, null, null, alarmActions,
+                null, null),
+            new CreateAlarmDefinitionCommand("Existing", null, EXPR1, null, null, null, null,
+                null),
+            new CreateAlarmDefinitionCommand("90% CPU", null, EXPR2, null, null, null, null, null),
+            new CreateAlarmDefinitionCommand("80% Bar", null, EXPR2, null, "HIGH", null, null,
+                null)));
+
+    assertEquals(results.size(), 4);
+    assertEquals(results.get(0).getStatus(), AlarmDefinitionImportResult.CREATED);
+    assertEquals(results.get(1),
+        new AlarmDefinitionImportResult("123", "Existing", AlarmDefinitionImportResult.CONFLICT));
+    assertEquals(results.get(2),
+        new AlarmDefinitionImportResult(null, "90% CPU", AlarmDefinitionImportResult.CONFLICT));
+    assertEquals(results.get(3).getStatus(), AlarmDefinitionImportResult.CREATED);
+    verify(notificationMethodRepo).existsAll(TENANT_ID, Collections.singleton("1"));
+
+    ArgumentCaptor<List> alarmDefs = ArgumentCaptor.forClass(List.class);
+    ArgumentCaptor<Map> subAlarms = ArgumentCaptor.forClass(Map.class);
+    ArgumentCaptor<Function> events = ArgumentCaptor.forClass(Function.class);
+    verify(repo).createAll(eq(TENANT_ID), alarmDefs.capture(), subAlarms.capture(),
+        events.capture());
+    assertEquals(alarmDefs.getValue(), Arrays.asList(
+        new AlarmDefinition(results.get(0).getId(), "90% CPU", null, "LOW", EXPR1, null, true,
+            alarmActions, Collections.<String>emptyList(), Collections.<String>emptyList()),
+        new AlarmDefinition(results.get(3).getId(), "80% Bar", null, "HIGH", EXPR2, null, true,
+            Collections.<String>emptyList(), Collections.<String>emptyList(),
+            Collections.<String>emptyList())));
+    assertEquals(((Map<String, AlarmSubExpression>) subAlarms.getValue()
+        .get(results.get(3).getId())).values().iterator().next(), AlarmSubExpression.of(EXPR2));
+
+    List<OutboxEvent> created =
+        (List<OutboxEvent>) events.getValue().apply(alarmDefs.getValue().get(0));
+    assertEquals(created.size(), 1);
+    assertEquals(created.get(0).getKey(), results.get(0).getId());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldReportDefinitionsOfFailedBatchAsFailed() {
+    when(repo.findIdsByName(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(Collections.<String, String>emptyMap());
+    doThrow(new RuntimeException("database gone")).doNothing().when(repo)
+        .createAll(eq(TENANT_ID), anyList(), anyMap(), any(Function.class));
+
+    List<CreateAlarmDefinitionCommand> commands = new ArrayList<>();
+    for (int i = 0; i <= AlarmDefinitionService.IMPORT_BATCH_SIZE; i++) {
+      commands.add(new CreateAlarmDefinitionCommand("Definition " + i, null, EXPR1, null, null,
+          null, null, null));
+    }
+    List<AlarmDefinitionImportResult> results = service.importAll(TENANT_ID, commands);
+
+    assertEquals(results.size(), commands.size());
+    assertEquals(results.get(0),
+        new AlarmDefinitionImportResult(null, "Definition 0", AlarmDefinitionImportResult.FAILED));
+    assertEquals(results.get(AlarmDefinitionService.IMPORT_BATCH_SIZE - 1).getStatus(),
+        AlarmDefinitionImportResult.FAILED);
+    AlarmDefinitionImportResult created = results.get(AlarmDefinitionService.IMPORT_BATCH_SIZE);
+    assertEquals(created.getStatus(), AlarmDefinitionImportResult.CREATED);
+    assertNotNull(created.getId());
+    verify(repo, times(2)).createAll(eq(TENANT_ID), anyList(), anyMap(), any(Function.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldNotImportWithUnknownAction() {
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class)))
+        .thenReturn(false);
+
+    try {
+      service.importAll(TENANT_ID, Arrays.asList(
+          new CreateAlarmDefinitionCommand("90% CPU", null, EXPR1, null, null,
+              Arrays.asList("1"), null, null)));
+      fail();
+    } catch (WebApplicationException expected) {
+    }
+    verify(repo, never()).createAll(anyString(), anyList(), anyMap(), any(Function.class));
+  }
+
+  public void shouldDeleteAndQueueTheDeletionOfTheAlarms() {
+    AlarmDefinitionDeletion deletion = new AlarmDefinitionDeletion("1", TENANT_ID, "123");
+    when(deletionJobs.submit(TENANT_ID, "123")).thenReturn(deletion);
+
+    assertEquals(service.delete(TENANT_ID, "123"), deletion);
+
+    verify(repo).deleteById(eq(TENANT_ID), eq("123"), argThat(hasEventKeyedBy("123")));
+    verify(deletionJobs).submit(TENANT_ID, "123");
+  }
+
+  @Test(expectedExceptions = EntityNotFoundException.class)
+  public void shouldNotGetUnknownDeletion() {
+    service.getDeletion(TENANT_ID, "1");
   }
 
   public void updateFailsDueToMatchBy() {
@@ -241,9 +361,7 @@ public class AlarmDefinitionServiceTest {
         new AlarmDefinitionUpdatedEvent(TENANT_ID, oldAlarmDef.getId(), newName, newDescription,
             newExprStr, matchBy, newEnabled, newSeverity, emptyMap, changedSubExpressions,
             unchangedSubExpressions, emptyMap);
-    verify(producer).send(
-        new KeyedMessage<String, String>(config.eventsTopic,
-            String.valueOf(service.eventCount - 1), Serialization.toJson(event)));
+    verifyUpdatedEvent(oldAlarmDef.getId(), event);
   }
 
   public void shouldPatchExpression() {
@@ -295,13 +413,12 @@ public class AlarmDefinitionServiceTest {
             oldAlarmDef.getDescription(), newExprStr, oldAlarmDef.getMatchBy(),
             oldAlarmDef.isActionsEnabled(), oldAlarmDef.getSeverity(), emptyMap,
             changedSubExpressions, unchangedSubExpressions, emptyMap);
-    verify(producer).send(
-        new KeyedMessage<String, String>(config.eventsTopic,
-            String.valueOf(service.eventCount - 1), Serialization.toJson(event)));
     verify(repo).update(TENANT_ID, oldAlarmDef.getId(), true, oldAlarmDef.getName(),
         oldAlarmDef.getDescription(), newExprStr, oldAlarmDef.getMatchBy(),
         oldAlarmDef.getSeverity(), oldAlarmDef.isActionsEnabled(), oldSubAlarmIds,
-        changedSubExpressions, newSubAlarms, null, null, null);
+        changedSubExpressions, newSubAlarms, null, null, null,
+        Collections.singletonList(new OutboxEvent(config.eventsTopic, oldAlarmDef.getId(),
+            Serialization.toJson(event))));
   }
 
   public void shouldPatchIndividual() {
@@ -407,13 +524,32 @@ public class AlarmDefinitionServiceTest {
             expectedDescription, oldAlarmDef.getExpression(), matchBy,
             expectedActionsEnabled, expectedSeverity, emptyMap,
             changedSubExpressions, unchangedSubExpressions, emptyMap);
-    verify(producer).send(
-        new KeyedMessage<String, String>(config.eventsTopic,
-            String.valueOf(service.eventCount - 1), Serialization.toJson(event)));
     verify(repo).update(TENANT_ID, oldAlarmDef.getId(), true, expectedName,
         expectedDescription, oldAlarmDef.getExpression(), matchBy,
         expectedSeverity, expectedActionsEnabled, oldSubAlarmIds,
-        changedSubAlarms, newSubAlarms, newAlarmActions, newOkActions, newUndeterminedActions);
+        changedSubAlarms, newSubAlarms, newAlarmActions, newOkActions, newUndeterminedActions,
+        Collections.singletonList(new OutboxEvent(config.eventsTopic, oldAlarmDef.getId(),
+            Serialization.toJson(event))));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void verifyUpdatedEvent(String alarmDefId, AlarmDefinitionUpdatedEvent event) {
+    ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+    verify(repo, atLeastOnce()).update(anyString(), anyString(), anyBoolean(), anyString(),
+        anyString(), anyString(), anyList(), anyString(), anyBoolean(), anyCollection(), anyMap(),
+        anyMap(), anyList(), anyList(), anyList(), events.capture());
+    assertEquals(events.getValue(), Collections.singletonList(
+        new OutboxEvent(config.eventsTopic, alarmDefId, Serialization.toJson(event))));
+  }
+
+  private static ArgumentMatcher<List<OutboxEvent>> hasEventKeyedBy(final String alarmDefId) {
+    return new ArgumentMatcher<List<OutboxEvent>>() {
+      @Override
+      public boolean matches(Object argument) {
+        List<?> events = (List<?>) argument;
+        return events.size() == 1 && alarmDefId.equals(((OutboxEvent) events.get(0)).getKey());
+      }
+    };
   }
 
   private AlarmDefinition setupInitialAlarmDefinition(final List<String> matchBy) {
@@ -431,7 +567,7 @@ public class AlarmDefinitionServiceTest {
 
     when(repo.findById(eq(TENANT_ID), eq(alarmDefId))).thenReturn(oldAlarmDef);
     when(repo.findSubExpressions(eq(alarmDefId))).thenReturn(oldSubExpressions);
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
     return oldAlarmDef;
   }
 
@@ -509,7 +645,7 @@ public class AlarmDefinitionServiceTest {
     when(repo.findById(TENANT_ID, secondAlarmDef.getId())).thenReturn(secondAlarmDef);
     when(repo.findById(TENANT_ID, firstAlarmDef.getId())).thenReturn(firstAlarmDef);
     when(repo.exists(TENANT_ID, "91% CPU")).thenReturn("123");
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
     service.patch(TENANT_ID, secondAlarmDef.getId(), firstAlarmDef.getName(), "foo", "LOW", exprStr, null,
         matchBy, true, alarmActions, okActions, undeterminedActions);
 
@@ -538,7 +674,7 @@ public class AlarmDefinitionServiceTest {
     oldSubExpressions.put("555", AlarmSubExpression.of(EXPR2));
     when(repo.findSubExpressions(eq("234"))).thenReturn(oldSubExpressions);
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
     AlarmDefinition alarmPatched = service.patch(TENANT_ID, secondAlarmDef.getId(), "92% CPU", "foo", "LOW", exprStr, null,
         matchBy, true, alarmActions, okActions, undeterminedActions);
     assertEquals(alarmPatched.getName(), "92% CPU");
@@ -573,7 +709,7 @@ public class AlarmDefinitionServiceTest {
     when(repo.findSubExpressions(eq("234"))).thenReturn(oldSubExpressions);
     AlarmExpression alarmExpression = new AlarmExpression(exprStr);
 
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
     AlarmDefinition alarmPatched =
         service.update(TENANT_ID, secondAlarmDef.getId(), alarmExpression, updateCommand);
     assertEquals(alarmPatched.getName(), "92% CPU");
@@ -602,7 +738,7 @@ public class AlarmDefinitionServiceTest {
     when(repo.findById(TENANT_ID, secondAlarmDef.getId())).thenReturn(secondAlarmDef);
     when(repo.findById(TENANT_ID, firstAlarmDef.getId())).thenReturn(firstAlarmDef);
     when(repo.exists(TENANT_ID, "91% CPU")).thenReturn("123");
-    when(notificationMethodRepo.exists(eq(TENANT_ID), anyString())).thenReturn(true);
+    when(notificationMethodRepo.existsAll(eq(TENANT_ID), anyCollectionOf(String.class))).thenReturn(true);
 
     AlarmExpression alarmExpression = new AlarmExpression(exprStr);
     service.update(TENANT_ID, secondAlarmDef.getId(),alarmExpression,updateCommand);
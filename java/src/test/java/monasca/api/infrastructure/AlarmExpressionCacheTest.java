@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.Test;
+
+import monasca.common.model.alarm.AlarmExpression;
+
+@Test
+public class AlarmExpressionCacheTest {
+  private static final String EXPRESSION =
+      "avg(cpu{service=compute}) > 90 or max(mem{service=compute}) > 80";
+
+  public void shouldParseOnce() {
+    MetricRegistry registry = new MetricRegistry();
+    AlarmExpressionCache cache = new AlarmExpressionCache(10, registry);
+
+    AlarmExpression expression = cache.expression(EXPRESSION);
+    assertEquals(expression.getSubExpressions().size(), 2);
+    assertSame(cache.expression(" " + EXPRESSION + "\n"), expression);
+    assertSame(cache.subExpression("avg(cpu{service=compute}) > 90"),
+               cache.subExpression("avg(cpu{service=compute}) > 90"));
+
+    String prefix = MetricRegistry.name(AlarmExpressionCache.class, "expressions");
+    assertEquals(registry.meter(MetricRegistry.name(prefix, "cache.hits")).getCount(), 1);
+    assertEquals(registry.meter(MetricRegistry.name(prefix, "cache.misses")).getCount(), 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldNotParseInvalidExpression() {
+    new AlarmExpressionCache(10, new MetricRegistry()).expression("avg(cpu) >");
+  }
+
+  public void shouldKeepValidatedApart() {
+    AlarmExpressionCache cache = new AlarmExpressionCache(10, new MetricRegistry());
+    AlarmExpression parsed = cache.expression(EXPRESSION);
+
+    assertNull(cache.getValidated(EXPRESSION));
+    AlarmExpression validated = AlarmExpression.of(EXPRESSION);
+    cache.putValidated(EXPRESSION, validated);
+
+    assertSame(cache.getValidated(EXPRESSION), validated);
+    assertSame(cache.expression(EXPRESSION), parsed);
+  }
+
+  public void shouldNotCacheWhenDisabled() {
+    AlarmExpressionCache cache = new AlarmExpressionCache(0, new MetricRegistry());
+
+    assertNotSame(cache.expression(EXPRESSION), cache.expression(EXPRESSION));
+    cache.putValidated(EXPRESSION, AlarmExpression.of(EXPRESSION));
+    assertNull(cache.getValidated(EXPRESSION));
+  }
+}
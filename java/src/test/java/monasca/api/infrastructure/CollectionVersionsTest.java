@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+@Test
+public class CollectionVersionsTest {
+
+  public void shouldKeepVersionUntilBumped() {
+    CollectionVersions versions = new CollectionVersions(10, 60000);
+    String version = versions.get(CollectionVersions.ALARM_DEFINITIONS, "bob");
+    assertEquals(versions.get(CollectionVersions.ALARM_DEFINITIONS, "bob"), version);
+
+    versions.bump(CollectionVersions.ALARM_DEFINITIONS, "bob");
+
+    assertFalse(versions.get(CollectionVersions.ALARM_DEFINITIONS, "bob").equals(version));
+  }
+
+  public void shouldVersionCollectionsOfTenantsApart() {
+    CollectionVersions versions = new CollectionVersions(10, 60000);
+    String bobs = versions.get(CollectionVersions.NOTIFICATION_METHODS, "bob");
+    String alices = versions.get(CollectionVersions.NOTIFICATION_METHODS, "alice");
+
+    versions.bump(CollectionVersions.ALARM_DEFINITIONS, "bob");
+    versions.bump(CollectionVersions.NOTIFICATION_METHODS, "alice");
+
+    assertEquals(versions.get(CollectionVersions.NOTIFICATION_METHODS, "bob"), bobs);
+    assertFalse(versions.get(CollectionVersions.NOTIFICATION_METHODS, "alice").equals(alices));
+  }
+
+  public void shouldNotShareVersionsBetweenInstances() {
+    assertFalse(new CollectionVersions(10, 60000).get(CollectionVersions.ALARM_DEFINITIONS, "bob")
+        .equals(new CollectionVersions(10, 60000).get(CollectionVersions.ALARM_DEFINITIONS, "bob")));
+  }
+
+  public void shouldHaveNoVersionsWhenDisabled() {
+    assertNull(new CollectionVersions(0, 60000).get(CollectionVersions.ALARM_DEFINITIONS, "bob"));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+
+import org.joda.time.DateTime;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import monasca.api.domain.model.event.EventOutboxRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+
+@Test
+public class EventOutboxRelayTest {
+  private Producer<String, String> producer;
+  private FakeOutbox outbox;
+  private MetricRegistry registry;
+
+  @BeforeMethod
+  @SuppressWarnings("unchecked")
+  protected void beforeMethod() {
+    producer = mock(Producer.class);
+    outbox = new FakeOutbox();
+    registry = new MetricRegistry();
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldRelayInBatchesUntilEmpty() {
+    DateTime created = DateTime.now().minusSeconds(5);
+    for (int i = 0; i < 5; i++) {
+      outbox.events.add(new OutboxEvent(i + 1, "events", "123", "event " + i, created));
+    }
+    EventOutboxRelay relay = new EventOutboxRelay(producer, outbox, 2, 0, registry);
+
+    assertEquals(relay.relay(), 5);
+    assertTrue(outbox.events.isEmpty());
+    verify(producer, times(3)).send(anyListOf(KeyedMessage.class));
+    verify(producer).send(Arrays.asList(new KeyedMessage<>("events", "123", "event 4")));
+    assertEquals(registry.meter(MetricRegistry.name(EventOutboxRelay.class, "relayed"))
+                     .getCount(), 5);
+    assertEquals(relay.getLagMillis(), 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldKeepEventsWhenSendingFails() {
+    outbox.events.add(new OutboxEvent(1, "events", "123", "event", DateTime.now().minusSeconds(5)));
+    doThrow(new RuntimeException("kafka gone")).when(producer)
+        .send(anyListOf(KeyedMessage.class));
+    EventOutboxRelay relay = new EventOutboxRelay(producer, outbox, 2, 0, registry);
+
+    assertEquals(relay.relay(), 0);
+    assertEquals(outbox.events.size(), 1);
+    assertTrue(relay.getLagMillis() >= 5000);
+  }
+
+  public void shouldRelayOnlyWhileStarted() throws Exception {
+    outbox.events.add(new OutboxEvent(1, "events", "123", "event 1", DateTime.now()));
+    EventOutboxRelay relay = new EventOutboxRelay(producer, outbox, 2, 10, registry);
+    Thread.sleep(50);
+    assertEquals(outbox.size(), 1);
+
+    relay.start();
+    for (int i = 0; i < 500 && outbox.size() > 0; i++) {
+      Thread.sleep(10);
+    }
+    relay.stop();
+    assertEquals(outbox.size(), 0);
+
+    outbox.events.add(new OutboxEvent(2, "events", "123", "event 2", DateTime.now()));
+    Thread.sleep(50);
+    assertEquals(outbox.size(), 1);
+  }
+
+  /**
+   * Outbox that removes the events of a batch only once they are published, like the repositories.
+   */
+  private static class FakeOutbox implements EventOutboxRepo {
+    final LinkedList<OutboxEvent> events = new LinkedList<>();
+
+    @Override
+    public synchronized int publishOldest(int limit, Publisher publisher) {
+      List<OutboxEvent> batch =
+          new ArrayList<>(events.subList(0, Math.min(limit, events.size())));
+      if (batch.isEmpty()) {
+        return 0;
+      }
+      publisher.publish(batch);
+      events.subList(0, batch.size()).clear();
+      return batch.size();
+    }
+
+    synchronized int size() {
+      return events.size();
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+
+@Test
+public class AlarmDefinitionCacheTest {
+  private static final AlarmDefinition ALARM_DEF = new AlarmDefinition("123", "90% CPU", null,
+      "LOW", "avg(cpu{service=compute}) > 90", Arrays.asList("hostname"), true,
+      Arrays.asList("1"), Collections.<String>emptyList(), Collections.<String>emptyList());
+
+  public void shouldReturnCopiesToOwningTenant() {
+    AlarmDefinitionCache cache = new AlarmDefinitionCache(10, 60000, new MetricRegistry());
+    assertNull(cache.get("bob", "123"));
+
+    cache.put("bob", ALARM_DEF, cache.version());
+
+    AlarmDefinition cached = cache.get("bob", "123");
+    assertEquals(cached, ALARM_DEF);
+    assertNotSame(cached, ALARM_DEF);
+    cached.getAlarmActions().add("2");
+    assertEquals(cache.get("bob", "123"), ALARM_DEF);
+
+    assertNull(cache.get("alice", "123"));
+    assertEquals(cache.getHitCount(), 2);
+    assertEquals(cache.getMissCount(), 2);
+  }
+
+  public void shouldForgetInvalidatedDefinition() {
+    AlarmDefinitionCache cache = new AlarmDefinitionCache(10, 60000, new MetricRegistry());
+    cache.put("bob", ALARM_DEF, cache.version());
+
+    cache.invalidate("123");
+
+    assertNull(cache.get("bob", "123"));
+  }
+
+  public void shouldNotCacheReadFromBeforeInvalidation() {
+    AlarmDefinitionCache cache = new AlarmDefinitionCache(10, 60000, new MetricRegistry());
+    long version = cache.version();
+
+    cache.invalidate("123");
+    cache.put("bob", ALARM_DEF, version);
+
+    assertNull(cache.get("bob", "123"));
+  }
+
+  public void shouldNotCacheWhenDisabled() {
+    AlarmDefinitionCache cache = new AlarmDefinitionCache(0, 60000, new MetricRegistry());
+    cache.put("bob", ALARM_DEF, cache.version());
+
+    assertNull(cache.get("bob", "123"));
+  }
+}
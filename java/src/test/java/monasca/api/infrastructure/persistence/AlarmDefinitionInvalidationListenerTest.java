@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class AlarmDefinitionInvalidationListenerTest {
+  private AlarmDefinitionCache cache;
+  private AlarmDefinitionInvalidationListener listener;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    cache = mock(AlarmDefinitionCache.class);
+    listener = new AlarmDefinitionInvalidationListener(cache, new MetricRegistry(), null, "events");
+  }
+
+  public void shouldInvalidateDefinitionOfEvent() {
+    listener.handle("{\"alarm-definition-updated\":{\"tenantId\":\"bob\","
+        + "\"alarmDefinitionId\":\"123\",\"alarmName\":\"90% CPU\"}}");
+
+    verify(cache).invalidate("123");
+  }
+
+  public void shouldIgnoreOtherEvents() {
+    listener.handle("{\"alarm-deleted\":{\"alarmId\":\"456\",\"alarmDefinitionId\":\"123\"}}");
+    listener.handle("not json");
+
+    verifyZeroInteractions(cache);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import monasca.api.domain.model.alarm.Alarm;
+import monasca.common.model.alarm.AlarmState;
+import monasca.common.model.metric.MetricDefinition;
+
+@Test
+public class AlarmPageCursorTest {
+  private static final Map<String, String> COLUMNS = ImmutableMap.of(
+      "alarm_id", "a.id",
+      "state", "FIELD(a.state, 'OK', 'UNDETERMINED', 'ALARM')",
+      "link", "COALESCE(a.link, '')",
+      "created_timestamp", "a.created_at");
+
+  private final DateTime created = new DateTime(2016, 3, 14, 9, 26, 53, DateTimeZone.UTC);
+  private final Alarm alarm =
+      new Alarm("42", "1", "90% CPU", "HIGH",
+                Collections.<MetricDefinition>emptyList(), AlarmState.UNDETERMINED, "OPEN", null,
+                created, created, created);
+
+  public void shouldRecognizeCursors() {
+    assertFalse(AlarmPageCursor.isCursor(null));
+    assertFalse(AlarmPageCursor.isCursor(""));
+    assertFalse(AlarmPageCursor.isCursor("100"));
+    assertTrue(AlarmPageCursor.isCursor(AlarmPageCursor.encode(alarm, null)));
+  }
+
+  public void shouldEndSortKeysWithAlarmId() {
+    assertEquals(AlarmPageCursor.sortKeys(null).toString(), "[alarm_id asc]");
+    assertEquals(AlarmPageCursor.sortKeys(Arrays.asList("state desc", "link")).toString(),
+                 "[state desc, link asc, alarm_id asc]");
+    assertEquals(AlarmPageCursor.sortKeys(Arrays.asList("alarm_id desc", "state")).toString(),
+                 "[alarm_id desc]");
+  }
+
+  public void shouldRoundTrip() {
+    List<String> sortBy = Arrays.asList("state desc", "link", "created_timestamp");
+
+    AlarmPageCursor cursor =
+        AlarmPageCursor.decode(AlarmPageCursor.encode(alarm, sortBy), sortBy);
+
+    Map<String, Object> parameters = cursor.getParameters();
+    assertEquals(parameters.get("cursor0"), 2);
+    assertEquals(parameters.get("cursor1"), "");
+    assertEquals(parameters.get("cursor2"), new Timestamp(created.getMillis()));
+    assertEquals(parameters.get("cursor3"), "42");
+  }
+
+  public void shouldBuildSeekPredicate() {
+    List<String> sortBy = Arrays.asList("state desc");
+
+    AlarmPageCursor cursor =
+        AlarmPageCursor.decode(AlarmPageCursor.encode(alarm, sortBy), sortBy);
+
+    assertEquals(cursor.seekPredicate(COLUMNS),
+                 " and ((FIELD(a.state, 'OK', 'UNDETERMINED', 'ALARM') < :cursor0)"
+                 + " or (FIELD(a.state, 'OK', 'UNDETERMINED', 'ALARM') = :cursor0"
+                 + " and a.id > :cursor1))");
+  }
+
+  public void shouldBuildOrderBy() {
+    assertEquals(AlarmPageCursor.orderBy(Arrays.asList("link desc"), COLUMNS),
+                 " order by COALESCE(a.link, '') desc,a.id asc ");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectCursorForOtherSortOrder() {
+    AlarmPageCursor.decode(AlarmPageCursor.encode(alarm, Arrays.asList("state")),
+                           Arrays.asList("state desc"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectMalformedCursor() {
+    AlarmPageCursor.decode("not-a-cursor", null);
+  }
+}
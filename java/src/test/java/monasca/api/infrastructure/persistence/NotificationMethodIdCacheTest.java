@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+@Test
+public class NotificationMethodIdCacheTest {
+
+  public void shouldReturnUnknownIds() {
+    NotificationMethodIdCache cache = new NotificationMethodIdCache(10, 60000, new MetricRegistry());
+
+    assertEquals(cache.unknown("bob", Arrays.asList("1", "2", "1")), ImmutableSet.of("1", "2"));
+    assertEquals(cache.getMissCount(), 1);
+
+    cache.addAll("bob", Arrays.asList("1", "2"), cache.version());
+
+    assertTrue(cache.unknown("bob", Arrays.asList("2", "1")).isEmpty());
+    assertEquals(cache.unknown("bob", Arrays.asList("1", "3")), ImmutableSet.of("3"));
+    assertEquals(cache.unknown("alice", Arrays.asList("1")), ImmutableSet.of("1"));
+    assertEquals(cache.getHitCount(), 1);
+  }
+
+  public void shouldForgetInvalidatedTenant() {
+    NotificationMethodIdCache cache = new NotificationMethodIdCache(10, 60000, new MetricRegistry());
+    cache.addAll("bob", Arrays.asList("1"), cache.version());
+    cache.addAll("alice", Arrays.asList("1"), cache.version());
+
+    cache.invalidate("bob");
+
+    assertEquals(cache.unknown("bob", Arrays.asList("1")), ImmutableSet.of("1"));
+    assertTrue(cache.unknown("alice", Arrays.asList("1")).isEmpty());
+  }
+
+  public void shouldNotAddIdsFoundBeforeAnInvalidation() {
+    NotificationMethodIdCache cache = new NotificationMethodIdCache(10, 60000, new MetricRegistry());
+    long version = cache.version();
+
+    cache.invalidate("bob");
+    cache.addAll("bob", Arrays.asList("1"), version);
+
+    assertEquals(cache.unknown("bob", Arrays.asList("1")), ImmutableSet.of("1"));
+  }
+
+  public void shouldNotCacheWhenDisabled() {
+    NotificationMethodIdCache cache = new NotificationMethodIdCache(0, 60000, new MetricRegistry());
+    cache.addAll("bob", Arrays.asList("1"), cache.version());
+
+    assertEquals(cache.unknown("bob", Arrays.asList("1")), ImmutableSet.of("1"));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
+
+@Test
+public class NotificationMethodTypesCacheTest {
+
+  public void shouldServeTypesFromSnapshot() {
+    NotificationMethodTypesRepo repo = mock(NotificationMethodTypesRepo.class);
+    when(repo.listNotificationMethodTypes()).thenReturn(Arrays.asList("EMAIL", "WEBHOOK"));
+    NotificationMethodTypesCache types = new NotificationMethodTypesCache(repo, 0);
+
+    assertEquals(types.list(), Arrays.asList("EMAIL", "WEBHOOK"));
+    assertTrue(types.contains("webhook"));
+    assertFalse(types.contains("SMS"));
+    assertFalse(types.contains(null));
+    verify(repo, times(1)).listNotificationMethodTypes();
+  }
+
+  public void shouldChangeETagWithTypes() {
+    NotificationMethodTypesRepo repo = mock(NotificationMethodTypesRepo.class);
+    when(repo.listNotificationMethodTypes()).thenReturn(Arrays.asList("EMAIL"));
+    NotificationMethodTypesCache types = new NotificationMethodTypesCache(repo, 0);
+    String eTag = types.getETag();
+
+    types.refresh();
+    assertEquals(types.getETag(), eTag);
+
+    when(repo.listNotificationMethodTypes()).thenReturn(Arrays.asList("EMAIL", "PAGERDUTY"));
+    types.refresh();
+    assertFalse(types.getETag().equals(eTag));
+    assertTrue(types.contains("PAGERDUTY"));
+  }
+
+  public void shouldLoadWhenNeededIfStartupFailed() {
+    NotificationMethodTypesRepo repo = mock(NotificationMethodTypesRepo.class);
+    when(repo.listNotificationMethodTypes()).thenThrow(new RuntimeException("database gone"))
+        .thenReturn(Arrays.asList("EMAIL"));
+    NotificationMethodTypesCache types = new NotificationMethodTypesCache(repo, 0);
+
+    assertTrue(types.contains("EMAIL"));
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence;
+
+import static org.testng.Assert.assertEquals;
+
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+@Test
+public class TimestampCodecTest {
+  private static final DateTimeFormatter JODA_FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();
+  private static final DateTimeFormatter JODA_PARSER = ISODateTimeFormat.dateTime();
+
+  // 1900-01-01T00:00:00.000Z to 2100-01-01T00:00:00.000Z
+  private static final long RANGE_START = -2208988800000L;
+  private static final long RANGE_END = 4102444800000L;
+
+  private final Random random = new Random(42);
+
+  public void shouldFormatLikeJoda() {
+    for (int i = 0; i < 100000; i++) {
+      long millis = RANGE_START + (long) (random.nextDouble() * (RANGE_END - RANGE_START));
+      assertEquals(TimestampCodec.formatMillis(millis), JODA_FORMATTER.print(millis));
+    }
+  }
+
+  public void shouldFormatBoundaries() {
+    long[] values = {0L, -1L, 1L, 86399999L, 86400000L, 951782400000L, 951868799999L,
+        -62167219200000L, 253402300799999L, -62167219200001L, 253402300800000L};
+    for (long millis : values) {
+      assertEquals(TimestampCodec.formatMillis(millis), JODA_FORMATTER.print(millis));
+    }
+  }
+
+  public void shouldFormatIntoBuffer() {
+    char[] buf = new char[TimestampCodec.MILLIS_LENGTH + 2];
+    buf[0] = '[';
+    buf[buf.length - 1] = ']';
+    TimestampCodec.formatMillis(1452528634472L, buf, 1);
+    assertEquals(new String(buf), "[2016-01-11T16:10:34.472Z]");
+  }
+
+  public void shouldParseLikeJoda() {
+    for (int i = 0; i < 100000; i++) {
+      long millis = RANGE_START + (long) (random.nextDouble() * (RANGE_END - RANGE_START));
+      String text = JODA_FORMATTER.print(millis);
+      assertEquals(TimestampCodec.parseMillis(text), millis);
+      assertEquals(TimestampCodec.parseMillis(text.replace('T', ' ')),
+                   JODA_PARSER.parseDateTime(text).getMillis());
+    }
+  }
+
+  public void shouldParseFractionsAndZones() {
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T16:10:34.4Z"), 1452528634400L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T16:10:34.47Z"), 1452528634470L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T16:10:34.472Z"), 1452528634472L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11 16:10:34.472999999Z"), 1452528634472L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T16:10:34Z"), 1452528634000L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T16:10:34"), 1452528634000L);
+    assertEquals(TimestampCodec.parseMillis(" 2016-01-11T16:10:34.472Z "), 1452528634472L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T17:10:34.472+01:00"), 1452528634472L);
+    assertEquals(TimestampCodec.parseMillis("2016-01-11T15:40:34.472-0030"),
+                 JODA_PARSER.parseDateTime("2016-01-11T15:40:34.472-00:30").getMillis());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectInvalidDate() {
+    TimestampCodec.parseMillis("2015-02-29T00:00:00.000Z");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectTrailingGarbage() {
+    TimestampCodec.parseMillis("2016-01-11T16:10:34.472Zabc");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectMissingFraction() {
+    TimestampCodec.parseMillis("2016-01-11T16:10:34.Z");
+  }
+
+  public void shouldPadMillisLikeSubstring() {
+    String[] values = {"2016-01-11T16:10:34Z", "2016-01-11T16:10:34.4Z", "2016-01-11T16:10:34.47Z",
+        "2016-01-11T16:10:34.472Z", "2016-01-11T16:10:34.4725Z", "2016-01-11T16:10:34.472512345Z"};
+    for (String value : values) {
+      assertEquals(TimestampCodec.padMillis(value), padWithSubstring(value));
+    }
+  }
+
+  public void shouldStripFraction() {
+    assertEquals(TimestampCodec.stripFraction("2016-01-11T16:10:34.472Z"), "2016-01-11T16:10:34Z");
+    assertEquals(TimestampCodec.stripFraction("2016-01-11T16:10:34Z"), "2016-01-11T16:10:34Z");
+  }
+
+  private static String padWithSubstring(String origTimestamp) {
+    final int length = origTimestamp.length();
+    if (length == 20) {
+      return origTimestamp.substring(0, 19) + ".000Z";
+    }
+    final String millisecond = origTimestamp.substring(20, length - 1);
+    return origTimestamp.substring(0, 19) + '.' + StringUtils.rightPad(millisecond, 3, '0') + 'Z';
+  }
+}
@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
@@ -36,6 +37,8 @@ import com.google.common.collect.Lists;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
 import monasca.common.hibernate.db.AlarmActionDb;
 import monasca.common.hibernate.db.AlarmDefinitionDb;
 import monasca.common.hibernate.db.NotificationMethodDb;
@@ -72,7 +75,8 @@ public class AlarmDefinitionSqlRepositoryImplTest {
   @BeforeMethod
   protected void beforeMethod() throws Exception {
     this.sessionFactory = HibernateUtil.getSessionFactory();
-    this.repo = new AlarmDefinitionSqlRepoImpl(this.sessionFactory);
+    this.repo = new AlarmDefinitionSqlRepoImpl(this.sessionFactory,
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
 
     alarmActions = new ArrayList<>();
     alarmActions.add("29387234");
@@ -235,7 +239,8 @@ public class AlarmDefinitionSqlRepositoryImplTest {
 
     AlarmDefinition alarmA =
         repo.create("555", "2345", "90% CPU", null, "LOW", "avg(hpcs.compute{flavor_id=777, image_id=888, metric_name=cpu}) > 10", subExpressions,
-            Arrays.asList("flavor_id", "image_id"), alarmActions, null, null);
+            Arrays.asList("flavor_id", "image_id"), alarmActions, null, null,
+            Collections.<OutboxEvent>emptyList());
     AlarmDefinition alarmB = repo.findById("555", alarmA.getId());
 
     assertEquals(alarmA.getId(), alarmB.getId());
@@ -281,7 +286,8 @@ public class AlarmDefinitionSqlRepositoryImplTest {
     Map<String, AlarmSubExpression> newSubExpressions = ImmutableMap.<String, AlarmSubExpression>builder().put("555", newSubExpression).build();
 
     repo.update("bob", "234", false, "90% CPU", null, "avg(foo{flavor_id=777}) > 333 and avg(hpcs.compute) <= 200",
-        Arrays.asList("flavor_id", "image_id"), "LOW", false, oldSubAlarmIds, changedSubExpressions, newSubExpressions, alarmActions, null, null);
+        Arrays.asList("flavor_id", "image_id"), "LOW", false, oldSubAlarmIds, changedSubExpressions, newSubExpressions, alarmActions, null, null,
+        Collections.<OutboxEvent>emptyList());
 
     AlarmDefinition alarm = repo.findById("bob", "234");
     AlarmDefinition expected =
@@ -359,7 +365,7 @@ public class AlarmDefinitionSqlRepositoryImplTest {
 
   @Test(groups = "orm")
   public void shouldDeleteById() {
-    repo.deleteById("bob", "123");
+    repo.deleteById("bob", "123", Collections.<OutboxEvent>emptyList());
 
     try {
       assertNull(repo.findById("bob", "123"));
@@ -17,16 +17,19 @@ package monasca.api.infrastructure.persistence.hibernate;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.WebApplicationException;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
@@ -49,6 +52,9 @@ import org.testng.annotations.Test;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.infrastructure.persistence.AlarmPageCursor;
 import monasca.common.hibernate.db.AlarmDb;
 import monasca.common.hibernate.db.AlarmDefinitionDb;
 import monasca.common.hibernate.db.AlarmMetricDb;
@@ -294,11 +300,20 @@ public class AlarmSqlRepositoryImplTest {
     return new MetricDefinition(metricName, builder.build());
   }
 
+  private static Function<AlarmUpdate, List<OutboxEvent>> noEvents() {
+    return new Function<AlarmUpdate, List<OutboxEvent>>() {
+      @Override
+      public List<OutboxEvent> apply(AlarmUpdate update) {
+        return Collections.emptyList();
+      }
+    };
+  }
+
   @Test(groups = "orm")
   @SuppressWarnings("unchecked")
   public void shouldDelete() {
     Session session = null;
-    repo.deleteById(TENANT_ID, ALARM_ID);
+    repo.deleteById(TENANT_ID, ALARM_ID, Collections.<OutboxEvent>emptyList());
     try {
 
       session = sessionFactory.openSession();
@@ -320,7 +335,7 @@ public class AlarmSqlRepositoryImplTest {
 
   @Test(groups = "orm", expectedExceptions = EntityNotFoundException.class)
   public void shouldThowExceptionOnDelete() {
-    repo.deleteById(TENANT_ID, "Not an alarm ID");
+    repo.deleteById(TENANT_ID, "Not an alarm ID", Collections.<OutboxEvent>emptyList());
   }
 
   @Test(groups = "orm")
@@ -460,6 +475,74 @@ public class AlarmSqlRepositoryImplTest {
     repo.update(TENANT_ID, "Not a valid alarm id", AlarmState.UNDETERMINED, null, null);
   }
 
+  @Test(groups = "orm")
+  public void shouldPatch() {
+    final Alarm originalAlarm = repo.findById(TENANT_ID, ALARM_ID);
+
+    final AlarmUpdate update = repo.patch(TENANT_ID, ALARM_ID, null, "OPEN", null, noEvents());
+    assertEquals(update.getOldAlarm(), originalAlarm);
+    assertEquals(update.getState(), AlarmState.UNDETERMINED);
+    assertEquals(update.getLifecycleState(), "OPEN");
+    assertNull(update.getLink());
+    assertTrue(update.isActionsEnabled());
+    assertEquals(update.getSubAlarms(), repo.findAlarmSubExpressions(ALARM_ID));
+
+    final Alarm patchedAlarm = repo.findById(TENANT_ID, ALARM_ID);
+    assertEquals(patchedAlarm.getState(), AlarmState.UNDETERMINED);
+    assertEquals(patchedAlarm.getLifecycleState(), "OPEN");
+    assertNull(patchedAlarm.getLink());
+
+    assertEquals(repo.patch(TENANT_ID, ALARM_ID, AlarmState.ALARM, null, null, noEvents())
+                     .getOldAlarm()
+                     .getLifecycleState(), "OPEN");
+    assertEquals(repo.findById(TENANT_ID, ALARM_ID).getState(), AlarmState.ALARM);
+  }
+
+  @Test(groups = "orm")
+  public void shouldFindDeletedAlarmDefinitionIds() {
+    assertTrue(repo.findDeletedAlarmDefinitionIds().isEmpty());
+
+    Session session = null;
+    try {
+      session = sessionFactory.openSession();
+      session.beginTransaction();
+      final AlarmDefinitionDb alarmDefinition =
+          (AlarmDefinitionDb) session.get(AlarmDefinitionDb.class, "1");
+      alarmDefinition.setDeletedAt(DateTime.now(UTC_TIMEZONE));
+      session.update(alarmDefinition);
+      session.getTransaction().commit();
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+
+    assertEquals(repo.findDeletedAlarmDefinitionIds(), ImmutableMap.of("1", TENANT_ID));
+  }
+
+  @Test(groups = "orm")
+  public void shouldPatchAll() {
+    final List<AlarmUpdate> updates =
+        repo.patchAll(TENANT_ID, Arrays.asList("1", "Not a valid alarm id", "3"), null,
+                      "ACKNOWLEDGED", null, noEvents());
+
+    assertEquals(updates.size(), 2);
+    assertEquals(updates.get(0).getOldAlarm(), alarm1);
+    assertEquals(updates.get(1).getOldAlarm(), alarm3);
+    assertEquals(updates.get(1).getState(), AlarmState.ALARM);
+    assertEquals(updates.get(1).getLink(), "http://somesite.com/this-alarm-info");
+
+    assertEquals(repo.findById(TENANT_ID, "1").getLifecycleState(), "ACKNOWLEDGED");
+    assertEquals(repo.findById(TENANT_ID, "2").getLifecycleState(), "OPEN");
+    assertEquals(repo.findById(TENANT_ID, "3").getLifecycleState(), "ACKNOWLEDGED");
+  }
+
+  @Test(groups = "orm", expectedExceptions = EntityNotFoundException.class)
+  public void shouldPatchThrowException() {
+    repo.patch(TENANT_ID, "Not a valid alarm id", AlarmState.UNDETERMINED, null, null,
+               noEvents());
+  }
+
   @Test(groups = "orm")
   public void shouldFilterBySeverity() {
 
@@ -494,6 +577,22 @@ public class AlarmSqlRepositoryImplTest {
         compoundAlarm, alarm3, alarm2, alarm1);
   }
 
+  @Test(groups = "orm")
+  public void shouldPageWithCursor() {
+    final List<String> sortBy = Lists.newArrayList("state desc", "severity desc");
+
+    checkSortedList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, sortBy, null, 1, true),
+        alarm3, compoundAlarm);
+    checkSortedList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, sortBy,
+        AlarmPageCursor.encode(alarm3, sortBy), 1, true), compoundAlarm, alarm2);
+    checkSortedList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, sortBy,
+        AlarmPageCursor.encode(compoundAlarm, sortBy), 1, true), alarm2, alarm1);
+    checkSortedList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, sortBy,
+        AlarmPageCursor.encode(alarm2, sortBy), 1, true), alarm1);
+    checkSortedList(repo.find(TENANT_ID, null, null, null, null, null, null, null, null, sortBy,
+        AlarmPageCursor.encode(alarm1, sortBy), 1, true));
+  }
+
  
 
   private void checkUnsortedList(List<Alarm> found, Alarm... expected) {
@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import com.codahale.metrics.MetricRegistry;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
@@ -36,6 +37,7 @@ import monasca.api.domain.exception.EntityExistsException;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
 import monasca.common.hibernate.db.NotificationMethodDb;
 import monasca.common.hibernate.db.NotificationMethodTypesDb;
 import monasca.common.model.alarm.AlarmNotificationMethodType;
@@ -51,7 +53,8 @@ public class NotificationMethodSqlRepositoryImplTest {
   @BeforeMethod
   protected void beforeMethod() throws Exception {
     this.sessionFactory = HibernateUtil.getSessionFactory();
-    this.repo = new NotificationMethodSqlRepoImpl(sessionFactory);
+    this.repo = new NotificationMethodSqlRepoImpl(sessionFactory,
+        new NotificationMethodIdCache(100, 60000, new MetricRegistry()));
 
     this.prepareData(this.sessionFactory);
 
@@ -117,6 +120,14 @@ public class NotificationMethodSqlRepositoryImplTest {
     assertFalse(repo.exists("333", "123"));
   }
 
+  @Test(groups = "orm")
+  public void shouldExistAllForTenantAndNotificationMethods() {
+    assertTrue(repo.existsAll("444", Arrays.asList("123", "124")));
+    assertTrue(repo.existsAll("444", Arrays.asList("123", "123")));
+    assertFalse(repo.existsAll("444", Arrays.asList("123", "1234")));
+    assertFalse(repo.existsAll("333", Arrays.asList("123")));
+  }
+
   @Test(groups = "orm")
   public void shouldFind() {
     List<NotificationMethod> nms1 = repo.find("444", null, null, 1);
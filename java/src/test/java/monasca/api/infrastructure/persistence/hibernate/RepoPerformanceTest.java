@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.hibernate;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.io.Resources;
+
+import monasca.api.ApiConfig;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
+import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.infrastructure.persistence.mysql.AlarmCountSummary;
+import monasca.api.infrastructure.persistence.mysql.AlarmDefinitionMySqlRepoImpl;
+import monasca.api.infrastructure.persistence.mysql.NotificationMethodMySqlRepoImpl;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * Compares the Hibernate repositories with the JDBI repositories on the same data, each on its own
+ * in-memory H2 database. The timings are logged, they only mean something relative to each other.
+ */
+@Test(groups = "performance")
+public class RepoPerformanceTest {
+  private static final Logger LOG = LoggerFactory.getLogger(RepoPerformanceTest.class);
+  private static final String TENANT_ID = "perf";
+  private static final int DEFINITIONS = 1000;
+  private static final int NOTIFICATION_METHODS = 200;
+  private static final int WARM_UP = 50;
+  private static final int ITERATIONS = 500;
+  private static final int PAGE_SIZE = 50;
+
+  private SessionFactory sessionFactory;
+  private Handle handle;
+  private AlarmDefinitionRepo ormAlarmDefinitions;
+  private AlarmDefinitionRepo jdbiAlarmDefinitions;
+  private NotificationMethodRepo ormNotificationMethods;
+  private NotificationMethodRepo jdbiNotificationMethods;
+  private List<AlarmDefinition> alarmDefinitions;
+  private Map<String, Map<String, AlarmSubExpression>> subExpressions;
+
+  @BeforeClass
+  protected void beforeClass() throws Exception {
+    sessionFactory = HibernateUtil.getSessionFactory();
+    ormAlarmDefinitions = new AlarmDefinitionSqlRepoImpl(sessionFactory,
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
+    ormNotificationMethods = new NotificationMethodSqlRepoImpl(sessionFactory,
+        new NotificationMethodIdCache(0, 0, new MetricRegistry()));
+
+    DBI db = new DBI("jdbc:h2:mem:performance;MODE=MySQL");
+    handle = db.open();
+    handle.execute(schema("alarm.sql"));
+    handle.execute(schema("notification_method.sql"));
+    ApiConfig config = new ApiConfig();
+    config.alarmCountSummary.enabled = false;
+    jdbiAlarmDefinitions = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, config, new MetricRegistry()),
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
+    jdbiNotificationMethods = new NotificationMethodMySqlRepoImpl(db, new PersistUtils(),
+        new NotificationMethodIdCache(0, 0, new MetricRegistry()));
+
+    alarmDefinitions = new ArrayList<>(DEFINITIONS);
+    subExpressions = new HashMap<>();
+    for (int i = 0; i < DEFINITIONS; i++) {
+      String id = UUID.randomUUID().toString();
+      String expression =
+          String.format("avg(cpu.idle_perc{hostname=host-%d, service=compute}) < %d", i, i % 50);
+      alarmDefinitions.add(new AlarmDefinition(id, "definition " + i, null, "LOW", expression,
+          null, true, Collections.<String>emptyList(), Collections.<String>emptyList(),
+          Collections.<String>emptyList()));
+      subExpressions.put(id, Collections.singletonMap(UUID.randomUUID().toString(),
+          AlarmSubExpression.of(expression)));
+    }
+
+    for (NotificationMethodRepo repo : new NotificationMethodRepo[] {ormNotificationMethods,
+        jdbiNotificationMethods}) {
+      for (int i = 0; i < NOTIFICATION_METHODS; i++) {
+        repo.create(TENANT_ID, "method " + i, "EMAIL", "ops-" + i + "@example.com", 0);
+      }
+    }
+  }
+
+  @AfterClass
+  protected void afterClass() {
+    handle.close();
+    sessionFactory.close();
+  }
+
+  public void compareCreateAll() {
+    // The definitions are created once, the read comparisons below run against them
+    long orm = time(1, 0, new Operation<AlarmDefinitionRepo>() {
+      @Override
+      public void run(AlarmDefinitionRepo repo) {
+        repo.createAll(TENANT_ID, alarmDefinitions, subExpressions, NO_EVENTS);
+      }
+    }, ormAlarmDefinitions);
+    long jdbi = time(1, 0, new Operation<AlarmDefinitionRepo>() {
+      @Override
+      public void run(AlarmDefinitionRepo repo) {
+        repo.createAll(TENANT_ID, alarmDefinitions, subExpressions, NO_EVENTS);
+      }
+    }, jdbiAlarmDefinitions);
+    report("AlarmDefinitionRepo.createAll of " + DEFINITIONS, orm, jdbi);
+  }
+
+  @Test(dependsOnMethods = "compareCreateAll")
+  public void compareFindAlarmDefinitions() {
+    assertEquals(ormAlarmDefinitions.find(TENANT_ID, null, null, null, null, null, PAGE_SIZE)
+        .size(), PAGE_SIZE + 1);
+    assertEquals(jdbiAlarmDefinitions.find(TENANT_ID, null, null, null, null, null, PAGE_SIZE)
+        .size(), PAGE_SIZE + 1);
+
+    compare("AlarmDefinitionRepo.find", new Operation<AlarmDefinitionRepo>() {
+      @Override
+      public void run(AlarmDefinitionRepo repo) {
+        repo.find(TENANT_ID, null, null, null, null, null, PAGE_SIZE);
+      }
+    }, ormAlarmDefinitions, jdbiAlarmDefinitions);
+  }
+
+  @Test(dependsOnMethods = "compareCreateAll")
+  public void compareFindAlarmDefinitionById() {
+    final String id = alarmDefinitions.get(DEFINITIONS / 2).getId();
+    assertEquals(ormAlarmDefinitions.findById(TENANT_ID, id).getName(),
+        jdbiAlarmDefinitions.findById(TENANT_ID, id).getName());
+
+    compare("AlarmDefinitionRepo.findById", new Operation<AlarmDefinitionRepo>() {
+      @Override
+      public void run(AlarmDefinitionRepo repo) {
+        repo.findById(TENANT_ID, id);
+      }
+    }, ormAlarmDefinitions, jdbiAlarmDefinitions);
+  }
+
+  @Test(dependsOnMethods = "compareCreateAll")
+  public void compareFindSubExpressions() {
+    final String id = alarmDefinitions.get(DEFINITIONS / 2).getId();
+    assertEquals(ormAlarmDefinitions.findSubExpressions(id),
+        jdbiAlarmDefinitions.findSubExpressions(id));
+
+    compare("AlarmDefinitionRepo.findSubExpressions", new Operation<AlarmDefinitionRepo>() {
+      @Override
+      public void run(AlarmDefinitionRepo repo) {
+        repo.findSubExpressions(id);
+      }
+    }, ormAlarmDefinitions, jdbiAlarmDefinitions);
+  }
+
+  public void compareFindNotificationMethods() {
+    assertEquals(ormNotificationMethods.find(TENANT_ID, null, null, PAGE_SIZE).size(),
+        PAGE_SIZE + 1);
+    assertEquals(jdbiNotificationMethods.find(TENANT_ID, null, null, PAGE_SIZE).size(),
+        PAGE_SIZE + 1);
+
+    compare("NotificationMethodRepo.find", new Operation<NotificationMethodRepo>() {
+      @Override
+      public void run(NotificationMethodRepo repo) {
+        repo.find(TENANT_ID, null, null, PAGE_SIZE);
+      }
+    }, ormNotificationMethods, jdbiNotificationMethods);
+  }
+
+  private static final Function<AlarmDefinition, List<OutboxEvent>> NO_EVENTS =
+      new Function<AlarmDefinition, List<OutboxEvent>>() {
+        @Override
+        public List<OutboxEvent> apply(AlarmDefinition alarmDefinition) {
+          return Collections.emptyList();
+        }
+      };
+
+  private interface Operation<R> {
+    void run(R repo);
+  }
+
+  private static <R> void compare(String name, Operation<R> operation, R orm, R jdbi) {
+    report(name, time(ITERATIONS, WARM_UP, operation, orm),
+        time(ITERATIONS, WARM_UP, operation, jdbi));
+  }
+
+  /**
+   * @return the mean duration of the {@code operation} in microseconds
+   */
+  private static <R> long time(int iterations, int warmUp, Operation<R> operation, R repo) {
+    for (int i = 0; i < warmUp; i++) {
+      operation.run(repo);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      operation.run(repo);
+    }
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / iterations;
+  }
+
+  private static void report(String name, long ormMicros, long jdbiMicros) {
+    LOG.info("{}: hibernate {} us, jdbi {} us", name, ormMicros, jdbiMicros);
+  }
+
+  private String schema(String name) throws Exception {
+    return Resources.toString(
+        getClass().getResource("/monasca/api/infrastructure/persistence/mysql/" + name),
+        Charset.defaultCharset());
+  }
+}
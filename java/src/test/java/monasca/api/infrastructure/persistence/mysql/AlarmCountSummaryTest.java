@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence.mysql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import monasca.common.model.alarm.AlarmSeverity;
+import monasca.common.model.alarm.AlarmState;
+
+@Test
+public class AlarmCountSummaryTest {
+  private static final String TENANT_ID = "bob";
+
+  private AlarmCountSummary summary;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    summary = new AlarmCountSummary(null, 0, new MetricRegistry());
+
+    Map<AlarmCountSummary.Key, Long> counts = new HashMap<>();
+    counts.put(new AlarmCountSummary.Key("OK", "LOW", null, "1"), 3L);
+    counts.put(new AlarmCountSummary.Key("ALARM", "LOW", "OPEN", "1"), 2L);
+    counts.put(new AlarmCountSummary.Key("ALARM", "HIGH", null, "2"), 1L);
+
+    Map<String, Map<AlarmCountSummary.Key, Long>> loaded = new HashMap<>();
+    loaded.put(TENANT_ID, counts);
+    summary.load(loaded);
+  }
+
+  public void shouldNotAnswerBeforeLoaded() {
+    AlarmCountSummary unloaded = new AlarmCountSummary(null, 0, new MetricRegistry());
+
+    assertNull(unloaded.count(TENANT_ID, null, null, null, null, null, null, 10));
+  }
+
+  public void shouldCountAll() {
+    assertEquals(count(summary.count(TENANT_ID, null, null, null, null, null, null, 10)), 6L);
+    assertEquals(count(summary.count("other", null, null, null, null, null, null, 10)), 0L);
+  }
+
+  public void shouldFilter() {
+    assertEquals(count(summary.count(TENANT_ID, null, AlarmState.ALARM, null, null, null, null,
+                                     10)), 3L);
+    assertEquals(count(summary.count(TENANT_ID, "1", null,
+                                     Arrays.asList(AlarmSeverity.LOW, AlarmSeverity.MEDIUM),
+                                     "OPEN", null, null, 10)), 2L);
+  }
+
+  public void shouldGroupInColumnOrder() {
+    List<Map<String, Object>> rows =
+        summary.count(TENANT_ID, null, null, null, null, Arrays.asList("state", "severity"), null,
+                      10);
+
+    assertEquals(rows.size(), 3);
+    assertEquals(rows.get(0).get("state"), "ALARM");
+    assertEquals(rows.get(0).get("severity"), "HIGH");
+    assertEquals(rows.get(1).get("severity"), "LOW");
+    assertEquals(rows.get(1).get("count"), 2L);
+    assertEquals(rows.get(2).get("state"), "OK");
+
+    rows = summary.count(TENANT_ID, null, null, null, null, Arrays.asList("lifecycle_state"), "1",
+                         0);
+    assertEquals(rows.size(), 1);
+    assertEquals(rows.get(0).get("lifecycle_state"), "OPEN");
+  }
+
+  public void shouldNotAnswerUnsupportedGroupBy() {
+    assertNull(summary.count(TENANT_ID, null, null, null, null, Arrays.asList("metric_name"),
+                             null, 10));
+  }
+
+  public void shouldApplyUpdatesAndDeletes() {
+    summary.updated(TENANT_ID, "1", "LOW", AlarmState.OK, null, AlarmState.ALARM, "OPEN");
+    summary.deleted(TENANT_ID, "2", "HIGH", AlarmState.ALARM, null);
+
+    assertEquals(count(summary.count(TENANT_ID, null, AlarmState.ALARM, null, null, null, null,
+                                     10)), 3L);
+    assertEquals(count(summary.count(TENANT_ID, null, AlarmState.OK, null, null, null, null,
+                                     10)), 2L);
+  }
+
+  public void shouldNotAnswerInvalidatedTenant() {
+    summary.invalidate(TENANT_ID);
+
+    assertNull(summary.count(TENANT_ID, null, null, null, null, null, null, 10));
+  }
+
+  public void shouldDropCountsNobodyAskedFor() {
+    summary.reload();
+
+    assertNull(summary.count(TENANT_ID, null, null, null, null, null, null, 10));
+  }
+
+  private static long count(List<Map<String, Object>> rows) {
+    assertEquals(rows.size(), 1);
+    return (Long) rows.get(0).get("count");
+  }
+}
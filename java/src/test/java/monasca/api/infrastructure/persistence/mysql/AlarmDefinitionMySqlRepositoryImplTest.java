@@ -35,10 +35,13 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AggregateFunction;
 import monasca.common.model.alarm.AlarmOperator;
@@ -48,6 +51,7 @@ import monasca.common.model.metric.MetricDefinition;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
 
 @Test(groups = "database")
 public class AlarmDefinitionMySqlRepositoryImplTest {
@@ -65,7 +69,9 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     handle = db.open();
     handle
         .execute(Resources.toString(getClass().getResource("alarm.sql"), Charset.defaultCharset()));
-    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils());
+    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, 0, new MetricRegistry()),
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
 
     alarmActions = new ArrayList<String>();
     alarmActions.add("29387234");
@@ -85,6 +91,7 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     handle.execute("truncate table alarm_action");
     handle.execute("truncate table sub_alarm_definition_dimension");
     handle.execute("truncate table alarm_definition");
+    handle.execute("truncate table event_outbox");
 
     handle
         .execute("insert into alarm_definition (id, tenant_id, name, severity, expression, match_by, actions_enabled, created_at, updated_at, deleted_at) "
@@ -156,10 +163,14 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     AlarmDefinition alarmA =
         repo.create("555", "2345", "90% CPU", null, "LOW",
             "avg(hpcs.compute{flavor_id=777, image_id=888, metric_name=cpu}) > 10", subExpressions,
-            Arrays.asList("flavor_id", "image_id"), alarmActions, null, null);
+            Arrays.asList("flavor_id", "image_id"), alarmActions, null, null,
+            Arrays.asList(new OutboxEvent("alarm-events", "2345", "created")));
     AlarmDefinition alarmB = repo.findById("555", alarmA.getId());
 
     assertEquals(alarmA, alarmB);
+    assertEquals(
+        handle.createQuery("select message_key from event_outbox where topic = 'alarm-events'")
+            .map(StringMapper.FIRST).first(), "2345");
 
     // Assert that sub-alarm and sub-alarm-dimensions made it to the db
     assertEquals(
@@ -170,13 +181,51 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
             .map(StringMapper.FIRST).first(), "3");
   }
 
+  public void shouldCreateAll() {
+    AlarmDefinition alarmA =
+        new AlarmDefinition("2345", "90% CPU", null, "LOW",
+            "avg(hpcs.compute{flavor_id=777, image_id=888, metric_name=cpu}) > 10",
+            Arrays.asList("flavor_id", "image_id"), true, alarmActions,
+            Collections.<String>emptyList(), Collections.<String>emptyList());
+    AlarmDefinition alarmB =
+        new AlarmDefinition("2346", "Disk full", "desc", "HIGH", "max(disk.space_used_perc) > 90",
+            null, true, Collections.<String>emptyList(), Arrays.asList("29387234"),
+            Collections.<String>emptyList());
+    Map<String, Map<String, AlarmSubExpression>> subExpressions =
+        ImmutableMap.<String, Map<String, AlarmSubExpression>>of(
+            "2345", ImmutableMap.of("4433", AlarmSubExpression
+                .of("avg(hpcs.compute{flavor_id=777, image_id=888, metric_name=cpu}) > 10")),
+            "2346", ImmutableMap.of("4434", AlarmSubExpression
+                .of("max(disk.space_used_perc) > 90")));
+
+    repo.createAll("555", Arrays.asList(alarmA, alarmB), subExpressions,
+        new Function<AlarmDefinition, List<OutboxEvent>>() {
+          @Override
+          public List<OutboxEvent> apply(AlarmDefinition alarmDef) {
+            return Arrays.asList(new OutboxEvent("alarm-events", alarmDef.getId(), "created"));
+          }
+        });
+
+    assertEquals(repo.findById("555", "2345"), alarmA);
+    assertEquals(repo.findById("555", "2346"), alarmB);
+    assertEquals(repo.findSubExpressions("2346").keySet(), Collections.singleton("4434"));
+    assertEquals(
+        handle.createQuery("select count(*) from sub_alarm_definition_dimension where sub_alarm_definition_id = 4433")
+            .map(StringMapper.FIRST).first(), "3");
+    assertEquals(
+        handle.createQuery("select count(*) from event_outbox where topic = 'alarm-events'")
+            .map(StringMapper.FIRST).first(), "2");
+  }
+
   @Test(groups = "database")
   public void shouldUpdate() {
     // This test won't work without the real mysql database so use mini-mon.
     // Warning, this will truncate your mini-mon database
     db = new DBI("jdbc:mysql://192.168.10.4/mon", "monapi", "password");
     handle = db.open();
-    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils());
+    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, 0, new MetricRegistry()),
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
     beforeMethod();
 
     List<String> oldSubAlarmIds = Arrays.asList("222");
@@ -190,7 +239,8 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     repo.update("bob", "234", false, "90% CPU", null,
         "avg(foo{flavor_id=777}) > 333 and avg(hpcs.compute) <= 200",
         Arrays.asList("flavor_id", "image_id"), "LOW", false, oldSubAlarmIds,
-        changedSubExpressions, newSubExpressions, alarmActions, null, null);
+        changedSubExpressions, newSubExpressions, alarmActions, null, null,
+        Collections.<OutboxEvent>emptyList());
 
     AlarmDefinition alarm = repo.findById("bob", "234");
     AlarmDefinition expected =
@@ -214,13 +264,40 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     assertEquals(alarmDef_123, repo.findById("bob", "123"));    
   }
 
+  public void shouldCacheFindByIdUntilDeleted() {
+    AlarmDefinitionRepo cachingRepo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, 0, new MetricRegistry()),
+        new AlarmDefinitionCache(10, 60000, new MetricRegistry()));
+    assertEquals(cachingRepo.findById("bob", "123"), alarmDef_123);
+
+    // Served from the cache, the change made behind the repository is not seen
+    handle.execute("delete from alarm_action");
+    assertEquals(cachingRepo.findById("bob", "123"), alarmDef_123);
+
+    // Only returned to the tenant owning it
+    try {
+      cachingRepo.findById("alice", "123");
+      fail();
+    } catch (EntityNotFoundException expected) {
+    }
+
+    cachingRepo.deleteById("bob", "123", Collections.<OutboxEvent>emptyList());
+    try {
+      cachingRepo.findById("bob", "123");
+      fail();
+    } catch (EntityNotFoundException expected) {
+    }
+  }
+
   @Test(groups = "database")
   public void shouldFindSubAlarmMetricDefinitions() {
     // This test won't work without the real mysql database so use mini-mon.
     // Warning, this will truncate your mini-mon database
     db = new DBI("jdbc:mysql://192.168.10.4/mon", "monapi", "password");
     handle = db.open();
-    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils());
+    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, 0, new MetricRegistry()),
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
     beforeMethod();
 
     assertEquals(
@@ -243,7 +320,9 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     // Warning, this will truncate your mini-mon database
     db = new DBI("jdbc:mysql://192.168.10.4/mon", "monapi", "password");
     handle = db.open();
-    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils());
+    repo = new AlarmDefinitionMySqlRepoImpl(db, new PersistUtils(),
+        new AlarmCountSummary(db, 0, new MetricRegistry()),
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
     beforeMethod();
 
     assertEquals(
@@ -266,6 +345,12 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
     assertNull(repo.exists("bob", "999% CPU"));
   }
 
+  public void shouldFindIdsByName() {
+    assertEquals(repo.findIdsByName("bob", Arrays.asList("90% CPU", "50% CPU", "999% CPU")),
+        ImmutableMap.of("90% CPU", "123", "50% CPU", "234"));
+    assertTrue(repo.findIdsByName("alice", Arrays.asList("90% CPU")).isEmpty());
+  }
+
   public void shouldFind() {
     assertEquals(Arrays.asList(alarmDef_123, alarmDef_234), repo.find("bob", null, null, null, null, null, 1));
 
@@ -316,7 +401,7 @@ public class AlarmDefinitionMySqlRepositoryImplTest {
   }
 
   public void shouldDeleteById() {
-    repo.deleteById("bob", "123");
+    repo.deleteById("bob", "123", Collections.<OutboxEvent>emptyList());
 
     try {
       assertNull(repo.findById("bob", "123"));
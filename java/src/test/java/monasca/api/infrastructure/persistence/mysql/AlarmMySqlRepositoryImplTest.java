@@ -18,12 +18,17 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarm.Alarm;
 import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarm.AlarmUpdate;
+import monasca.api.domain.model.alarm.DeletedAlarm;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AlarmSeverity;
 import monasca.common.model.alarm.AlarmState;
@@ -36,6 +41,7 @@ import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
@@ -44,6 +50,8 @@ import org.testng.annotations.Test;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -78,7 +86,9 @@ public class AlarmMySqlRepositoryImplTest {
     handle
         .execute(Resources.toString(getClass().getResource("alarm.sql"), Charset.defaultCharset()));
         */
-    repo = new AlarmMySqlRepoImpl(db, new PersistUtils());
+    repo = new AlarmMySqlRepoImpl(db, new PersistUtils(),
+        new DimensionSetIndex(db, 0, 0, 1000, new MetricRegistry()),
+        new AlarmCountSummary(db, 0, new MetricRegistry()));
 
     alarmActions = new ArrayList<String>();
     alarmActions.add("29387234");
@@ -101,6 +111,7 @@ public class AlarmMySqlRepositoryImplTest {
     handle.execute("truncate table metric_definition");
     handle.execute("truncate table metric_definition_dimensions");
     handle.execute("truncate table metric_dimension");
+    handle.execute("truncate table event_outbox");
 
     DateTime timestamp1 = ISO_8601_FORMATTER.parseDateTime("2015-03-14T09:26:53").withZoneRetainFields(DateTimeZone.forID("UTC"));
     DateTime timestamp2 = ISO_8601_FORMATTER.parseDateTime("2015-03-14T09:26:54").withZoneRetainFields(DateTimeZone.forID("UTC"));
@@ -225,17 +236,68 @@ public class AlarmMySqlRepositoryImplTest {
     return new MetricDefinition(metricName, builder.build());
   }
 
+  private static Function<DeletedAlarm, List<OutboxEvent>> eventPerAlarm() {
+    return new Function<DeletedAlarm, List<OutboxEvent>>() {
+      @Override
+      public List<OutboxEvent> apply(DeletedAlarm deleted) {
+        return Arrays.asList(new OutboxEvent("alarm-events", "1", deleted.getAlarm().getId()));
+      }
+    };
+  }
+
+  private static Function<AlarmUpdate, List<OutboxEvent>> noEvents() {
+    return new Function<AlarmUpdate, List<OutboxEvent>>() {
+      @Override
+      public List<OutboxEvent> apply(AlarmUpdate update) {
+        return Collections.emptyList();
+      }
+    };
+  }
+
   @Test(groups = "database")
   public void shouldDelete() {
-    repo.deleteById(TENANT_ID, ALARM_ID);
+    repo.deleteById(TENANT_ID, ALARM_ID,
+                    Arrays.asList(new OutboxEvent("alarm-events", "234", "deleted")));
 
     List<Map<String, Object>> rows = handle.createQuery("select * from alarm_definition where id='234'").list();
     assertEquals(rows.size(), 1, "Alarm Definition was deleted as well");
+    rows = handle.createQuery("select * from event_outbox").list();
+    assertEquals(rows.size(), 1);
+    assertEquals(rows.get(0).get("message_key"), "234");
   }
 
   @Test(groups = "database", expectedExceptions=EntityNotFoundException.class)
   public void shouldThowExceptionOnDelete() {
-    repo.deleteById(TENANT_ID, "Not an alarm ID");
+    repo.deleteById(TENANT_ID, "Not an alarm ID", Collections.<OutboxEvent>emptyList());
+  }
+
+  @Test(groups = "database")
+  public void shouldDeleteByAlarmDefinitionInBatches() {
+    List<DeletedAlarm> deleted = repo.deleteByAlarmDefinition("1", 2, eventPerAlarm());
+    assertEquals(deleted.size(), 2);
+    assertEquals(deleted.get(0).getAlarm(), alarm1);
+    assertEquals(deleted.get(0).getSubAlarms().size(), 1);
+
+    deleted = repo.deleteByAlarmDefinition("1", 2, eventPerAlarm());
+    assertEquals(deleted.size(), 1);
+    assertEquals(deleted.get(0).getAlarm(), alarm3);
+
+    assertTrue(repo.deleteByAlarmDefinition("1", 2, eventPerAlarm()).isEmpty());
+    assertEquals(handle.createQuery("select * from alarm where alarm_definition_id = '1'").list()
+                     .size(), 0);
+    assertEquals(handle.createQuery("select * from event_outbox").list().size(), 3);
+  }
+
+  @Test(groups = "database")
+  public void shouldFindDeletedAlarmDefinitionIds() {
+    assertTrue(repo.findDeletedAlarmDefinitionIds().isEmpty());
+
+    handle.execute("update alarm_definition set deleted_at = NOW() where id = '1'");
+    assertEquals(repo.findDeletedAlarmDefinitionIds(), ImmutableMap.of("1", TENANT_ID));
+
+    while (!repo.deleteByAlarmDefinition("1", 2, eventPerAlarm()).isEmpty()) {
+    }
+    assertTrue(repo.findDeletedAlarmDefinitionIds().isEmpty());
   }
 
   @Test(groups = "database")
@@ -389,6 +451,146 @@ public class AlarmMySqlRepositoryImplTest {
     repo.update(TENANT_ID, "Not a valid alarm id", AlarmState.UNDETERMINED, null, null);
   }
 
+  @Test(groups = "database")
+  public void shouldPatch() {
+    final Alarm originalAlarm = repo.findById(TENANT_ID, ALARM_ID);
+    final DateTime originalStateUpdatedAt = getAlarmStateUpdatedDate(ALARM_ID);
+
+    final AlarmUpdate update = repo.patch(TENANT_ID, ALARM_ID, null, "OPEN", null, noEvents());
+    assertEquals(update.getOldAlarm(), originalAlarm);
+    assertEquals(update.getState(), originalAlarm.getState());
+    assertEquals(update.getLifecycleState(), "OPEN");
+    assertEquals(update.getLink(), originalAlarm.getLink());
+    assertEquals(update.getSubAlarms(), repo.findAlarmSubExpressions(ALARM_ID));
+    assertEquals(getAlarmStateUpdatedDate(ALARM_ID), originalStateUpdatedAt,
+                 "state_updated_at did change");
+
+    final Alarm patchedAlarm = repo.findById(TENANT_ID, ALARM_ID);
+    assertEquals(patchedAlarm.getState(), originalAlarm.getState());
+    assertEquals(patchedAlarm.getLifecycleState(), "OPEN");
+  }
+
+  @Test(groups = "database", expectedExceptions=EntityNotFoundException.class)
+  public void shouldPatchThrowException() {
+    repo.patch(TENANT_ID, "Not a valid alarm id", AlarmState.UNDETERMINED, null, null,
+               noEvents());
+  }
+
+  @Test(groups = "database")
+  public void shouldPatchAll() {
+    final List<AlarmUpdate> updates =
+        repo.patchAll(TENANT_ID, Arrays.asList("1", "Not a valid alarm id", "3"), null,
+                      "ACKNOWLEDGED", null, noEvents());
+
+    assertEquals(updates.size(), 2);
+    assertEquals(updates.get(0).getOldAlarm(), alarm1);
+    assertEquals(updates.get(1).getOldAlarm(), alarm3);
+    assertEquals(updates.get(1).getState(), AlarmState.ALARM);
+    assertEquals(updates.get(1).getLink(), "http://somesite.com/this-alarm-info");
+    assertEquals(updates.get(1).getSubAlarms(), repo.findAlarmSubExpressions("3"));
+
+    assertEquals(repo.findById(TENANT_ID, "1").getLifecycleState(), "ACKNOWLEDGED");
+    assertEquals(repo.findById(TENANT_ID, "2").getLifecycleState(), "OPEN");
+    assertEquals(repo.findById(TENANT_ID, "3").getLifecycleState(), "ACKNOWLEDGED");
+    assertEquals(repo.findById(TENANT_ID, "3").getState(), AlarmState.ALARM);
+  }
+
+  @Test(groups = "database")
+  public void shouldPatchAllWithoutFoundAlarms() {
+    assertTrue(repo.patchAll(TENANT_ID, Arrays.asList("Not a valid alarm id"), AlarmState.OK,
+                             null, null, noEvents()).isEmpty());
+  }
+
+  @Test(groups = "database")
+  public void shouldFindDimensionValuesWithSeparators() {
+    handle.execute("update metric_dimension set value = 'a,b=c' where dimension_set_id = 2");
+
+    assertEquals(repo.findById(TENANT_ID, "3").getMetrics(),
+                 buildAlarmMetrics(buildMetricDefinition("cpu.idle_perc", "flavor_id", "a,b=c")));
+  }
+
+  @Test(groups = "database")
+  public void shouldFindMetricsSharingADimensionSet() {
+    handle
+        .execute("insert into metric_definition (id, name, tenant_id, region) values (2, 'cpu.user_perc', 'bob', 'west')");
+    handle
+        .execute("insert into metric_definition_dimensions (id, metric_definition_id, metric_dimension_set_id) values (33, 2, 1)");
+    handle
+        .execute("insert into alarm_metric (alarm_id, metric_definition_dimensions_id) values ('1', 33)");
+
+    final List<MetricDefinition> metrics = repo.findById(TENANT_ID, "1").getMetrics();
+
+    assertEquals(new HashSet<>(metrics), new HashSet<>(buildAlarmMetrics(
+        buildMetricDefinition("cpu.idle_perc", "instance_id", "123", "service", "monitoring"),
+        buildMetricDefinition("cpu.idle_perc", "flavor_id", "222"),
+        buildMetricDefinition("cpu.user_perc", "instance_id", "123", "service", "monitoring"))));
+  }
+
+  @Test(groups = "database")
+  public void shouldFindMoreMetricsThanOneBatch() {
+    final int count = 1001;
+    handle
+        .execute("insert into alarm_definition (id, tenant_id, name, severity, expression, match_by, actions_enabled, created_at, updated_at, deleted_at) "
+            + "values ('5', 'bob', 'Many disks', 'LOW', 'avg(disk.used_perc) > 90', 'device', 1, NOW(), NOW(), NULL)");
+    handle
+        .execute("insert into metric_definition (id, name, tenant_id, region) values (5, 'disk.used_perc', 'bob', 'west')");
+
+    final PreparedBatch alarms = handle.prepareBatch(
+        "insert into alarm (id, alarm_definition_id, state, created_at, updated_at, state_updated_at) values (?, '5', 'OK', NOW(), NOW(), NOW())");
+    final PreparedBatch alarmMetrics = handle.prepareBatch(
+        "insert into alarm_metric (alarm_id, metric_definition_dimensions_id) values (?, ?)");
+    final PreparedBatch definitionDimensions = handle.prepareBatch(
+        "insert into metric_definition_dimensions (id, metric_definition_id, metric_dimension_set_id) values (?, 5, ?)");
+    final PreparedBatch dimensions = handle.prepareBatch(
+        "insert into metric_dimension (dimension_set_id, name, value) values (?, 'device', ?)");
+    for (int i = 0; i < count; i++) {
+      final String alarmId = "disk-" + i;
+      final int id = 1000 + i;
+      alarms.add(alarmId);
+      alarmMetrics.add(alarmId, id);
+      definitionDimensions.add(id, id);
+      dimensions.add(id, "sd" + i);
+    }
+    alarms.execute();
+    alarmMetrics.execute();
+    definitionDimensions.execute();
+    dimensions.execute();
+
+    final List<Alarm> found =
+        repo.find(TENANT_ID, "5", null, null, null, null, null, null, null, null, null, 0, false);
+
+    assertEquals(found.size(), count);
+    for (final Alarm alarm : found) {
+      final String device = "sd" + alarm.getId().substring("disk-".length());
+      assertEquals(alarm.getMetrics(),
+                   buildAlarmMetrics(buildMetricDefinition("disk.used_perc", "device", device)));
+    }
+  }
+
+  @Test(groups = "database")
+  public void shouldFindMetricsAddedSinceTheIndexWasLoaded() {
+    handle.execute("update alarm_metric set created_at = '2015-01-01 00:00:00'");
+    final DimensionSetIndex index = new DimensionSetIndex(db, 0, 0, 1000, new MetricRegistry());
+    index.refresh();
+    final AlarmRepo indexedRepo = new AlarmMySqlRepoImpl(db, new PersistUtils(), index,
+        new AlarmCountSummary(db, 0, new MetricRegistry()));
+
+    handle
+        .execute("insert into metric_definition_dimensions (id, metric_definition_id, metric_dimension_set_id) values (33, 1, 3)");
+    handle
+        .execute("insert into metric_dimension (dimension_set_id, name, value) values (3, 'instance_id', '456')");
+    handle
+        .execute("insert into alarm_metric (alarm_id, metric_definition_dimensions_id) values ('3', 33)");
+
+    checkList(indexedRepo.find(TENANT_ID, null, null, ImmutableMap.of("instance_id", "123"), null,
+        null, null, null, null, null, null, 1, false), alarm1, alarm2);
+
+    final List<Alarm> added = indexedRepo.find(TENANT_ID, null, null,
+        ImmutableMap.of("instance_id", "456"), null, null, null, null, null, null, null, 1, false);
+    assertEquals(added.size(), 1);
+    assertEquals(added.get(0).getId(), "3");
+  }
+
   @Test(groups = "database")
   public void shouldFindById() {
 
@@ -402,4 +604,19 @@ public class AlarmMySqlRepositoryImplTest {
 
     repo.findById(TENANT_ID, "Not a valid alarm id");
   }
+
+  @Test(groups = "database")
+  public void shouldChangeVersionOnPatch() {
+    final String version = repo.findVersion(TENANT_ID, ALARM_ID);
+    assertEquals(repo.findVersion(TENANT_ID, ALARM_ID), version);
+
+    repo.patch(TENANT_ID, ALARM_ID, null, "OPEN", null, noEvents());
+
+    assertNotEquals(repo.findVersion(TENANT_ID, ALARM_ID), version);
+  }
+
+  @Test(groups = "database", expectedExceptions=EntityNotFoundException.class)
+  public void shouldFindVersionThrowException() {
+    repo.findVersion(TENANT_ID, "Not a valid alarm id");
+  }
 }
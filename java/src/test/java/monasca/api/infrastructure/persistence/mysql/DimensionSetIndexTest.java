@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence.mysql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Test
+public class DimensionSetIndexTest {
+  private static final byte[] SET_1 = {1};
+  private static final byte[] SET_2 = {2};
+  private static final byte[] SET_3 = {3};
+
+  private DimensionSetIndex index;
+  private DimensionSetIndex.Snapshot snapshot;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    index = new DimensionSetIndex(null, 0, 0, 2, new MetricRegistry());
+    snapshot = new DimensionSetIndex.Snapshot();
+    snapshot.add(SET_1, "hostname", "host1");
+    snapshot.add(SET_1, "service", "compute");
+    snapshot.add(SET_2, "hostname", "host2");
+    snapshot.add(SET_2, "service", "compute");
+    snapshot.add(SET_3, "hostname", "host3");
+    snapshot.add(SET_3, "service", "storage");
+    snapshot.add(SET_3, "device", "sda");
+  }
+
+  public void shouldNotAnswerBeforeLoaded() {
+    assertNull(index.find(ImmutableMap.of("hostname", "host1")));
+  }
+
+  public void shouldIntersectDimensions() {
+    index.publish(snapshot, now());
+
+    assertEquals(ids(index.find(ImmutableMap.of("hostname", "host1", "service", "compute"))),
+                 ids(SET_1));
+    assertEquals(ids(index.find(ImmutableMap.of("hostname", "host3", "service", "compute"))),
+                 ids());
+    assertEquals(ids(index.find(ImmutableMap.of("hostname", "host4"))), ids());
+    assertEquals(ids(index.find(ImmutableMap.of("unknown", ""))), ids());
+  }
+
+  public void shouldMatchAlternativesAndNames() {
+    index.publish(snapshot, now());
+
+    assertEquals(ids(index.find(ImmutableMap.of("hostname", "host1|host3"))), ids(SET_1, SET_3));
+    assertEquals(ids(index.find(ImmutableMap.of("device", ""))), ids(SET_3));
+  }
+
+  public void shouldFallBackWhenTooManyMatch() {
+    index.publish(snapshot, now());
+
+    assertNull(index.find(ImmutableMap.of("hostname", "")));
+    assertEquals(ids(index.find(ImmutableMap.of("service", "compute"))), ids(SET_1, SET_2));
+  }
+
+  public void shouldReturnWhenRowsMayBeMissing() {
+    Timestamp loadedAt = now();
+    index.publish(snapshot, loadedAt);
+
+    DimensionSetIndex.Matches matches = index.find(ImmutableMap.of("hostname", "host1"));
+    assertEquals(ids(matches), ids(SET_1));
+    assertEquals(matches.getSince().getTime(),
+                 loadedAt.getTime() - DimensionSetIndex.COMMIT_MARGIN_MILLIS);
+  }
+
+  public void shouldReplaceSnapshot() {
+    index.publish(snapshot, now());
+    assertEquals(index.size(), 3);
+
+    DimensionSetIndex.Snapshot rebuilt = new DimensionSetIndex.Snapshot();
+    rebuilt.add(SET_1, "zone", "a");
+    rebuilt.add(SET_1, "hostname", "host1");
+    rebuilt.add(new byte[] {4}, "zone", "a");
+    assertEquals(rebuilt.size(), 2);
+
+    index.publish(rebuilt, now());
+    assertEquals(index.size(), 2);
+    assertEquals(ids(index.find(ImmutableMap.of("zone", "a"))), ids(SET_1, new byte[] {4}));
+    assertEquals(ids(index.find(ImmutableMap.of("hostname", "host2"))), ids());
+  }
+
+  private static Set<Byte> ids(byte[]... ids) {
+    Set<Byte> set = new HashSet<>();
+    for (byte[] id : ids) {
+      set.add(id[0]);
+    }
+    return set;
+  }
+
+  private static Set<Byte> ids(DimensionSetIndex.Matches matches) {
+    List<byte[]> ids = matches.getDimensionSetIds();
+    return ids(ids.toArray(new byte[ids.size()][]));
+  }
+
+  private static Timestamp now() {
+    return new Timestamp(System.currentTimeMillis());
+  }
+}
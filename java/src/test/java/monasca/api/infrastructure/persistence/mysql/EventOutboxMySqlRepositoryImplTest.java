@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.persistence.mysql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Resources;
+
+import monasca.api.domain.model.event.EventOutboxRepo;
+import monasca.api.domain.model.event.OutboxEvent;
+
+@Test
+public class EventOutboxMySqlRepositoryImplTest {
+  private DBI db;
+  private Handle handle;
+  private EventOutboxRepo repo;
+
+  @BeforeClass
+  protected void setupClass() throws Exception {
+    db = new DBI("jdbc:h2:mem:outbox;MODE=MySQL");
+    handle = db.open();
+    handle
+        .execute(Resources.toString(getClass().getResource("alarm.sql"), Charset.defaultCharset()));
+    repo = new EventOutboxMySqlRepoImpl(db);
+  }
+
+  @AfterClass
+  protected void afterClass() {
+    handle.close();
+  }
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    handle.execute("truncate table event_outbox");
+
+    handle.begin();
+    EventOutboxMySqlRepoImpl.insert(handle, Arrays.asList(new OutboxEvent("events", "1", "a"),
+        new OutboxEvent("events", "2", "b"), new OutboxEvent("alarm-state-transitions", "1", "c")));
+    handle.commit();
+  }
+
+  public void shouldPublishOldestFirst() {
+    final List<OutboxEvent> published = new ArrayList<>();
+    EventOutboxRepo.Publisher publisher = new EventOutboxRepo.Publisher() {
+      @Override
+      public void publish(List<OutboxEvent> events) {
+        published.addAll(events);
+      }
+    };
+
+    assertEquals(repo.publishOldest(2, publisher), 2);
+    assertEquals(published.size(), 2);
+    assertEquals(published.get(0).getMessage(), "a");
+    assertEquals(published.get(1).getKey(), "2");
+    assertNotNull(published.get(0).getCreatedAt());
+
+    assertEquals(repo.publishOldest(2, publisher), 1);
+    assertEquals(published.get(2).getTopic(), "alarm-state-transitions");
+    assertEquals(repo.publishOldest(2, publisher), 0);
+    assertEquals(handle.createQuery("select * from event_outbox").list().size(), 0);
+  }
+
+  public void shouldKeepEventsWhenPublishingFails() {
+    try {
+      repo.publishOldest(2, new EventOutboxRepo.Publisher() {
+        @Override
+        public void publish(List<OutboxEvent> events) {
+          throw new RuntimeException("kafka gone");
+        }
+      });
+      fail();
+    } catch (RuntimeException expected) {
+    }
+
+    assertEquals(handle.createQuery("select * from event_outbox").list().size(), 3);
+  }
+}
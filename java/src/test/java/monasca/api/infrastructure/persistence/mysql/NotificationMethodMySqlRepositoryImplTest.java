@@ -43,7 +43,9 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.io.Resources;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 
 @Test
@@ -91,7 +93,8 @@ public class NotificationMethodMySqlRepositoryImplTest {
         return spyHandle;
       }
     });
-    repo = new NotificationMethodMySqlRepoImpl(mockDb, new PersistUtils());
+    repo = new NotificationMethodMySqlRepoImpl(mockDb, new PersistUtils(),
+        new NotificationMethodIdCache(100, 60000, new MetricRegistry()));
   }
 
   @AfterClass
@@ -144,6 +147,13 @@ public class NotificationMethodMySqlRepositoryImplTest {
     assertFalse(repo.exists("333", "123"));
   }
 
+  public void shouldExistAllForTenantAndNotificationMethods() {
+    assertTrue(repo.existsAll("444", Arrays.asList("123", "124")));
+    assertTrue(repo.existsAll("444", Arrays.asList("123", "123")));
+    assertFalse(repo.existsAll("444", Arrays.asList("123", "1234")));
+    assertFalse(repo.existsAll("333", Arrays.asList("123")));
+  }
+
   public void shouldFindById() {
     NotificationMethod nm = repo.findById("444", "123");
 
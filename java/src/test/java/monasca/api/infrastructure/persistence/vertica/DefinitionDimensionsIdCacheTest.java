@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence.vertica;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test
+public class DefinitionDimensionsIdCacheTest {
+
+  public void shouldNormalizeKeys() {
+    DefinitionDimensionsIdCache.Key key =
+        new DefinitionDimensionsIdCache.Key("bob", "cpu", ImmutableMap.of("service", "compute",
+                                                                          "hostname", "b|a"));
+    DefinitionDimensionsIdCache.Key reordered =
+        new DefinitionDimensionsIdCache.Key("bob", "cpu", ImmutableMap.of("hostname", "a|b",
+                                                                          "service", "compute"));
+
+    assertEquals(key, reordered);
+    assertEquals(key.hashCode(), reordered.hashCode());
+    assertEquals(new DefinitionDimensionsIdCache.Key("bob", null, null),
+                 new DefinitionDimensionsIdCache.Key("bob", "", Collections.<String, String>emptyMap()));
+    assertNotEquals(key, new DefinitionDimensionsIdCache.Key("alice", "cpu",
+                                                             ImmutableMap.of("service", "compute",
+                                                                             "hostname", "a|b")));
+  }
+
+  public void shouldCacheResults() {
+    DefinitionDimensionsIdCache cache =
+        new DefinitionDimensionsIdCache(100, 60000, 60000, new MetricRegistry());
+    CountingLoader loader = new CountingLoader(Arrays.asList(new byte[] {1}, new byte[] {2}));
+    DefinitionDimensionsIdCache.Key key =
+        new DefinitionDimensionsIdCache.Key("bob", "cpu", ImmutableMap.of("service", "compute"));
+
+    assertEquals(cache.get(key, loader).size(), 2);
+    assertEquals(cache.get(key, loader).size(), 2);
+
+    assertEquals(loader.calls.get(), 1);
+    assertEquals(cache.getHitCount(), 1);
+    assertEquals(cache.getMissCount(), 1);
+  }
+
+  public void shouldExpireEmptyResultsWithNegativeTtl() {
+    DefinitionDimensionsIdCache cache =
+        new DefinitionDimensionsIdCache(100, 60000, 0, new MetricRegistry());
+    CountingLoader loader = new CountingLoader(Collections.<byte[]>emptyList());
+    DefinitionDimensionsIdCache.Key key = new DefinitionDimensionsIdCache.Key("bob", "cpu", null);
+
+    assertTrue(cache.get(key, loader).isEmpty());
+    assertTrue(cache.get(key, loader).isEmpty());
+
+    assertEquals(loader.calls.get(), 2);
+  }
+
+  public void shouldNotCacheSetsTooLargeToBind() {
+    DefinitionDimensionsIdCache cache =
+        new DefinitionDimensionsIdCache(100000, 60000, 60000, new MetricRegistry());
+    List<byte[]> ids = new ArrayList<>();
+    for (int i = 0; i <= MetricQueries.MAX_BOUND_DEF_DIMS_IDS; i++) {
+      ids.add(new byte[] {(byte) (i >> 8), (byte) i});
+    }
+    CountingLoader loader = new CountingLoader(ids);
+    DefinitionDimensionsIdCache.Key key = new DefinitionDimensionsIdCache.Key("bob", "cpu", null);
+
+    assertEquals(cache.get(key, loader).size(), MetricQueries.MAX_BOUND_DEF_DIMS_IDS + 1);
+    cache.get(key, loader);
+
+    assertEquals(loader.calls.get(), 2);
+  }
+
+  public void shouldBoundCacheByNumberOfIds() {
+    DefinitionDimensionsIdCache cache =
+        new DefinitionDimensionsIdCache(3, 60000, 60000, new MetricRegistry());
+    CountingLoader first = new CountingLoader(Arrays.asList(new byte[] {1}, new byte[] {2}));
+    CountingLoader second = new CountingLoader(Arrays.asList(new byte[] {3}, new byte[] {4}));
+    DefinitionDimensionsIdCache.Key cpu = new DefinitionDimensionsIdCache.Key("bob", "cpu", null);
+    DefinitionDimensionsIdCache.Key mem = new DefinitionDimensionsIdCache.Key("bob", "mem", null);
+
+    cache.get(cpu, first);
+    cache.get(mem, second);
+    cache.get(cpu, first);
+    cache.get(mem, second);
+
+    // Both sets together exceed the maximum number of ids, so at most one of them stays cached
+    assertTrue(first.calls.get() + second.calls.get() >= 3);
+  }
+
+  public void shouldNotCacheWhenDisabled() {
+    DefinitionDimensionsIdCache cache =
+        new DefinitionDimensionsIdCache(0, 60000, 60000, new MetricRegistry());
+    CountingLoader loader = new CountingLoader(Arrays.asList(new byte[] {1}));
+    DefinitionDimensionsIdCache.Key key = new DefinitionDimensionsIdCache.Key("bob", "cpu", null);
+
+    cache.get(key, loader);
+    cache.get(key, loader);
+
+    assertEquals(loader.calls.get(), 2);
+  }
+
+  private static class CountingLoader implements Callable<List<byte[]>> {
+    final AtomicInteger calls = new AtomicInteger();
+    final List<byte[]> ids;
+
+    CountingLoader(List<byte[]> ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public List<byte[]> call() {
+      calls.incrementAndGet();
+      return ids;
+    }
+  }
+}
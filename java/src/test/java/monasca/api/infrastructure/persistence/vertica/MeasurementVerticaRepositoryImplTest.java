@@ -18,19 +18,32 @@ import monasca.api.ApiConfig;
 import monasca.api.domain.model.measurement.MeasurementRepo;
 import monasca.api.domain.model.measurement.Measurements;
 
+import com.codahale.metrics.MetricRegistry;
+
 import org.joda.time.DateTime;
+import org.skife.jdbi.v2.Binding;
+import org.skife.jdbi.v2.ColonPrefixNamedParamStatementRewriter;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.skife.jdbi.v2.tweak.StatementRewriter;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 @Test(groups = "database")
 public class MeasurementVerticaRepositoryImplTest {
@@ -38,14 +51,41 @@ public class MeasurementVerticaRepositoryImplTest {
   private DBI db;
   private Handle handle;
   private MeasurementRepo repo;
+  private MeasurementQueryRecorder measurementQueries;
+
+  /**
+   * Records the last measurement query the repository runs, so that its SQL can be checked.
+   */
+  private static final class MeasurementQueryRecorder implements StatementRewriter {
+    private final StatementRewriter rewriter = new ColonPrefixNamedParamStatementRewriter();
+    private volatile String sql;
+    private volatile RewrittenStatement statement;
+    private volatile Binding binding;
+
+    @Override
+    public RewrittenStatement rewrite(String sql, Binding params, StatementContext ctx) {
+      final RewrittenStatement rewritten = rewriter.rewrite(sql, params, ctx);
+      if (sql.contains("FROM MonMetrics.Measurements")) {
+        this.sql = sql;
+        this.statement = rewritten;
+        this.binding = params;
+      }
+      return rewritten;
+    }
+  }
 
   @BeforeClass
   protected void setupClass() throws Exception {
     Class.forName("com.vertica.jdbc.Driver");
     db = new DBI("jdbc:vertica://192.168.10.4/mon", "dbadmin", "password");
+    measurementQueries = new MeasurementQueryRecorder();
+    db.setStatementRewriter(measurementQueries);
     handle = db.open();
     config = new ApiConfig();
-    repo = new MeasurementVerticaRepoImpl(db, config);
+    repo = new MeasurementVerticaRepoImpl(db, config,
+        new DefinitionDimensionsIdCache(0, 0, 0, new MetricRegistry()),
+        new MetricDefinitionCache(0, new MetricRegistry()),
+        new TimeSlicedQueryExecutor(0, 0, 0, new MetricRegistry()));
   }
 
   @AfterClass
@@ -110,4 +150,34 @@ public class MeasurementVerticaRepositoryImplTest {
                              false, null);
     assertEquals(measurements.size(), 1);
   }
+
+  @Test
+  public void shouldFilterMeasurementsOnBinaryDefinitionIds() throws Exception {
+    Collection<Measurements> measurements =
+        repo.find("bob", "cpu_utilization", null, new DateTime(2014, 1, 1, 0, 0, 0), null, null, 1,
+                  false, null);
+    assertEquals(measurements.size(), 3);
+
+    final String sql = measurementQueries.sql;
+    assertNotNull(sql);
+    assertTrue(sql.contains("mes.definition_dimensions_id IN ("), sql);
+
+    // The predicate must be evaluated on the raw column so the projection can be pruned.
+    final String plan = explain(measurementQueries.statement, measurementQueries.binding);
+    assertFalse(plan.toLowerCase().contains("to_hex"), plan);
+  }
+
+  private String explain(RewrittenStatement statement, Binding binding) throws SQLException {
+    StringBuilder plan = new StringBuilder();
+    try (PreparedStatement explain =
+             handle.getConnection().prepareStatement("EXPLAIN " + statement.getSql())) {
+      statement.bind(binding, explain);
+      try (ResultSet rows = explain.executeQuery()) {
+        while (rows.next()) {
+          plan.append(rows.getString(1)).append('\n');
+        }
+      }
+    }
+    return plan.toString();
+  }
 }
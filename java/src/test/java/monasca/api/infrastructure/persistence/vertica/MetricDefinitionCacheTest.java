@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence.vertica;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Test
+public class MetricDefinitionCacheTest {
+
+  public void shouldReturnCopiesOfCachedDimensions() {
+    MetricDefinitionCache cache = new MetricDefinitionCache(10, new MetricRegistry());
+    Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("service", "compute");
+
+    cache.put("0a", "cpu_utilization", dimensions);
+    dimensions.put("hostname", "host1");
+
+    MetricDefinitionCache.Definition definition = cache.get("0a");
+    assertEquals(definition.getName(), "cpu_utilization");
+    assertEquals(definition.getDimensions().size(), 1);
+
+    definition.getDimensions().put("hostname", "host2");
+    assertEquals(cache.get("0a").getDimensions().size(), 1);
+  }
+
+  public void shouldMissWhenDisabled() {
+    MetricDefinitionCache cache = new MetricDefinitionCache(0, new MetricRegistry());
+
+    cache.put("0a", "cpu_utilization", new HashMap<String, String>());
+
+    assertNull(cache.get("0a"));
+  }
+}
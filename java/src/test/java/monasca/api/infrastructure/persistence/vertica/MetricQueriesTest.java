@@ -14,12 +14,17 @@
 
 package monasca.api.infrastructure.persistence.vertica;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.annotations.Test;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
 
 @Test
 public class MetricQueriesTest {
@@ -85,4 +90,40 @@ public class MetricQueriesTest {
     String s = MetricQueries.buildDimensionAndClause(dimsMap, TABLE_TO_JOIN_DIMENSIONS_ON);
     assertEquals(expectedResult, s);
   }
+
+  public void metricQueriesBuildDefinitionDimensionIdsListTest() {
+    assertEquals(":defDimsId0", MetricQueries.buildDefinitionDimensionIdsList(1));
+    assertEquals(":defDimsId0,:defDimsId1,:defDimsId2",
+                 MetricQueries.buildDefinitionDimensionIdsList(3));
+  }
+
+  public void metricQueriesDefinitionDimensionsIdFilterTest() {
+    Map<String, String> dimsMap = new HashMap<>();
+    dimsMap.put("foo", "bar");
+
+    List<byte[]> ids = new ArrayList<>();
+    for (int i = 0; i < MetricQueries.MAX_BOUND_DEF_DIMS_IDS; i++) {
+      ids.add(new byte[] {(byte) (i >> 8), (byte) i});
+    }
+
+    MetricQueries.DefinitionDimensionsIdFilter bound =
+        new MetricQueries.DefinitionDimensionsIdFilter(ids, "tenant", "cpu", dimsMap);
+    assertTrue(bound.isBound());
+    assertTrue(bound.sql().startsWith(":defDimsId0,:defDimsId1,"));
+
+    ids.add(new byte[] {0x7f, 0x7f});
+
+    MetricQueries.DefinitionDimensionsIdFilter subQuery =
+        new MetricQueries.DefinitionDimensionsIdFilter(ids, "tenant", "cpu", dimsMap);
+    assertFalse(subQuery.isBound());
+    assertEquals(MetricQueries.buildMetricDefinitionSubSql("", "cpu", dimsMap, null, null),
+                 subQuery.sql());
+  }
+
+  public void metricQueriesDefinitionDimensionsIdRoundTripTest() {
+    byte[] id = new byte[] {0x00, 0x1f, (byte) 0xab, (byte) 0xff};
+    String hex = MetricQueries.encodeDefinitionDimensionsId(id);
+    assertEquals("001fabff", hex);
+    assertTrue(Arrays.equals(id, MetricQueries.decodeDefinitionDimensionsId(hex)));
+  }
 }
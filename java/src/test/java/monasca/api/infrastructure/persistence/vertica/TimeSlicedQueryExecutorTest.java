@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.infrastructure.persistence.vertica;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+@Test
+public class TimeSlicedQueryExecutorTest {
+
+  private static final long HOUR = 3600000L;
+  private static final long DAY = 24 * HOUR;
+  // 2016-01-01T00:00:00Z
+  private static final long START = 1451606400000L;
+
+  private final TimeSlicedQueryExecutor executor =
+      new TimeSlicedQueryExecutor(4, DAY, 4, new MetricRegistry());
+
+  public void shouldNotSplitShortRanges() {
+    List<TimeSlicedQueryExecutor.TimeSlice> slices = executor.split(START, START + DAY, 300);
+
+    assertEquals(slices.size(), 1);
+    assertTrue(slices.get(0).last);
+  }
+
+  public void shouldNotSplitWhenDisabled() {
+    TimeSlicedQueryExecutor disabled = new TimeSlicedQueryExecutor(0, DAY, 4, new MetricRegistry());
+
+    assertEquals(disabled.split(START, START + 30 * DAY, 300).size(), 1);
+  }
+
+  public void shouldLimitParallelismToHalfOfThePool() {
+    assertEquals(TimeSlicedQueryExecutor.maxParallelism(4, 32), 4);
+    assertEquals(TimeSlicedQueryExecutor.maxParallelism(16, 10), 5);
+    assertEquals(TimeSlicedQueryExecutor.maxParallelism(4, 1), 0);
+  }
+
+  public void shouldSplitOnPeriodBoundaries() {
+    long start = START + 1234;
+    long end = START + 10 * DAY + 567;
+    int period = 7200;
+
+    List<TimeSlicedQueryExecutor.TimeSlice> slices = executor.split(start, end, period);
+
+    assertEquals(slices.size(), 4);
+    assertEquals(slices.get(0).start, start);
+    for (int i = 1; i < slices.size(); i++) {
+      assertEquals(slices.get(i).start, slices.get(i - 1).end);
+      assertEquals((slices.get(i).start - TimeSlicedQueryExecutor.TIME_SLICE_ORIGIN_MILLIS)
+                   % (period * 1000L), 0);
+    }
+    assertTrue(slices.get(slices.size() - 1).last);
+  }
+
+  public void shouldMergeSeriesInOrder() {
+    List<TimeSlicedQueryExecutor.TimeSlice> slices = executor.split(START, START + 4 * DAY, 0);
+
+    // Each slice holds rows "<series>:<slice>" for series a and b.
+    TimeSlicedQueryExecutor.SliceQuery<String> query =
+        new TimeSlicedQueryExecutor.SliceQuery<String>() {
+          @Override
+          public List<String> find(Handle h, TimeSlicedQueryExecutor.TimeSlice slice,
+                                   int maxRows) {
+            int index = (int) ((slice.start - START) / DAY);
+            return Arrays.asList("a:" + index, "b:" + index);
+          }
+        };
+
+    Comparator<String> seriesOrder = new Comparator<String>() {
+      @Override
+      public int compare(String o1, String o2) {
+        return o1.substring(0, 1).compareTo(o2.substring(0, 1));
+      }
+    };
+
+    List<String> rows = executor.execute(mockDbi(), null, slices, query, 6, seriesOrder);
+
+    assertEquals(rows, Arrays.asList("a:0", "a:1", "a:2", "a:3", "b:0", "b:1"));
+  }
+
+  public void shouldStopAfterPageIsFull() {
+    List<TimeSlicedQueryExecutor.TimeSlice> slices = executor.split(START, START + 4 * DAY, 0);
+
+    TimeSlicedQueryExecutor.SliceQuery<Long> query =
+        new TimeSlicedQueryExecutor.SliceQuery<Long>() {
+          @Override
+          public List<Long> find(Handle h, TimeSlicedQueryExecutor.TimeSlice slice,
+                                 int maxRows) {
+            List<Long> rows = new ArrayList<>();
+            for (long time = slice.start; rows.size() < maxRows && time < slice.start + DAY;
+                 time += HOUR) {
+              rows.add(time);
+            }
+            return rows;
+          }
+        };
+
+    List<Long> rows = executor.execute(mockDbi(), null, slices, query, 30, null);
+
+    assertEquals(rows.size(), 30);
+    for (int i = 0; i < rows.size(); i++) {
+      assertEquals(rows.get(i).longValue(), START + i * HOUR);
+    }
+  }
+
+  private static DBI mockDbi() {
+    DBI db = mock(DBI.class);
+    Handle handle = mock(Handle.class);
+    when(db.open()).thenReturn(handle);
+    return db;
+  }
+}
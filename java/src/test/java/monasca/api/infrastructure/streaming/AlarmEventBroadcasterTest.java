@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+
+import monasca.api.domain.exception.EntityNotFoundException;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.common.model.alarm.AlarmSeverity;
+
+@Test
+public class AlarmEventBroadcasterTest {
+  private static final String TRANSITIONED = "{\"alarm-transitioned\":{\"tenantId\":\"bob\","
+      + "\"alarmId\":\"1\",\"alarmDefinitionId\":\"123\",\"metrics\":[{\"name\":\"cpu\","
+      + "\"dimensions\":{\"hostname\":\"host-1\"}}],\"oldState\":\"OK\",\"newState\":\"ALARM\","
+      + "\"severity\":\"HIGH\"}}";
+  private static final String UPDATED = "{\"alarm-updated\":{\"tenantId\":\"bob\","
+      + "\"alarmId\":\"1\",\"alarmDefinitionId\":\"123\",\"alarmMetrics\":[{\"name\":\"cpu\","
+      + "\"dimensions\":{\"hostname\":\"host-1\"}}],\"lifecycleState\":\"OPEN\"}}";
+
+  private AlarmDefinitionRepo alarmDefinitionRepo;
+  private AlarmEventBroadcaster broadcaster;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    alarmDefinitionRepo = mock(AlarmDefinitionRepo.class);
+    when(alarmDefinitionRepo.findById("bob", "123")).thenReturn(new AlarmDefinition("123",
+        "90% CPU", null, "LOW", "avg(cpu) > 90", Collections.<String>emptyList(), true,
+        Collections.<String>emptyList(), Collections.<String>emptyList(),
+        Collections.<String>emptyList()));
+    broadcaster = new AlarmEventBroadcaster(alarmDefinitionRepo,
+        new Fanout<AlarmEvent>(new MetricRegistry(), AlarmEventBroadcasterTest.class, 10, 10),
+        true, null);
+  }
+
+  public void shouldPublishTransitionsToMatchingStreams() throws Exception {
+    Subscription<AlarmEvent> matching = broadcaster.subscribe(new AlarmEventFilter("bob", "123",
+        Arrays.asList(AlarmSeverity.HIGH), ImmutableMap.of("hostname", "host-1")));
+    Subscription<AlarmEvent> otherTenant =
+        broadcaster.subscribe(new AlarmEventFilter("alice", null, null, null));
+    Subscription<AlarmEvent> otherHost = broadcaster.subscribe(new AlarmEventFilter("bob", null,
+        null, ImmutableMap.of("hostname", "host-2")));
+
+    broadcaster.handle(TRANSITIONED);
+
+    AlarmEvent event = matching.poll(0);
+    assertEquals(event.getType(), "alarm-transitioned");
+    assertTrue(event.getJson().contains("\"newState\":\"ALARM\""));
+    assertNull(otherTenant.poll(0));
+    assertNull(otherHost.poll(0));
+  }
+
+  public void shouldFilterUpdatesBySeverityOfDefinition() throws Exception {
+    Subscription<AlarmEvent> low = broadcaster.subscribe(
+        new AlarmEventFilter("bob", null, Arrays.asList(AlarmSeverity.LOW), null));
+    Subscription<AlarmEvent> high = broadcaster.subscribe(
+        new AlarmEventFilter("bob", null, Arrays.asList(AlarmSeverity.HIGH), null));
+
+    broadcaster.handle(UPDATED);
+
+    assertEquals(low.poll(0).getType(), "alarm-updated");
+    assertNull(high.poll(0));
+    verify(alarmDefinitionRepo, times(1)).findById("bob", "123");
+  }
+
+  public void shouldNotLookUpSeverityUnlessAStreamFiltersByIt() throws Exception {
+    Subscription<AlarmEvent> all =
+        broadcaster.subscribe(new AlarmEventFilter("bob", null, null, null));
+    Subscription<AlarmEvent> otherTenant = broadcaster.subscribe(
+        new AlarmEventFilter("alice", null, Arrays.asList(AlarmSeverity.LOW), null));
+
+    broadcaster.handle(UPDATED);
+
+    assertEquals(all.poll(0).getType(), "alarm-updated");
+    assertNull(otherTenant.poll(0));
+    verify(alarmDefinitionRepo, never()).findById(anyString(), anyString());
+  }
+
+  public void shouldNotMatchSeverityOfDeletedDefinition() throws Exception {
+    when(alarmDefinitionRepo.findById("bob", "456")).thenThrow(new EntityNotFoundException(""));
+    Subscription<AlarmEvent> low = broadcaster.subscribe(
+        new AlarmEventFilter("bob", null, Arrays.asList(AlarmSeverity.LOW), null));
+
+    broadcaster.handle(UPDATED.replace("123", "456"));
+
+    assertNull(low.poll(0));
+  }
+
+  public void shouldIgnoreOtherMessages() throws Exception {
+    Subscription<AlarmEvent> all = broadcaster.subscribe(Predicates.<AlarmEvent>alwaysTrue());
+
+    broadcaster.handle("{\"alarm-deleted\":{\"tenantId\":\"bob\",\"alarmDefinitionId\":\"123\"}}");
+    broadcaster.handle("not json");
+
+    assertNull(all.poll(0));
+  }
+
+  public void shouldNotSubscribeWhenDisabled() {
+    broadcaster = new AlarmEventBroadcaster(alarmDefinitionRepo,
+        new Fanout<AlarmEvent>(new MetricRegistry(), AlarmEventBroadcasterTest.class, 10, 10),
+        false, null);
+
+    assertNull(broadcaster.subscribe(Predicates.<AlarmEvent>alwaysTrue()));
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+@Test
+public class DimensionMatcherTest {
+  private static final Map<String, String> DIMENSIONS =
+      ImmutableMap.of("service", "compute", "hostname", "host-1");
+
+  public void shouldMatchAnyDimensionsWithoutQuery() {
+    assertTrue(DimensionMatcher.matches(null, DIMENSIONS));
+    assertTrue(DimensionMatcher.matches(ImmutableMap.<String, String>of(), null));
+  }
+
+  public void shouldMatchValues() {
+    assertTrue(DimensionMatcher.matches(ImmutableMap.of("service", "compute"), DIMENSIONS));
+    assertTrue(DimensionMatcher.matches(ImmutableMap.of("service", "compute", "hostname",
+        "host-1"), DIMENSIONS));
+    assertFalse(DimensionMatcher.matches(ImmutableMap.of("service", "storage"), DIMENSIONS));
+    assertFalse(DimensionMatcher.matches(ImmutableMap.of("service", "compute", "az", "1"),
+        DIMENSIONS));
+  }
+
+  public void shouldMatchAnyValueOfName() {
+    assertTrue(DimensionMatcher.matches(ImmutableMap.of("hostname", ""), DIMENSIONS));
+    assertFalse(DimensionMatcher.matches(ImmutableMap.of("az", ""), DIMENSIONS));
+  }
+
+  public void shouldMatchEitherValue() {
+    assertTrue(DimensionMatcher.matches(ImmutableMap.of("hostname", "host-2|host-1"), DIMENSIONS));
+    assertFalse(DimensionMatcher.matches(ImmutableMap.of("hostname", "host-2|host-3"),
+        DIMENSIONS));
+  }
+}
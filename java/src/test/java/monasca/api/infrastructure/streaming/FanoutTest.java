@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+@Test
+public class FanoutTest {
+  private static final Predicate<String> EVEN = new Predicate<String>() {
+    @Override
+    public boolean apply(String item) {
+      return Integer.parseInt(item) % 2 == 0;
+    }
+  };
+
+  public void shouldHandEachSubscriptionWhatItAsksFor() throws Exception {
+    Fanout<String> fanout = new Fanout<>(new MetricRegistry(), FanoutTest.class, 10, 10);
+    Subscription<String> all = fanout.subscribe(Predicates.<String>alwaysTrue());
+    Subscription<String> even = fanout.subscribe(EVEN);
+
+    fanout.publish("1");
+    fanout.publish("2");
+
+    assertEquals(all.poll(0), "1");
+    assertEquals(all.poll(0), "2");
+    assertEquals(even.poll(0), "2");
+    assertNull(even.poll(0));
+  }
+
+  public void shouldDropForFullSubscriptionOnly() throws Exception {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Fanout<String> fanout = new Fanout<>(metricRegistry, FanoutTest.class, 10, 2);
+    Subscription<String> slow = fanout.subscribe(Predicates.<String>alwaysTrue());
+    Subscription<String> fast = fanout.subscribe(Predicates.<String>alwaysTrue());
+
+    for (int i = 0; i < 4; i++) {
+      fanout.publish(String.valueOf(i));
+      assertEquals(fast.poll(0), String.valueOf(i));
+    }
+
+    assertEquals(slow.takeDropped(), 2);
+    assertEquals(slow.takeDropped(), 0);
+    assertEquals(slow.poll(0), "0");
+    assertEquals(metricRegistry.meter(MetricRegistry.name(FanoutTest.class, "dropped"))
+        .getCount(), 2);
+  }
+
+  public void shouldLimitSubscriptions() {
+    Fanout<String> fanout = new Fanout<>(new MetricRegistry(), FanoutTest.class, 1, 10);
+    Subscription<String> subscription = fanout.subscribe(Predicates.<String>alwaysTrue());
+    assertNotNull(subscription);
+    assertNull(fanout.subscribe(Predicates.<String>alwaysTrue()));
+
+    subscription.close();
+
+    assertTrue(fanout.isEmpty());
+    assertNotNull(fanout.subscribe(Predicates.<String>alwaysTrue()));
+  }
+}
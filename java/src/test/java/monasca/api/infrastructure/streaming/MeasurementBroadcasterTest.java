@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.infrastructure.streaming;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+
+@Test
+public class MeasurementBroadcasterTest {
+  private static final String METRIC = "{\"metric\":{\"name\":\"cpu_idle_perc\","
+      + "\"dimensions\":{\"hostname\":\"host-1\",\"service\":\"monitoring\"},"
+      + "\"timestamp\":1443740400000,\"value\":97.5,\"value_meta\":null},"
+      + "\"meta\":{\"tenantId\":\"bob\",\"region\":\"useast\"},\"creationTime\":1443740400}";
+
+  private MeasurementBroadcaster broadcaster;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    broadcaster = new MeasurementBroadcaster(new Fanout<MeasurementEvent>(new MetricRegistry(),
+        MeasurementBroadcasterTest.class, 10, 10), true, null, "metrics");
+  }
+
+  public void shouldPublishToMatchingStreams() throws Exception {
+    Subscription<MeasurementEvent> matching = broadcaster.subscribe(new MeasurementFilter("bob",
+        "cpu_idle_perc", ImmutableMap.of("hostname", "host-1|host-2", "service", "")));
+    Subscription<MeasurementEvent> otherTenant =
+        broadcaster.subscribe(new MeasurementFilter("alice", "cpu_idle_perc", null));
+    Subscription<MeasurementEvent> otherName =
+        broadcaster.subscribe(new MeasurementFilter("bob", "mem_free_mb", null));
+    Subscription<MeasurementEvent> otherHost = broadcaster.subscribe(new MeasurementFilter("bob",
+        "cpu_idle_perc", ImmutableMap.of("hostname", "host-3")));
+
+    broadcaster.handle(METRIC);
+
+    assertEquals(matching.poll(0).getJson(), "{\"name\":\"cpu_idle_perc\",\"dimensions\":"
+        + "{\"hostname\":\"host-1\",\"service\":\"monitoring\"},"
+        + "\"timestamp\":\"2015-10-01T23:00:00.000Z\",\"value\":97.5,\"value_meta\":{}}");
+    assertNull(otherTenant.poll(0));
+    assertNull(otherName.poll(0));
+    assertNull(otherHost.poll(0));
+  }
+
+  public void shouldIgnoreOtherMessages() throws Exception {
+    Subscription<MeasurementEvent> all =
+        broadcaster.subscribe(Predicates.<MeasurementEvent>alwaysTrue());
+
+    broadcaster.handle("{\"metric\":{\"name\":\"cpu_idle_perc\"},\"meta\":{\"tenantId\":\"bob\"}}");
+    broadcaster.handle("not json");
+
+    assertNull(all.poll(0));
+  }
+
+  public void shouldNotSubscribeWhenDisabled() {
+    broadcaster = new MeasurementBroadcaster(new Fanout<MeasurementEvent>(new MetricRegistry(),
+        MeasurementBroadcasterTest.class, 10, 10), false, null, "metrics");
+
+    assertNull(broadcaster.subscribe(Predicates.<MeasurementEvent>alwaysTrue()));
+  }
+}
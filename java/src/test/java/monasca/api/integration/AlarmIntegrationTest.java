@@ -22,6 +22,7 @@ import static org.testng.Assert.fail;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +37,7 @@ import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.io.Resources;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -44,15 +46,22 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import monasca.api.ApiConfig;
 import monasca.api.MonApiModule;
+import monasca.api.app.AlarmDefinitionDeletionJobs;
 import monasca.api.app.AlarmDefinitionService;
 import monasca.api.app.command.CreateAlarmDefinitionCommand;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
+import monasca.api.domain.model.event.OutboxEvent;
 import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
+import monasca.api.infrastructure.CollectionVersions;
+import monasca.api.infrastructure.persistence.AlarmDefinitionCache;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.infrastructure.persistence.mysql.AlarmCountSummary;
 import monasca.api.infrastructure.persistence.mysql.AlarmDefinitionMySqlRepoImpl;
 import monasca.api.infrastructure.persistence.mysql.AlarmMySqlRepoImpl;
+import monasca.api.infrastructure.persistence.mysql.DimensionSetIndex;
 import monasca.api.infrastructure.persistence.mysql.NotificationMethodMySqlRepoImpl;
 import monasca.api.resource.AbstractMonApiResourceTest;
 import monasca.api.resource.AlarmDefinitionResource;
@@ -84,11 +93,20 @@ public class AlarmIntegrationTest extends AbstractMonApiResourceTest {
         .execute("insert into notification_method (id, tenant_id, name, type, address, created_at, updated_at) values ('77778687', 'alarm-test', 'MyEmail', 'EMAIL', 'a@b', NOW(), NOW())");
     mysqlDb.close(handle);
 
-    repo = new AlarmDefinitionMySqlRepoImpl(mysqlDb, new PersistUtils());
+    AlarmCountSummary alarmCountSummary =
+        new AlarmCountSummary(mysqlDb, config, new MetricRegistry());
+    repo = new AlarmDefinitionMySqlRepoImpl(mysqlDb, new PersistUtils(), alarmCountSummary,
+        new AlarmDefinitionCache(0, 0, new MetricRegistry()));
+    CollectionVersions collectionVersions = new CollectionVersions(0, 0);
     service =
-        new AlarmDefinitionService(config, producer, repo, new AlarmMySqlRepoImpl(mysqlDb, new PersistUtils()),
-            new NotificationMethodMySqlRepoImpl(mysqlDb, new PersistUtils()));
-    addResources(new AlarmDefinitionResource(service, repo, new PersistUtils()));
+        new AlarmDefinitionService(config, repo,
+            new NotificationMethodMySqlRepoImpl(mysqlDb, new PersistUtils(),
+                new NotificationMethodIdCache(config, new MetricRegistry())),
+            new AlarmDefinitionDeletionJobs(config, new AlarmMySqlRepoImpl(mysqlDb,
+                new PersistUtils(), new DimensionSetIndex(mysqlDb, config, new MetricRegistry()),
+                alarmCountSummary)), collectionVersions);
+    addResources(new AlarmDefinitionResource(service, repo, new PersistUtils(),
+        collectionVersions));
   }
 
   @BeforeTest
@@ -171,7 +189,8 @@ public class AlarmIntegrationTest extends AbstractMonApiResourceTest {
     AlarmDefinition newAlarm =
         repo.create(TENANT_ID, "123", alarm.getName(), alarm.getName(), alarm.getSeverity(),
             alarm.getExpression(), null, alarm.getMatchBy(), alarm.getAlarmActions(),
-            alarm.getOkActions(), alarm.getUndeterminedActions());
+            alarm.getOkActions(), alarm.getUndeterminedActions(),
+            Collections.<OutboxEvent>emptyList());
     assertNotNull(repo.findById(TENANT_ID, newAlarm.getId()));
 
     ClientResponse response =
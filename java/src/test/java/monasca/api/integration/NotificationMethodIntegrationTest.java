@@ -28,6 +28,7 @@ import org.skife.jdbi.v2.Handle;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.io.Resources;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -37,8 +38,12 @@ import monasca.api.app.command.CreateNotificationMethodCommand;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.CollectionVersions;
+import monasca.api.infrastructure.persistence.NotificationMethodIdCache;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.infrastructure.persistence.mysql.NotificationMethodMySqlRepoImpl;
+import monasca.api.infrastructure.persistence.mysql.NotificationMethodTypesMySqlRepoImpl;
 import monasca.api.resource.AbstractMonApiResourceTest;
 import monasca.api.resource.NotificationMethodResource;
 import com.sun.jersey.api.client.ClientResponse;
@@ -59,8 +64,12 @@ public class NotificationMethodIntegrationTest extends AbstractMonApiResourceTes
     handle
         .execute("insert into notification_method (id, tenant_id, name, type, address, created_at, updated_at) values ('29387234', 'notification-method-test', 'MyEmaila', 'EMAIL', 'a@b', NOW(), NOW())");
     db.close(handle);
-    repo = new NotificationMethodMySqlRepoImpl(db, new PersistUtils());
-    addResources(new NotificationMethodResource(config, repo, new PersistUtils()));
+    repo = new NotificationMethodMySqlRepoImpl(db, new PersistUtils(),
+        new NotificationMethodIdCache(0, 0, new MetricRegistry()));
+    NotificationMethodTypesCache types = new NotificationMethodTypesCache(
+        new NotificationMethodTypesMySqlRepoImpl(db, new PersistUtils()), 0);
+    addResources(new NotificationMethodResource(config, repo, types, new PersistUtils(),
+        new CollectionVersions(0, 0)));
   }
 
   @BeforeTest
@@ -24,9 +24,12 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -42,12 +45,16 @@ import org.testng.annotations.Test;
 
 import monasca.api.app.AlarmDefinitionService;
 import monasca.api.app.command.CreateAlarmDefinitionCommand;
+import monasca.api.app.command.ImportAlarmDefinitionsCommand;
 import monasca.api.app.command.UpdateAlarmDefinitionCommand;
 import monasca.api.domain.model.common.Paged;
+import monasca.api.infrastructure.CollectionVersions;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.common.model.alarm.AlarmExpression;
 import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinition;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionDeletion;
+import monasca.api.domain.model.alarmdefinition.AlarmDefinitionImportResult;
 import monasca.api.domain.model.alarmdefinition.AlarmDefinitionRepo;
 import monasca.api.domain.model.common.Link;
 import monasca.api.resource.exception.ErrorMessages;
@@ -64,6 +71,7 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
   private AlarmDefinition alarmItem;
   private AlarmDefinitionService service;
   private AlarmDefinitionRepo repo;
+  private CollectionVersions collectionVersions;
   private List<String> alarmActions;
 
   @Override
@@ -106,7 +114,9 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
         AlarmSeverity.class), (List<String>) anyList(), anyString(), anyInt())).thenReturn(
         Arrays.asList(alarmItem));
 
-    addResources(new AlarmDefinitionResource(service, repo, new PersistUtils()));
+    collectionVersions = new CollectionVersions(10, 60000);
+    addResources(new AlarmDefinitionResource(service, repo, new PersistUtils(),
+        collectionVersions));
   }
 
   @SuppressWarnings("unchecked")
@@ -291,6 +301,41 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
                  "Alarm action 012345678901234567890123456789012345678901234567890 must be 50 characters or less");
   }
 
+  @SuppressWarnings("unchecked")
+  public void shouldImport() {
+    List<CreateAlarmDefinitionCommand> commands = Arrays.asList(
+        new CreateAlarmDefinitionCommand("Disk Exceeds 1k Operations", null, expression,
+            Arrays.asList("service", "instance_id"), "LOW", alarmActions, null, null),
+        new CreateAlarmDefinitionCommand("log.error", null, detExpression, null, "LOW", null,
+            null, null));
+    when(service.importAll("abc", commands)).thenReturn(Arrays.asList(
+        new AlarmDefinitionImportResult("789", "Disk Exceeds 1k Operations",
+            AlarmDefinitionImportResult.CREATED),
+        new AlarmDefinitionImportResult("456", "log.error", AlarmDefinitionImportResult.CONFLICT)));
+
+    Map<String, Object> response = client().resource("/v2.0/alarm-definitions/import")
+        .header("X-Tenant-Id", "abc").header("Content-Type", MediaType.APPLICATION_JSON)
+        .post(Map.class, new ImportAlarmDefinitionsCommand(commands));
+
+    List<Map<String, Object>> elements = (List<Map<String, Object>>) response.get("elements");
+    assertEquals(elements.size(), 2);
+    assertEquals(elements.get(0).get("id"), "789");
+    assertEquals(elements.get(1).get("status"), 409);
+  }
+
+  public void shouldErrorOnImportWithInvalidDefinition() {
+    ClientResponse response = client().resource("/v2.0/alarm-definitions/import")
+        .header("X-Tenant-Id", "abc").header("Content-Type", MediaType.APPLICATION_JSON)
+        .post(ClientResponse.class, new ImportAlarmDefinitionsCommand(Arrays.asList(
+            new CreateAlarmDefinitionCommand("Disk Exceeds 1k Operations", null, expression,
+                null, "LOW", alarmActions, null, null),
+            new CreateAlarmDefinitionCommand("Disk Exceeds 1k Operations", null, expression,
+                null, "BOGUS", alarmActions, null, null))));
+
+    assertEquals(response.getStatus(), 422);
+    verify(service, never()).importAll(anyString(), anyList());
+  }
+
   @SuppressWarnings("unchecked")
   public void shouldList() {
 
@@ -323,6 +368,32 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
                       anyString(), anyInt());
   }
 
+  @SuppressWarnings("unchecked")
+  public void shouldReturnNotModifiedUntilListChanges() {
+    ClientResponse response = client().resource("/v2.0/alarm-definitions")
+        .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+    String eTag = response.getHeaders().getFirst("ETag");
+
+    response = client().resource("/v2.0/alarm-definitions").header("X-Tenant-Id", "abc")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 304);
+
+    // Another page of the list has a tag of its own
+    response = client().resource("/v2.0/alarm-definitions?limit=1").header("X-Tenant-Id", "abc")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+
+    collectionVersions.bump(CollectionVersions.ALARM_DEFINITIONS, "abc");
+    response = client().resource("/v2.0/alarm-definitions").header("X-Tenant-Id", "abc")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+
+    verify(repo, times(3)).find(eq("abc"), anyString(), (Map<String, String>) anyMap(),
+                                anyListOf(AlarmSeverity.class), (List<String>) anyList(),
+                                anyString(), anyInt());
+  }
+
   @SuppressWarnings("unchecked")
   public void shouldListByName() throws Exception {
     Map<String, Object>
@@ -375,13 +446,33 @@ public class AlarmDefinitionResourceTest extends AbstractMonApiResourceTest {
   }
 
   public void shouldDelete() {
+    when(service.delete(eq("abc"), eq("123")))
+        .thenReturn(new AlarmDefinitionDeletion("456", "abc", "123"));
+
     ClientResponse response =
         client().resource("/v2.0/alarm-definitions/123").header("X-Tenant-Id", "abc")
             .delete(ClientResponse.class);
-    assertEquals(response.getStatus(), 204);
+    assertEquals(response.getStatus(), 202);
+    assertTrue(response.getLocation().getPath()
+                   .endsWith("/v2.0/alarm-definitions/deletions/456"));
     verify(service).delete(eq("abc"), eq("123"));
   }
 
+  @SuppressWarnings("unchecked")
+  public void shouldGetDeletion() {
+    when(service.getDeletion(eq("abc"), eq("456")))
+        .thenReturn(new AlarmDefinitionDeletion("456", "abc", "123"));
+
+    Map<String, Object> deletion =
+        client().resource("/v2.0/alarm-definitions/deletions/456").header("X-Tenant-Id", "abc")
+            .get(Map.class);
+
+    assertEquals(deletion.get("alarm_definition_id"), "123");
+    assertEquals(deletion.get("status"), "QUEUED");
+    assertEquals(deletion.get("alarms_deleted"), 0);
+    assertFalse(deletion.containsKey("tenant_id"));
+  }
+
   public void should404OnDeleteInvalid() {
     doThrow(new EntityNotFoundException(null)).when(service).delete(eq("abc"), eq("999"));
 
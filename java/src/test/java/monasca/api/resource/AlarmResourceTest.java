@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package monasca.api.resource;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.joda.time.DateTime;
+import org.testng.annotations.Test;
+
+import com.sun.jersey.api.client.ClientResponse;
+
+import monasca.api.ApiConfig;
+import monasca.api.app.AlarmService;
+import monasca.api.app.command.PatchAlarmsCommand;
+import monasca.api.domain.model.alarm.Alarm;
+import monasca.api.domain.model.alarm.AlarmPatchResult;
+import monasca.api.domain.model.alarm.AlarmRepo;
+import monasca.api.domain.model.alarmstatehistory.AlarmStateHistoryRepo;
+import monasca.api.infrastructure.persistence.PersistUtils;
+import monasca.api.resource.exception.ErrorMessages;
+import monasca.common.model.alarm.AlarmSeverity;
+import monasca.common.model.alarm.AlarmState;
+
+@Test
+public class AlarmResourceTest extends AbstractMonApiResourceTest {
+  private AlarmService service;
+  private AlarmRepo repo;
+
+  @Override
+  protected void setupResources() throws Exception {
+    super.setupResources();
+
+    service = mock(AlarmService.class);
+    repo = mock(AlarmRepo.class);
+
+    addResources(new AlarmResource(new ApiConfig(), service, repo,
+        mock(AlarmStateHistoryRepo.class), new PersistUtils(), null));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldPatchAllById() {
+    List<String> alarmIds = Arrays.asList("1", "2", "3");
+    when(service.patchAll("abc", alarmIds, AlarmState.OK, null, null)).thenReturn(Arrays.asList(
+        new AlarmPatchResult("1", AlarmPatchResult.UPDATED),
+        new AlarmPatchResult("2", AlarmPatchResult.NOT_FOUND),
+        new AlarmPatchResult("3", AlarmPatchResult.FAILED)));
+
+    Map<String, Object> response = patchAll(Map.class,
+        new PatchAlarmsCommand(alarmIds, null, AlarmState.OK, null, null));
+
+    List<Map<String, Object>> elements = (List<Map<String, Object>>) response.get("elements");
+    assertEquals(elements.size(), 3);
+    assertEquals(elements.get(0).get("id"), "1");
+    assertEquals(elements.get(0).get("status"), 200);
+    assertEquals(elements.get(1).get("status"), 404);
+    assertEquals(elements.get(2).get("status"), 500);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldPatchAllByFilter() {
+    when(repo.find(eq("abc"), eq("def"), anyString(), anyMap(), any(AlarmState.class),
+        anyList(), anyString(), anyString(), any(DateTime.class), anyList(), anyString(),
+        anyInt(), anyBoolean())).thenReturn(Arrays.asList(alarm("1"), alarm("2")));
+    when(service.patchAll("abc", Arrays.asList("1", "2"), null, "OPEN", null)).thenReturn(
+        Arrays.asList(new AlarmPatchResult("1", AlarmPatchResult.UPDATED),
+            new AlarmPatchResult("2", AlarmPatchResult.UPDATED)));
+
+    PatchAlarmsCommand.Filter filter = new PatchAlarmsCommand.Filter();
+    filter.alarmDefinitionId = "def";
+    Map<String, Object> response =
+        patchAll(Map.class, new PatchAlarmsCommand(null, filter, null, "OPEN", null));
+
+    assertEquals(((List<?>) response.get("elements")).size(), 2);
+    verify(service).patchAll("abc", Arrays.asList("1", "2"), null, "OPEN", null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldErrorOnPatchAllWithIdsAndFilter() {
+    ClientResponse response = patchAll(ClientResponse.class, new PatchAlarmsCommand(
+        Arrays.asList("1"), new PatchAlarmsCommand.Filter(), AlarmState.OK, null, null));
+
+    ErrorMessages.assertThat(response.getEntity(String.class)).matches("unprocessable_entity", 422,
+        "Exactly one of alarm_ids and filter is required");
+    verify(service, never()).patchAll(anyString(), anyList(), any(AlarmState.class), anyString(),
+        anyString());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldErrorOnPatchAllWithoutIdsOrFilter() {
+    ClientResponse response =
+        patchAll(ClientResponse.class, new PatchAlarmsCommand(null, null, AlarmState.OK, null,
+            null));
+
+    ErrorMessages.assertThat(response.getEntity(String.class)).matches("unprocessable_entity", 422,
+        "Exactly one of alarm_ids and filter is required");
+  }
+
+  @SuppressWarnings("unchecked")
+  public void shouldErrorOnPatchAllWithoutFields() {
+    ClientResponse response = patchAll(ClientResponse.class,
+        new PatchAlarmsCommand(Arrays.asList("1"), null, null, null, null));
+
+    ErrorMessages.assertThat(response.getEntity(String.class)).matches("unprocessable_entity", 422,
+        "At least one of state, lifecycle_state and link is required");
+    verify(service, never()).patchAll(anyString(), anyList(), any(AlarmState.class), anyString(),
+        anyString());
+  }
+
+  private <T> T patchAll(Class<T> responseType, PatchAlarmsCommand command) {
+    return client().resource("/v2.0/alarms").header("X-Tenant-Id", "abc")
+        .header("Content-Type", MediaType.APPLICATION_JSON)
+        .method("PATCH", responseType, command);
+  }
+
+  private static Alarm alarm(String id) {
+    return new Alarm(id, "def", "Disk Exceeds 1k Operations", AlarmSeverity.LOW.name(), null,
+        AlarmState.ALARM, "OPEN", null, null, null, null);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2016 Hewlett Packard Enterprise Development LP
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package monasca.api.resource;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicates;
+
+import io.dropwizard.util.Duration;
+
+import monasca.api.infrastructure.streaming.Fanout;
+import monasca.api.infrastructure.streaming.StreamingConfiguration;
+import monasca.api.infrastructure.streaming.Subscription;
+
+@Test
+public class EventStreamOutputTest {
+
+  public void shouldWriteEventsUntilMaxDuration() throws Exception {
+    StreamingConfiguration config = new StreamingConfiguration();
+    config.heartbeatInterval = Duration.milliseconds(10);
+    config.maxDuration = Duration.milliseconds(100);
+    Fanout<String> fanout = new Fanout<>(new MetricRegistry(), EventStreamOutputTest.class, 1, 1);
+    Subscription<String> subscription = fanout.subscribe(Predicates.<String>alwaysTrue());
+    fanout.publish("1");
+    fanout.publish("2");
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new EventStreamOutput<String>(subscription, config) {
+      @Override
+      protected String eventName(String item) {
+        return "number";
+      }
+
+      @Override
+      protected String data(String item) {
+        return "{\"number\":" + item + "}";
+      }
+    }.write(output);
+
+    String stream = new String(output.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(stream.startsWith("retry: 5000\n\n"
+        + "event: dropped\ndata: {\"dropped\":1}\n\n"
+        + "event: number\ndata: {\"number\":1}\n\n"), stream);
+    assertTrue(stream.contains(": heartbeat\n\n"), stream);
+    assertTrue(fanout.isEmpty());
+    assertEquals(subscription.takeDropped(), 0);
+  }
+}
@@ -23,6 +23,9 @@ import monasca.api.domain.exception.EntityNotFoundException;
 import monasca.api.domain.model.common.Paged;
 import monasca.api.domain.model.notificationmethod.NotificationMethod;
 import monasca.api.domain.model.notificationmethod.NotificationMethodRepo;
+import monasca.api.infrastructure.CollectionVersions;
+import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 import monasca.api.resource.exception.ErrorMessages;
 
@@ -74,7 +77,12 @@ public class NotificationMethodResourceTest extends AbstractMonApiResourceTest {
 
     config = mock(ApiConfig.class);
     config.validNotificationPeriods = Arrays.asList(0, 60);
-    addResources(new NotificationMethodResource(config, repo, new PersistUtils()));
+    NotificationMethodTypesRepo typesRepo = mock(NotificationMethodTypesRepo.class);
+    when(typesRepo.listNotificationMethodTypes()).thenReturn(Arrays.asList(
+        NOTIFICATION_METHOD_EMAIL, NOTIFICATION_METHOD_WEBHOOK, NOTIFICATION_METHOD_PAGERDUTY));
+    addResources(new NotificationMethodResource(config, repo,
+        new NotificationMethodTypesCache(typesRepo, 0), new PersistUtils(),
+        new CollectionVersions(10, 60000)));
   }
 
   public void shouldCreate() {
@@ -125,6 +133,20 @@ public class NotificationMethodResourceTest extends AbstractMonApiResourceTest {
         "[type may not be null (was null)]");
   }
 
+  public void should422OnUnknownType() {
+    ClientResponse response =
+        client()
+            .resource("/v2.0/notification-methods")
+            .header("X-Tenant-Id", "abc")
+            .header("Content-Type", MediaType.APPLICATION_JSON)
+            .post(ClientResponse.class,
+                new CreateNotificationMethodCommand("MySms", "SMS", "555-0100", "0"));
+
+    ErrorMessages.assertThat(response.getEntity(String.class)).matches("unprocessable_entity", 422,
+        "SMS is not a valid notification method type");
+    verify(repo, never()).create(anyString(), anyString(), anyString(), anyString(), anyInt());
+  }
+
   public void should422OnIncorrectAddressFormat() {
     ClientResponse response =
         client()
@@ -272,6 +294,29 @@ public class NotificationMethodResourceTest extends AbstractMonApiResourceTest {
     verify(repo).find(eq("abc"), (List<String>) anyList(), anyString(), anyInt());
   }
 
+  @SuppressWarnings("unchecked")
+  public void shouldReturnNotModifiedUntilListChanges() {
+    ClientResponse response = client().resource("/v2.0/notification-methods")
+        .header("X-Tenant-Id", "abc").get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+    String eTag = response.getHeaders().getFirst("ETag");
+
+    response = client().resource("/v2.0/notification-methods").header("X-Tenant-Id", "abc")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 304);
+
+    // Another tenant never shares a tag
+    response = client().resource("/v2.0/notification-methods").header("X-Tenant-Id", "def")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+
+    client().resource("/v2.0/notification-methods/123").header("X-Tenant-Id", "abc").delete();
+    response = client().resource("/v2.0/notification-methods").header("X-Tenant-Id", "abc")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+    verify(repo, times(2)).find(eq("abc"), (List<String>) anyList(), anyString(), anyInt());
+  }
+
   public void shouldGet() {
     assertEquals(client().resource("/v2.0/notification-methods/123").header("X-Tenant-Id", "abc")
         .get(NotificationMethod.class), notificationMethod);
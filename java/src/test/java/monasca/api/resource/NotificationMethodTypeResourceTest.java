@@ -15,6 +15,8 @@
 package monasca.api.resource;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
@@ -26,17 +28,21 @@ import java.util.TreeSet;
 
 import org.testng.annotations.Test;
 
+import com.sun.jersey.api.client.ClientResponse;
+
 import monasca.api.ApiConfig;
 import monasca.api.domain.model.common.Paged;
 import monasca.api.domain.model.notificationmethod.NotificationMethodType;
 import monasca.api.domain.model.notificationmethod.NotificationMethodTypesRepo;
+import monasca.api.infrastructure.persistence.NotificationMethodTypesCache;
 import monasca.api.infrastructure.persistence.PersistUtils;
 
 @Test
 public class NotificationMethodTypeResourceTest extends AbstractMonApiResourceTest {
 
   private ApiConfig config;
-  NotificationMethodTypesResource  resource;
+  private NotificationMethodTypesRepo repo;
+  private NotificationMethodTypesCache types;
 
   @Override
   protected void setupResources() throws Exception {
@@ -46,12 +52,12 @@ public class NotificationMethodTypeResourceTest extends AbstractMonApiResourceTe
 
     List<String> NOTIFICATION_METHODS = Arrays.asList("Email", "PagerDuty", "WebHook");
 
-    NotificationMethodTypesRepo repo = mock(NotificationMethodTypesRepo.class);
+    repo = mock(NotificationMethodTypesRepo.class);
     when(repo.listNotificationMethodTypes())
         .thenReturn(NOTIFICATION_METHODS);
+    types = new NotificationMethodTypesCache(repo, 0);
 
-    resource =  new NotificationMethodTypesResource(config, repo,new PersistUtils());
-    addResources(resource);
+    addResources(new NotificationMethodTypesResource(config, types, new PersistUtils()));
   }
 
 
@@ -80,10 +86,9 @@ public class NotificationMethodTypeResourceTest extends AbstractMonApiResourceTe
 
       // Change the config to have one notification type
 
-      NotificationMethodTypesRepo repo = mock(NotificationMethodTypesRepo.class);
       when(repo.listNotificationMethodTypes())
           .thenReturn(Arrays.asList("Email"));
-      resource.repo = repo;
+      types.refresh();
       pages  =  (List<Paged>) client().resource("/v2.0/notification-methods/types").get(Paged.class).elements;
       responseGot = getNotificationMethods(pages);
 
@@ -92,10 +97,9 @@ public class NotificationMethodTypeResourceTest extends AbstractMonApiResourceTe
 
 
       // Change the config to have more than one notification type
-      repo = mock(NotificationMethodTypesRepo.class);
       when(repo.listNotificationMethodTypes())
           .thenReturn(Arrays.asList("Email", "Type1", "Type2", "Type3"));
-      resource.repo = repo;
+      types.refresh();
       pages  =  (List<Paged>) client().resource("/v2.0/notification-methods/types").get(Paged.class).elements;
 
       responseGot = getNotificationMethods(pages);
@@ -105,4 +109,38 @@ public class NotificationMethodTypeResourceTest extends AbstractMonApiResourceTe
 
   }
 
+  public void shouldReturnNotModifiedForCurrentETag() {
+    ClientResponse response =
+        client().resource("/v2.0/notification-methods/types").get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+    String eTag = response.getHeaders().getFirst("ETag");
+
+    response = client().resource("/v2.0/notification-methods/types")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 304);
+
+    when(repo.listNotificationMethodTypes()).thenReturn(Arrays.asList("Email"));
+    types.refresh();
+    response = client().resource("/v2.0/notification-methods/types")
+        .header("If-None-Match", eTag).get(ClientResponse.class);
+    assertEquals(response.getStatus(), 200);
+    // Served from the snapshot, loaded on creation and on each refresh only
+    verify(repo, times(2)).listNotificationMethodTypes();
+  }
+
+  public void shouldRefreshForAdmin() {
+    ClientResponse response = client().resource("/v2.0/notification-methods/types/refresh")
+        .header("X-Roles", "monasca-admin").post(ClientResponse.class);
+
+    assertEquals(response.getStatus(), 204);
+    verify(repo, times(2)).listNotificationMethodTypes();
+  }
+
+  public void should403OnRefreshWithoutAdminRole() {
+    ClientResponse response = client().resource("/v2.0/notification-methods/types/refresh")
+        .header("X-Roles", "monasca-user").post(ClientResponse.class);
+
+    assertEquals(response.getStatus(), 403);
+    verify(repo, times(1)).listNotificationMethodTypes();
+  }
 }
@@ -26,6 +26,7 @@ CREATE TABLE `alarm_definition` (
 CREATE TABLE `alarm_metric` (
   `alarm_id` varchar(36) NOT NULL,
   `metric_definition_dimensions_id` binary(20) NOT NULL DEFAULT '\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0\0',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   PRIMARY KEY (`alarm_id`,`metric_definition_dimensions_id`)
 );
 
@@ -87,3 +88,12 @@ CREATE TABLE `alarm_action` (
   `action_id` varchar(36) NOT NULL DEFAULT '',
   PRIMARY KEY (`alarm_definition_id`,`alarm_state`,`action_id`)
 );
+
+CREATE TABLE `event_outbox` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `topic` varchar(255) NOT NULL,
+  `message_key` varchar(36) DEFAULT NULL,
+  `message` mediumtext NOT NULL,
+  `created_at` datetime NOT NULL,
+  PRIMARY KEY (`id`)
+);